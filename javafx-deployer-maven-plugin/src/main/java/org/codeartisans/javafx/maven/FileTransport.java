@@ -0,0 +1,105 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Transport to a repository on a file system, {@literal file://} URLs.
+ *
+ * Files are written to a partial file named after the source size and time then moved in place, an interrupted
+ * upload of the same source is resumed where it stopped.
+ */
+/* package */ class FileTransport
+    implements RepositoryTransport
+{
+
+    private static final long CHUNK_SIZE = 1024 * 1024;
+    private final Path baseDir;
+
+    /* package */ FileTransport( File baseDir )
+    {
+        this.baseDir = baseDir.toPath();
+    }
+
+    @Override
+    public byte[] get( String path )
+        throws IOException
+    {
+        Path file = baseDir.resolve( path );
+        return Files.isRegularFile( file ) ? Files.readAllBytes( file ) : null;
+    }
+
+    @Override
+    public void put( File source, String path, TransferProgress progress )
+        throws IOException
+    {
+        Path target = baseDir.resolve( path );
+        Path partial = target.resolveSibling( target.getFileName() + ".part-" + source.length() + "-"
+                                              + source.lastModified() );
+        Files.createDirectories( target.getParent() );
+        FileChannel input = FileChannel.open( source.toPath(), StandardOpenOption.READ );
+        try
+        {
+            FileChannel output = FileChannel.open( partial, StandardOpenOption.CREATE, StandardOpenOption.WRITE );
+            try
+            {
+                long position = output.size();
+                if( position > input.size() )
+                {
+                    output.truncate( 0 );
+                    position = 0;
+                }
+                if( position > 0 )
+                {
+                    progress.resumed( position );
+                }
+                while( position < input.size() )
+                {
+                    long count = output.transferFrom( input.position( position ), position,
+                                                      Math.min( CHUNK_SIZE, input.size() - position ) );
+                    position += count;
+                    progress.transferred( count );
+                }
+                output.force( true );
+            }
+            finally
+            {
+                output.close();
+            }
+        }
+        finally
+        {
+            input.close();
+        }
+        try
+        {
+            Files.move( partial, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+        }
+        catch( AtomicMoveNotSupportedException ex )
+        {
+            Files.move( partial, target, StandardCopyOption.REPLACE_EXISTING );
+        }
+    }
+
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.Charset;
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Transport to a repository over HTTP, uploads are done with PUT requests.
+ *
+ * Files are streamed with a fixed length so that large ones are never buffered in memory. HTTP has no standard way
+ * to resume a PUT, interrupted uploads are started over.
+ */
+/* package */ class HttpTransport
+    implements RepositoryTransport
+{
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int TIMEOUT = 60 * 1000;
+    private static final String BASE64_DIGITS =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+    private final String baseUrl;
+    private final String authorization;
+
+    /**
+     * @param username Username for basic authentication, {@literal null} for anonymous access
+     */
+    /* package */ HttpTransport( String baseUrl, String username, String password )
+    {
+        this.baseUrl = baseUrl.endsWith( "/" ) ? baseUrl : baseUrl + "/";
+        if( username == null )
+        {
+            this.authorization = null;
+        }
+        else
+        {
+            byte[] credentials = ( username + ":" + ( password == null ? "" : password ) ).
+                getBytes( Charset.forName( "UTF-8" ) );
+            this.authorization = "Basic " + base64( credentials );
+        }
+    }
+
+    @Override
+    public byte[] get( String path )
+        throws IOException
+    {
+        HttpURLConnection connection = open( path, "GET" );
+        try
+        {
+            int status = connection.getResponseCode();
+            if( status == HttpURLConnection.HTTP_NOT_FOUND )
+            {
+                return null;
+            }
+            check( connection, status, path );
+            InputStream input = connection.getInputStream();
+            try
+            {
+                return IOUtil.toByteArray( input );
+            }
+            finally
+            {
+                IOUtil.close( input );
+            }
+        }
+        finally
+        {
+            connection.disconnect();
+        }
+    }
+
+    @Override
+    public void put( File source, String path, TransferProgress progress )
+        throws IOException
+    {
+        HttpURLConnection connection = open( path, "PUT" );
+        try
+        {
+            connection.setDoOutput( true );
+            connection.setFixedLengthStreamingMode( source.length() );
+            connection.setRequestProperty( "Content-Type", "application/octet-stream" );
+            InputStream input = new FileInputStream( source );
+            try
+            {
+                OutputStream output = connection.getOutputStream();
+                try
+                {
+                    byte[] buffer = new byte[ BUFFER_SIZE ];
+                    int count;
+                    while( ( count = input.read( buffer ) ) != -1 )
+                    {
+                        output.write( buffer, 0, count );
+                        progress.transferred( count );
+                    }
+                }
+                finally
+                {
+                    IOUtil.close( output );
+                }
+            }
+            finally
+            {
+                IOUtil.close( input );
+            }
+            check( connection, connection.getResponseCode(), path );
+        }
+        finally
+        {
+            connection.disconnect();
+        }
+    }
+
+    private HttpURLConnection open( String path, String method )
+        throws IOException
+    {
+        HttpURLConnection connection = (HttpURLConnection) new URL( baseUrl + path ).openConnection();
+        connection.setRequestMethod( method );
+        connection.setConnectTimeout( TIMEOUT );
+        connection.setReadTimeout( TIMEOUT );
+        connection.setUseCaches( false );
+        if( authorization != null )
+        {
+            connection.setRequestProperty( "Authorization", authorization );
+        }
+        return connection;
+    }
+
+    /**
+     * Base64 encoding, javax.xml.bind was removed from Java 11 runtimes and java.util.Base64 requires Java 8.
+     */
+    /* package */ static String base64( byte[] bytes )
+    {
+        StringBuilder encoded = new StringBuilder( ( bytes.length + 2 ) / 3 * 4 );
+        for( int idx = 0; idx < bytes.length; idx += 3 )
+        {
+            int remaining = Math.min( 3, bytes.length - idx );
+            int group = ( bytes[ idx ] & 0xff ) << 16;
+            if( remaining > 1 )
+            {
+                group |= ( bytes[ idx + 1 ] & 0xff ) << 8;
+            }
+            if( remaining > 2 )
+            {
+                group |= bytes[ idx + 2 ] & 0xff;
+            }
+            for( int digit = 0; digit < 4; digit++ )
+            {
+                encoded.append( digit <= remaining
+                                ? BASE64_DIGITS.charAt( ( group >> ( 18 - 6 * digit ) ) & 0x3f )
+                                : '=' );
+            }
+        }
+        return encoded.toString();
+    }
+
+    private static void check( HttpURLConnection connection, int status, String path )
+        throws IOException
+    {
+        if( status >= 200 && status < 300 )
+        {
+            return;
+        }
+        String message = connection.getRequestMethod() + " " + path + " failed: " + status + " "
+                         + connection.getResponseMessage();
+        // Client errors are not worth retrying, but timeouts and throttling
+        if( status >= 400 && status < 500 && status != HttpURLConnection.HTTP_CLIENT_TIMEOUT && status != 429 )
+        {
+            throw new FatalTransferException( message );
+        }
+        throw new IOException( message );
+    }
+
+}
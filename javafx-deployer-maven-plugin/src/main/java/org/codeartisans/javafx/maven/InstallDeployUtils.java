@@ -15,12 +15,24 @@
  */
 package org.codeartisans.javafx.maven;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.util.Properties;
+import java.io.InputStream;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.io.xpp3.MavenXpp3Writer;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
+import org.codehaus.plexus.util.IOUtil;
+import org.codehaus.plexus.util.ReaderFactory;
+import org.codehaus.plexus.util.WriterFactory;
 
 /* package */ class InstallDeployUtils
 {
@@ -28,67 +40,198 @@ import org.apache.maven.plugin.MojoFailureException;
     /* package */ static final String GROUPID = "com.sun.javafx";
     /* package */ static final String RUNTIME_ARTIFACTID = "jfxrt";
     /* package */ static final String ANT_ARTIFACTID = "ant-javafx";
+    /* package */ static final String SHA1 = "SHA-1";
+    /* package */ static final String MD5 = "MD5";
 
-    /* package */ static File findJfxFile( File javaHomeDir, String filename )
+    /**
+     * @param cacheFile File persisting the discovery across builds, {@literal null} to only cache it for the session
+     */
+    /* package */ static JavaFxSdk discoverJavaFx( File javaHomeDir, File cacheFile )
+        throws MojoFailureException
+    {
+        try
+        {
+            return JavaFxSdk.discover( javaHomeDir, cacheFile );
+        }
+        catch( IOException ex )
+        {
+            throw new MojoFailureException( "Unable to load JavaFX Properties", ex );
+        }
+    }
+
+    /* package */ static File findJfxFile( JavaFxSdk sdk, String filename )
         throws MojoExecutionException
     {
-        File file = new File( javaHomeDir, "lib/" + filename );
-        if( file.exists() )
+        File file = sdk.getFile( filename );
+        if( file == null )
         {
-            // JAVA_HOME points to a JRE
-            return file;
+            throw new MojoExecutionException( "Unable to find JavaFX '" + filename + "' at '" + sdk.getJavaHome()
+                                              + "'. Is your JAVA_HOME set to a JDK with JavaFX installed "
+                                              + "(must be at least Java 7u9)?" );
         }
-        file = new File( javaHomeDir, "jre/lib/" + filename );
-        if( file.exists() )
+        return file;
+    }
+
+    /**
+     * @return Temporary POM file, to be deleted by the caller
+     */
+    /* package */ static File generatePomFile( String groupId, String artifactId, String version, String packaging )
+        throws MojoExecutionException
+    {
+        Model model = new Model();
+        model.setModelVersion( "4.0.0" );
+        model.setGroupId( groupId );
+        model.setArtifactId( artifactId );
+        model.setVersion( version );
+        model.setPackaging( packaging );
+        model.setDescription( "POM was created from javafx-maven-plugin" );
+        Writer writer = null;
+        try
         {
-            // JAVA_HOME points to a JDK
-            return file;
+            File pomFile = File.createTempFile( "mvninstall", ".pom" );
+            writer = WriterFactory.newXmlWriter( pomFile );
+            new MavenXpp3Writer().write( writer, model );
+            return pomFile;
         }
-        file = new File( javaHomeDir, "../lib/" + filename );
-        if( file.exists() )
+        catch( IOException e )
         {
-            // JAVA_HOME points to a JRE inside a JDK
-            return file;
+            throw new MojoExecutionException( "Error writing temporary POM file: " + e.getMessage(), e );
+        }
+        finally
+        {
+            IOUtil.close( writer );
         }
-        throw new MojoExecutionException( "Unable to find JavaFX '" + filename + "' at '" + javaHomeDir
-                                          + "'. Is your JAVA_HOME set to a JDK with JavaFX installed "
-                                          + "(must be at least Java 7u9)?" );
     }
 
-    /* package */ static String loadJavaFxRuntimeVersion( File jfxPropertiesFile )
-        throws MojoFailureException
+    /**
+     * @return Path of an artifact file relative to the repository root, using the default layout
+     */
+    /* package */ static String repositoryPath( String artifactId, String version, String extension )
     {
-        Properties jfxProperties = loadJavaFxProperties( jfxPropertiesFile );
-        return (String) jfxProperties.get( "javafx.runtime.version" );
+        return GROUPID.replace( '.', '/' ) + "/" + artifactId + "/" + version + "/"
+               + artifactId + "-" + version + "." + extension;
     }
 
-    private static Properties loadJavaFxProperties( File jfxPropertiesFile )
-        throws MojoFailureException
+    /**
+     * @return Path of an artifact versions metadata relative to the repository root, using the default layout
+     */
+    /* package */ static String metadataPath( String artifactId )
     {
-        FileInputStream input = null;
-        try
+        return GROUPID.replace( '.', '/' ) + "/" + artifactId + "/maven-metadata.xml";
+    }
+
+    /**
+     * Compute several digests of a file content in a single pass.
+     *
+     * @return Hexadecimal digests by algorithm
+     */
+    /* package */ static Map<String, String> checksums( File file, String... algorithms )
+        throws IOException
+    {
+        MessageDigest[] digests = new MessageDigest[ algorithms.length ];
+        for( int idx = 0; idx < algorithms.length; idx++ )
         {
-            Properties jfxProperties = new Properties();
-            input = new FileInputStream( jfxPropertiesFile );
-            jfxProperties.load( input );
-            return jfxProperties;
+            try
+            {
+                digests[idx] = MessageDigest.getInstance( algorithms[idx] );
+            }
+            catch( NoSuchAlgorithmException ex )
+            {
+                throw new IOException( algorithms[idx] + " is not available", ex );
+            }
         }
-        catch( IOException ex )
+        InputStream input = null;
+        try
         {
-            throw new MojoFailureException( "Unable to load JavaFX Properties", ex );
+            input = new FileInputStream( file );
+            byte[] buffer = new byte[ 64 * 1024 ];
+            int count;
+            while( ( count = input.read( buffer ) ) != -1 )
+            {
+                for( MessageDigest digest : digests )
+                {
+                    digest.update( buffer, 0, count );
+                }
+            }
         }
         finally
         {
+            IOUtil.close( input );
+        }
+        Map<String, String> checksums = new LinkedHashMap<String, String>();
+        for( int idx = 0; idx < algorithms.length; idx++ )
+        {
+            checksums.put( algorithms[idx], toHex( digests[idx].digest() ) );
+        }
+        return checksums;
+    }
+
+    /**
+     * @return Checksum file of the given file for the given algorithm, eg. {@literal foo.jar.sha1}
+     */
+    /* package */ static File checksumFile( File file, String algorithm )
+    {
+        return new File( file.getPath() + "." + algorithm.replace( "-", "" ).toLowerCase( Locale.ENGLISH ) );
+    }
+
+    /**
+     * Write checksum files next to the given file.
+     */
+    /* package */ static void writeChecksums( File file, Map<String, String> checksums )
+        throws IOException
+    {
+        for( Map.Entry<String, String> checksum : checksums.entrySet() )
+        {
+            Writer writer = null;
             try
             {
-                input.close();
+                writer = WriterFactory.newWriter( checksumFile( file, checksum.getKey() ), "US-ASCII" );
+                writer.write( checksum.getValue() );
             }
-            catch( IOException ignored )
+            finally
             {
+                IOUtil.close( writer );
             }
         }
     }
 
+    /**
+     * @return Checksum read from the checksum file of the given file if it is not older than the file,
+     *         {@literal null} otherwise
+     */
+    /* package */ static String readChecksum( File file, String algorithm )
+        throws IOException
+    {
+        File checksumFile = checksumFile( file, algorithm );
+        if( !checksumFile.isFile() || checksumFile.lastModified() < file.lastModified() )
+        {
+            return null;
+        }
+        BufferedReader reader = null;
+        try
+        {
+            reader = new BufferedReader( ReaderFactory.newReader( checksumFile, "US-ASCII" ) );
+            String line = reader.readLine();
+            // Some tools append the file name
+            return line == null ? null : line.trim().split( "\\s+" )[0].toLowerCase( Locale.ENGLISH );
+        }
+        finally
+        {
+            IOUtil.close( reader );
+        }
+    }
+
+    private static String toHex( byte[] bytes )
+    {
+        char[] hex = new char[ bytes.length * 2 ];
+        for( int idx = 0; idx < bytes.length; idx++ )
+        {
+            hex[idx * 2] = Character.forDigit( ( bytes[idx] >> 4 ) & 0xF, 16 );
+            hex[idx * 2 + 1] = Character.forDigit( bytes[idx] & 0xF, 16 );
+        }
+        return new String( hex );
+    }
+
     private InstallDeployUtils()
     {
     }
@@ -15,15 +15,41 @@
  */
 package org.codeartisans.javafx.maven;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+import org.apache.maven.artifact.repository.metadata.Metadata;
+import org.apache.maven.artifact.repository.metadata.Versioning;
+import org.apache.maven.artifact.repository.metadata.io.xpp3.MetadataXpp3Reader;
+import org.apache.maven.artifact.repository.metadata.io.xpp3.MetadataXpp3Writer;
+import org.apache.maven.artifact.versioning.DefaultArtifactVersion;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.project.MavenProject;
+import org.apache.maven.settings.Server;
+import org.apache.maven.settings.Settings;
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.IOUtil;
+import org.codehaus.plexus.util.ReaderFactory;
+import org.codehaus.plexus.util.WriterFactory;
+import org.codehaus.plexus.util.xml.pull.XmlPullParserException;
 
 import static org.codeartisans.javafx.maven.InstallDeployUtils.*;
 
 /**
+ * Deploy JavaFX artifacts to a remote repository.
+ *
+ * Artifacts, POMs and checksums are uploaded concurrently, versions metadata is updated once they are all uploaded.
+ * Supports {@literal file://} repositories, where interrupted uploads are resumed, and {@literal http(s)://} ones
+ * through PUT requests.
+ *
  * @goal deploy
  * @requiresProject false
  */
@@ -31,10 +57,59 @@ public class JavaFXDeployMojo
     extends AbstractMojo
 {
 
+    /**
+     * Encrypted settings values, braces not escaped by a backslash.
+     */
+    private static final Pattern ENCRYPTED = Pattern.compile( "(^|[^\\\\])\\{.*[^\\\\]\\}" );
     /**
      * @parameter property="java.home"
      */
     private String javaHome;
+    /**
+     * File persisting the JavaFX SDK discovery across builds, discovery is only cached for the build session if not
+     * set.
+     *
+     * @parameter property="sdkCacheFile"
+     */
+    private File sdkCacheFile;
+    /**
+     * URL of the repository to deploy to.
+     *
+     * @parameter property="url"
+     * @required
+     */
+    private String url;
+    /**
+     * Id of the server holding the repository credentials in settings.xml. Passwords encrypted with
+     * {@literal mvn --encrypt-password} are not supported, the Maven 2 plugin API has no way to decrypt them.
+     *
+     * @parameter property="repositoryId" default-value="remote-repository"
+     */
+    private String repositoryId;
+    /**
+     * Number of concurrent uploads.
+     *
+     * @parameter property="uploadThreads" default-value="4"
+     */
+    private int uploadThreads;
+    /**
+     * Number of retries of a failed upload.
+     *
+     * @parameter property="retries" default-value="3"
+     */
+    private int retries;
+    /**
+     * Delay in milliseconds before the first retry of a failed upload, doubled on each retry.
+     *
+     * @parameter property="retryDelay" default-value="1000"
+     */
+    private long retryDelay;
+    /**
+     * @parameter property="settings"
+     * @required
+     * @readonly
+     */
+    private Settings settings;
     /**
      * @parameter property="project"
      * @required
@@ -47,16 +122,168 @@ public class JavaFXDeployMojo
         throws MojoExecutionException, MojoFailureException
     {
         // Find JavaFX files
-        File javaHomeDir = new File( javaHome );
-        File jfxPropertiesFile = findJfxFile( javaHomeDir, "javafx.properties" );
-        File jfxRuntime = findJfxFile( javaHomeDir, "jfxrt.jar" );
-        File jfxAnt = findJfxFile( javaHomeDir, "ant-javafx.jar" );
+        JavaFxSdk sdk = discoverJavaFx( new File( javaHome ), sdkCacheFile );
+        findJfxFile( sdk, JavaFxSdk.PROPERTIES );
+        File jfxRuntime = findJfxFile( sdk, JavaFxSdk.RUNTIME_JAR );
+        File jfxAnt = findJfxFile( sdk, JavaFxSdk.ANT_JAR );
 
         // Gather Runtime version
-        String version = loadJavaFxRuntimeVersion( jfxPropertiesFile );
-        getLog().info( "Will deploy JavaFX " + version + " artifacts." );
+        String version = sdk.getVersion();
+        getLog().info( "Will deploy JavaFX " + version + " artifacts to " + url );
+
+        Map<String, File> artifacts = new LinkedHashMap<String, File>();
+        artifacts.put( RUNTIME_ARTIFACTID, jfxRuntime );
+        artifacts.put( ANT_ARTIFACTID, jfxAnt );
+
+        File workDir = null;
+        try
+        {
+            workDir = Files.createTempDirectory( "javafx-deploy" ).toFile();
+            RepositoryTransport transport = transport();
+            Uploader uploader = new Uploader( getLog(), transport, uploadThreads, retries, retryDelay );
+
+            // Artifacts, POMs and checksums
+            Map<String, File> uploads = new LinkedHashMap<String, File>();
+            for( Map.Entry<String, File> artifact : artifacts.entrySet() )
+            {
+                String artifactId = artifact.getKey();
+                File pomFile = new File( workDir, artifactId + ".pom" );
+                FileUtils.rename( generatePomFile( GROUPID, artifactId, version, "jar" ), pomFile );
+                addUploads( uploads, artifact.getValue(), repositoryPath( artifactId, version, "jar" ), workDir );
+                addUploads( uploads, pomFile, repositoryPath( artifactId, version, "pom" ), workDir );
+            }
+            uploader.upload( uploads );
+
+            // Versions metadata, once artifacts are available
+            uploads.clear();
+            for( String artifactId : artifacts.keySet() )
+            {
+                File metadataFile = new File( workDir, artifactId + "-maven-metadata.xml" );
+                writeMetadata( transport.get( metadataPath( artifactId ) ), artifactId, version, metadataFile );
+                addUploads( uploads, metadataFile, metadataPath( artifactId ), workDir );
+            }
+            uploader.upload( uploads );
+        }
+        catch( IOException ex )
+        {
+            throw new MojoExecutionException( "Unable to deploy JavaFX artifacts", ex );
+        }
+        finally
+        {
+            if( workDir != null )
+            {
+                try
+                {
+                    FileUtils.deleteDirectory( workDir );
+                }
+                catch( IOException ignored )
+                {
+                }
+            }
+        }
+    }
+
+    private RepositoryTransport transport()
+        throws MojoExecutionException
+    {
+        URI uri = URI.create( url );
+        if( "file".equals( uri.getScheme() ) )
+        {
+            return new FileTransport( new File( uri ) );
+        }
+        if( "http".equals( uri.getScheme() ) || "https".equals( uri.getScheme() ) )
+        {
+            Server server = settings == null ? null : settings.getServer( repositoryId );
+            if( server == null )
+            {
+                return new HttpTransport( url, null, null );
+            }
+            if( server.getPassword() != null && ENCRYPTED.matcher( server.getPassword() ).find() )
+            {
+                throw new MojoExecutionException( "Encrypted password of server '" + repositoryId + "' in settings.xml"
+                                                  + " is not supported, use a plain text password" );
+            }
+            return new HttpTransport( url, server.getUsername(), server.getPassword() );
+        }
+        throw new MojoExecutionException( "Unsupported repository URL '" + url + "', must be file, http or https" );
+    }
 
-        throw new UnsupportedOperationException( "Not supported yet. Contribution wanted! :-)" );
+    /**
+     * Add a file and its checksum files, written in the work directory, to the uploads.
+     */
+    private static void addUploads( Map<String, File> uploads, File file, String path, File workDir )
+        throws IOException
+    {
+        uploads.put( path, file );
+        // Mirror the repository layout, metadata files of all artifacts have the same name
+        File mirror = new File( workDir, path );
+        FileUtils.forceMkdir( mirror.getParentFile() );
+        Map<String, String> checksums = checksums( file, SHA1, MD5 );
+        writeChecksums( mirror, checksums );
+        for( String algorithm : checksums.keySet() )
+        {
+            File checksumFile = checksumFile( mirror, algorithm );
+            uploads.put( path + checksumFile.getName().substring( mirror.getName().length() ), checksumFile );
+        }
+    }
+
+    /**
+     * Write the versions metadata, merging the deployed version in the existing one if any.
+     */
+    private void writeMetadata( byte[] existing, String artifactId, String version, File metadataFile )
+        throws IOException
+    {
+        Metadata metadata = null;
+        if( existing != null )
+        {
+            try
+            {
+                metadata = new MetadataXpp3Reader().read( ReaderFactory.newXmlReader(
+                    new ByteArrayInputStream( existing ) ) );
+            }
+            catch( XmlPullParserException ex )
+            {
+                getLog().warn( "Replacing invalid " + metadataPath( artifactId ) + ": " + ex.getMessage() );
+            }
+        }
+        if( metadata == null )
+        {
+            metadata = new Metadata();
+        }
+        metadata.setGroupId( GROUPID );
+        metadata.setArtifactId( artifactId );
+        Versioning versioning = metadata.getVersioning();
+        if( versioning == null )
+        {
+            versioning = new Versioning();
+            metadata.setVersioning( versioning );
+        }
+        if( !versioning.getVersions().contains( version ) )
+        {
+            versioning.addVersion( version );
+        }
+        DefaultArtifactVersion deployed = new DefaultArtifactVersion( version );
+        if( versioning.getLatest() == null
+            || deployed.compareTo( new DefaultArtifactVersion( versioning.getLatest() ) ) > 0 )
+        {
+            versioning.setLatest( version );
+        }
+        if( versioning.getRelease() == null
+            || deployed.compareTo( new DefaultArtifactVersion( versioning.getRelease() ) ) > 0 )
+        {
+            versioning.setRelease( version );
+        }
+        versioning.updateTimestamp();
+        Writer writer = null;
+        try
+        {
+            writer = WriterFactory.newXmlWriter( metadataFile );
+            new MetadataXpp3Writer().write( writer, metadata );
+        }
+        finally
+        {
+            IOUtil.close( writer );
+        }
     }
 
 }
@@ -17,24 +17,33 @@ package org.codeartisans.javafx.maven;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.artifact.factory.ArtifactFactory;
 import org.apache.maven.artifact.installer.ArtifactInstallationException;
 import org.apache.maven.artifact.installer.ArtifactInstaller;
 import org.apache.maven.artifact.repository.ArtifactRepository;
-import org.apache.maven.model.Model;
-import org.apache.maven.model.io.xpp3.MavenXpp3Writer;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.project.artifact.ProjectArtifactMetadata;
-import org.codehaus.plexus.util.IOUtil;
-import org.codehaus.plexus.util.WriterFactory;
 
 import static org.codeartisans.javafx.maven.InstallDeployUtils.*;
 
 /**
+ * Install JavaFX artifacts to the local repository.
+ *
+ * Artifacts already installed with the same SHA-1 checksum are skipped, others are installed concurrently along with
+ * their checksum files.
+ *
  * @goal install
  * @requiresProject false
  */
@@ -46,6 +55,13 @@ public class JavaFXInstallMojo
      * @parameter property="java.home"
      */
     private String javaHome;
+    /**
+     * File persisting the JavaFX SDK discovery across builds, discovery is only cached for the build session if not
+     * set.
+     *
+     * @parameter property="sdkCacheFile"
+     */
+    private File sdkCacheFile;
     /**
      * @parameter property="localRepository"
      */
@@ -66,18 +82,20 @@ public class JavaFXInstallMojo
         throws MojoExecutionException, MojoFailureException
     {
         // Find JavaFX files
-        File javaHomeDir = new File( javaHome );
-        File jfxPropertiesFile = findJfxFile( javaHomeDir, "javafx.properties" );
-        File jfxRuntime = findJfxFile( javaHomeDir, "jfxrt.jar" );
-        File jfxAnt = findJfxFile( javaHomeDir, "ant-javafx.jar" );
+        JavaFxSdk sdk = discoverJavaFx( new File( javaHome ), sdkCacheFile );
+        findJfxFile( sdk, JavaFxSdk.PROPERTIES );
+        File jfxRuntime = findJfxFile( sdk, JavaFxSdk.RUNTIME_JAR );
+        File jfxAnt = findJfxFile( sdk, JavaFxSdk.ANT_JAR );
 
         // Gather Runtime version
-        String version = loadJavaFxRuntimeVersion( jfxPropertiesFile );
+        String version = sdk.getVersion();
         getLog().info( "Will install JavaFX " + version + " artifacts to the local repository." );
 
         // Install artifacts
-        install( RUNTIME_ARTIFACTID, version, jfxRuntime );
-        install( ANT_ARTIFACTID, version, jfxAnt );
+        Map<String, File> artifacts = new LinkedHashMap<String, File>();
+        artifacts.put( RUNTIME_ARTIFACTID, jfxRuntime );
+        artifacts.put( ANT_ARTIFACTID, jfxAnt );
+        install( version, artifacts );
 
         // Display GAV of installed artifacts
         getLog().info( "You can now use the following dependency in jour JavaFX projects:\n"
@@ -89,55 +107,110 @@ public class JavaFXInstallMojo
                        + "    </dependency>" );
     }
 
-    private void install( String artifactId, String version, File file )
+    private void install( final String version, Map<String, File> artifacts )
         throws MojoExecutionException
     {
-        Artifact artifact = artifactFactory.createArtifactWithClassifier( GROUPID, artifactId, version, "jar", null );
-        File pomFile = generatePomFile( GROUPID, artifactId, version, "jar" );
-        artifact.addMetadata( new ProjectArtifactMetadata( artifact, pomFile ) );
-        artifact.setRelease( true );
-
+        ExecutorService executor = Executors.newFixedThreadPool( artifacts.size() );
         try
         {
-            installer.install( file, artifact, localRepository );
+            List<Future<Void>> installs = new ArrayList<Future<Void>>();
+            for( final Map.Entry<String, File> artifact : artifacts.entrySet() )
+            {
+                installs.add( executor.submit( new Callable<Void>()
+                {
+                    @Override
+                    public Void call()
+                        throws MojoExecutionException
+                    {
+                        install( artifact.getKey(), version, artifact.getValue() );
+                        return null;
+                    }
+
+                } ) );
+            }
+            for( Future<Void> install : installs )
+            {
+                install.get();
+            }
         }
-        catch( ArtifactInstallationException ex )
+        catch( InterruptedException ex )
         {
-            throw new MojoExecutionException( "Unable to install " + artifactId, ex );
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException( "Interrupted while installing JavaFX artifacts", ex );
+        }
+        catch( ExecutionException ex )
+        {
+            if( ex.getCause() instanceof MojoExecutionException )
+            {
+                throw (MojoExecutionException) ex.getCause();
+            }
+            throw new MojoExecutionException( "Unable to install JavaFX artifacts", ex.getCause() );
         }
         finally
         {
-            pomFile.delete();
+            executor.shutdownNow();
         }
-
     }
 
-    private File generatePomFile( String groupId, String artifactId, String version, String packaging )
+    private void install( String artifactId, String version, File file )
         throws MojoExecutionException
     {
-        Model model = new Model();
-        model.setModelVersion( "4.0.0" );
-        model.setGroupId( groupId );
-        model.setArtifactId( artifactId );
-        model.setVersion( version );
-        model.setPackaging( packaging );
-        model.setDescription( "POM was created from javafx-maven-plugin" );
-        Writer writer = null;
+        Artifact artifact = artifactFactory.createArtifactWithClassifier( GROUPID, artifactId, version, "jar", null );
+        Artifact pomArtifact = artifactFactory.createProjectArtifact( GROUPID, artifactId, version );
+        File installedFile = new File( localRepository.getBasedir(), localRepository.pathOf( artifact ) );
+        File installedPomFile = new File( localRepository.getBasedir(), localRepository.pathOf( pomArtifact ) );
         try
         {
-            File pomFile = File.createTempFile( "mvninstall", ".pom" );
-            writer = WriterFactory.newXmlWriter( pomFile );
-            new MavenXpp3Writer().write( writer, model );
-            return pomFile;
+            Map<String, String> checksums = checksums( file, SHA1, MD5 );
+            if( installedPomFile.isFile() && isInstalled( installedFile, checksums.get( SHA1 ) ) )
+            {
+                getLog().info( installedFile + " is up to date" );
+                return;
+            }
+
+            // Only generate the POM when installing
+            File pomFile = generatePomFile( GROUPID, artifactId, version, "jar" );
+            artifact.addMetadata( new ProjectArtifactMetadata( artifact, pomFile ) );
+            artifact.setRelease( true );
+            try
+            {
+                installer.install( file, artifact, localRepository );
+            }
+            finally
+            {
+                pomFile.delete();
+            }
+
+            writeChecksums( installedFile, checksums );
+            writeChecksums( installedPomFile, checksums( installedPomFile, SHA1, MD5 ) );
+        }
+        catch( ArtifactInstallationException ex )
+        {
+            throw new MojoExecutionException( "Unable to install " + artifactId, ex );
         }
-        catch( IOException e )
+        catch( IOException ex )
         {
-            throw new MojoExecutionException( "Error writing temporary POM file: " + e.getMessage(), e );
+            throw new MojoExecutionException( "Unable to install " + artifactId, ex );
         }
-        finally
+    }
+
+    /**
+     * @return {@literal true} if the installed file has the given SHA-1 checksum, read from its checksum file when
+     *         up to date
+     */
+    private static boolean isInstalled( File installedFile, String sha1 )
+        throws IOException
+    {
+        if( !installedFile.isFile() )
+        {
+            return false;
+        }
+        String installedSha1 = readChecksum( installedFile, SHA1 );
+        if( installedSha1 == null )
         {
-            IOUtil.close( writer );
+            installedSha1 = checksums( installedFile, SHA1 ).get( SHA1 );
         }
+        return sha1.equals( installedSha1 );
     }
 
 }
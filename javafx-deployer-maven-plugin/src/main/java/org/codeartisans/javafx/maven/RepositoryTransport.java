@@ -0,0 +1,57 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Access to a remote repository, see {@link Uploader}.
+ *
+ * Implementations must be thread safe.
+ */
+/* package */ interface RepositoryTransport
+{
+
+    /**
+     * @return Content of the resource at the given path, {@literal null} if it does not exist
+     */
+    byte[] get( String path )
+        throws IOException;
+
+    /**
+     * Upload a file, resuming a previously interrupted upload of the same file if supported.
+     */
+    void put( File source, String path, TransferProgress progress )
+        throws IOException;
+
+    /**
+     * Failure that retrying will not fix, a denied access for example.
+     */
+    /* package */ static class FatalTransferException
+        extends IOException
+    {
+
+        private static final long serialVersionUID = 1L;
+
+        /* package */ FatalTransferException( String message )
+        {
+            super( message );
+        }
+
+    }
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Transfer of a single file, logs progress of long transfers and the transfer rate once done.
+ */
+/* package */ class TransferProgress
+{
+
+    private static final long LOG_INTERVAL = 5000;
+    private final Log log;
+    private final String name;
+    private final long total;
+    private long start;
+    private long lastLog;
+    private long resumed;
+    private long transferred;
+
+    /* package */ TransferProgress( Log log, String name, long total )
+    {
+        this.log = log;
+        this.name = name;
+        this.total = total;
+        restart();
+    }
+
+    /**
+     * Reset the progress, before a retry.
+     */
+    /* package */ final void restart()
+    {
+        start = System.currentTimeMillis();
+        lastLog = start;
+        resumed = 0;
+        transferred = 0;
+    }
+
+    /**
+     * @param offset Number of bytes already transferred by a previous attempt
+     */
+    /* package */ void resumed( long offset )
+    {
+        resumed = offset;
+        log.info( "Resuming upload of " + name + " at " + offset + " bytes" );
+    }
+
+    /* package */ void transferred( long count )
+    {
+        transferred += count;
+        long now = System.currentTimeMillis();
+        if( now - lastLog >= LOG_INTERVAL )
+        {
+            lastLog = now;
+            long done = resumed + transferred;
+            log.info( "Uploading " + name + ": " + done * 100 / Math.max( total, 1 ) + "% at " + rate( now ) );
+        }
+    }
+
+    /* package */ long transferred()
+    {
+        return transferred;
+    }
+
+    /* package */ void done()
+    {
+        log.info( "Uploaded " + name + " (" + total / 1024 + " KB at " + rate( System.currentTimeMillis() ) + ")" );
+    }
+
+    private String rate( long now )
+    {
+        return rate( transferred, now - start );
+    }
+
+    /**
+     * @return Human readable transfer rate
+     */
+    /* package */ static String rate( long bytes, long millis )
+    {
+        return bytes * 1000 / 1024 / Math.max( millis, 1 ) + " KB/s";
+    }
+
+}
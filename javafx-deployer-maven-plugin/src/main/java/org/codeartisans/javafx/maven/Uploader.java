@@ -0,0 +1,149 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Concurrent uploads through a {@link RepositoryTransport}.
+ *
+ * Failed uploads are retried with an exponential backoff, unless the failure is fatal.
+ */
+/* package */ class Uploader
+{
+
+    private final Log log;
+    private final RepositoryTransport transport;
+    private final int threads;
+    private final int retries;
+    private final long retryDelay;
+    private final AtomicLong uploaded = new AtomicLong();
+
+    /**
+     * @param retries    Number of retries of a failed upload
+     * @param retryDelay Delay in milliseconds before the first retry, doubled on each retry
+     */
+    /* package */ Uploader( Log log, RepositoryTransport transport, int threads, int retries, long retryDelay )
+    {
+        this.log = log;
+        this.transport = transport;
+        this.threads = Math.max( threads, 1 );
+        this.retries = retries;
+        this.retryDelay = retryDelay;
+    }
+
+    /**
+     * Upload files concurrently.
+     *
+     * @param uploads Files by repository path
+     */
+    /* package */ void upload( Map<String, File> uploads )
+        throws IOException
+    {
+        long start = System.currentTimeMillis();
+        long before = uploaded.get();
+        ExecutorService executor = Executors.newFixedThreadPool( Math.min( threads, uploads.size() ) );
+        try
+        {
+            List<Future<Void>> results = new ArrayList<Future<Void>>();
+            for( final Map.Entry<String, File> upload : uploads.entrySet() )
+            {
+                results.add( executor.submit( new Callable<Void>()
+                {
+                    @Override
+                    public Void call()
+                        throws IOException, InterruptedException
+                    {
+                        upload( upload.getKey(), upload.getValue() );
+                        return null;
+                    }
+
+                } ) );
+            }
+            for( Future<Void> result : results )
+            {
+                result.get();
+            }
+        }
+        catch( InterruptedException ex )
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException( "Interrupted while uploading", ex );
+        }
+        catch( ExecutionException ex )
+        {
+            if( ex.getCause() instanceof IOException )
+            {
+                throw (IOException) ex.getCause();
+            }
+            throw new IOException( "Unable to upload", ex.getCause() );
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+        long bytes = uploaded.get() - before;
+        log.info( "Uploaded " + uploads.size() + " files, " + bytes / 1024 + " KB at "
+                  + TransferProgress.rate( bytes, System.currentTimeMillis() - start ) );
+    }
+
+    /**
+     * Upload a single file, retrying on failures.
+     */
+    /* package */ void upload( String path, File file )
+        throws IOException, InterruptedException
+    {
+        TransferProgress progress = new TransferProgress( log, path, file.length() );
+        long delay = retryDelay;
+        for( int attempt = 0;; attempt++ )
+        {
+            progress.restart();
+            try
+            {
+                transport.put( file, path, progress );
+                uploaded.addAndGet( progress.transferred() );
+                progress.done();
+                return;
+            }
+            catch( RepositoryTransport.FatalTransferException ex )
+            {
+                throw ex;
+            }
+            catch( IOException ex )
+            {
+                if( attempt >= retries )
+                {
+                    throw ex;
+                }
+                log.warn( "Unable to upload " + path + ", retrying in " + delay + "ms: " + ex.getMessage() );
+                Thread.sleep( delay );
+                delay *= 2;
+            }
+        }
+    }
+
+}
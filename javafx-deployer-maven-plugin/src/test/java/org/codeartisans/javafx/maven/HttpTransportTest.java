@@ -0,0 +1,228 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.plexus.util.IOUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * {@link HttpTransport} and {@link Uploader} retries against an in-process repository stand-in.
+ */
+public class HttpTransportTest
+{
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+    private HttpServer server;
+    private String baseUrl;
+    // Statuses answered to the next PUT requests before storing, by path
+    private final Map<String, List<Integer>> failures = new ConcurrentHashMap<String, List<Integer>>();
+    private final Map<String, byte[]> stored = new ConcurrentHashMap<String, byte[]>();
+    private final List<String> requests = new CopyOnWriteArrayList<String>();
+
+    @Before
+    public void startServer()
+        throws IOException
+    {
+        server = HttpServer.create( new InetSocketAddress( InetAddress.getLoopbackAddress(), 0 ), 0 );
+        server.createContext( "/repository/", new HttpHandler()
+        {
+            @Override
+            public void handle( HttpExchange exchange )
+                throws IOException
+            {
+                String path = exchange.getRequestURI().getPath().substring( "/repository/".length() );
+                requests.add( exchange.getRequestMethod() + " " + path + " "
+                              + exchange.getRequestHeaders().getFirst( "Authorization" ) );
+                byte[] body = read( exchange.getRequestBody() );
+                try
+                {
+                    if( "GET".equals( exchange.getRequestMethod() ) )
+                    {
+                        byte[] content = stored.get( path );
+                        if( content == null )
+                        {
+                            exchange.sendResponseHeaders( 404, -1 );
+                            return;
+                        }
+                        exchange.sendResponseHeaders( 200, content.length );
+                        exchange.getResponseBody().write( content );
+                        return;
+                    }
+                    List<Integer> statuses = failures.get( path );
+                    Integer failure = statuses == null ? null : statuses.isEmpty() ? null : statuses.remove( 0 );
+                    if( failure != null )
+                    {
+                        exchange.sendResponseHeaders( failure, -1 );
+                        return;
+                    }
+                    stored.put( path, body );
+                    exchange.sendResponseHeaders( 201, -1 );
+                }
+                finally
+                {
+                    exchange.close();
+                }
+            }
+
+        } );
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/repository";
+    }
+
+    @After
+    public void stopServer()
+    {
+        server.stop( 0 );
+    }
+
+    @Test
+    public void uploadsAreRetriedOnServerErrorsAndThrottling()
+        throws IOException
+    {
+        File source = source( "app.jar", 100 * 1024 );
+        failures.put( "org/acme/app-1.0.jar", statuses( 503, 429, 500 ) );
+
+        new Uploader( new SystemStreamLog(), new HttpTransport( baseUrl, null, null ), 1, 3, 1 ).
+            upload( Collections.singletonMap( "org/acme/app-1.0.jar", source ) );
+
+        assertArrayEquals( Files.readAllBytes( source.toPath() ), stored.get( "org/acme/app-1.0.jar" ) );
+        assertEquals( 4, requests.size() );
+    }
+
+    @Test
+    public void uploadFailsOnceRetriesAreExhausted()
+        throws IOException
+    {
+        File source = source( "app.jar", 1024 );
+        failures.put( "org/acme/app-1.0.jar", statuses( 502, 502, 502 ) );
+        try
+        {
+            new Uploader( new SystemStreamLog(), new HttpTransport( baseUrl, null, null ), 1, 2, 1 ).
+                upload( Collections.singletonMap( "org/acme/app-1.0.jar", source ) );
+            fail( "Upload should have failed" );
+        }
+        catch( IOException ex )
+        {
+            assertTrue( ex.getMessage(), ex.getMessage().contains( "502" ) );
+        }
+        assertEquals( 3, requests.size() );
+    }
+
+    @Test
+    public void clientErrorsAreFatal()
+        throws IOException
+    {
+        File source = source( "app.jar", 1024 );
+        failures.put( "org/acme/app-1.0.jar", statuses( 403 ) );
+        try
+        {
+            new Uploader( new SystemStreamLog(), new HttpTransport( baseUrl, null, null ), 1, 5, 1 ).
+                upload( Collections.singletonMap( "org/acme/app-1.0.jar", source ) );
+            fail( "Upload should have failed" );
+        }
+        catch( RepositoryTransport.FatalTransferException ex )
+        {
+            assertTrue( ex.getMessage(), ex.getMessage().contains( "403" ) );
+        }
+        assertEquals( 1, requests.size() );
+        assertNull( stored.get( "org/acme/app-1.0.jar" ) );
+    }
+
+    @Test
+    public void credentialsAreSentWithBasicAuthentication()
+        throws IOException
+    {
+        stored.put( "org/acme/maven-metadata.xml", "<metadata/>".getBytes( Charset.forName( "UTF-8" ) ) );
+        HttpTransport transport = new HttpTransport( baseUrl + "/", "deployer", "s3cr3t:" );
+
+        assertArrayEquals( stored.get( "org/acme/maven-metadata.xml" ),
+                           transport.get( "org/acme/maven-metadata.xml" ) );
+        assertNull( transport.get( "org/acme/missing.xml" ) );
+        assertEquals( "GET org/acme/maven-metadata.xml Basic ZGVwbG95ZXI6czNjcjN0Og==", requests.get( 0 ) );
+    }
+
+    @Test
+    public void base64()
+    {
+        Charset ascii = Charset.forName( "US-ASCII" );
+        assertEquals( "", HttpTransport.base64( new byte[ 0 ] ) );
+        assertEquals( "Zg==", HttpTransport.base64( "f".getBytes( ascii ) ) );
+        assertEquals( "Zm8=", HttpTransport.base64( "fo".getBytes( ascii ) ) );
+        assertEquals( "Zm9v", HttpTransport.base64( "foo".getBytes( ascii ) ) );
+        assertEquals( "Zm9vYmFy", HttpTransport.base64( "foobar".getBytes( ascii ) ) );
+        assertEquals( "//79", HttpTransport.base64( new byte[]
+        {
+            -1, -2, -3
+        } ) );
+    }
+
+    private File source( String name, int size )
+        throws IOException
+    {
+        byte[] content = new byte[ size ];
+        for( int idx = 0; idx < size; idx++ )
+        {
+            content[ idx ] = (byte) idx;
+        }
+        File source = new File( tmp.getRoot(), name );
+        Files.write( source.toPath(), content );
+        return source;
+    }
+
+    private static List<Integer> statuses( Integer... statuses )
+    {
+        return Collections.synchronizedList( new LinkedList<Integer>( Arrays.asList( statuses ) ) );
+    }
+
+    private static byte[] read( InputStream input )
+        throws IOException
+    {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        IOUtil.copy( input, output );
+        return output.toByteArray();
+    }
+
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class UploaderTest
+{
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+    private File repository;
+    private FileTransport transport;
+
+    @Before
+    public void repository()
+        throws IOException
+    {
+        repository = tmp.newFolder( "repository" );
+        transport = new FileTransport( repository );
+    }
+
+    @Test
+    public void filesAreUploadedConcurrently()
+        throws IOException
+    {
+        Map<String, File> uploads = new LinkedHashMap<String, File>();
+        for( int idx = 0; idx < 8; idx++ )
+        {
+            uploads.put( "org/acme/app/1.0/app-1.0-" + idx + ".jar", source( "source-" + idx + ".jar", 1000 + idx ) );
+        }
+
+        new Uploader( new SystemStreamLog(), transport, 4, 0, 0 ).upload( uploads );
+
+        for( Map.Entry<String, File> upload : uploads.entrySet() )
+        {
+            assertArrayEquals( Files.readAllBytes( upload.getValue().toPath() ), transport.get( upload.getKey() ) );
+        }
+        assertNull( transport.get( "org/acme/app/1.0/missing.jar" ) );
+    }
+
+    @Test
+    public void interruptedUploadIsResumed()
+        throws IOException, InterruptedException
+    {
+        File source = source( "app.jar", 3 * 1024 * 1024 + 17 );
+        byte[] content = Files.readAllBytes( source.toPath() );
+        String path = "org/acme/app/1.0/app-1.0.jar";
+        // Left by an interrupted upload of the same source
+        File partial = new File( repository, path + ".part-" + source.length() + "-" + source.lastModified() );
+        partial.getParentFile().mkdirs();
+        Files.write( partial.toPath(), Arrays.copyOf( content, 1024 * 1024 + 5 ) );
+
+        TransferProgress progress = new TransferProgress( new SystemStreamLog(), path, source.length() );
+        transport.put( source, path, progress );
+
+        assertArrayEquals( content, transport.get( path ) );
+        assertEquals( content.length - ( 1024 * 1024 + 5 ), progress.transferred() );
+        assertFalse( partial.exists() );
+    }
+
+    @Test
+    public void partialFileLongerThanSourceIsStartedOver()
+        throws IOException
+    {
+        File source = source( "app.jar", 2048 );
+        byte[] content = Files.readAllBytes( source.toPath() );
+        String path = "org/acme/app/1.0/app-1.0.jar";
+        File partial = new File( repository, path + ".part-" + source.length() + "-" + source.lastModified() );
+        partial.getParentFile().mkdirs();
+        Files.write( partial.toPath(), new byte[ 4096 ] );
+
+        TransferProgress progress = new TransferProgress( new SystemStreamLog(), path, source.length() );
+        transport.put( source, path, progress );
+
+        assertArrayEquals( content, transport.get( path ) );
+        assertEquals( content.length, progress.transferred() );
+    }
+
+    private File source( String name, int size )
+        throws IOException
+    {
+        byte[] content = new byte[ size ];
+        for( int idx = 0; idx < size; idx++ )
+        {
+            content[ idx ] = (byte) ( idx * 31 + name.hashCode() );
+        }
+        File source = new File( tmp.getRoot(), name );
+        Files.write( source.toPath(), content );
+        return source;
+    }
+
+}
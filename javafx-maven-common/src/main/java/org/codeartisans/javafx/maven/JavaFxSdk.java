@@ -0,0 +1,268 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Layout of the JavaFX SDK or runtime of a {@literal java.home}, shared by the plugin goals.
+ *
+ * Discovery lists each candidate library directory once instead of probing each file in each of them. Results are
+ * kept for the build session and can be persisted to a properties file, keyed by the {@literal java.home} path and
+ * modification time.
+ */
+public final class JavaFxSdk
+{
+
+    public static final String PROPERTIES = "javafx.properties";
+    public static final String RUNTIME_JAR = "jfxrt.jar";
+    public static final String ANT_JAR = "ant-javafx.jar";
+    private static final String[] FILES = { PROPERTIES, RUNTIME_JAR, ANT_JAR };
+    /**
+     * JRE, JRE with JavaFX as an extension, JDK, JDK with JavaFX as an extension, JRE inside a JDK.
+     */
+    private static final String[] LIBRARY_DIRS = { "lib/", "lib/ext/", "jre/lib/", "jre/lib/ext/", "../lib/" };
+    private static final String VERSION = "javafx.runtime.version";
+    private static final ConcurrentMap<String, JavaFxSdk> SESSION = new ConcurrentHashMap<String, JavaFxSdk>();
+    private final File javaHome;
+    private final String version;
+    private final Map<String, File> files;
+
+    private JavaFxSdk( File javaHome, String version, Map<String, File> files )
+    {
+        this.javaHome = javaHome;
+        this.version = version;
+        this.files = files;
+    }
+
+    /**
+     * Discover the JavaFX SDK of a {@literal java.home}, cached for the build session only.
+     */
+    public static JavaFxSdk discover( File javaHome )
+        throws IOException
+    {
+        return discover( javaHome, null );
+    }
+
+    /**
+     * Discover the JavaFX SDK of a {@literal java.home}.
+     *
+     * @param cacheFile File persisting discoveries across builds, {@literal null} to only cache them for the build
+     *                  session. Unreadable or unwritable cache files are ignored.
+     */
+    public static JavaFxSdk discover( File javaHome, File cacheFile )
+        throws IOException
+    {
+        File home = javaHome.getAbsoluteFile();
+        String key = home.getPath() + "@" + home.lastModified();
+        JavaFxSdk sdk = SESSION.get( key );
+        if( sdk != null )
+        {
+            return sdk;
+        }
+        Properties cache = cacheFile == null ? null : loadCache( cacheFile );
+        sdk = cache == null ? null : fromCache( cache, key, home );
+        if( sdk == null )
+        {
+            sdk = probe( home );
+            if( cacheFile != null )
+            {
+                storeCache( cacheFile, key, sdk );
+            }
+        }
+        JavaFxSdk concurrent = SESSION.putIfAbsent( key, sdk );
+        return concurrent == null ? sdk : concurrent;
+    }
+
+    public File getJavaHome()
+    {
+        return javaHome;
+    }
+
+    /**
+     * @return JavaFX runtime version, {@literal null} if unknown
+     */
+    public String getVersion()
+    {
+        return version;
+    }
+
+    /**
+     * @param name One of {@link #PROPERTIES}, {@link #RUNTIME_JAR} or {@link #ANT_JAR}
+     *
+     * @return The SDK file, {@literal null} if not found
+     */
+    public File getFile( String name )
+    {
+        return files.get( name );
+    }
+
+    private static JavaFxSdk probe( File javaHome )
+        throws IOException
+    {
+        Map<String, File> files = new LinkedHashMap<String, File>();
+        for( String libraryDir : LIBRARY_DIRS )
+        {
+            File dir = new File( javaHome, libraryDir );
+            String[] children = dir.list();
+            if( children == null )
+            {
+                continue;
+            }
+            Set<String> names = new HashSet<String>( Arrays.asList( children ) );
+            for( String file : FILES )
+            {
+                if( !files.containsKey( file ) && names.contains( file ) )
+                {
+                    files.put( file, new File( dir, file ) );
+                }
+            }
+            if( files.size() == FILES.length )
+            {
+                break;
+            }
+        }
+        String version = null;
+        File properties = files.get( PROPERTIES );
+        if( properties != null )
+        {
+            version = load( properties ).getProperty( VERSION );
+        }
+        return new JavaFxSdk( javaHome, version, files );
+    }
+
+    private static JavaFxSdk fromCache( Properties cache, String key, File javaHome )
+    {
+        if( !cache.containsKey( key ) )
+        {
+            return null;
+        }
+        Map<String, File> files = new LinkedHashMap<String, File>();
+        for( String file : FILES )
+        {
+            String path = cache.getProperty( key + "." + file );
+            if( path != null )
+            {
+                files.put( file, new File( path ) );
+            }
+        }
+        return new JavaFxSdk( javaHome, cache.getProperty( key + "." + VERSION ), files );
+    }
+
+    private static Properties loadCache( File cacheFile )
+    {
+        if( !cacheFile.isFile() )
+        {
+            return new Properties();
+        }
+        try
+        {
+            return load( cacheFile );
+        }
+        catch( IOException ex )
+        {
+            return null;
+        }
+    }
+
+    private static void storeCache( File cacheFile, String key, JavaFxSdk sdk )
+    {
+        // Merge with entries concurrently stored by other builds
+        Properties cache = loadCache( cacheFile );
+        if( cache == null )
+        {
+            cache = new Properties();
+        }
+        cache.setProperty( key, sdk.javaHome.getPath() );
+        if( sdk.version != null )
+        {
+            cache.setProperty( key + "." + VERSION, sdk.version );
+        }
+        for( Map.Entry<String, File> file : sdk.files.entrySet() )
+        {
+            cache.setProperty( key + "." + file.getKey(), file.getValue().getPath() );
+        }
+        File temp = new File( cacheFile.getPath() + "." + UUID.randomUUID() );
+        try
+        {
+            File parent = cacheFile.getAbsoluteFile().getParentFile();
+            if( parent != null && !parent.isDirectory() && !parent.mkdirs() )
+            {
+                return;
+            }
+            OutputStream output = new FileOutputStream( temp );
+            try
+            {
+                cache.store( output, "JavaFX SDK discovery cache" );
+            }
+            finally
+            {
+                output.close();
+            }
+            try
+            {
+                Files.move( temp.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.ATOMIC_MOVE );
+            }
+            catch( AtomicMoveNotSupportedException ex )
+            {
+                Files.move( temp.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING );
+            }
+        }
+        catch( IOException ignored )
+        {
+            // Discovery will be done again next time
+        }
+        finally
+        {
+            temp.delete();
+        }
+    }
+
+    private static Properties load( File file )
+        throws IOException
+    {
+        Properties properties = new Properties();
+        InputStream input = new FileInputStream( file );
+        try
+        {
+            properties.load( input );
+        }
+        finally
+        {
+            input.close();
+        }
+        return properties;
+    }
+
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import de.schlichtherle.truezip.file.TFile;
+import de.schlichtherle.truezip.file.TVFS;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.codehaus.plexus.util.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Zip creation of a JNLP or application image like directory, TrueZIP being the baseline the package goal used to
+ * rely on.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Fork( 1 )
+@Warmup( iterations = 3 )
+@Measurement( iterations = 5 )
+public class ArchiveBenchmark
+{
+
+    @Param( { "200" } )
+    public int files;
+    @Param( { "4096", "262144" } )
+    public int fileSize;
+    @Param( { "-1", "1" } )
+    public int level;
+    @Param( { "0", "131072" } )
+    public long parallelThreshold;
+    private File workDir;
+    private File sourceDir;
+    private File zipFile;
+
+    @Setup
+    public void setup()
+        throws IOException
+    {
+        workDir = Fixtures.tempDir( "archive" );
+        sourceDir = Fixtures.directory( new File( workDir, "app" ), files, fileSize, 42 );
+        zipFile = new File( workDir, "app.zip" );
+    }
+
+    @TearDown
+    public void tearDown()
+        throws IOException
+    {
+        TVFS.umount();
+        Fixtures.delete( workDir );
+    }
+
+    @Benchmark
+    public File directoryArchiver()
+        throws IOException
+    {
+        new DirectoryArchiver().
+            level( level ).
+            parallelDeflate( parallelThreshold, 0 ).
+            zip( sourceDir, "app/", zipFile );
+        return zipFile;
+    }
+
+    @Benchmark
+    public File trueZip()
+        throws IOException
+    {
+        FileUtils.fileDelete( zipFile.getAbsolutePath() );
+        new TFile( sourceDir ).cp_rp( new TFile( zipFile, "app" ) );
+        TVFS.umount();
+        return zipFile;
+    }
+
+}
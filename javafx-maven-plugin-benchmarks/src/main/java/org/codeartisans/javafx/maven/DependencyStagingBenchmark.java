@@ -0,0 +1,118 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.codehaus.plexus.util.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Staging of synthetic artifacts to the dependencies directory, from scratch or already up to date.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Fork( 1 )
+@Warmup( iterations = 3 )
+@Measurement( iterations = 5 )
+public class DependencyStagingBenchmark
+{
+
+    @Param( { "10", "100" } )
+    public int artifacts;
+    @Param( { "65536", "1048576" } )
+    public int artifactSize;
+    @Param( { "true", "false" } )
+    public boolean link;
+    @Param( { "false", "true" } )
+    public boolean upToDate;
+    @Param( { "0" } )
+    public int threads;
+    private File workDir;
+    private File targetDir;
+    private Map<String, File> files;
+
+    @Setup
+    public void setup()
+        throws IOException
+    {
+        workDir = Fixtures.tempDir( "staging" );
+        targetDir = new File( workDir, "dependencies" );
+        files = new LinkedHashMap<String, File>();
+        Random random = new Random( 42 );
+        for( int idx = 0; idx < artifacts; idx++ )
+        {
+            File artifact = new File( workDir, "repository/org/example/artifact" + idx + "/1.0/artifact" + idx
+                                               + "-1.0.jar" );
+            FileUtils.forceMkdir( artifact.getParentFile() );
+            OutputStream output = new FileOutputStream( artifact );
+            try
+            {
+                output.write( Fixtures.content( random, artifactSize ) );
+            }
+            finally
+            {
+                output.close();
+            }
+            files.put( "org.example-" + artifact.getName(), artifact );
+        }
+        new DependencyStager( new QuietLog(), threads, link ).stage( targetDir, files );
+    }
+
+    @Setup( Level.Invocation )
+    public void clean()
+        throws IOException
+    {
+        if( !upToDate )
+        {
+            FileUtils.deleteDirectory( targetDir );
+        }
+    }
+
+    @TearDown
+    public void tearDown()
+        throws IOException
+    {
+        Fixtures.delete( workDir );
+    }
+
+    @Benchmark
+    public long stage()
+        throws IOException
+    {
+        return new DependencyStager( new QuietLog(), threads, link ).stage( targetDir, files );
+    }
+
+}
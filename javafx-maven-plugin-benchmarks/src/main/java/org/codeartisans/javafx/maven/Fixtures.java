@@ -0,0 +1,138 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import org.codehaus.plexus.util.FileUtils;
+
+/**
+ * Generated benchmark fixtures.
+ *
+ * Content is pseudo random but deterministic and about as compressible as class files, so that runs are comparable.
+ */
+/* package */ final class Fixtures
+{
+
+    private static final Charset UTF_8 = Charset.forName( "UTF-8" );
+    private static final String[] WORDS =
+    {
+        "java/lang/Object", "java/lang/String", "javafx/scene/Node", "<init>", "()V", "Code", "LineNumberTable",
+        "getValue", "setValue", "this", "StackMapTable", "SourceFile", "Ljava/util/List;", "add", "size"
+    };
+
+    /* package */ static File tempDir( String prefix )
+        throws IOException
+    {
+        return Files.createTempDirectory( "javafx-bench-" + prefix ).toFile();
+    }
+
+    /* package */ static void delete( File file )
+        throws IOException
+    {
+        if( file != null )
+        {
+            FileUtils.forceDelete( file );
+        }
+    }
+
+    /* package */ static byte[] content( Random random, int size )
+    {
+        byte[] content = new byte[ size ];
+        int idx = 0;
+        while( idx < size )
+        {
+            byte[] chunk;
+            if( random.nextInt( 4 ) == 0 )
+            {
+                chunk = new byte[ 1 + random.nextInt( 16 ) ];
+                random.nextBytes( chunk );
+            }
+            else
+            {
+                chunk = WORDS[random.nextInt( WORDS.length )].getBytes( UTF_8 );
+            }
+            int length = Math.min( chunk.length, size - idx );
+            System.arraycopy( chunk, 0, content, idx, length );
+            idx += length;
+        }
+        return content;
+    }
+
+    /**
+     * Create a JAR with a manifest and entries spread in a few packages.
+     */
+    /* package */ static File jar( File jar, int entries, int entrySize, long seed )
+        throws IOException
+    {
+        Random random = new Random( seed );
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put( Attributes.Name.MANIFEST_VERSION, "1.0" );
+        JarOutputStream output = new JarOutputStream( new FileOutputStream( jar ), manifest );
+        try
+        {
+            for( int idx = 0; idx < entries; idx++ )
+            {
+                output.putNextEntry( new JarEntry( "org/example/p" + ( idx % 16 ) + "/Class" + idx + ".class" ) );
+                output.write( content( random, entrySize ) );
+                output.closeEntry();
+            }
+        }
+        finally
+        {
+            output.close();
+        }
+        return jar;
+    }
+
+    /**
+     * Create a directory tree of files, like the JNLP or application image directories.
+     */
+    /* package */ static File directory( File dir, int files, int fileSize, long seed )
+        throws IOException
+    {
+        Random random = new Random( seed );
+        for( int idx = 0; idx < files; idx++ )
+        {
+            File file = new File( dir, "d" + ( idx % 8 ) + "/file" + idx + ".bin" );
+            FileUtils.forceMkdir( file.getParentFile() );
+            OutputStream output = new FileOutputStream( file );
+            try
+            {
+                output.write( content( random, fileSize ) );
+            }
+            finally
+            {
+                output.close();
+            }
+        }
+        return dir;
+    }
+
+    private Fixtures()
+    {
+    }
+
+}
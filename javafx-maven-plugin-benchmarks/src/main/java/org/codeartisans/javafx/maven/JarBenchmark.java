@@ -0,0 +1,160 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import de.schlichtherle.truezip.file.TFile;
+import de.schlichtherle.truezip.file.TVFS;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.IOUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Creation of the JavaFX JAR from the project JAR.
+ *
+ * Unpacking uses TrueZIP as the package goal does. The packager needs a JavaFX SDK so repacking is measured with a
+ * plain {@link JarOutputStream}, which does the same deflate work.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Fork( 1 )
+@Warmup( iterations = 3 )
+@Measurement( iterations = 5 )
+public class JarBenchmark
+{
+
+    @Param( { "100", "2000" } )
+    public int entries;
+    @Param( { "2048", "65536" } )
+    public int entrySize;
+    private File workDir;
+    private File projectJar;
+    private File launcherJar;
+    private File unpackedDir;
+    private File outputJar;
+
+    @Setup
+    public void setup()
+        throws IOException
+    {
+        workDir = Fixtures.tempDir( "jar" );
+        projectJar = Fixtures.jar( new File( workDir, "project.jar" ), entries, entrySize, 42 );
+        launcherJar = Fixtures.jar( new File( workDir, "launcher.jar" ), 4, 1024, 7 );
+        unpackedDir = new File( workDir, "unpacked" );
+        outputJar = new File( workDir, "javafx.jar" );
+    }
+
+    @TearDown
+    public void tearDown()
+        throws IOException
+    {
+        TVFS.umount();
+        Fixtures.delete( workDir );
+    }
+
+    @Benchmark
+    public File unpack()
+        throws IOException
+    {
+        FileUtils.deleteDirectory( unpackedDir );
+        FileUtils.mkdir( unpackedDir.getAbsolutePath() );
+        new TFile( projectJar ).cp_rp( unpackedDir );
+        TVFS.umount();
+        return unpackedDir;
+    }
+
+    @Benchmark
+    public File unpackRepack()
+        throws IOException
+    {
+        unpack();
+        JarOutputStream output = new JarOutputStream( new FileOutputStream( outputJar ) );
+        try
+        {
+            repack( unpackedDir, "", output );
+        }
+        finally
+        {
+            output.close();
+        }
+        return outputJar;
+    }
+
+    @Benchmark
+    public File streamRewrite()
+        throws IOException
+    {
+        JarRewriter.rewrite( projectJar, launcherJar, outputJar, null );
+        return outputJar;
+    }
+
+    @Benchmark
+    public File streamRewriteReproducible()
+        throws IOException
+    {
+        JarRewriter.rewrite( projectJar, launcherJar, outputJar, 315532800000L );
+        return outputJar;
+    }
+
+    private static void repack( File dir, String prefix, JarOutputStream output )
+        throws IOException
+    {
+        for( File child : dir.listFiles() )
+        {
+            String name = prefix + child.getName();
+            if( child.isDirectory() )
+            {
+                output.putNextEntry( new JarEntry( name + "/" ) );
+                output.closeEntry();
+                repack( child, name + "/", output );
+            }
+            else
+            {
+                output.putNextEntry( new JarEntry( name ) );
+                InputStream input = new FileInputStream( child );
+                try
+                {
+                    IOUtil.copy( input, output );
+                }
+                finally
+                {
+                    IOUtil.close( input );
+                }
+                output.closeEntry();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import com.sun.javafx.tools.packager.bundlers.Bundler.BundleType;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.util.FileUtils;
+
+/**
+ * Budgets stage of the package goal.
+ *
+ * Measures the packaged application against its budgets, optionally probing its startup time, and writes the budget
+ * report, see {@link PackagingBudgets}. Budgets of {@literal 0} or less are reported but never exceeded.
+ */
+/* package */ class BudgetStage
+{
+
+    private final Log log;
+    private final PackagingMetrics metrics;
+    private final long jarSizeBudget;
+    private final long dependenciesSizeBudget;
+    private final long bundleSizeBudget;
+    private final long startupBudget;
+    private int startupProbeRuns;
+    private List<String> probeArgs;
+    private String mainClass;
+    private File javaFxRuntime;
+
+    /* package */ BudgetStage( Log log, PackagingMetrics metrics, long jarSizeBudget, long dependenciesSizeBudget,
+                               long bundleSizeBudget, long startupBudget )
+    {
+        this.log = log;
+        this.metrics = metrics;
+        this.jarSizeBudget = jarSizeBudget;
+        this.dependenciesSizeBudget = dependenciesSizeBudget;
+        this.bundleSizeBudget = bundleSizeBudget;
+        this.startupBudget = startupBudget;
+    }
+
+    /**
+     * Measure the startup time of the application.
+     *
+     * @param runs          Number of probe runs, the median startup time is measured
+     * @param probeArgs     JVM arguments of the probe runs
+     * @param mainClass     Application class
+     * @param javaFxRuntime JavaFX runtime JAR added to the class path, {@literal null} if on the default one
+     */
+    /* package */ BudgetStage startupProbe( int runs, List<String> probeArgs, String mainClass, File javaFxRuntime )
+    {
+        this.startupProbeRuns = Math.max( 1, runs );
+        this.probeArgs = probeArgs;
+        this.mainClass = mainClass;
+        this.javaFxRuntime = javaFxRuntime;
+        return this;
+    }
+
+    /**
+     * @return Exceeded budgets, empty if none
+     */
+    /* package */ List<String> run( File reportFile, String projectId, File javaFxJar, File dependenciesDir,
+                                    Map<BundleType, File> bundleOutputDirs,
+                                    Map<PerformanceProfile, Map<BundleType, File>> profileOutputDirs, File probeDir )
+        throws IOException
+    {
+        PackagingBudgets budgets = new PackagingBudgets();
+        PackagingMetrics.Phase phase = metrics.begin( "budgets" );
+        try
+        {
+            budgets.measure( "jar", javaFxJar.length(), PackagingBudgets.BYTES, jarSizeBudget );
+            budgets.measure( "dependencies", FileTrees.size( dependenciesDir.toPath() ), PackagingBudgets.BYTES,
+                             dependenciesSizeBudget );
+            measureBundles( budgets, bundleOutputDirs, "" );
+            for( Map.Entry<PerformanceProfile, Map<BundleType, File>> profile : profileOutputDirs.entrySet() )
+            {
+                measureBundles( budgets, profile.getValue(), profile.getKey().getName() + "/" );
+            }
+            if( startupProbeRuns > 0 )
+            {
+                long startup = probeStartup( javaFxJar, dependenciesDir, probeDir );
+                if( startup >= 0 )
+                {
+                    budgets.measure( "startup", startup, PackagingBudgets.MILLIS, startupBudget );
+                }
+            }
+            budgets.writeJson( reportFile, projectId );
+        }
+        finally
+        {
+            phase.end();
+        }
+        budgets.log( log );
+        return budgets.exceeded();
+    }
+
+    /**
+     * Report exceeded budgets as errors failing the build, or as warnings only.
+     *
+     * @param exceeded     Exceeded budgets, as returned by {@link #run}
+     * @param failOnBudget Fail the build when a budget is exceeded
+     */
+    /* package */ void enforce( List<String> exceeded, File reportFile, boolean failOnBudget )
+        throws MojoFailureException
+    {
+        for( String budget : exceeded )
+        {
+            if( failOnBudget )
+            {
+                log.error( budget );
+            }
+            else
+            {
+                log.warn( budget );
+            }
+        }
+        if( failOnBudget && !exceeded.isEmpty() )
+        {
+            throw new MojoFailureException( exceeded.size() + " JavaFX packaging budget(s) exceeded, see "
+                                            + reportFile );
+        }
+    }
+
+    private void measureBundles( PackagingBudgets budgets, Map<BundleType, File> bundleOutputDirs, String prefix )
+        throws IOException
+    {
+        for( File bundleOutputDir : bundleOutputDirs.values() )
+        {
+            File[] bundles = new File( bundleOutputDir, "bundles" ).listFiles();
+            if( bundles == null )
+            {
+                continue;
+            }
+            Arrays.sort( bundles );
+            for( File bundle : bundles )
+            {
+                budgets.measure( "bundles/" + prefix + bundle.getName(), FileTrees.size( bundle.toPath() ),
+                                 PackagingBudgets.BYTES, bundleSizeBudget );
+            }
+        }
+    }
+
+    /**
+     * @return Median startup time in milliseconds of the successful probe runs, {@literal -1} if none succeeded
+     */
+    private long probeStartup( File javaFxJar, File dependenciesDir, File probeDir )
+        throws IOException
+    {
+        List<File> classpath = new ArrayList<File>();
+        classpath.add( javaFxJar );
+        File[] dependencies = dependenciesDir.listFiles();
+        if( dependencies != null )
+        {
+            Arrays.sort( dependencies );
+            for( File dependency : dependencies )
+            {
+                if( dependency.getName().endsWith( ".jar" ) )
+                {
+                    classpath.add( dependency );
+                }
+            }
+        }
+        if( javaFxRuntime != null )
+        {
+            classpath.add( javaFxRuntime );
+        }
+        FileUtils.forceMkdir( probeDir );
+        ForkedJvm jvm = new ForkedJvm( log );
+        List<Long> startups = new ArrayList<Long>();
+        for( int run = 1; run <= startupProbeRuns; run++ )
+        {
+            long startup = jvm.probeStartup( probeArgs, classpath, mainClass,
+                                             new File( probeDir, "probe-" + run + ".log" ), 120 );
+            log.debug( "Startup probe run " + run + ": " + startup + "ms" );
+            if( startup >= 0 )
+            {
+                startups.add( startup );
+            }
+        }
+        if( startups.isEmpty() )
+        {
+            log.warn( "Application never started during the startup probe, startup time is not measured" );
+            return -1;
+        }
+        Collections.sort( startups );
+        return startups.get( startups.size() / 2 );
+    }
+
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import com.sun.javafx.tools.packager.bundlers.Bundler.BundleType;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.project.MavenProjectHelper;
+import org.codehaus.plexus.util.FileUtils;
+
+/**
+ * Attaches the native bundles found in packager output directories to the project.
+ *
+ * Simple file bundles are attached as is, one per extension. MacOSX application bundles are zipped, Linux and Windows
+ * application images archived in the configured format, each archive being skipped when up to date.
+ */
+/* package */ class BundleAttacher
+{
+
+    private static final String STAGE_MACOSX_ZIP = "macosx-zip";
+    private static final String STAGE_IMAGE_ARCHIVE = "image-archive";
+    private final Log log;
+    private final MavenProject project;
+    private final MavenProjectHelper projectHelper;
+    private final DirectoryArchiver archiver;
+    private final String imageArchiveFormat;
+
+    /**
+     * @param imageArchiveFormat Format of the application image archives, also their extension
+     */
+    /* package */ BundleAttacher( Log log, MavenProject project, MavenProjectHelper projectHelper,
+                                  DirectoryArchiver archiver, String imageArchiveFormat )
+    {
+        this.log = log;
+        this.project = project;
+        this.projectHelper = projectHelper;
+        this.archiver = archiver;
+        this.imageArchiveFormat = imageArchiveFormat;
+    }
+
+    /**
+     * @param profileName Name of the performance profile of the bundles, {@literal null} for the common ones
+     */
+    /* package */ void attach( FingerprintManifest fingerprints, String nativeFingerprint, File buildDir,
+                               Map<BundleType, File> bundleOutputDirs, String profileName,
+                               PackagingMetrics.Phase phase )
+        throws IOException
+    {
+        String classifierPrefix = profileName == null ? "" : profileName + "-";
+        String macosxZipStage = profileName == null ? STAGE_MACOSX_ZIP : STAGE_MACOSX_ZIP + "." + profileName;
+        String imageArchiveStage = profileName == null
+                                   ? STAGE_IMAGE_ARCHIVE
+                                   : STAGE_IMAGE_ARCHIVE + "." + profileName;
+        Set<String> attachedClassifiers = new HashSet<String>();
+        for( File bundleOutputDir : bundleOutputDirs.values() )
+        {
+            File bundlesDir = new File( bundleOutputDir, "bundles" );
+            if( !bundlesDir.isDirectory() )
+            {
+                continue;
+            }
+            for( File bundle : bundlesDir.listFiles() )
+            {
+                if( bundle.isFile() )
+                {
+                    // Simple file bundle (exe, msi, rpm, dmg)
+                    String ext = FileUtils.extension( bundle.getName() );
+                    if( attachedClassifiers.add( ext ) )
+                    {
+                        projectHelper.attachArtifact( project, ext, classifierPrefix + ext, bundle );
+                    }
+                }
+                else if( bundle.isDirectory() )
+                {
+                    // Directory bundle
+                    if( bundle.getName().endsWith( ".app" ) )
+                    {
+                        // MacOSX Application bundle, will zip it before attach
+                        if( !attachedClassifiers.add( "macosx" ) )
+                        {
+                            continue;
+                        }
+                        String classifier = classifierPrefix + "macosx";
+                        File macosxAppZip = new File( buildDir, project.getBuild().getFinalName() + "-" + classifier
+                                                                + ".zip" );
+                        String fingerprint = archiver.fingerprint( nativeFingerprint );
+                        if( fingerprints.isUpToDate( macosxZipStage, fingerprint, macosxAppZip ) )
+                        {
+                            log.info( "MacOSX application archive is up to date" );
+                        }
+                        else
+                        {
+                            fingerprints.invalidate( macosxZipStage );
+                            FileUtils.fileDelete( macosxAppZip.getAbsolutePath() );
+                            archiver.zip( bundle, bundle.getName() + "/", macosxAppZip );
+                            fingerprints.record( macosxZipStage, fingerprint );
+                            phase.read( bundle ).wrote( macosxAppZip );
+                        }
+                        projectHelper.attachArtifact( project, "zip", classifier, macosxAppZip );
+                    }
+                    else
+                    {
+                        // Linux or Windows application image, archived before attach
+                        String platform = JavaFXPackageMojo.isWindows() ? "win" : "linux";
+                        if( !attachedClassifiers.add( platform ) )
+                        {
+                            continue;
+                        }
+                        String classifier = classifierPrefix + platform;
+                        attachImage( fingerprints, nativeFingerprint, imageArchiveStage, bundle,
+                                     new File( buildDir, project.getBuild().getFinalName() + "-" + classifier + "."
+                                                         + imageArchiveFormat ), classifier, phase );
+                    }
+                }
+            }
+        }
+    }
+
+    private void attachImage( FingerprintManifest fingerprints, String nativeFingerprint, String imageArchiveStage,
+                              File image, File imageArchive, String classifier, PackagingMetrics.Phase phase )
+        throws IOException
+    {
+        String fingerprint = null;
+        if( nativeFingerprint != null )
+        {
+            fingerprint = archiver.fingerprint( new Fingerprint().
+                add( JavaFXPackageMojo.STAGE_NATIVE, nativeFingerprint ).
+                add( "imageArchiveFormat", imageArchiveFormat ).
+                value() );
+        }
+        if( fingerprints.isUpToDate( imageArchiveStage, fingerprint, imageArchive ) )
+        {
+            log.info( "Application image archive is up to date" );
+        }
+        else
+        {
+            fingerprints.invalidate( imageArchiveStage );
+            FileUtils.fileDelete( imageArchive.getAbsolutePath() );
+            if( "zip".equals( imageArchiveFormat ) )
+            {
+                archiver.zip( image, image.getName() + "/", imageArchive );
+            }
+            else
+            {
+                archiver.tar( image, image.getName() + "/", imageArchive, "tar.gz".equals( imageArchiveFormat ) );
+            }
+            fingerprints.record( imageArchiveStage, fingerprint );
+            phase.read( image ).wrote( imageArchive );
+        }
+        projectHelper.attachArtifact( project, imageArchiveFormat, classifier, imageArchive );
+    }
+
+}
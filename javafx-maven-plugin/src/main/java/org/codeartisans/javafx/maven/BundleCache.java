@@ -0,0 +1,170 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Local, content addressed, cache of packager outputs.
+ *
+ * Each entry is a directory named after its key, the key being a hash of everything the packager output depends
+ * on. Entries are written to a temporary directory then atomically moved in place so that concurrent builds sharing
+ * the cache never see partial entries. Entries modification time is updated on each hit and least recently used
+ * entries are evicted once the cache grows over its maximum size.
+ */
+/* package */ class BundleCache
+{
+
+    private static final String TEMP_PREFIX = ".tmp-";
+    private final Path cacheDir;
+    private final long maxSize;
+    private final Log log;
+
+    /**
+     * @param maxSize Maximum size in bytes
+     */
+    /* package */ BundleCache( File cacheDir, long maxSize, Log log )
+    {
+        this.cacheDir = cacheDir.toPath();
+        this.maxSize = maxSize;
+        this.log = log;
+    }
+
+    /**
+     * Restore a cached entry, replacing the target directory.
+     *
+     * @return {@literal true} on cache hit
+     */
+    /* package */ boolean restore( String key, File targetDir )
+    {
+        Path entry = cacheDir.resolve( key );
+        if( !Files.isDirectory( entry ) )
+        {
+            return false;
+        }
+        try
+        {
+            FileTrees.delete( targetDir.toPath() );
+            FileTrees.copy( entry, targetDir.toPath() );
+            Files.setLastModifiedTime( entry, FileTime.fromMillis( System.currentTimeMillis() ) );
+            return true;
+        }
+        catch( IOException ex )
+        {
+            // Concurrently evicted entry for example, treat as a miss
+            log.warn( "Unable to restore cached bundles " + key + ", will package them: " + ex.getMessage() );
+            return false;
+        }
+    }
+
+    /**
+     * Store a directory in the cache then evict least recently used entries if needed.
+     */
+    /* package */ void store( String key, File sourceDir )
+        throws IOException
+    {
+        Files.createDirectories( cacheDir );
+        Path entry = cacheDir.resolve( key );
+        Path temp = cacheDir.resolve( TEMP_PREFIX + key + "-" + UUID.randomUUID() );
+        try
+        {
+            FileTrees.copy( sourceDir.toPath(), temp );
+            try
+            {
+                Files.move( temp, entry, StandardCopyOption.ATOMIC_MOVE );
+            }
+            catch( AtomicMoveNotSupportedException ex )
+            {
+                Files.move( temp, entry );
+            }
+            log.info( "Stored bundles in cache " + entry );
+        }
+        catch( FileSystemException ex )
+        {
+            // Renaming onto a concurrently stored entry fails with "Directory not empty" on POSIX filesystems
+            if( !Files.isDirectory( entry ) )
+            {
+                throw ex;
+            }
+            log.debug( "Bundles " + key + " concurrently stored in cache" );
+        }
+        finally
+        {
+            FileTrees.delete( temp );
+        }
+        evict( key );
+    }
+
+    private void evict( String keep )
+        throws IOException
+    {
+        File[] children = cacheDir.toFile().listFiles();
+        if( children == null )
+        {
+            return;
+        }
+        List<Path> entries = new ArrayList<Path>();
+        for( File child : children )
+        {
+            if( child.isDirectory() && !child.getName().startsWith( TEMP_PREFIX ) )
+            {
+                entries.add( child.toPath() );
+            }
+        }
+        // Least recently used first
+        Collections.sort( entries, new Comparator<Path>()
+        {
+            @Override
+            public int compare( Path left, Path right )
+            {
+                return Long.compare( left.toFile().lastModified(), right.toFile().lastModified() );
+            }
+
+        } );
+        long[] sizes = new long[ entries.size() ];
+        long total = 0;
+        for( int idx = 0; idx < entries.size(); idx++ )
+        {
+            sizes[idx] = FileTrees.size( entries.get( idx ) );
+            total += sizes[idx];
+        }
+        for( int idx = 0; idx < entries.size() && total > maxSize; idx++ )
+        {
+            Path entry = entries.get( idx );
+            if( entry.getFileName().toString().equals( keep ) )
+            {
+                continue;
+            }
+            log.info( "Evicting cached bundles " + entry.getFileName() + " (" + sizes[idx] + " bytes)" );
+            FileTrees.delete( entry );
+            total -= sizes[idx];
+        }
+    }
+
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Class Data Sharing archive of the application, created by the bundled runtime on the first run.
+ *
+ * Archives dumped at build time record the absolute application class path and the JVM ignores them once the
+ * application is installed elsewhere. From Java 19 the JVM creates the archive at exit when missing or stale, see
+ * {@literal -XX:+AutoCreateSharedArchive}, so it lives next to the application with the paths of its installation. The
+ * application directory must be writable for the archive to be created, the application runs without it otherwise.
+ */
+/* package */ final class ClassDataSharing
+{
+
+    /* package */ static final String ARCHIVE = "app.jsa";
+    private static final int AUTO_CREATE_VERSION = 19;
+
+    /**
+     * @param specificationVersion {@literal java.specification.version} of the bundled runtime
+     *
+     * @return {@literal true} if the runtime creates archives on its own
+     */
+    /* package */ static boolean isSupported( String specificationVersion )
+    {
+        if( specificationVersion == null || specificationVersion.startsWith( "1." ) )
+        {
+            return false;
+        }
+        int dot = specificationVersion.indexOf( '.' );
+        try
+        {
+            int feature = Integer.parseInt( dot < 0 ? specificationVersion : specificationVersion.substring( 0, dot ) );
+            return feature >= AUTO_CREATE_VERSION;
+        }
+        catch( NumberFormatException ex )
+        {
+            return false;
+        }
+    }
+
+    /**
+     * @return JVM arguments of the native launchers, {@literal $APPDIR} is expanded to the application directory
+     */
+    /* package */ static List<String> jvmArgs()
+    {
+        return Arrays.asList( "-XX:SharedArchiveFile=$APPDIR/" + ARCHIVE, "-XX:+AutoCreateSharedArchive" );
+    }
+
+    private ClassDataSharing()
+    {
+    }
+
+}
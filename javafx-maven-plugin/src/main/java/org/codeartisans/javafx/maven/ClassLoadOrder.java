@@ -0,0 +1,216 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.jar.JarFile;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.IOUtil;
+import org.codehaus.plexus.util.SelectorUtils;
+
+/**
+ * Lay out a JAR in class loading order.
+ *
+ * A forked JVM runs the application for a while with {@literal -verbose:class}, the JAR is then rewritten with the
+ * classes it loaded first, in load order, optionally stored without compression so that they are read without
+ * inflating. Other entries follow.
+ */
+/* package */ class ClassLoadOrder
+{
+
+    /**
+     * Java 8 format, {@literal [Loaded java.lang.Object from /path/rt.jar]}.
+     */
+    private static final Pattern LEGACY_FORMAT = Pattern.compile( "^\\[Loaded (\\S+) from .*\\]$" );
+    /**
+     * Unified logging format, {@literal [0.010s][info][class,load] java.lang.Object source: jrt:/java.base}.
+     */
+    private static final Pattern UNIFIED_FORMAT = Pattern.compile( "^\\[.*\\]\\[class,load\\s*\\] (\\S+) source: .*$" );
+    private final Log log;
+
+    /* package */ ClassLoadOrder( Log log )
+    {
+        this.log = log;
+    }
+
+    /**
+     * Run the application and record the order in which it loads its classes.
+     *
+     * @return Loaded JAR entry names, in load order
+     */
+    /* package */ List<String> train( List<File> classpath, String mainClass, List<String> trainingArgs, int seconds,
+                                      File logFile )
+        throws IOException
+    {
+        List<String> jvmArgs = new ArrayList<String>();
+        jvmArgs.add( "-verbose:class" );
+        if( trainingArgs != null )
+        {
+            jvmArgs.addAll( trainingArgs );
+        }
+        log.info( "Training class load order for " + seconds + "s" );
+        FileUtils.fileDelete( logFile.getAbsolutePath() );
+        int exitCode = new ForkedJvm( log ).train( jvmArgs, classpath, mainClass, seconds, logFile );
+        if( exitCode != 0 )
+        {
+            log.warn( "Training run exited with " + exitCode + ", see " + logFile );
+        }
+        return parse( logFile );
+    }
+
+    /**
+     * Parse {@literal -verbose:class} output, both Java 8 and unified logging formats.
+     *
+     * @return Loaded JAR entry names, in load order
+     */
+    /* package */ static List<String> parse( File verboseClassLog )
+        throws IOException
+    {
+        Set<String> entries = new LinkedHashSet<String>();
+        BufferedReader reader = new BufferedReader( new InputStreamReader( new FileInputStream( verboseClassLog ),
+                                                                           "UTF-8" ) );
+        try
+        {
+            String line;
+            while( ( line = reader.readLine() ) != null )
+            {
+                Matcher matcher = LEGACY_FORMAT.matcher( line );
+                if( !matcher.matches() )
+                {
+                    matcher = UNIFIED_FORMAT.matcher( line );
+                }
+                if( matcher.matches() )
+                {
+                    entries.add( matcher.group( 1 ).replace( '.', '/' ) + ".class" );
+                }
+            }
+        }
+        finally
+        {
+            IOUtil.close( reader );
+        }
+        return new ArrayList<String>( entries );
+    }
+
+    /**
+     * Rewrite a JAR in place, the manifest first, then the given entries in order, then the others.
+     *
+     * @param loadedEntries    Entry names in load order, names absent from the JAR are ignored
+     * @param storedPatterns   Patterns of loaded entries to store without compression
+     * @param reproducibleTime Time of all entries to produce a reproducible JAR with the other entries sorted,
+     *                         {@literal null} to keep their order and times
+     *
+     * @return Number of entries moved first
+     */
+    /* package */ int apply( File jar, List<String> loadedEntries, String[] storedPatterns, Long reproducibleTime )
+        throws IOException
+    {
+        File reordered = new File( jar.getParentFile(), jar.getName() + ".reordered" );
+        RawZipFile input = new RawZipFile( jar );
+        RawZipWriter output = null;
+        boolean success = false;
+        int hot = 0;
+        int stored = 0;
+        try
+        {
+            output = new RawZipWriter( reordered );
+            if( reproducibleTime != null )
+            {
+                output.setReproducible( reproducibleTime );
+            }
+            Map<String, RawZipFile.Entry> entries = reproducibleTime != null
+                                                    ? new TreeMap<String, RawZipFile.Entry>()
+                                                    : new LinkedHashMap<String, RawZipFile.Entry>();
+            for( RawZipFile.Entry entry : input.entries() )
+            {
+                entries.put( entry.name, entry );
+            }
+            for( String first : Arrays.asList( "META-INF/", JarFile.MANIFEST_NAME ) )
+            {
+                RawZipFile.Entry entry = entries.remove( first );
+                if( entry != null )
+                {
+                    output.copyEntry( input, entry );
+                }
+            }
+            for( String name : loadedEntries )
+            {
+                RawZipFile.Entry entry = entries.remove( name );
+                if( entry == null )
+                {
+                    continue;
+                }
+                hot++;
+                if( matches( name, storedPatterns ) )
+                {
+                    output.storeEntry( input, entry );
+                    stored++;
+                }
+                else
+                {
+                    output.copyEntry( input, entry );
+                }
+            }
+            for( RawZipFile.Entry entry : entries.values() )
+            {
+                output.copyEntry( input, entry );
+            }
+            output.close();
+            success = true;
+        }
+        finally
+        {
+            JarRewriter.closeQuietly( output );
+            input.close();
+            if( !success )
+            {
+                reordered.delete();
+            }
+        }
+        FileUtils.forceDelete( jar );
+        FileUtils.rename( reordered, jar );
+        log.info( "Laid out " + hot + " loaded classes first in " + jar.getName() + ", " + stored + " stored" );
+        return hot;
+    }
+
+    private static boolean matches( String name, String[] patterns )
+    {
+        for( String pattern : patterns )
+        {
+            if( SelectorUtils.matchPath( pattern.trim(), name ) )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Reads the classes and string constants a class file references from its constant pool.
+ *
+ * Class references are the class constants and the class names found in descriptors and signatures, which covers
+ * fields, methods, annotations and generic types. Code is not analyzed, references are an over-approximation at the
+ * class level.
+ */
+/* package */ final class ConstantPoolScanner
+{
+
+    /* package */ static final class References
+    {
+
+        /**
+         * Internal names, {@literal java/lang/Object} for example.
+         */
+        /* package */ final Set<String> classes = new LinkedHashSet<String>();
+        /**
+         * String literals, class names loaded by reflection or resource names for example.
+         */
+        /* package */ final Set<String> strings = new LinkedHashSet<String>();
+
+    }
+
+    private static final int MAGIC = 0xCAFEBABE;
+    private static final int UTF8 = 1;
+    private static final int INTEGER = 3;
+    private static final int FLOAT = 4;
+    private static final int LONG = 5;
+    private static final int DOUBLE = 6;
+    private static final int CLASS = 7;
+    private static final int STRING = 8;
+    private static final int FIELD_REF = 9;
+    private static final int METHOD_REF = 10;
+    private static final int INTERFACE_METHOD_REF = 11;
+    private static final int NAME_AND_TYPE = 12;
+    private static final int METHOD_HANDLE = 15;
+    private static final int METHOD_TYPE = 16;
+    private static final int DYNAMIC = 17;
+    private static final int INVOKE_DYNAMIC = 18;
+    private static final int MODULE = 19;
+    private static final int PACKAGE = 20;
+
+    /* package */ static References scan( byte[] classFile )
+        throws IOException
+    {
+        DataInputStream input = new DataInputStream( new ByteArrayInputStream( classFile ) );
+        if( input.readInt() != MAGIC )
+        {
+            throw new IOException( "Not a class file" );
+        }
+        input.readUnsignedShort();
+        input.readUnsignedShort();
+        int count = input.readUnsignedShort();
+        String[] utf8 = new String[ count ];
+        int[] classIndexes = new int[ count ];
+        int[] stringIndexes = new int[ count ];
+        int classCount = 0;
+        int stringCount = 0;
+        for( int idx = 1; idx < count; idx++ )
+        {
+            int tag = input.readUnsignedByte();
+            switch( tag )
+            {
+                case UTF8:
+                    utf8[idx] = input.readUTF();
+                    break;
+                case CLASS:
+                    classIndexes[classCount++] = input.readUnsignedShort();
+                    break;
+                case STRING:
+                    stringIndexes[stringCount++] = input.readUnsignedShort();
+                    break;
+                case METHOD_TYPE:
+                case MODULE:
+                case PACKAGE:
+                    input.readUnsignedShort();
+                    break;
+                case METHOD_HANDLE:
+                    input.readUnsignedByte();
+                    input.readUnsignedShort();
+                    break;
+                case INTEGER:
+                case FLOAT:
+                case FIELD_REF:
+                case METHOD_REF:
+                case INTERFACE_METHOD_REF:
+                case NAME_AND_TYPE:
+                case DYNAMIC:
+                case INVOKE_DYNAMIC:
+                    input.readInt();
+                    break;
+                case LONG:
+                case DOUBLE:
+                    input.readLong();
+                    // Eight bytes constants take two slots
+                    idx++;
+                    break;
+                default:
+                    throw new IOException( "Unknown constant pool tag " + tag );
+            }
+        }
+        References references = new References();
+        for( int idx = 0; idx < classCount; idx++ )
+        {
+            String name = utf8[classIndexes[idx]];
+            if( name.startsWith( "[" ) )
+            {
+                addDescriptorClasses( name, references.classes );
+            }
+            else
+            {
+                references.classes.add( name );
+            }
+        }
+        for( int idx = 0; idx < stringCount; idx++ )
+        {
+            references.strings.add( utf8[stringIndexes[idx]] );
+        }
+        for( String value : utf8 )
+        {
+            if( value != null )
+            {
+                addDescriptorClasses( value, references.classes );
+            }
+        }
+        return references;
+    }
+
+    /**
+     * Add the {@literal Lname;} and {@literal Lname<} class names found in a descriptor or signature.
+     */
+    private static void addDescriptorClasses( String descriptor, Set<String> classes )
+    {
+        int start = descriptor.indexOf( 'L' );
+        while( start >= 0 )
+        {
+            int end = start + 1;
+            while( end < descriptor.length() && ";<>:()[ ".indexOf( descriptor.charAt( end ) ) < 0 )
+            {
+                end++;
+            }
+            if( end < descriptor.length() && end > start + 1
+                && ( descriptor.charAt( end ) == ';' || descriptor.charAt( end ) == '<' ) )
+            {
+                classes.add( descriptor.substring( start + 1, end ) );
+            }
+            start = descriptor.indexOf( 'L', end );
+        }
+    }
+
+    private ConstantPoolScanner()
+    {
+    }
+
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.Locale;
+
+/**
+ * Compile JavaFX style sheets to the binary format.
+ *
+ * A {@literal .bss} entry is added next to each {@literal .css} one, the JavaFX runtime loads it instead of parsing
+ * the style sheet. The JavaFX runtime {@literal Css2Bin} converter is used reflectively, style sheets are left as is
+ * when it is not available.
+ */
+/* package */ class CssCompiler
+    implements ResourceProcessor
+{
+
+    private static final String CSS2BIN = "com.sun.javafx.css.parser.Css2Bin";
+    // The JavaFX CSS parser is a shared singleton
+    private static final Object LOCK = new Object();
+    private final Method convert;
+
+    /**
+     * @param jfxrt JavaFX runtime JAR, {@literal null} if it is on the plugin class path
+     *
+     * @throws IOException if the JavaFX CSS converter is not available
+     */
+    /* package */ CssCompiler( File jfxrt )
+        throws IOException
+    {
+        try
+        {
+            ClassLoader loader = CssCompiler.class.getClassLoader();
+            if( jfxrt != null )
+            {
+                loader = new URLClassLoader( new URL[]{ jfxrt.toURI().toURL() }, loader );
+            }
+            convert = Class.forName( CSS2BIN, true, loader ).getMethod( "convert", String.class, String.class );
+        }
+        catch( ReflectiveOperationException ex )
+        {
+            throw new IOException( "JavaFX CSS converter not available", ex );
+        }
+        catch( LinkageError ex )
+        {
+            throw new IOException( "JavaFX CSS converter not available", ex );
+        }
+    }
+
+    @Override
+    public String id()
+    {
+        return "bss-" + System.getProperty( "java.version" );
+    }
+
+    @Override
+    public boolean accepts( String name )
+    {
+        return name.toLowerCase( Locale.ENGLISH ).endsWith( ".css" );
+    }
+
+    @Override
+    public String outputName( String name )
+    {
+        return name.substring( 0, name.length() - ".css".length() ) + ".bss";
+    }
+
+    @Override
+    public byte[] process( String name, byte[] content )
+        throws IOException
+    {
+        File css = File.createTempFile( "javafx-", ".css" );
+        File bss = new File( css.getPath().replaceFirst( "\\.css$", ".bss" ) );
+        try
+        {
+            Files.write( css.toPath(), content );
+            synchronized( LOCK )
+            {
+                convert.invoke( null, css.getAbsolutePath(), bss.getAbsolutePath() );
+            }
+            return Files.readAllBytes( bss.toPath() );
+        }
+        catch( IllegalAccessException ex )
+        {
+            throw new IOException( "Unable to compile " + name, ex );
+        }
+        catch( InvocationTargetException ex )
+        {
+            throw new IOException( "Unable to compile " + name + ": " + ex.getCause(), ex.getCause() );
+        }
+        finally
+        {
+            css.delete();
+            bss.delete();
+        }
+    }
+
+}
@@ -0,0 +1,362 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Analysis of the dependency JARs before staging.
+ *
+ * Drops byte identical duplicates, reports class entries found in several JARs and optionally merges small JARs into
+ * a single classpath JAR so that the application opens less files at startup.
+ */
+/* package */ class DependencyAnalyzer
+{
+
+    private static final String SERVICES = "META-INF/services/";
+    private static final int MAX_REPORTED_CLASSES = 5;
+    private final Log log;
+
+    /* package */ DependencyAnalyzer( Log log )
+    {
+        this.log = log;
+    }
+
+    /**
+     * @param files Files by target file name
+     *
+     * @return Files by target file name, without byte identical duplicates, first one wins
+     */
+    /* package */ Map<String, File> deduplicate( Map<String, File> files )
+        throws IOException
+    {
+        Map<String, String> namesByHash = new LinkedHashMap<String, String>();
+        Map<String, File> unique = new LinkedHashMap<String, File>();
+        for( Map.Entry<String, File> file : files.entrySet() )
+        {
+            String hash = Fingerprint.hash( file.getValue() );
+            String kept = namesByHash.get( hash );
+            if( kept == null )
+            {
+                namesByHash.put( hash, file.getKey() );
+                unique.put( file.getKey(), file.getValue() );
+            }
+            else
+            {
+                log.info( "Dropping dependency " + file.getKey() + ", identical to " + kept );
+            }
+        }
+        return unique;
+    }
+
+    /**
+     * Log class entries present in several JARs, as warnings when their content differ.
+     */
+    /* package */ void reportOverlaps( Map<String, File> files )
+        throws IOException
+    {
+        // Class name -> JAR name -> CRC
+        Map<String, Map<String, Long>> classes = new TreeMap<String, Map<String, Long>>();
+        for( Map.Entry<String, File> file : files.entrySet() )
+        {
+            if( !file.getKey().endsWith( ".jar" ) )
+            {
+                continue;
+            }
+            Map<String, Long> entries;
+            try
+            {
+                entries = entries( file.getValue() );
+            }
+            catch( ZipException ex )
+            {
+                log.warn( "Unable to read " + file.getKey() + ", skipping its overlaps: " + ex.getMessage() );
+                continue;
+            }
+            for( Map.Entry<String, Long> entry : entries.entrySet() )
+            {
+                if( entry.getKey().endsWith( ".class" ) && !entry.getKey().startsWith( "META-INF/" ) )
+                {
+                    Map<String, Long> jars = classes.get( entry.getKey() );
+                    if( jars == null )
+                    {
+                        jars = new LinkedHashMap<String, Long>();
+                        classes.put( entry.getKey(), jars );
+                    }
+                    jars.put( file.getKey(), entry.getValue() );
+                }
+            }
+        }
+        // JARs set -> overlapping classes, conflicting ones having different content
+        Map<String, List<String>> overlaps = new TreeMap<String, List<String>>();
+        Map<String, Integer> conflicts = new TreeMap<String, Integer>();
+        for( Map.Entry<String, Map<String, Long>> clazz : classes.entrySet() )
+        {
+            Map<String, Long> jars = clazz.getValue();
+            if( jars.size() < 2 )
+            {
+                continue;
+            }
+            String key = String.valueOf( jars.keySet() );
+            List<String> overlapping = overlaps.get( key );
+            if( overlapping == null )
+            {
+                overlapping = new ArrayList<String>();
+                overlaps.put( key, overlapping );
+                conflicts.put( key, 0 );
+            }
+            overlapping.add( clazz.getKey() );
+            if( new HashSet<Long>( jars.values() ).size() > 1 )
+            {
+                conflicts.put( key, conflicts.get( key ) + 1 );
+            }
+        }
+        for( Map.Entry<String, List<String>> overlap : overlaps.entrySet() )
+        {
+            List<String> overlapping = overlap.getValue();
+            int conflicting = conflicts.get( overlap.getKey() );
+            String message = overlapping.size() + " class(es) found in " + overlap.getKey() + ", " + conflicting
+                             + " with different content, e.g. "
+                             + overlapping.subList( 0, Math.min( MAX_REPORTED_CLASSES, overlapping.size() ) );
+            if( conflicting > 0 )
+            {
+                log.warn( message );
+            }
+            else
+            {
+                log.info( message );
+            }
+        }
+    }
+
+    /**
+     * Merge JARs smaller than the given threshold into a single JAR.
+     *
+     * Signed JARs and JARs not supported by {@link RawZipFile} are left alone. Entries present in several JARs are
+     * taken from the first one, except service provider configuration files that are concatenated. Source manifests
+     * are dropped.
+     *
+     * @param files            Files by target file name
+     * @param threshold        Size in bytes under which JARs are merged
+     * @param mergedJar        Merged JAR file to create, not created if less than two JARs are eligible
+     * @param reproducibleTime Time of all entries to produce a reproducible JAR, {@literal null} to keep entries times
+     *
+     * @return Files by target file name, the merged JAR replacing the JARs it contains
+     */
+    /* package */ Map<String, File> mergeSmallJars( Map<String, File> files, long threshold, File mergedJar,
+                                                    Long reproducibleTime )
+        throws IOException
+    {
+        List<String> mergeable = new ArrayList<String>();
+        for( Map.Entry<String, File> file : files.entrySet() )
+        {
+            if( file.getKey().endsWith( ".jar" ) && file.getValue().length() < threshold
+                && !isSigned( file.getValue() ) && isRawReadable( file.getValue() ) )
+            {
+                mergeable.add( file.getKey() );
+            }
+        }
+        if( mergeable.size() < 2 )
+        {
+            return files;
+        }
+        mergedJar.getParentFile().mkdirs();
+        RawZipWriter output = new RawZipWriter( mergedJar );
+        boolean success = false;
+        try
+        {
+            if( reproducibleTime != null )
+            {
+                output.setReproducible( reproducibleTime );
+            }
+            long now = System.currentTimeMillis();
+            Manifest manifest = new Manifest();
+            manifest.getMainAttributes().put( Attributes.Name.MANIFEST_VERSION, "1.0" );
+            ByteArrayOutputStream manifestBytes = new ByteArrayOutputStream();
+            manifest.write( manifestBytes );
+            output.putDirectory( "META-INF/", now );
+            output.putEntry( JarFile.MANIFEST_NAME, now, manifestBytes.toByteArray() );
+
+            Map<String, ByteArrayOutputStream> services = new TreeMap<String, ByteArrayOutputStream>();
+            for( String name : mergeable )
+            {
+                RawZipFile jar = new RawZipFile( files.get( name ) );
+                try
+                {
+                    for( RawZipFile.Entry entry : jar.entries() )
+                    {
+                        if( entry.name.startsWith( SERVICES ) && !entry.isDirectory() )
+                        {
+                            appendService( services, jar, entry );
+                        }
+                        else if( !output.contains( entry.name ) && !JarFile.MANIFEST_NAME.equals( entry.name )
+                                 && !"META-INF/INDEX.LIST".equals( entry.name ) )
+                        {
+                            output.copyEntry( jar, entry );
+                        }
+                    }
+                }
+                finally
+                {
+                    jar.close();
+                }
+            }
+            for( Map.Entry<String, ByteArrayOutputStream> service : services.entrySet() )
+            {
+                output.putEntry( service.getKey(), now, service.getValue().toByteArray() );
+            }
+            output.close();
+            success = true;
+        }
+        finally
+        {
+            JarRewriter.closeQuietly( output );
+            if( !success )
+            {
+                mergedJar.delete();
+            }
+        }
+        log.info( "Merged " + mergeable.size() + " dependencies smaller than " + threshold + " bytes into "
+                  + mergedJar.getName() );
+
+        Map<String, File> merged = new LinkedHashMap<String, File>( files );
+        merged.keySet().removeAll( mergeable );
+        merged.put( mergedJar.getName(), mergedJar );
+        return merged;
+    }
+
+    private static void appendService( Map<String, ByteArrayOutputStream> services, RawZipFile jar,
+                                       RawZipFile.Entry entry )
+        throws IOException
+    {
+        ByteArrayOutputStream content = services.get( entry.name );
+        if( content == null )
+        {
+            content = new ByteArrayOutputStream();
+            services.put( entry.name, content );
+        }
+        InputStream input = jar.open( entry );
+        try
+        {
+            IOUtil.copy( input, content );
+        }
+        finally
+        {
+            IOUtil.close( input );
+        }
+        // Missing trailing new line would join the last provider with the next file first one
+        content.write( '\n' );
+    }
+
+    /* package */ static boolean isSigned( File jarFile )
+        throws IOException
+    {
+        for( String entryName : entries( jarFile ).keySet() )
+        {
+            String name = entryName.toUpperCase( Locale.ENGLISH );
+            if( name.startsWith( "META-INF/" ) && name.indexOf( '/', 9 ) < 0
+                && ( name.endsWith( ".SF" ) || name.endsWith( ".RSA" ) || name.endsWith( ".DSA" )
+                     || name.endsWith( ".EC" ) ) )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Read entries CRC from the central directory, falling back to {@link ZipFile} for archives not supported by
+     * {@link RawZipFile}, ZIP64 ones for example.
+     *
+     * @return Entries CRC by name, in central directory order
+     */
+    /* package */ static Map<String, Long> entries( File jarFile )
+        throws IOException
+    {
+        Map<String, Long> entries = new LinkedHashMap<String, Long>();
+        try
+        {
+            RawZipFile jar = new RawZipFile( jarFile );
+            try
+            {
+                for( RawZipFile.Entry entry : jar.entries() )
+                {
+                    entries.put( entry.name, entry.crc );
+                }
+            }
+            finally
+            {
+                jar.close();
+            }
+        }
+        catch( ZipException ex )
+        {
+            entries.clear();
+            ZipFile jar = new ZipFile( jarFile );
+            try
+            {
+                for( Enumeration<? extends ZipEntry> jarEntries = jar.entries(); jarEntries.hasMoreElements(); )
+                {
+                    ZipEntry entry = jarEntries.nextElement();
+                    entries.put( entry.getName(), entry.getCrc() );
+                }
+            }
+            finally
+            {
+                jar.close();
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * @return {@literal true} if the given JAR entries can be copied raw, see {@link RawZipFile}
+     */
+    /* package */ boolean isRawReadable( File jarFile )
+        throws IOException
+    {
+        try
+        {
+            new RawZipFile( jarFile ).close();
+            return true;
+        }
+        catch( ZipException ex )
+        {
+            log.info( "Leaving " + jarFile.getName() + " alone: " + ex.getMessage() );
+            return false;
+        }
+    }
+
+}
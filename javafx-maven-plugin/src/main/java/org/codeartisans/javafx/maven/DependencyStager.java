@@ -0,0 +1,244 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Stages files into a directory using a bounded thread pool.
+ *
+ * Targets already holding the same content are left untouched. Files are hard linked when source and target are on
+ * the same file store, copied otherwise. Files present in the target directory but not staged are removed.
+ */
+/* package */ class DependencyStager
+{
+
+    /* package */ enum Outcome
+    {
+
+        SKIPPED, LINKED, COPIED
+
+    }
+
+    private final Log log;
+    private final int threads;
+    private final boolean link;
+
+    /**
+     * @param threads Size of the staging thread pool, {@literal 0} for the number of available processors
+     * @param link    Hard link files when possible
+     */
+    /* package */ DependencyStager( Log log, int threads, boolean link )
+    {
+        this.log = log;
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.link = link;
+    }
+
+    /**
+     * @param targetDir Target directory
+     * @param files     Source files by target file name
+     *
+     * @return Number of bytes copied, linked and up to date files excluded
+     */
+    /* package */ long stage( File targetDir, Map<String, File> files )
+        throws IOException
+    {
+        Files.createDirectories( targetDir.toPath() );
+        pruneStaleFiles( targetDir, files.keySet() );
+
+        final FileStore targetStore = Files.getFileStore( targetDir.toPath() );
+        final AtomicInteger skipped = new AtomicInteger();
+        final AtomicLong copied = new AtomicLong();
+        ExecutorService executor = Executors.newFixedThreadPool( Math.min( threads, Math.max( 1, files.size() ) ) );
+        try
+        {
+            List<Future<Outcome>> futures = new ArrayList<Future<Outcome>>( files.size() );
+            for( Map.Entry<String, File> entry : files.entrySet() )
+            {
+                final Path source = entry.getValue().toPath();
+                final Path target = new File( targetDir, entry.getKey() ).toPath();
+                futures.add( executor.submit( new Callable<Outcome>()
+                {
+                    @Override
+                    public Outcome call()
+                        throws IOException
+                    {
+                        Outcome outcome = stage( source, target, targetStore );
+                        if( outcome == Outcome.SKIPPED )
+                        {
+                            skipped.incrementAndGet();
+                        }
+                        else if( outcome == Outcome.COPIED )
+                        {
+                            copied.addAndGet( Files.size( target ) );
+                        }
+                        return outcome;
+                    }
+
+                } ) );
+            }
+            for( Future<Outcome> future : futures )
+            {
+                await( future );
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+        log.info( "Staged " + files.size() + " file(s), " + skipped.get() + " already up to date." );
+        return copied.get();
+    }
+
+    private Outcome stage( Path source, Path target, FileStore targetStore )
+        throws IOException
+    {
+        long start = System.nanoTime();
+        long size = Files.size( source );
+        Outcome outcome;
+        if( isUpToDate( source, target ) )
+        {
+            outcome = Outcome.SKIPPED;
+        }
+        else
+        {
+            Files.deleteIfExists( target );
+            if( link && targetStore.equals( Files.getFileStore( source ) ) && createLink( source, target ) )
+            {
+                outcome = Outcome.LINKED;
+            }
+            else
+            {
+                Files.copy( source, target, StandardCopyOption.COPY_ATTRIBUTES );
+                outcome = Outcome.COPIED;
+            }
+        }
+        if( log.isDebugEnabled() )
+        {
+            long nanos = Math.max( 1, System.nanoTime() - start );
+            log.debug( outcome + " " + source + " (" + size + " bytes) in " + nanos / 1000000 + "ms, "
+                       + String.format( "%.1f", size * 1000d / nanos ) + " MB/s" );
+        }
+        return outcome;
+    }
+
+    private boolean isUpToDate( Path source, Path target )
+        throws IOException
+    {
+        if( !Files.exists( target ) )
+        {
+            return false;
+        }
+        if( Files.isSameFile( source, target ) )
+        {
+            // Hard link
+            return true;
+        }
+        // Copies may not preserve sub millisecond precision, compare times in milliseconds
+        return Files.size( source ) == Files.size( target )
+               && Files.getLastModifiedTime( source ).toMillis() == Files.getLastModifiedTime( target ).toMillis()
+               && Fingerprint.hash( source.toFile() ).equals( Fingerprint.hash( target.toFile() ) );
+    }
+
+    private boolean createLink( Path source, Path target )
+    {
+        try
+        {
+            Files.createLink( target, source );
+            return true;
+        }
+        catch( IOException ex )
+        {
+            log.debug( "Unable to link " + source + ", will copy it: " + ex.getMessage() );
+            return false;
+        }
+        catch( UnsupportedOperationException ex )
+        {
+            log.debug( "Unable to link " + source + ", will copy it: " + ex.getMessage() );
+            return false;
+        }
+    }
+
+    private void pruneStaleFiles( File targetDir, Set<String> names )
+        throws IOException
+    {
+        Set<String> expected = new HashSet<String>( names );
+        File[] existing = targetDir.listFiles();
+        if( existing == null )
+        {
+            throw new IOException( "Unable to list '" + targetDir + "'" );
+        }
+        for( File file : existing )
+        {
+            if( file.isFile() && !expected.contains( file.getName() ) )
+            {
+                log.debug( "Removing stale " + file );
+                Files.delete( file.toPath() );
+            }
+        }
+    }
+
+    /* package */ static <T> T await( Future<T> future )
+        throws IOException
+    {
+        try
+        {
+            return future.get();
+        }
+        catch( InterruptedException ex )
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException( "Interrupted", ex );
+        }
+        catch( ExecutionException ex )
+        {
+            Throwable cause = ex.getCause();
+            if( cause instanceof IOException )
+            {
+                throw (IOException) cause;
+            }
+            if( cause instanceof RuntimeException )
+            {
+                throw (RuntimeException) cause;
+            }
+            if( cause instanceof Error )
+            {
+                throw (Error) cause;
+            }
+            throw new IOException( cause );
+        }
+    }
+
+}
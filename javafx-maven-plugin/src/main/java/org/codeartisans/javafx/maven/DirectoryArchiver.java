@@ -0,0 +1,378 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Zip or tar a directory tree.
+ *
+ * Entries are streamed straight to the archive, files with an already compressed extension are stored, large ones
+ * can be deflated using several threads. Unix permissions and symbolic links are preserved. Gzipped tarballs are
+ * written by a single stream deflated by blocks using all threads, see {@link ParallelDeflater}.
+ */
+/* package */ class DirectoryArchiver
+{
+
+    private int level = Deflater.DEFAULT_COMPRESSION;
+    private Set<String> storedExtensions = new HashSet<String>();
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private long parallelThreshold;
+    private Long reproducibleTime;
+
+    /**
+     * @param level Deflate level, {@link Deflater#NO_COMPRESSION} to store all entries
+     */
+    /* package */ DirectoryArchiver level( int level )
+    {
+        this.level = level;
+        return this;
+    }
+
+    /**
+     * @param extensions Extensions of files to store without compression, case insensitive
+     */
+    /* package */ DirectoryArchiver storedExtensions( String... extensions )
+    {
+        storedExtensions = new HashSet<String>();
+        for( String extension : extensions )
+        {
+            String trimmed = extension.trim();
+            if( trimmed.length() > 0 )
+            {
+                storedExtensions.add( trimmed.toLowerCase( Locale.ENGLISH ) );
+            }
+        }
+        return this;
+    }
+
+    /**
+     * @param threshold Minimum size in bytes of files deflated using several threads, {@literal 0} to disable
+     * @param threads   Number of threads, {@literal 0} for the number of available processors
+     */
+    /* package */ DirectoryArchiver parallelDeflate( long threshold, int threads )
+    {
+        this.parallelThreshold = threshold;
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        return this;
+    }
+
+    /**
+     * @param time Time of all entries to produce a reproducible archive, {@literal null} to keep files times
+     */
+    /* package */ DirectoryArchiver reproducible( Long time )
+    {
+        this.reproducibleTime = time;
+        return this;
+    }
+
+    /**
+     * @param inputFingerprint Fingerprint of the archived content, {@literal null} if unknown
+     *
+     * @return Fingerprint of archives of that content written with this configuration, {@literal null} if the content
+     *         one is
+     */
+    /* package */ String fingerprint( String inputFingerprint )
+    {
+        if( inputFingerprint == null )
+        {
+            return null;
+        }
+        return new Fingerprint().
+            add( "input", inputFingerprint ).
+            add( "level", level ).
+            add( "storedExtensions", new TreeSet<String>( storedExtensions ) ).
+            add( "parallelThreshold", parallelThreshold ).
+            add( "threads", threads ).
+            add( "reproducibleTime", reproducibleTime ).
+            value();
+    }
+
+    /**
+     * @param sourceDir Directory to archive
+     * @param prefix    Prefix of the archive entries, empty or ending with a slash
+     * @param zipFile   Archive file to create, overwritten if it exists
+     */
+    /* package */ void zip( File sourceDir, String prefix, File zipFile )
+        throws IOException
+    {
+        ExecutorService executor = parallelThreshold > 0 ? Executors.newFixedThreadPool( threads ) : null;
+        RawZipWriter writer = new RawZipWriter( zipFile );
+        boolean success = false;
+        try
+        {
+            writer.setLevel( level );
+            writer.setParallelDeflate( executor, threads, parallelThreshold );
+            if( reproducibleTime != null )
+            {
+                writer.setReproducible( reproducibleTime );
+            }
+            if( prefix.length() > 0 )
+            {
+                writer.putDirectory( prefix, sourceDir.lastModified(), unixMode( sourceDir.toPath() ) );
+            }
+            addChildren( writer, sourceDir, prefix );
+            writer.close();
+            success = true;
+        }
+        finally
+        {
+            if( !success )
+            {
+                try
+                {
+                    writer.close();
+                }
+                catch( IOException ignored )
+                {
+                }
+                zipFile.delete();
+            }
+            if( executor != null )
+            {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * @param sourceDir Directory to archive
+     * @param prefix    Prefix of the archive entries, empty or ending with a slash
+     * @param tarFile   Archive file to create, overwritten if it exists
+     * @param gzip      Gzip the archive using several threads
+     */
+    /* package */ void tar( final File sourceDir, final String prefix, File tarFile, boolean gzip )
+        throws IOException
+    {
+        OutputStream output = new BufferedOutputStream( new FileOutputStream( tarFile ), 64 * 1024 );
+        boolean success = false;
+        try
+        {
+            if( gzip )
+            {
+                gzipTar( sourceDir, prefix, output );
+            }
+            else
+            {
+                writeTar( new TarWriter( output ), sourceDir, prefix );
+            }
+            output.close();
+            success = true;
+        }
+        finally
+        {
+            IOUtil.close( output );
+            if( !success )
+            {
+                tarFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Tar from a producer thread through a pipe to blocks deflated concurrently, framed as a single gzip member.
+     */
+    private void gzipTar( final File sourceDir, final String prefix, OutputStream output )
+        throws IOException
+    {
+        ExecutorService producer = Executors.newSingleThreadExecutor();
+        ExecutorService executor = Executors.newFixedThreadPool( threads );
+        PipedInputStream pipeInput = new PipedInputStream( 1024 * 1024 );
+        final PipedOutputStream pipeOutput = new PipedOutputStream( pipeInput );
+        try
+        {
+            Future<Void> tarring = producer.submit( new Callable<Void>()
+            {
+                @Override
+                public Void call()
+                    throws IOException
+                {
+                    writeTar( new TarWriter( new BufferedOutputStream( pipeOutput, 64 * 1024 ) ), sourceDir, prefix );
+                    return null;
+                }
+
+            } );
+            long time = reproducibleTime != null ? 0 : System.currentTimeMillis() / 1000;
+            output.write( new byte[]
+            {
+                0x1f, (byte) 0x8b, 8, 0,
+                (byte) time, (byte) ( time >> 8 ), (byte) ( time >> 16 ), (byte) ( time >> 24 ),
+                0, (byte) 0xff
+            } );
+            ParallelDeflater.Result result = new ParallelDeflater( executor, threads, level ).
+                deflate( pipeInput, output );
+            DependencyStager.await( tarring );
+            long size = result.size;
+            long crc = result.crc;
+            output.write( new byte[]
+            {
+                (byte) crc, (byte) ( crc >> 8 ), (byte) ( crc >> 16 ), (byte) ( crc >> 24 ),
+                (byte) size, (byte) ( size >> 8 ), (byte) ( size >> 16 ), (byte) ( size >> 24 )
+            } );
+        }
+        finally
+        {
+            // Unblocks the producer if deflating failed
+            IOUtil.close( pipeInput );
+            producer.shutdownNow();
+            executor.shutdownNow();
+        }
+    }
+
+    private void writeTar( TarWriter writer, File sourceDir, String prefix )
+        throws IOException
+    {
+        try
+        {
+            if( reproducibleTime != null )
+            {
+                writer.setReproducible( reproducibleTime );
+            }
+            if( prefix.length() > 0 )
+            {
+                writer.putDirectory( prefix, sourceDir.lastModified(), unixMode( sourceDir.toPath() ) );
+            }
+            addChildren( writer, sourceDir, prefix );
+        }
+        finally
+        {
+            writer.close();
+        }
+    }
+
+    private void addChildren( TarWriter writer, File dir, String prefix )
+        throws IOException
+    {
+        for( File child : sortedChildren( dir ) )
+        {
+            Path path = child.toPath();
+            String name = prefix + child.getName();
+            if( Files.isSymbolicLink( path ) )
+            {
+                writer.putSymbolicLink( name, child.lastModified(), Files.readSymbolicLink( path ).toString() );
+            }
+            else if( child.isDirectory() )
+            {
+                writer.putDirectory( name + "/", child.lastModified(), unixMode( path ) );
+                addChildren( writer, child, name + "/" );
+            }
+            else
+            {
+                int mode = unixMode( path );
+                if( mode == RawZipWriter.NO_MODE && child.canExecute() )
+                {
+                    mode = 0755;
+                }
+                writer.putEntry( name, child.lastModified(), mode, child );
+            }
+        }
+    }
+
+    private void addChildren( RawZipWriter writer, File dir, String prefix )
+        throws IOException
+    {
+        for( File child : sortedChildren( dir ) )
+        {
+            Path path = child.toPath();
+            String name = prefix + child.getName();
+            if( Files.isSymbolicLink( path ) )
+            {
+                writer.putSymbolicLink( name, child.lastModified(), Files.readSymbolicLink( path ).toString() );
+            }
+            else if( child.isDirectory() )
+            {
+                writer.putDirectory( name + "/", child.lastModified(), unixMode( path ) );
+                addChildren( writer, child, name + "/" );
+            }
+            else
+            {
+                boolean stored = storedExtensions.contains( FileUtils.extension( child.getName() ).
+                    toLowerCase( Locale.ENGLISH ) );
+                writer.setLevel( stored ? Deflater.NO_COMPRESSION : level );
+                writer.putEntry( name, child.lastModified(), unixMode( path ), child );
+            }
+        }
+    }
+
+    private static File[] sortedChildren( File dir )
+        throws IOException
+    {
+        File[] children = dir.listFiles();
+        if( children == null )
+        {
+            throw new IOException( "Unable to list '" + dir + "'" );
+        }
+        // Sort by name so that entries order does not depend on the file system
+        Arrays.sort( children, new Comparator<File>()
+        {
+            @Override
+            public int compare( File left, File right )
+            {
+                return left.getName().compareTo( right.getName() );
+            }
+
+        } );
+        return children;
+    }
+
+    /**
+     * @return Unix permissions of the given path, {@link RawZipWriter#NO_MODE} on non POSIX file systems
+     */
+    /* package */ static int unixMode( Path path )
+        throws IOException
+    {
+        Set<PosixFilePermission> permissions;
+        try
+        {
+            permissions = Files.getPosixFilePermissions( path, LinkOption.NOFOLLOW_LINKS );
+        }
+        catch( UnsupportedOperationException ex )
+        {
+            return RawZipWriter.NO_MODE;
+        }
+        int mode = 0;
+        for( PosixFilePermission permission : permissions )
+        {
+            // Enum order is OWNER_READ to OTHERS_EXECUTE, that is from 0400 down to 0001
+            mode |= 0400 >> permission.ordinal();
+        }
+        return mode;
+    }
+
+}
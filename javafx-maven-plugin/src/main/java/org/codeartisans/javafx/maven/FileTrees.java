@@ -0,0 +1,168 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * File tree utilities preserving symbolic links and file attributes, as needed by native bundles.
+ */
+/* package */ final class FileTrees
+{
+
+    /**
+     * Copy a file tree, symbolic links are copied as links, attributes are preserved.
+     */
+    /* package */ static void copy( final Path source, final Path target )
+        throws IOException
+    {
+        Files.walkFileTree( source, new SimpleFileVisitor<Path>()
+        {
+            @Override
+            public FileVisitResult preVisitDirectory( Path dir, BasicFileAttributes attrs )
+                throws IOException
+            {
+                Files.createDirectories( target.resolve( source.relativize( dir ).toString() ) );
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile( Path file, BasicFileAttributes attrs )
+                throws IOException
+            {
+                Files.copy( file, target.resolve( source.relativize( file ).toString() ),
+                            StandardCopyOption.COPY_ATTRIBUTES, LinkOption.NOFOLLOW_LINKS );
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory( Path dir, IOException failure )
+                throws IOException
+            {
+                if( failure != null )
+                {
+                    throw failure;
+                }
+                // Set once the directory content is written
+                Files.setLastModifiedTime( target.resolve( source.relativize( dir ).toString() ),
+                                           Files.getLastModifiedTime( dir ) );
+                return FileVisitResult.CONTINUE;
+            }
+
+        } );
+    }
+
+    /**
+     * Delete a file tree, symbolic links are deleted, not followed. Does nothing if the path does not exist.
+     */
+    /* package */ static void delete( Path root )
+        throws IOException
+    {
+        if( !Files.exists( root, LinkOption.NOFOLLOW_LINKS ) )
+        {
+            return;
+        }
+        Files.walkFileTree( root, new SimpleFileVisitor<Path>()
+        {
+            @Override
+            public FileVisitResult visitFile( Path file, BasicFileAttributes attrs )
+                throws IOException
+            {
+                Files.delete( file );
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory( Path dir, IOException failure )
+                throws IOException
+            {
+                if( failure != null )
+                {
+                    throw failure;
+                }
+                Files.delete( dir );
+                return FileVisitResult.CONTINUE;
+            }
+
+        } );
+    }
+
+    /**
+     * @return Total size in bytes of the regular files of a file tree, {@literal 0} if the path does not exist
+     */
+    /* package */ static long size( Path root )
+        throws IOException
+    {
+        if( !Files.exists( root ) )
+        {
+            return 0;
+        }
+        final long[] size = new long[ 1 ];
+        Files.walkFileTree( root, new SimpleFileVisitor<Path>()
+        {
+            @Override
+            public FileVisitResult visitFile( Path file, BasicFileAttributes attrs )
+            {
+                if( attrs.isRegularFile() )
+                {
+                    size[0] += attrs.size();
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+        } );
+        return size[0];
+    }
+
+    /**
+     * @return Number of regular files of a file tree, {@literal 0} if the path does not exist
+     */
+    /* package */ static int count( Path root )
+        throws IOException
+    {
+        if( !Files.exists( root ) )
+        {
+            return 0;
+        }
+        final int[] count = new int[ 1 ];
+        Files.walkFileTree( root, new SimpleFileVisitor<Path>()
+        {
+            @Override
+            public FileVisitResult visitFile( Path file, BasicFileAttributes attrs )
+            {
+                if( attrs.isRegularFile() )
+                {
+                    count[0]++;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+        } );
+        return count[0];
+    }
+
+    private FileTrees()
+    {
+    }
+
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Content hash of a packaging stage inputs.
+ *
+ * Strings, files and directory trees are fed in a stable order to a SHA-1 digest, the resulting hexadecimal
+ * value is what gets recorded in the {@link FingerprintManifest}.
+ */
+/* package */ class Fingerprint
+{
+
+    private static final Charset UTF_8 = Charset.forName( "UTF-8" );
+    private final MessageDigest digest;
+
+    /* package */ Fingerprint()
+    {
+        digest = newDigest( "SHA-1" );
+    }
+
+    /* package */ Fingerprint add( String name, Object value )
+    {
+        update( name );
+        update( value == null ? "<null>" : String.valueOf( value ) );
+        return this;
+    }
+
+    /* package */ Fingerprint add( String name, Collection<?> values )
+    {
+        update( name );
+        update( values == null ? "<null>" : String.valueOf( values.size() ) );
+        if( values != null )
+        {
+            for( Object value : values )
+            {
+                update( String.valueOf( value ) );
+            }
+        }
+        return this;
+    }
+
+    /* package */ Fingerprint add( String name, Map<?, ?> values )
+    {
+        update( name );
+        update( values == null ? "<null>" : String.valueOf( values.size() ) );
+        if( values != null )
+        {
+            // Map iteration order is not stable, sort entries
+            Map<String, String> sorted = new TreeMap<String, String>();
+            for( Map.Entry<?, ?> entry : values.entrySet() )
+            {
+                sorted.put( String.valueOf( entry.getKey() ), String.valueOf( entry.getValue() ) );
+            }
+            for( Map.Entry<String, String> entry : sorted.entrySet() )
+            {
+                update( entry.getKey() );
+                update( entry.getValue() );
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Add a file or directory tree, by content.
+     */
+    /* package */ Fingerprint addFile( String name, File file )
+        throws IOException
+    {
+        update( name );
+        if( file == null || !file.exists() )
+        {
+            update( "<missing>" );
+        }
+        else if( file.isDirectory() )
+        {
+            addTree( file, "" );
+        }
+        else
+        {
+            update( hash( file ) );
+        }
+        return this;
+    }
+
+    /* package */ Fingerprint addFiles( String name, Collection<File> files )
+        throws IOException
+    {
+        update( name );
+        update( files == null ? "<null>" : String.valueOf( files.size() ) );
+        if( files != null )
+        {
+            for( File file : files )
+            {
+                addFile( file.getName(), file );
+            }
+        }
+        return this;
+    }
+
+    /* package */ String value()
+    {
+        return toHex( digest.digest() );
+    }
+
+    private void addTree( File dir, String prefix )
+        throws IOException
+    {
+        File[] children = dir.listFiles();
+        if( children == null )
+        {
+            throw new IOException( "Unable to list '" + dir + "'" );
+        }
+        Arrays.sort( children );
+        for( File child : children )
+        {
+            String path = prefix + child.getName();
+            if( child.isDirectory() )
+            {
+                update( path + "/" );
+                addTree( child, path + "/" );
+            }
+            else
+            {
+                update( path );
+                update( hash( child ) );
+            }
+        }
+    }
+
+    private void update( String value )
+    {
+        byte[] bytes = value.getBytes( UTF_8 );
+        // Length prefix so that ("ab","c") and ("a","bc") do not collide
+        digest.update( (byte) ( bytes.length >>> 24 ) );
+        digest.update( (byte) ( bytes.length >>> 16 ) );
+        digest.update( (byte) ( bytes.length >>> 8 ) );
+        digest.update( (byte) bytes.length );
+        digest.update( bytes );
+    }
+
+    /**
+     * @return Hexadecimal SHA-1 of the given file content
+     */
+    /* package */ static String hash( File file )
+        throws IOException
+    {
+        return hash( file, "SHA-1" );
+    }
+
+    /* package */ static String hash( File file, String algorithm )
+        throws IOException
+    {
+        MessageDigest fileDigest = newDigest( algorithm );
+        InputStream input = null;
+        try
+        {
+            input = new FileInputStream( file );
+            byte[] buffer = new byte[ 64 * 1024 ];
+            int count;
+            while( ( count = input.read( buffer ) ) != -1 )
+            {
+                fileDigest.update( buffer, 0, count );
+            }
+            return toHex( fileDigest.digest() );
+        }
+        finally
+        {
+            IOUtil.close( input );
+        }
+    }
+
+    /* package */ static String toHex( byte[] bytes )
+    {
+        char[] hex = new char[ bytes.length * 2 ];
+        for( int idx = 0; idx < bytes.length; idx++ )
+        {
+            hex[idx * 2] = Character.forDigit( ( bytes[idx] >> 4 ) & 0xF, 16 );
+            hex[idx * 2 + 1] = Character.forDigit( bytes[idx] & 0xF, 16 );
+        }
+        return new String( hex );
+    }
+
+    private static MessageDigest newDigest( String algorithm )
+    {
+        try
+        {
+            return MessageDigest.getInstance( algorithm );
+        }
+        catch( NoSuchAlgorithmException ex )
+        {
+            throw new IllegalStateException( algorithm + " not available in this JVM", ex );
+        }
+    }
+
+}
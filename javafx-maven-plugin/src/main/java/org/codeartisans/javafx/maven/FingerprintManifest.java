@@ -0,0 +1,136 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Stage fingerprints recorded by the previous packaging run.
+ *
+ * Stored as a properties file in the build directory. A stage is up to date when its freshly computed
+ * {@link Fingerprint} equals the recorded one and all of its outputs are still present. When incremental
+ * packaging is disabled every stage is reported as out of date and nothing is written.
+ */
+/* package */ class FingerprintManifest
+{
+
+    /* package */ static final String FILENAME = "javafx-fingerprints.properties";
+    private final File file;
+    private final boolean enabled;
+    private final Properties fingerprints = new Properties();
+
+    /* package */ static FingerprintManifest load( File buildDir, boolean enabled )
+        throws IOException
+    {
+        FingerprintManifest manifest = new FingerprintManifest( new File( buildDir, FILENAME ), enabled );
+        if( enabled && manifest.file.isFile() )
+        {
+            InputStream input = null;
+            try
+            {
+                input = new FileInputStream( manifest.file );
+                manifest.fingerprints.load( input );
+            }
+            finally
+            {
+                IOUtil.close( input );
+            }
+        }
+        return manifest;
+    }
+
+    private FingerprintManifest( File file, boolean enabled )
+    {
+        this.file = file;
+        this.enabled = enabled;
+    }
+
+    /* package */ boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /* package */ String get( String stage )
+    {
+        return fingerprints.getProperty( stage );
+    }
+
+    /* package */ boolean isUpToDate( String stage, String fingerprint, File... outputs )
+    {
+        if( !enabled || !fingerprint.equals( fingerprints.getProperty( stage ) ) )
+        {
+            return false;
+        }
+        for( File output : outputs )
+        {
+            if( !output.exists() )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Record a stage fingerprint, call once the stage has successfully completed.
+     */
+    /* package */ void record( String stage, String fingerprint )
+        throws IOException
+    {
+        if( !enabled )
+        {
+            return;
+        }
+        fingerprints.setProperty( stage, fingerprint );
+        save();
+    }
+
+    /**
+     * Forget a stage fingerprint, call before running a stage so that a failed run is never seen as up to date.
+     */
+    /* package */ void invalidate( String stage )
+        throws IOException
+    {
+        if( !enabled || fingerprints.remove( stage ) == null )
+        {
+            return;
+        }
+        save();
+    }
+
+    private void save()
+        throws IOException
+    {
+        OutputStream output = null;
+        try
+        {
+            output = new FileOutputStream( file );
+            fingerprints.store( output, "JavaFX packaging stages fingerprints" );
+        }
+        finally
+        {
+            IOUtil.close( output );
+        }
+    }
+
+}
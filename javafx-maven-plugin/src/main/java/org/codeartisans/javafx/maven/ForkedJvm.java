@@ -0,0 +1,190 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.IOUtil;
+import org.codehaus.plexus.util.StringUtils;
+
+/**
+ * JVM forked from the runtime running the build, which is the one the packager bundles with the application.
+ */
+/* package */ class ForkedJvm
+{
+
+    /**
+     * Prefix of the training launcher classes names as JVM class lists and logs refer to them.
+     */
+    /* package */ static final String TRAINING_LAUNCHER = TrainingLauncher.class.getName().replace( '.', '/' );
+    private static final String STARTUP_PROBE = "org.codeartisans.javafx.maven.StartupProbe";
+    private final Log log;
+    private final File javaExecutable;
+
+    /* package */ ForkedJvm( Log log )
+    {
+        this.log = log;
+        this.javaExecutable = new File( System.getProperty( "java.home" ), "bin/java" );
+    }
+
+    /**
+     * Run the application for a while through {@link TrainingLauncher}, killed if it does not exit by itself.
+     *
+     * @param jvmArgs      JVM arguments of the training run
+     * @param classpath    Application class path, the training launcher is appended to it
+     * @param mainClass    Class run for training
+     * @param seconds      Training duration
+     *
+     * @return Exit code
+     */
+    /* package */ int train( List<String> jvmArgs, List<File> classpath, String mainClass, int seconds,
+                             File logFile )
+        throws IOException
+    {
+        List<File> trainingClasspath = new ArrayList<File>( classpath );
+        trainingClasspath.add( launcherJar() );
+        List<String> args = new ArrayList<String>();
+        args.add( String.valueOf( seconds ) );
+        args.add( mainClass );
+        return run( jvmArgs, trainingClasspath, TrainingLauncher.class.getName(), args, logFile, seconds + 60 );
+    }
+
+    /**
+     * Measure the time from the JVM launch to the JavaFX application start through {@link StartupProbe}.
+     *
+     * @param classpath        Application class path, the probe is appended to it
+     * @param applicationClass JavaFX application class
+     *
+     * @return Startup time in milliseconds, {@literal -1} if the application did not start
+     */
+    /* package */ long probeStartup( List<String> jvmArgs, List<File> classpath, String applicationClass,
+                                     File logFile, int timeoutSeconds )
+        throws IOException
+    {
+        List<File> probeClasspath = new ArrayList<File>( classpath );
+        probeClasspath.add( launcherJar() );
+        FileUtils.fileDelete( logFile.getAbsolutePath() );
+        long launch = System.currentTimeMillis();
+        // Referenced by name, JavaFX may not be on the class path of the JVM running the build
+        int exitCode = run( jvmArgs, probeClasspath, STARTUP_PROBE, Collections.singletonList( applicationClass ),
+                            logFile, timeoutSeconds );
+        BufferedReader reader = new BufferedReader( new FileReader( logFile ) );
+        try
+        {
+            for( String line = reader.readLine(); line != null; line = reader.readLine() )
+            {
+                if( line.startsWith( StartupProbe.BEFORE_START ) )
+                {
+                    return Long.parseLong( line.substring( StartupProbe.BEFORE_START.length() ).trim() ) - launch;
+                }
+            }
+        }
+        finally
+        {
+            IOUtil.close( reader );
+        }
+        log.warn( "Application did not start during the startup probe, exit code " + exitCode + ", see " + logFile );
+        return -1;
+    }
+
+    /**
+     * @param mainClass Main class, {@literal null} to only run the JVM with the given arguments
+     *
+     * @return Exit code
+     */
+    /* package */ int run( List<String> jvmArgs, List<File> classpath, String mainClass, List<String> args,
+                           File logFile, int timeoutSeconds )
+        throws IOException
+    {
+        List<String> command = new ArrayList<String>();
+        command.add( javaExecutable.getAbsolutePath() );
+        command.addAll( jvmArgs );
+        command.add( "-cp" );
+        command.add( classpath( classpath ) );
+        if( mainClass != null )
+        {
+            command.add( mainClass );
+            command.addAll( args );
+        }
+        log.debug( "Running " + StringUtils.join( command.iterator(), " " ) );
+        ProcessBuilder builder = new ProcessBuilder( command );
+        builder.redirectErrorStream( true );
+        builder.redirectOutput( ProcessBuilder.Redirect.appendTo( logFile ) );
+        final Process process = builder.start();
+        Timer timer = new Timer( "forked-jvm-timeout", true );
+        timer.schedule( new TimerTask()
+        {
+            @Override
+            public void run()
+            {
+                process.destroy();
+            }
+
+        }, timeoutSeconds * 1000L );
+        try
+        {
+            return process.waitFor();
+        }
+        catch( InterruptedException ex )
+        {
+            Thread.currentThread().interrupt();
+            process.destroy();
+            throw new IOException( "Interrupted", ex );
+        }
+        finally
+        {
+            timer.cancel();
+        }
+    }
+
+    private static File launcherJar()
+        throws IOException
+    {
+        try
+        {
+            return new File( TrainingLauncher.class.getProtectionDomain().getCodeSource().getLocation().toURI() );
+        }
+        catch( URISyntaxException ex )
+        {
+            throw new IOException( "Unable to locate the plugin JAR", ex );
+        }
+    }
+
+    private static String classpath( List<File> files )
+    {
+        StringBuilder classpath = new StringBuilder();
+        for( File file : files )
+        {
+            if( classpath.length() > 0 )
+            {
+                classpath.append( File.pathSeparatorChar );
+            }
+            classpath.append( file.getAbsolutePath() );
+        }
+        return classpath.toString();
+    }
+
+}
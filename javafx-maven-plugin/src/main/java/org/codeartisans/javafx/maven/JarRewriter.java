@@ -0,0 +1,333 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Streams the project JAR into the JavaFX JAR.
+ *
+ * The JavaFX packager is only used to produce a tiny launcher JAR holding the JavaFX launcher classes and manifest
+ * attributes. The project JAR entries are then copied raw, without being inflated and deflated again, next to them.
+ */
+/* package */ class JarRewriter
+{
+
+    private static final String META_INF = "META-INF/";
+
+    /**
+     * Extract the project JAR manifest, if any, so that the packager gets a minimal resource to build the launcher
+     * JAR from.
+     *
+     * @return {@literal true} if the project JAR has a manifest
+     */
+    /* package */ static boolean extractManifest( File projectJar, File targetDir )
+        throws IOException
+    {
+        RawZipFile project = new RawZipFile( projectJar );
+        try
+        {
+            RawZipFile.Entry manifest = project.getEntry( JarFile.MANIFEST_NAME );
+            if( manifest == null )
+            {
+                return false;
+            }
+            File manifestFile = new File( targetDir, JarFile.MANIFEST_NAME );
+            FileUtils.forceMkdir( manifestFile.getParentFile() );
+            InputStream input = project.open( manifest );
+            OutputStream output = new FileOutputStream( manifestFile );
+            try
+            {
+                IOUtil.copy( input, output );
+            }
+            finally
+            {
+                IOUtil.close( output );
+                IOUtil.close( input );
+            }
+            return true;
+        }
+        finally
+        {
+            project.close();
+        }
+    }
+
+    /**
+     * Write the JavaFX JAR.
+     *
+     * The manifest is the project one with the launcher main attributes applied on top, then come the launcher
+     * entries and finally the project entries.
+     *
+     * @param reproducibleTime Time of all entries to produce a reproducible JAR with sorted entries, {@literal null}
+     *                         to keep entries order and times
+     */
+    /* package */ static void rewrite( File projectJar, File launcherJar, File outputJar, Long reproducibleTime )
+        throws IOException
+    {
+        RawZipFile project = new RawZipFile( projectJar );
+        RawZipFile launcher = null;
+        RawZipWriter output = null;
+        boolean success = false;
+        try
+        {
+            launcher = new RawZipFile( launcherJar );
+            output = new RawZipWriter( outputJar );
+            long now = System.currentTimeMillis();
+            if( reproducibleTime != null )
+            {
+                output.setReproducible( reproducibleTime );
+            }
+
+            output.putDirectory( META_INF, now );
+            output.putEntry( JarFile.MANIFEST_NAME, now, mergeManifests( project, launcher ) );
+
+            // Launcher entries take precedence over project ones
+            Map<String, RawZipFile> sources = new LinkedHashMap<String, RawZipFile>();
+            Map<String, RawZipFile.Entry> entries = reproducibleTime != null
+                                                    ? new TreeMap<String, RawZipFile.Entry>()
+                                                    : new LinkedHashMap<String, RawZipFile.Entry>();
+            for( RawZipFile zip : new RawZipFile[]
+            {
+                launcher, project
+            } )
+            {
+                for( RawZipFile.Entry entry : zip.entries() )
+                {
+                    if( !output.contains( entry.name ) && !entries.containsKey( entry.name ) )
+                    {
+                        entries.put( entry.name, entry );
+                        sources.put( entry.name, zip );
+                    }
+                }
+            }
+            for( RawZipFile.Entry entry : entries.values() )
+            {
+                output.copyEntry( sources.get( entry.name ), entry );
+            }
+
+            output.close();
+            success = true;
+        }
+        finally
+        {
+            closeQuietly( output );
+            closeQuietly( launcher );
+            project.close();
+            if( !success )
+            {
+                outputJar.delete();
+            }
+        }
+    }
+
+    /**
+     * Rewrite a JAR in place with the given changes applied, untouched entries are copied raw and keep their order.
+     *
+     * @param changes          Changed entry names mapped to their content, {@literal null} for removed entries in
+     *                         which case the entries below a removed directory are also removed. The manifest is never
+     *                         changed, it holds the launcher attributes.
+     * @param reproducibleTime Time of all entries, {@literal null} to use the changed files times
+     *
+     * @return Number of entries replaced, added or removed
+     */
+    /* package */ static int update( File jar, Map<String, File> changes, Long reproducibleTime )
+        throws IOException
+    {
+        File updated = new File( jar.getParentFile(), jar.getName() + ".updated" );
+        Map<String, File> pending = new TreeMap<String, File>( changes );
+        pending.remove( JarFile.MANIFEST_NAME );
+        RawZipFile input = new RawZipFile( jar );
+        RawZipWriter output = null;
+        boolean success = false;
+        int count = 0;
+        try
+        {
+            output = new RawZipWriter( updated );
+            if( reproducibleTime != null )
+            {
+                output.setReproducible( reproducibleTime );
+            }
+            for( RawZipFile.Entry entry : input.entries() )
+            {
+                if( isRemoved( entry.name, pending ) )
+                {
+                    count++;
+                }
+                else if( pending.containsKey( entry.name ) )
+                {
+                    File source = pending.remove( entry.name );
+                    output.putEntry( entry.name, source.lastModified(), source );
+                    count++;
+                }
+                else
+                {
+                    output.copyEntry( input, entry );
+                }
+            }
+            for( Map.Entry<String, File> added : pending.entrySet() )
+            {
+                if( added.getValue() != null && !output.contains( added.getKey() ) )
+                {
+                    output.putEntry( added.getKey(), added.getValue().lastModified(), added.getValue() );
+                    count++;
+                }
+            }
+            output.close();
+            success = true;
+        }
+        finally
+        {
+            closeQuietly( output );
+            input.close();
+            if( !success )
+            {
+                updated.delete();
+            }
+        }
+        FileUtils.forceDelete( jar );
+        FileUtils.rename( updated, jar );
+        return count;
+    }
+
+    private static boolean isRemoved( String name, Map<String, File> changes )
+    {
+        String path = name.endsWith( "/" ) ? name.substring( 0, name.length() - 1 ) : name;
+        for( int idx = path.length(); idx > 0; idx = path.lastIndexOf( '/', idx - 1 ) )
+        {
+            String candidate = path.substring( 0, idx );
+            if( changes.containsKey( candidate ) && changes.get( candidate ) == null )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Rewrite a JAR in place with sorted entries, all with the given time and normalized permissions, the manifest
+     * first.
+     */
+    /* package */ static void normalize( File jar, long reproducibleTime )
+        throws IOException
+    {
+        File normalized = new File( jar.getParentFile(), jar.getName() + ".normalized" );
+        RawZipFile input = new RawZipFile( jar );
+        RawZipWriter output = null;
+        boolean success = false;
+        try
+        {
+            output = new RawZipWriter( normalized );
+            output.setReproducible( reproducibleTime );
+            Map<String, RawZipFile.Entry> entries = new TreeMap<String, RawZipFile.Entry>();
+            for( RawZipFile.Entry entry : input.entries() )
+            {
+                entries.put( entry.name, entry );
+            }
+            for( String first : new String[]
+            {
+                META_INF, JarFile.MANIFEST_NAME
+            } )
+            {
+                RawZipFile.Entry entry = entries.remove( first );
+                if( entry != null )
+                {
+                    output.copyEntry( input, entry );
+                }
+            }
+            for( RawZipFile.Entry entry : entries.values() )
+            {
+                output.copyEntry( input, entry );
+            }
+            output.close();
+            success = true;
+        }
+        finally
+        {
+            closeQuietly( output );
+            input.close();
+            if( !success )
+            {
+                normalized.delete();
+            }
+        }
+        FileUtils.forceDelete( jar );
+        FileUtils.rename( normalized, jar );
+    }
+
+    private static byte[] mergeManifests( RawZipFile project, RawZipFile launcher )
+        throws IOException
+    {
+        Manifest merged = readManifest( project );
+        Manifest launcherManifest = readManifest( launcher );
+        merged.getMainAttributes().putAll( launcherManifest.getMainAttributes() );
+        merged.getEntries().putAll( launcherManifest.getEntries() );
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        merged.write( bytes );
+        return bytes.toByteArray();
+    }
+
+    private static Manifest readManifest( RawZipFile zip )
+        throws IOException
+    {
+        RawZipFile.Entry entry = zip.getEntry( JarFile.MANIFEST_NAME );
+        if( entry == null )
+        {
+            return new Manifest();
+        }
+        InputStream input = zip.open( entry );
+        try
+        {
+            return new Manifest( input );
+        }
+        finally
+        {
+            IOUtil.close( input );
+        }
+    }
+
+    /* package */ static void closeQuietly( Closeable closeable )
+    {
+        if( closeable != null )
+        {
+            try
+            {
+                closeable.close();
+            }
+            catch( IOException ignored )
+            {
+            }
+        }
+    }
+
+    private JarRewriter()
+    {
+    }
+
+}
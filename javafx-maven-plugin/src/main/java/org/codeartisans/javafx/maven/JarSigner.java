@@ -0,0 +1,315 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.cert.Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Signs JARs concurrently with forked {@literal jarsigner} processes.
+ *
+ * Signed JARs are kept in a local cache keyed by the unsigned JAR content, the signing certificate and the timestamp
+ * authority so that unchanged JARs, third party dependencies for example, are signed once. Signed JARs are written
+ * next to the unsigned ones then moved in place, staged JARs may be hard links to the local repository and are never
+ * modified in place.
+ */
+/* package */ class JarSigner
+{
+
+    private static final String STOREPASS_ENV = "JAVAFX_SIGN_STOREPASS";
+    private static final String KEYPASS_ENV = "JAVAFX_SIGN_KEYPASS";
+    private final Log log;
+    private final File keystore;
+    private final String storetype;
+    private final String storepass;
+    private final String alias;
+    private final String keypass;
+    private final String tsaUrl;
+    private final File cacheDir;
+    private final int threads;
+
+    /**
+     * @param keypass   Key password, {@literal null} for the keystore password
+     * @param tsaUrl    Timestamp authority URL, {@literal null} for no timestamp
+     * @param threads   Number of JARs signed concurrently, {@literal 0} for the number of available processors
+     */
+    /* package */ JarSigner( Log log, File keystore, String storetype, String storepass, String alias, String keypass,
+                             String tsaUrl, File cacheDir, int threads )
+    {
+        this.log = log;
+        this.keystore = keystore;
+        this.storetype = storetype;
+        this.storepass = storepass;
+        this.alias = alias;
+        this.keypass = keypass == null ? storepass : keypass;
+        this.tsaUrl = tsaUrl;
+        this.cacheDir = cacheDir;
+        this.threads = threads;
+    }
+
+    /**
+     * Sign the given JARs in place.
+     *
+     * @return Number of JARs actually signed, the others were taken from the cache
+     */
+    /* package */ int sign( List<File> jars )
+        throws IOException
+    {
+        if( jars.isEmpty() )
+        {
+            return 0;
+        }
+        final String certificate = certificateFingerprint();
+        Files.createDirectories( cacheDir.toPath() );
+        final AtomicInteger signed = new AtomicInteger();
+        int poolSize = Math.min( threads > 0 ? threads : Runtime.getRuntime().availableProcessors(), jars.size() );
+        ExecutorService executor = Executors.newFixedThreadPool( poolSize );
+        try
+        {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for( final File jar : jars )
+            {
+                futures.add( executor.submit( new Callable<Void>()
+                {
+                    @Override
+                    public Void call()
+                        throws IOException
+                    {
+                        if( sign( jar, certificate ) )
+                        {
+                            signed.incrementAndGet();
+                        }
+                        return null;
+                    }
+
+                } ) );
+            }
+            for( Future<Void> future : futures )
+            {
+                DependencyStager.await( future );
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+        log.info( "Signed " + signed.get() + " JAR(s), " + ( jars.size() - signed.get() ) + " from cache" );
+        return signed.get();
+    }
+
+    /**
+     * @return {@literal true} if signed, {@literal false} if taken from the cache
+     */
+    private boolean sign( File jar, String certificate )
+        throws IOException
+    {
+        String key = new Fingerprint().
+            add( "jar", Fingerprint.hash( jar ) ).
+            add( "certificate", certificate ).
+            add( "alias", alias ).
+            add( "tsaUrl", tsaUrl ).
+            value();
+        Path cached = cacheDir.toPath().resolve( key + ".jar" );
+        Path temp = jar.toPath().resolveSibling( jar.getName() + ".signed-" + UUID.randomUUID() );
+        try
+        {
+            boolean signed = false;
+            try
+            {
+                Files.copy( cached, temp );
+                log.debug( "Signed " + jar.getName() + " taken from cache " + cached );
+            }
+            catch( NoSuchFileException ex )
+            {
+                jarsigner( jar, temp.toFile() );
+                store( temp, cached );
+                signed = true;
+            }
+            move( temp, jar.toPath() );
+            return signed;
+        }
+        finally
+        {
+            Files.deleteIfExists( temp );
+        }
+    }
+
+    private void jarsigner( File jar, File signedJar )
+        throws IOException
+    {
+        List<String> command = new ArrayList<String>();
+        command.add( jarsignerExecutable().getAbsolutePath() );
+        command.add( "-keystore" );
+        command.add( keystore.getAbsolutePath() );
+        command.add( "-storetype" );
+        command.add( storetype );
+        // Passwords are given through the environment to keep them out of process listings
+        command.add( "-storepass:env" );
+        command.add( STOREPASS_ENV );
+        command.add( "-keypass:env" );
+        command.add( KEYPASS_ENV );
+        if( tsaUrl != null )
+        {
+            command.add( "-tsa" );
+            command.add( tsaUrl );
+        }
+        command.add( "-signedjar" );
+        command.add( signedJar.getAbsolutePath() );
+        command.add( jar.getAbsolutePath() );
+        command.add( alias );
+        ProcessBuilder builder = new ProcessBuilder( command );
+        Map<String, String> environment = builder.environment();
+        environment.put( STOREPASS_ENV, storepass );
+        environment.put( KEYPASS_ENV, keypass );
+        builder.redirectErrorStream( true );
+        Process process = builder.start();
+        InputStream output = process.getInputStream();
+        String outputText;
+        try
+        {
+            outputText = IOUtil.toString( output );
+        }
+        finally
+        {
+            IOUtil.close( output );
+        }
+        try
+        {
+            int exitCode = process.waitFor();
+            if( exitCode != 0 )
+            {
+                throw new IOException( "jarsigner exited with " + exitCode + " signing " + jar.getName() + ": "
+                                       + outputText.trim() );
+            }
+            log.debug( "Signed " + jar.getName() + ": " + outputText.trim() );
+        }
+        catch( InterruptedException ex )
+        {
+            Thread.currentThread().interrupt();
+            process.destroy();
+            throw new IOException( "Interrupted", ex );
+        }
+    }
+
+    /**
+     * Atomically add a signed JAR to the cache, concurrent builds may sign the same JAR.
+     */
+    private void store( Path signed, Path cached )
+        throws IOException
+    {
+        Path temp = cached.resolveSibling( ".tmp-" + cached.getFileName() + "-" + UUID.randomUUID() );
+        try
+        {
+            Files.copy( signed, temp );
+            Files.move( temp, cached, StandardCopyOption.ATOMIC_MOVE );
+        }
+        catch( FileAlreadyExistsException ex )
+        {
+            log.debug( "Signed JAR " + cached.getFileName() + " concurrently stored in cache" );
+        }
+        catch( AtomicMoveNotSupportedException ex )
+        {
+            Files.move( temp, cached, StandardCopyOption.REPLACE_EXISTING );
+        }
+        finally
+        {
+            Files.deleteIfExists( temp );
+        }
+    }
+
+    /**
+     * Replace the target by the source, the target is replaced and not written so that its hard links are untouched.
+     */
+    private static void move( Path source, Path target )
+        throws IOException
+    {
+        try
+        {
+            Files.move( source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+        }
+        catch( AtomicMoveNotSupportedException ex )
+        {
+            Files.move( source, target, StandardCopyOption.REPLACE_EXISTING );
+        }
+    }
+
+    /**
+     * @return SHA-256 of the signing certificate
+     */
+    private String certificateFingerprint()
+        throws IOException
+    {
+        InputStream input = new FileInputStream( keystore );
+        try
+        {
+            KeyStore store = KeyStore.getInstance( storetype );
+            store.load( input, storepass == null ? null : storepass.toCharArray() );
+            Certificate certificate = store.getCertificate( alias );
+            if( certificate == null )
+            {
+                throw new IOException( "No certificate for alias '" + alias + "' in keystore " + keystore );
+            }
+            return Fingerprint.toHex( MessageDigest.getInstance( "SHA-256" ).digest( certificate.getEncoded() ) );
+        }
+        catch( GeneralSecurityException ex )
+        {
+            throw new IOException( "Unable to read keystore " + keystore, ex );
+        }
+        finally
+        {
+            IOUtil.close( input );
+        }
+    }
+
+    /**
+     * @return jarsigner of the JDK running the build, {@literal java.home} is its JRE on Java 8 and older
+     */
+    private static File jarsignerExecutable()
+    {
+        String name = File.separatorChar == '\\' ? "jarsigner.exe" : "jarsigner";
+        File javaHome = new File( System.getProperty( "java.home" ) );
+        File jarsigner = new File( javaHome, "bin/" + name );
+        if( !jarsigner.isFile() )
+        {
+            jarsigner = new File( javaHome.getParentFile(), "bin/" + name );
+        }
+        return jarsigner;
+    }
+
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Keeps the JavaFX JAR and its copies in application images up to date with watched trees, until interrupted.
+ *
+ * Only the changed entries of the JavaFX JAR are rewritten, see {@link JarRewriter#update}. Copies are then replaced
+ * as a whole, never written in place as they may be hard linked or in use.
+ */
+/* package */ class JarUpdater
+{
+
+    private final Log log;
+    private final File javaFxJar;
+    private final List<File> copies;
+    private final Long reproducibleTime;
+
+    /**
+     * @param reproducibleTime Time of the updated entries, {@literal null} for their modification time
+     */
+    /* package */ JarUpdater( Log log, File javaFxJar, List<File> copies, Long reproducibleTime )
+    {
+        this.log = log;
+        this.javaFxJar = javaFxJar;
+        this.copies = copies;
+        this.reproducibleTime = reproducibleTime;
+    }
+
+    /**
+     * @param fingerprints   Fingerprints of the execution, the JavaFX JAR creation is invalidated on each update so
+     *                       that the next package run rebuilds it
+     * @param debounceMillis Delay without changes after which changes are applied
+     */
+    /* package */ void watch( TreeWatcher watcher, FingerprintManifest fingerprints, long debounceMillis )
+        throws IOException, InterruptedException
+    {
+        while( true )
+        {
+            Map<String, File> changes = watcher.await( debounceMillis );
+            long start = System.currentTimeMillis();
+            // The JAR no longer is the one recorded, have the next package run rebuild it
+            fingerprints.invalidate( JavaFXPackageMojo.STAGE_CREATE_JAR );
+            int count = JarRewriter.update( javaFxJar, changes, reproducibleTime );
+            for( File copy : copies )
+            {
+                replace( javaFxJar, copy );
+            }
+            log.info( "Updated " + count + " entries of " + javaFxJar.getName() + " in "
+                      + ( System.currentTimeMillis() - start ) + "ms" );
+        }
+    }
+
+    /**
+     * @return Copies of the JavaFX JAR found in the application images of the given packager output, those in
+     *         {@literal bundles} directories, JNLP output left at the root of packager output directories excluded
+     */
+    /* package */ static List<File> imageCopies( final File javaFxJar, File javaFxNativeDir )
+        throws IOException
+    {
+        final List<File> copies = new ArrayList<File>();
+        if( !javaFxNativeDir.isDirectory() )
+        {
+            return copies;
+        }
+        final Path root = javaFxNativeDir.toPath();
+        Files.walkFileTree( root, new SimpleFileVisitor<Path>()
+        {
+            @Override
+            public FileVisitResult visitFile( Path file, BasicFileAttributes attrs )
+            {
+                if( attrs.isRegularFile() && file.getFileName().toString().equals( javaFxJar.getName() ) )
+                {
+                    Path relative = root.relativize( file );
+                    for( int idx = 0; idx < relative.getNameCount() - 1; idx++ )
+                    {
+                        if( "bundles".equals( relative.getName( idx ).toString() ) )
+                        {
+                            copies.add( file.toFile() );
+                            break;
+                        }
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+        } );
+        return copies;
+    }
+
+    /**
+     * Replace a file by a copy of another, never written in place as it may be hard linked or in use.
+     */
+    private static void replace( File source, File target )
+        throws IOException
+    {
+        Path temp = target.toPath().resolveSibling( target.getName() + ".tmp" );
+        Files.copy( source.toPath(), temp, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.COPY_ATTRIBUTES );
+        try
+        {
+            Files.move( temp, target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+        }
+        catch( AtomicMoveNotSupportedException ex )
+        {
+            Files.move( temp, target.toPath(), StandardCopyOption.REPLACE_EXISTING );
+        }
+    }
+
+}
@@ -15,21 +15,28 @@
  */
 package org.codeartisans.javafx.maven;
 
-import com.sun.javafx.tools.packager.CreateJarParams;
 import com.sun.javafx.tools.packager.DeployParams;
-import com.sun.javafx.tools.packager.Log;
 import com.sun.javafx.tools.packager.PackagerException;
-import com.sun.javafx.tools.packager.PackagerLib;
 import com.sun.javafx.tools.packager.bundlers.Bundler.BundleType;
-import de.schlichtherle.truezip.file.TFile;
-import de.schlichtherle.truezip.file.TVFS;
 import java.io.File;
 import java.io.IOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.zip.Deflater;
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.model.Build;
+import org.apache.maven.model.Resource;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
@@ -41,11 +48,26 @@ import org.codehaus.plexus.util.StringUtils;
 /**
  * @goal package
  * @requiresDependencyResolution
+ * @threadSafe
  */
 public class JavaFXPackageMojo
     extends AbstractMojo
 {
 
+    /* package */ static final String STAGE_CREATE_JAR = "create-jar";
+    /* package */ static final String STAGE_CREATE_JAR_OUTPUT = "create-jar.output";
+    /* package */ static final String STAGE_DEPENDENCIES = "dependencies";
+    /* package */ static final String STAGE_NATIVE = "native";
+    private static final String STAGE_JNLP_ZIP = "jnlp-zip";
+    /**
+     * Plugin context key prefix of the build directories packaged in this session.
+     */
+    private static final String PACKAGED_CONTEXT_KEY = "javafx.packaged:";
+    /**
+     * 1980-01-01T00:00:00Z, earliest time ZIP entries can hold.
+     */
+    private static final long DOS_EPOCH = 315532800000L;
+
     /**
      * @parameter property="verbose" default-value="true"
      */
@@ -56,6 +78,8 @@ public class JavaFXPackageMojo
      */
     private String mainClass;
     /**
+     * Comma separated list of bundle types.
+     *
      * @parameter property="bundles" default-value="none"
      * @required
      */
@@ -116,6 +140,335 @@ public class JavaFXPackageMojo
      * @parameter property="jvmProps"
      */
     private Map<String, String> jvmProps;
+    /**
+     * Named JVM tuning profiles, each producing a variant of the native bundles attached with the profile name as a
+     * classifier prefix.
+     *
+     * @parameter property="performanceProfiles"
+     */
+    private List<PerformanceProfile> performanceProfiles;
+    /**
+     * Skip packaging stages whose inputs have not changed since the previous run.
+     *
+     * @parameter property="incremental" default-value="false"
+     */
+    private boolean incremental;
+    /**
+     * Stream the project JAR entries into the JavaFX JAR instead of unpacking it to disk first.
+     *
+     * Falls back to unpacking when the project JAR cannot be streamed, ZIP64 archives for example.
+     *
+     * @parameter property="streamJar" default-value="true"
+     */
+    private boolean streamJar;
+    /**
+     * Number of threads used to copy dependencies, {@literal 0} for the number of available processors.
+     *
+     * @parameter property="stagingThreads" default-value="0"
+     */
+    private int stagingThreads;
+    /**
+     * Hard link dependencies instead of copying them when the local repository and the build directory are on the
+     * same file system.
+     *
+     * @parameter property="linkDependencies" default-value="true"
+     */
+    private boolean linkDependencies;
+    /**
+     * Drop dependencies byte identical to another one, the same JAR resolved under different coordinates for example.
+     *
+     * @parameter property="deduplicateDependencies" default-value="true"
+     */
+    private boolean deduplicateDependencies;
+    /**
+     * Report classes found in several dependencies.
+     *
+     * @parameter property="reportDependencyOverlaps" default-value="true"
+     */
+    private boolean reportDependencyOverlaps;
+    /**
+     * Merge unsigned dependencies smaller than this size in bytes into a single classpath JAR, {@literal 0} to disable.
+     *
+     * @parameter property="mergeDependenciesThreshold" default-value="0"
+     */
+    private long mergeDependenciesThreshold;
+    /**
+     * Run the packager concurrently when several bundle types or performance profiles are requested. The JavaFX
+     * packager is not documented as re-entrant and each run copies a Java runtime, enable with care.
+     *
+     * @parameter property="parallelBundles" default-value="false"
+     */
+    private boolean parallelBundles;
+    /**
+     * Maximum number of concurrent packager runs when {@literal parallelBundles} is enabled, {@literal 0} for the
+     * number of available processors.
+     *
+     * @parameter property="packagerThreads" default-value="2"
+     */
+    private int packagerThreads;
+    /**
+     * Deflate level of the JNLP, MacOSX and application image archives, from {@literal 0} (store) to {@literal 9},
+     * {@literal -1} for the default level.
+     *
+     * @parameter property="archiveCompressionLevel" default-value="-1"
+     */
+    private int archiveCompressionLevel;
+    /**
+     * Comma separated extensions of already compressed files stored without compression in archives.
+     *
+     * @parameter property="archiveStoredExtensions" default-value="jar,zip,gz,png,jpg,jpeg,gif"
+     */
+    private String archiveStoredExtensions;
+    /**
+     * Minimum size in bytes of archive entries deflated using several threads, {@literal 0} to disable.
+     *
+     * @parameter property="archiveParallelThreshold" default-value="0"
+     */
+    private long archiveParallelThreshold;
+    /**
+     * Number of threads used to deflate large archive entries, {@literal 0} for the number of available processors.
+     *
+     * @parameter property="archiveThreads" default-value="0"
+     */
+    private int archiveThreads;
+    /**
+     * Format of the Linux and Windows application image archives, {@literal tar.gz}, {@literal tar} or {@literal zip},
+     * defaults to {@literal zip} on Windows and {@literal tar.gz} elsewhere.
+     *
+     * @parameter property="imageArchiveFormat"
+     */
+    private String imageArchiveFormat;
+    /**
+     * Comma separated compressed variants of the JNLP JARs to write, {@literal pack200} for {@literal .jar.pack.gz}
+     * and {@literal gzip} for {@literal .jar.gz}, as served by the JNLP download servlet.
+     *
+     * @parameter property="jnlpCompression"
+     */
+    private String jnlpCompression;
+    /**
+     * JNLP resources manifest of the previous release, when set only the JARs that changed since are attached in an
+     * additional {@literal jnlp-delta} archive.
+     *
+     * @parameter property="jnlpPreviousManifest"
+     */
+    private File jnlpPreviousManifest;
+    /**
+     * Produce byte identical JAR and archives for identical inputs: sorted entries, fixed times and normalized
+     * permissions.
+     *
+     * @parameter property="reproducible" default-value="false"
+     */
+    private boolean reproducible;
+    /**
+     * Time of all entries in reproducible mode, ISO 8601 or seconds since the epoch. Defaults to 1980-01-01.
+     *
+     * @parameter property="outputTimestamp" default-value="${project.build.outputTimestamp}"
+     */
+    private String outputTimestamp;
+    /**
+     * Reuse native bundles from a local cache shared between builds when the JavaFX JAR, dependencies, packaging
+     * configuration and JavaFX runtime are identical.
+     *
+     * @parameter property="bundleCache" default-value="false"
+     */
+    private boolean bundleCache;
+    /**
+     * @parameter property="bundleCacheDirectory" default-value="${user.home}/.m2/javafx-bundle-cache"
+     */
+    private File bundleCacheDirectory;
+    /**
+     * Maximum size in megabytes of the bundle cache, least recently used bundles are evicted first.
+     *
+     * @parameter property="bundleCacheMaxSize" default-value="2048"
+     */
+    private long bundleCacheMaxSize;
+    /**
+     * Write packaging phases metrics to {@literal target/javafx-packaging-metrics.json}.
+     *
+     * @parameter property="metricsReport" default-value="false"
+     */
+    private boolean metricsReport;
+    /**
+     * Comma separated processors run over the project resources and icons: {@literal png} to losslessly recompress
+     * PNG images, {@literal css} to add binary {@literal .bss} versions of the style sheets.
+     *
+     * @parameter property="resourceProcessors"
+     */
+    private String resourceProcessors;
+    /**
+     * Cache of the processed resources, keyed by content.
+     *
+     * @parameter property="resourceCacheDirectory" default-value="${project.build.directory}/javafx-resource-cache"
+     */
+    private File resourceCacheDirectory;
+    /**
+     * Number of threads processing resources, {@literal 0} for the number of available processors.
+     *
+     * @parameter property="resourceThreads" default-value="0"
+     */
+    private int resourceThreads;
+    /**
+     * File persisting the JavaFX SDK discovery across builds, discovery is only cached for the build session if not
+     * set.
+     *
+     * @parameter property="sdkCacheFile"
+     */
+    private File sdkCacheFile;
+    /**
+     * Lay out the JavaFX JAR in class loading order, as recorded by a training run of the application.
+     *
+     * @parameter property="classOrder" default-value="false"
+     */
+    private boolean classOrder;
+    /**
+     * Comma separated patterns of the classes loaded during training to store without compression in the JavaFX JAR.
+     *
+     * @parameter property="classOrderStoredEntries" default-value="**"
+     */
+    private String classOrderStoredEntries;
+    /**
+     * Class run by the class load order training runs, defaults to the application main class.
+     *
+     * @parameter property="trainingClass"
+     */
+    private String trainingClass;
+    /**
+     * JVM arguments of the training runs, headless toolkit properties for example.
+     *
+     * @parameter property="trainingArgs"
+     */
+    private List<String> trainingArgs;
+    /**
+     * Duration in seconds of the training runs.
+     *
+     * @parameter property="trainingDuration" default-value="10"
+     */
+    private int trainingDuration;
+    /**
+     * Drop the classes and resources of the JavaFX JAR and of the dependencies that are not reachable from the main
+     * and preloader classes before packaging them.
+     *
+     * @parameter property="shrink" default-value="false"
+     */
+    private boolean shrink;
+    /**
+     * Comma separated patterns of the class and resource entries kept by shrinking, classes loaded by computed names
+     * through reflection for example: {@literal com/acme/plugins/**}.
+     *
+     * @parameter property="shrinkKeep"
+     */
+    private String shrinkKeep;
+    /**
+     * Bundle a Java runtime image linked with only the modules used by the JavaFX JAR and the dependencies instead of
+     * the whole runtime running the build. Requires a Java 9 or later JDK, only the used packages are reported on
+     * older runtimes.
+     *
+     * @parameter property="trimRuntime" default-value="false"
+     */
+    private boolean trimRuntime;
+    /**
+     * Comma separated modules added to the trimmed runtime, modules only used through reflection or services for
+     * example: {@literal jdk.crypto.ec,jdk.localedata}.
+     *
+     * @parameter property="runtimeModules"
+     */
+    private String runtimeModules;
+    /**
+     * Have the native launchers create and use a Class Data Sharing archive of the application on its first run,
+     * {@literal app.jsa} in the application directory. Requires the bundled runtime to be Java 19 or later, ignored
+     * otherwise.
+     *
+     * @parameter property="cds" default-value="false"
+     */
+    private boolean cds;
+    /**
+     * Keystore holding the key signing the JNLP JARs, required by {@literal allPermissions}, JARs are not signed if
+     * not set.
+     *
+     * @parameter property="keystore"
+     */
+    private File keystore;
+    /**
+     * @parameter property="storetype" default-value="jks"
+     */
+    private String storetype;
+    /**
+     * @parameter property="storepass"
+     */
+    private String storepass;
+    /**
+     * Alias of the signing key in the keystore.
+     *
+     * @parameter property="alias"
+     */
+    private String alias;
+    /**
+     * Password of the signing key, defaults to the keystore password.
+     *
+     * @parameter property="keypass"
+     */
+    private String keypass;
+    /**
+     * URL of the timestamp authority of the signatures.
+     *
+     * @parameter property="tsaUrl"
+     */
+    private String tsaUrl;
+    /**
+     * Number of JARs signed concurrently, {@literal 0} for the number of available processors.
+     *
+     * @parameter property="signingThreads" default-value="0"
+     */
+    private int signingThreads;
+    /**
+     * Cache of the signed JARs, keyed by unsigned content and signing certificate.
+     *
+     * @parameter property="signatureCacheDirectory" default-value="${user.home}/.m2/javafx-signature-cache"
+     */
+    private File signatureCacheDirectory;
+    /**
+     * Maximum size in bytes of the JavaFX JAR, {@literal 0} for no budget.
+     *
+     * @parameter property="jarSizeBudget" default-value="0"
+     */
+    private long jarSizeBudget;
+    /**
+     * Maximum size in bytes of the staged dependencies, {@literal 0} for no budget.
+     *
+     * @parameter property="dependenciesSizeBudget" default-value="0"
+     */
+    private long dependenciesSizeBudget;
+    /**
+     * Maximum size in bytes of each native bundle, {@literal 0} for no budget.
+     *
+     * @parameter property="bundleSizeBudget" default-value="0"
+     */
+    private long bundleSizeBudget;
+    /**
+     * Measure the time from the JVM launch to the application start in forked runs of the application, see
+     * {@literal trainingArgs} to run them headless.
+     *
+     * @parameter property="startupProbe" default-value="false"
+     */
+    private boolean startupProbe;
+    /**
+     * Number of startup probe runs, the median startup time is reported.
+     *
+     * @parameter property="startupProbeRuns" default-value="3"
+     */
+    private int startupProbeRuns;
+    /**
+     * Maximum startup time in milliseconds, {@literal 0} for no budget.
+     *
+     * @parameter property="startupBudget" default-value="0"
+     */
+    private long startupBudget;
+    /**
+     * Fail the build when a budget is exceeded, only warn otherwise.
+     *
+     * @parameter property="failOnBudget" default-value="true"
+     */
+    private boolean failOnBudget;
     /**
      * @parameter property="project"
      * @required
@@ -127,208 +480,907 @@ public class JavaFXPackageMojo
      * @required
      */
     private MavenProjectHelper projectHelper;
+    /**
+     * @parameter default-value="${mojoExecution.executionId}"
+     * @readonly
+     */
+    private String executionId;
+    private PackagingMetrics metrics;
+    private File bundledRuntime;
+    private boolean classDataSharing;
+    private ResourcePipeline resourcePipeline;
+    private List<File> packagedIcons;
+    private PackagerLog packagerLog;
 
     @Override
     public void execute()
         throws MojoExecutionException, MojoFailureException
     {
-        Build build = project.getBuild();
-        File buildDir = new File( build.getDirectory() );
-
-        // Unpack main artifact JAR, necessary to keep maven metadata in JavaFX JAR
-        File unpackedJarDir = new File( buildDir, "javafx-unpacked-project-artifact" );
+        File buildDir = executionDir( new File( project.getBuild().getDirectory() ) );
+        metrics = new PackagingMetrics();
+        packagerLog = new PackagerLog( getLog(), verbose );
+        packagerLog.attach();
         try
         {
-            FileUtils.mkdir( unpackedJarDir.getAbsolutePath() );
-            new TFile( project.getArtifact().getFile() ).cp_rp( unpackedJarDir );
-            TVFS.umount();
+            execute( buildDir );
+            markPackaged( buildDir );
         }
-        catch( IOException ex )
+        finally
         {
-            throw new MojoExecutionException( "Unable to unpack project JAR", ex );
+            PackagerLog.detach();
+            reportMetrics( buildDir );
         }
+    }
 
-        // Create JavaFX JAR
-        Log.setLogger( new Log.Logger( verbose ) );
-
-        String javaFxJarName = build.getFinalName() + "-javafx.jar";
-        File javaFxCreateJarDir = new File( buildDir, "javafx-create-jar" );
-
-        CreateJarParams createJar = new CreateJarParams();
-        createJar.setVerbose( verbose );
-        createJar.setApplicationClass( mainClass );
-        if( !StringUtils.isEmpty( preloaderClass ) )
+    @SuppressWarnings( "unchecked" )
+    private void markPackaged( File buildDir )
+    {
+        Map<Object, Object> context = getPluginContext();
+        if( context != null )
         {
-            createJar.setPreloader( preloaderClass );
+            context.put( PACKAGED_CONTEXT_KEY + buildDir.getAbsolutePath(), Boolean.TRUE );
         }
+    }
 
-        createJar.setOutdir( javaFxCreateJarDir );
-        createJar.setOutfile( javaFxJarName );
-        createJar.addResource( unpackedJarDir, "" );
-
-        try
-        {
-            getLog().info( "Packaging JavaFX JAR" );
+    /**
+     * @return {@literal true} if a {@literal package} execution already packaged into the build directory of this
+     *         execution in this session
+     */
+    /* package */ boolean isPackagedInSession()
+    {
+        Map<?, ?> context = getPluginContext();
+        File buildDir = executionDir( new File( project.getBuild().getDirectory() ) );
+        return context != null && context.containsKey( PACKAGED_CONTEXT_KEY + buildDir.getAbsolutePath() );
+    }
 
-            PackagerLib packager = new PackagerLib();
-            packager.packageAsJar( createJar );
+    /**
+     * @return {@literal true} if the project JAR was built in this session and can be packaged
+     */
+    /* package */ boolean isProjectJarBuilt()
+    {
+        File projectJar = project.getArtifact().getFile();
+        return projectJar != null && projectJar.isFile();
+    }
 
-            // Replace main artifact with JavaFX JAR
-            File mainArtifactFile = project.getArtifact().getFile();
-            FileUtils.forceDelete( mainArtifactFile );
-            mainArtifactFile.delete();
-            FileUtils.copyFile( new File( javaFxCreateJarDir, javaFxJarName ), mainArtifactFile );
-        }
-        catch( PackagerException ex )
-        {
-            throw new MojoExecutionException( "Unable to create JavaFX JAR", ex );
-        }
-        catch( IOException ex )
+    /**
+     * Keep the JavaFX JAR and its copies in the application images up to date with the compiled classes and the
+     * plain resources, until interrupted. JNLP output, and application images holding shrunk copies, are left to the
+     * next package run as they are signed, shrunk or compressed from the JavaFX JAR.
+     *
+     * @param debounceMillis Delay without changes after which changes are applied
+     */
+    /* package */ void watch( long debounceMillis )
+        throws MojoExecutionException
+    {
+        Build build = project.getBuild();
+        File buildDir = executionDir( new File( build.getDirectory() ) );
+        File javaFxJar = new File( new File( buildDir, "javafx-create-jar" ), build.getFinalName() + "-javafx.jar" );
+        if( !javaFxJar.isFile() )
         {
-            throw new MojoExecutionException( "Unable to attach JavaFX JAR", ex );
+            throw new MojoExecutionException( "No JavaFX JAR to update, package the project first: "
+                                              + "mvn package javafx:watch" );
         }
-
-        // Create JavaFX native packaging
-        BundleType bundleType = BundleType.valueOf( bundles.toUpperCase() );
-        File dependenciesDir = new File( buildDir, "dependencies" );
-        String dependenciesPath = dependenciesDir.getAbsolutePath();
-
-        getLog().info( "Copying project dependencies to '" + dependenciesPath + "' for packaging." );
+        TreeWatcher watcher = null;
         try
         {
-            FileUtils.mkdir( dependenciesPath );
-            for( Artifact artifact : (Set<Artifact>) project.getArtifacts() )
+            FingerprintManifest fingerprints = loadFingerprints( buildDir );
+            List<File> copies;
+            if( shrink )
             {
-                String fileName = artifact.getGroupId() + "-" + artifact.getFile().getName();
-                FileUtils.copyFile( artifact.getFile(), new File( dependenciesDir, fileName ) );
+                copies = Collections.emptyList();
+                getLog().warn( "Application images hold shrunk copies of " + javaFxJar.getName()
+                               + ", they are not updated and stay out of date until the next package run" );
+            }
+            else
+            {
+                copies = JarUpdater.imageCopies( javaFxJar, new File( buildDir, "javafx-native" ) );
+            }
+            File javaFxJnlpDir = new File( buildDir, "javafx-jnlp" );
+            if( javaFxJnlpDir.isDirectory() )
+            {
+                String jars = keystore != null || shrink || !jnlpCompressions().isEmpty()
+                              ? "signed, shrunk or compressed JARs"
+                              : "JARs";
+                getLog().warn( "JNLP output in " + javaFxJnlpDir + " is not updated, its " + jars
+                               + " stay out of date until the next package run" );
+            }
+            watcher = new TreeWatcher( getLog() );
+            watcher.watch( new File( build.getOutputDirectory() ), "" );
+            for( Object item : build.getResources() )
+            {
+                // Others are only up to date once processed by the resources phase
+                Resource resource = (Resource) item;
+                if( !resource.isFiltering() && resource.getIncludes().isEmpty() && resource.getExcludes().isEmpty() )
+                {
+                    String targetPath = StringUtils.defaultString( resource.getTargetPath() ).replace( '\\', '/' );
+                    watcher.watch( new File( resource.getDirectory() ),
+                                   targetPath.length() == 0 || targetPath.endsWith( "/" )
+                                   ? targetPath
+                                   : targetPath + "/" );
+                }
             }
+            getLog().info( "Watching " + build.getOutputDirectory() + " to update " + javaFxJar.getName() + " and "
+                           + copies.size() + " copies of it, stop with Ctrl+C" );
+            new JarUpdater( getLog(), javaFxJar, copies, reproducibleTime() ).
+                watch( watcher, fingerprints, debounceMillis );
         }
-        catch( IOException ex )
+        catch( InterruptedException ex )
         {
-            throw new MojoExecutionException( "Unable to copy dependencies to '" + dependenciesPath + "' for packaging.", ex );
+            Thread.currentThread().interrupt();
         }
-
-        File javaFxNativeDir = new File( buildDir, "javafx-native" );
-
-        DeployParams deployParams = new DeployParams();
-        deployParams.setVerbose( verbose );
-        deployParams.setApplicationClass( mainClass );
-        deployParams.setId( appId );
-        deployParams.setAppId( appId );
-        deployParams.setAppName( appName );
-        deployParams.setVersion( project.getVersion() );
-        deployParams.setTitle( appName );
-        deployParams.setDescription( appDescription );
-        if( !StringUtils.isEmpty( appVendor ) )
+        catch( IOException ex )
         {
-            deployParams.setVendor( appVendor );
+            throw new MojoExecutionException( "Unable to update JavaFX JAR", ex );
         }
-        if( !StringUtils.isEmpty( appCategory ) )
+        finally
         {
-            deployParams.setCategory( appCategory );
+            JarRewriter.closeQuietly( watcher );
         }
-        if( !StringUtils.isEmpty( appCopyright ) )
+    }
+
+    /**
+     * @return Build directory for default executions, a dedicated directory in it for the others so that executions
+     *         never share their work directories nor fingerprints
+     */
+    private File executionDir( File buildDir )
+    {
+        if( StringUtils.isEmpty( executionId ) || executionId.startsWith( "default" ) )
         {
-            deployParams.setCopyright( appCopyright );
+            return buildDir;
         }
-        if( width != null && width > 0 )
+        return new File( buildDir, "javafx-" + executionId );
+    }
+
+    private void execute( File buildDir )
+        throws MojoExecutionException, MojoFailureException
+    {
+        Build build = project.getBuild();
+        FingerprintManifest fingerprints = loadFingerprints( buildDir );
+
+        // Create JavaFX JAR
+        resourcePipeline = createResourcePipeline();
+
+        String javaFxJarName = build.getFinalName() + "-javafx.jar";
+        File javaFxCreateJarDir = new File( buildDir, "javafx-create-jar" );
+        String javaFxJarFingerprint;
+        try
         {
-            deployParams.setWidth( width );
+            List<File> dependencies = new ArrayList<File>();
+            for( Artifact artifact : sortedArtifacts() )
+            {
+                dependencies.add( artifact.getFile() );
+            }
+            javaFxJarFingerprint = new JavaFxJarStage( getLog(), metrics, project.getArtifact().getFile(), mainClass,
+                                                       preloaderClass, verbose, reproducibleTime() ).
+                streamJar( streamJar ).
+                resources( resourcePipeline, resourceProcessors ).
+                classOrder( classOrder, trainingClass, trainingArgs, trainingDuration, classOrderStoredEntries,
+                            dependencies ).
+                run( fingerprints, buildDir, new File( javaFxCreateJarDir, javaFxJarName ) );
         }
-        if( height != null && height > 0 )
+        catch( PackagerException ex )
         {
-            deployParams.setHeight( height );
+            throw new MojoExecutionException( "Unable to create JavaFX JAR", ex );
         }
-        deployParams.setAllPermissions( allPermissions );
-        if( !StringUtils.isEmpty( preloaderClass ) )
+        catch( IOException ex )
         {
-            deployParams.setPreloader( preloaderClass );
+            throw new MojoExecutionException( "Unable to create JavaFX JAR", ex );
         }
-        if( jvmArgs != null )
+
+        // Create JavaFX native packaging
+        File dependenciesDir = new File( buildDir, "dependencies" );
+        String dependenciesFingerprint = stageDependencies( fingerprints, dependenciesDir );
+        if( shrink )
         {
-            for( String jvmArgument : jvmArgs )
+            // Following stages package the shrunk copies
+            File javaFxShrinkDir = new File( buildDir, "javafx-shrink" );
+            try
             {
-                deployParams.addJvmArg( jvmArgument );
+                new ShrinkStage( getLog(), metrics, mainClass, preloaderClass, shrinkKeep ).
+                    run( fingerprints, javaFxJarFingerprint, dependenciesFingerprint,
+                         new File( javaFxCreateJarDir, javaFxJarName ), dependenciesDir, javaFxShrinkDir );
             }
-        }
-        if( jvmProps != null )
-        {
-            for( Map.Entry<String, String> jvmProp : jvmProps.entrySet() )
+            catch( IOException ex )
             {
-                deployParams.addJvmProperty( jvmProp.getKey(), jvmProp.getValue() );
+                throw new MojoExecutionException( "Unable to shrink JavaFX class path", ex );
             }
+            javaFxCreateJarDir = new File( javaFxShrinkDir, "jar" );
+            dependenciesDir = new File( javaFxShrinkDir, "dependencies" );
         }
-        if( icons != null )
+        // The runtime running the build is the bundled one, trimmed or not
+        classDataSharing = cds && ClassDataSharing.isSupported( System.getProperty( "java.specification.version" ) );
+        if( cds && !classDataSharing )
         {
-            for( File icon : icons )
+            getLog().warn( "Class data sharing requires Java 19 or later to build the native bundles, ignored" );
+        }
+        bundledRuntime = null;
+        if( trimRuntime )
+        {
+            try
             {
-                deployParams.addIcon( icon.getAbsolutePath(), null, -1, -1, -1, DeployParams.RunMode.ALL );
+                bundledRuntime = new RuntimeStage( getLog(), metrics, shrink, shrinkKeep, runtimeModules,
+                                                   classDataSharing ).
+                    run( fingerprints, javaFxJarFingerprint, dependenciesFingerprint,
+                         new File( javaFxCreateJarDir, javaFxJarName ), dependenciesDir,
+                         new File( buildDir, "javafx-runtime" ) );
+            }
+            catch( IOException ex )
+            {
+                throw new MojoExecutionException( "Unable to trim Java runtime", ex );
             }
         }
 
-        deployParams.setOutdir( javaFxNativeDir );
-        deployParams.setOutfile( build.getFinalName() );
-        deployParams.setBundleType( bundleType );
-
-        deployParams.addResource( javaFxCreateJarDir, javaFxJarName );
-        if( dependenciesDir.exists() )
-        {
-            deployParams.addResource( dependenciesDir, "" );
-        }
+        packagedIcons = processIcons( new File( buildDir, "javafx-icons" ) );
+        File javaFxNativeDir = new File( buildDir, "javafx-native" );
+        File javaFxJnlpDir = new File( buildDir, "javafx-jnlp" );
+        String nativeFingerprint = nativeFingerprint( javaFxJarFingerprint, dependenciesFingerprint );
+        Map<BundleType, File> bundleOutputDirs = bundleOutputDirs( javaFxNativeDir );
+        Map<PerformanceProfile, Map<BundleType, File>> profileOutputDirs =
+            profileOutputDirs( javaFxNativeDir, bundleOutputDirs.keySet() );
+        generateDeploymentPackages( fingerprints, nativeFingerprint, javaFxCreateJarDir, javaFxJarName,
+                                    dependenciesDir, javaFxNativeDir, bundleOutputDirs, profileOutputDirs,
+                                    javaFxJnlpDir );
+        checkBudgets( buildDir, new File( javaFxCreateJarDir, javaFxJarName ), dependenciesDir, bundleOutputDirs,
+                      profileOutputDirs );
 
+        PackagingMetrics.Phase phase = null;
         try
         {
-            getLog().info( "Packaging JavaFX Application" );
-
-            PackagerLib packager = new PackagerLib();
-            packager.generateDeploymentPackages( deployParams );
-
             // Create and attach JNLP Artifact
-            File javaFxJnlpDir = new File( buildDir, "javafx-jnlp" );
-            FileUtils.mkdir( javaFxJnlpDir.getAbsolutePath() );
-            for( File file : javaFxNativeDir.listFiles() )
+            phase = metrics.begin( STAGE_JNLP_ZIP );
+            File jnlpZipFile = new File( buildDir, build.getFinalName() + "-jnlp.zip" );
+            DirectoryArchiver archiver = directoryArchiver();
+            String jnlpZipFingerprint = archiver.fingerprint( nativeFingerprint );
+            if( fingerprints.isUpToDate( STAGE_JNLP_ZIP, jnlpZipFingerprint, jnlpZipFile ) )
             {
-                if( file.isFile() )
-                {
-                    file.renameTo( new File( javaFxJnlpDir, file.getName() ) );
-                }
+                getLog().info( "JNLP archive is up to date" );
+                phase.upToDate();
+            }
+            else
+            {
+                fingerprints.invalidate( STAGE_JNLP_ZIP );
+                FileUtils.fileDelete( jnlpZipFile.getAbsolutePath() );
+                archiver.zip( javaFxJnlpDir, "", jnlpZipFile );
+                fingerprints.record( STAGE_JNLP_ZIP, jnlpZipFingerprint );
+                phase.read( javaFxJnlpDir ).wrote( jnlpZipFile );
             }
-            File jnlpZipFile = new File( buildDir, build.getFinalName() + "-jnlp.zip" );
-            new TFile( javaFxJnlpDir ).cp_rp( new TFile( jnlpZipFile ) );
-            TVFS.umount();
             projectHelper.attachArtifact( project, "zip", "jnlp", jnlpZipFile );
+            if( jnlpPreviousManifest != null )
+            {
+                File jnlpDeltaDir = new File( buildDir, "javafx-jnlp-delta" );
+                File jnlpDeltaZipFile = new File( buildDir, build.getFinalName() + "-jnlp-delta.zip" );
+                new JnlpResources( getLog(), javaFxJnlpDir ).delta( jnlpPreviousManifest, jnlpDeltaDir );
+                FileUtils.fileDelete( jnlpDeltaZipFile.getAbsolutePath() );
+                archiver.zip( jnlpDeltaDir, "", jnlpDeltaZipFile );
+                projectHelper.attachArtifact( project, "zip", "jnlp-delta", jnlpDeltaZipFile );
+                phase.wrote( jnlpDeltaZipFile );
+            }
+            phase.end();
 
             // Attach native bundles
-            File bundlesDir = new File( javaFxNativeDir, "bundles" );
-            for( File bundle : bundlesDir.listFiles() )
+            phase = metrics.begin( "attach" );
+            BundleAttacher attacher = new BundleAttacher( getLog(), project, projectHelper, archiver,
+                                                          imageArchiveFormat() );
+            attacher.attach( fingerprints, nativeFingerprint, buildDir, bundleOutputDirs, null, phase );
+            for( Map.Entry<PerformanceProfile, Map<BundleType, File>> profile : profileOutputDirs.entrySet() )
             {
-                if( bundle.isFile() )
-                {
-                    // Simple file bundle (exe, msi, rpm, dmg)
-                    String ext = FileUtils.extension( bundle.getName() );
-                    projectHelper.attachArtifact( project, ext, ext, bundle );
-                }
-                else if( bundle.isDirectory() )
-                {
-                    // Directory bundle
-                    if( bundle.getName().endsWith( ".app" ) )
-                    {
-                        // MacOSX Application bundle, will zip it before attach
-                        File macosxAppZip = new File( buildDir, build.getFinalName() + "-macosx.zip" );
-                        new TFile( bundle ).cp_rp( new TFile( macosxAppZip, bundle.getName() ) );
-                        TVFS.umount();
-                        projectHelper.attachArtifact( project, "zip", "macosx", macosxAppZip );
-                    }
-                    else
-                    {
-                        // TODO Windows/Linux ARCHIVE support
-                        getLog().warn( "Unknown bundle type: '" + bundle.getAbsolutePath() + "', doing nothing." );
-                    }
-                }
+                attacher.attach( fingerprints, nativeFingerprint, buildDir, profile.getValue(),
+                                 profile.getKey().getName(), phase );
             }
 
         }
-        catch( PackagerException ex )
+        catch( IOException ex )
+        {
+            throw new MojoExecutionException( "Unable to attach JavaFX Native Bundle(s)", ex );
+        }
+        finally
+        {
+            if( phase != null )
+            {
+                phase.end();
+            }
+        }
+    }
+
+    /**
+     * Measure the packaged application against its budgets and write {@literal target/javafx-budget-report.json}.
+     */
+    private void checkBudgets( File buildDir, File javaFxJar, File dependenciesDir,
+                               Map<BundleType, File> bundleOutputDirs,
+                               Map<PerformanceProfile, Map<BundleType, File>> profileOutputDirs )
+        throws MojoExecutionException, MojoFailureException
+    {
+        if( jarSizeBudget <= 0 && dependenciesSizeBudget <= 0 && bundleSizeBudget <= 0 && !startupProbe )
+        {
+            return;
+        }
+        File reportFile = new File( buildDir, "javafx-budget-report.json" );
+        BudgetStage budgets = new BudgetStage( getLog(), metrics, jarSizeBudget, dependenciesSizeBudget,
+                                               bundleSizeBudget, startupBudget );
+        List<String> exceeded;
+        try
+        {
+            if( startupProbe )
+            {
+                List<String> probeArgs = new ArrayList<String>();
+                if( jvmArgs != null )
+                {
+                    probeArgs.addAll( jvmArgs );
+                }
+                if( jvmProps != null )
+                {
+                    for( Map.Entry<String, String> prop : jvmProps.entrySet() )
+                    {
+                        probeArgs.add( "-D" + prop.getKey() + "=" + prop.getValue() );
+                    }
+                }
+                if( trainingArgs != null )
+                {
+                    probeArgs.addAll( trainingArgs );
+                }
+                // Not on the default class path of Java 7 runtimes
+                budgets.startupProbe( startupProbeRuns, probeArgs, mainClass,
+                                      javaFxSdk().getFile( JavaFxSdk.RUNTIME_JAR ) );
+            }
+            exceeded = budgets.run( reportFile, project.getId(), javaFxJar, dependenciesDir, bundleOutputDirs,
+                                    profileOutputDirs, new File( buildDir, "javafx-startup" ) );
+        }
+        catch( IOException ex )
+        {
+            throw new MojoExecutionException( "Unable to check JavaFX packaging budgets", ex );
+        }
+        budgets.enforce( exceeded, reportFile, failOnBudget );
+    }
+
+    private void reportMetrics( File buildDir )
+    {
+        metrics.log( getLog() );
+        if( metricsReport )
+        {
+            File metricsFile = new File( buildDir, "javafx-packaging-metrics.json" );
+            try
+            {
+                metrics.writeJson( metricsFile, project.getId() );
+            }
+            catch( IOException ex )
+            {
+                getLog().warn( "Unable to write packaging metrics to '" + metricsFile + "': " + ex.getMessage() );
+            }
+        }
+    }
+
+    /**
+     * @return Format of the application image archives, also their extension
+     */
+    private String imageArchiveFormat()
+        throws MojoExecutionException
+    {
+        if( StringUtils.isEmpty( imageArchiveFormat ) )
+        {
+            return isWindows() ? "zip" : "tar.gz";
+        }
+        String format = imageArchiveFormat.trim().toLowerCase( Locale.ENGLISH );
+        if( !Arrays.asList( "tar.gz", "tar", "zip" ).contains( format ) )
+        {
+            throw new MojoExecutionException( "Invalid imageArchiveFormat '" + imageArchiveFormat
+                                              + "', must be one of tar.gz, tar or zip" );
+        }
+        return format;
+    }
+
+    /**
+     * @return Whether the build, and thus the native packager, runs on Windows
+     */
+    /* package */ static boolean isWindows()
+    {
+        return System.getProperty( "os.name" ).toLowerCase( Locale.ENGLISH ).startsWith( "windows" );
+    }
+
+    private DirectoryArchiver directoryArchiver()
+        throws MojoExecutionException
+    {
+        if( archiveCompressionLevel < Deflater.DEFAULT_COMPRESSION
+            || archiveCompressionLevel > Deflater.BEST_COMPRESSION )
+        {
+            throw new MojoExecutionException( "Invalid archiveCompressionLevel: " + archiveCompressionLevel );
+        }
+        return new DirectoryArchiver().
+            level( archiveCompressionLevel ).
+            storedExtensions( StringUtils.split( StringUtils.defaultString( archiveStoredExtensions ), "," ) ).
+            parallelDeflate( archiveParallelThreshold, archiveThreads ).
+            reproducible( reproducibleTime() );
+    }
+
+    /**
+     * @return Time of all archive entries in reproducible mode, {@literal null} otherwise
+     */
+    private Long reproducibleTime()
+        throws MojoExecutionException
+    {
+        if( !reproducible )
+        {
+            return null;
+        }
+        // Same convention as maven-archiver, a single character disables the configured timestamp
+        if( outputTimestamp == null || outputTimestamp.trim().length() < 2 )
+        {
+            return DOS_EPOCH;
+        }
+        String timestamp = outputTimestamp.trim();
+        try
+        {
+            if( timestamp.matches( "\\d+" ) )
+            {
+                // Seconds since the epoch
+                return Math.max( DOS_EPOCH, Long.parseLong( timestamp ) * 1000 );
+            }
+            SimpleDateFormat format = new SimpleDateFormat( "yyyy-MM-dd'T'HH:mm:ssXXX" );
+            return Math.max( DOS_EPOCH, format.parse( timestamp ).getTime() );
+        }
+        catch( ParseException ex )
+        {
+            throw new MojoExecutionException( "Invalid outputTimestamp '" + timestamp + "', must be an ISO 8601 "
+                                              + "date time like 2012-10-01T00:00:00Z or a number of seconds since "
+                                              + "the epoch", ex );
+        }
+    }
+
+    private FingerprintManifest loadFingerprints( File buildDir )
+        throws MojoExecutionException
+    {
+        try
+        {
+            FileUtils.mkdir( buildDir.getAbsolutePath() );
+            return FingerprintManifest.load( buildDir, incremental );
+        }
+        catch( IOException ex )
+        {
+            throw new MojoExecutionException( "Unable to load packaging fingerprints", ex );
+        }
+    }
+
+    /**
+     * @return Pipeline of the configured resource processors, {@literal null} if none
+     */
+    private ResourcePipeline createResourcePipeline()
+        throws MojoExecutionException
+    {
+        List<ResourceProcessor> processors = new ArrayList<ResourceProcessor>();
+        for( String processor : StringUtils.split( StringUtils.defaultString( resourceProcessors ), "," ) )
+        {
+            String name = processor.trim().toLowerCase( Locale.ENGLISH );
+            if( "png".equals( name ) )
+            {
+                processors.add( new PngOptimizer() );
+            }
+            else if( "css".equals( name ) )
+            {
+                try
+                {
+                    processors.add( new CssCompiler( javaFxSdk().getFile( JavaFxSdk.RUNTIME_JAR ) ) );
+                }
+                catch( IOException ex )
+                {
+                    getLog().warn( "Style sheets will not be compiled: " + ex.getMessage() );
+                }
+            }
+            else if( name.length() > 0 )
+            {
+                throw new MojoExecutionException( "Unknown resource processor '" + name
+                                                  + "', must be one of png or css" );
+            }
+        }
+        if( processors.isEmpty() )
+        {
+            return null;
+        }
+        return new ResourcePipeline( getLog(), processors, resourceCacheDirectory, resourceThreads );
+    }
+
+    /**
+     * @return Icons to package, processed by the resource pipeline if any
+     */
+    private List<File> processIcons( File outputDir )
+        throws MojoExecutionException
+    {
+        if( icons == null || resourcePipeline == null )
+        {
+            return icons;
+        }
+        try
+        {
+            List<File> processedIcons = new ArrayList<File>();
+            for( File icon : icons )
+            {
+                processedIcons.add( resourcePipeline.processFile( icon, outputDir ) );
+            }
+            return processedIcons;
+        }
+        catch( IOException ex )
+        {
+            throw new MojoExecutionException( "Unable to process icons", ex );
+        }
+    }
+
+    /**
+     * @return Fingerprint of the staged dependencies
+     */
+    private String stageDependencies( FingerprintManifest fingerprints, File dependenciesDir )
+        throws MojoExecutionException
+    {
+        String dependenciesPath = dependenciesDir.getAbsolutePath();
+        PackagingMetrics.Phase phase = metrics.begin( STAGE_DEPENDENCIES );
+        try
+        {
+            String fingerprint = null;
+            if( fingerprints.isEnabled() )
+            {
+                Fingerprint dependencies = new Fingerprint().
+                    add( "deduplicateDependencies", deduplicateDependencies ).
+                    add( "mergeDependenciesThreshold", mergeDependenciesThreshold ).
+                    add( "reproducibleTime", reproducibleTime() );
+                for( Artifact artifact : sortedArtifacts() )
+                {
+                    dependencies.addFile( artifact.getId(), artifact.getFile() );
+                }
+                fingerprint = dependencies.value();
+            }
+            if( fingerprints.isUpToDate( STAGE_DEPENDENCIES, fingerprint, dependenciesDir ) )
+            {
+                getLog().info( "Project dependencies in '" + dependenciesPath + "' are up to date" );
+                phase.upToDate();
+                return fingerprint;
+            }
+
+            getLog().info( "Copying project dependencies to '" + dependenciesPath + "' for packaging." );
+            fingerprints.invalidate( STAGE_DEPENDENCIES );
+            Map<String, File> dependencies = new LinkedHashMap<String, File>();
+            for( Artifact artifact : (Set<Artifact>) project.getArtifacts() )
+            {
+                String fileName = artifact.getGroupId() + "-" + artifact.getFile().getName();
+                dependencies.put( fileName, artifact.getFile() );
+            }
+            dependencies = analyzeDependencies( dependencies, new File( dependenciesDir.getParentFile(),
+                                                                        "javafx-merged-dependencies" ) );
+            long copied = new DependencyStager( getLog(), stagingThreads, linkDependencies ).
+                stage( dependenciesDir, dependencies );
+            fingerprints.record( STAGE_DEPENDENCIES, fingerprint );
+            phase.read( copied ).wrote( copied, dependencies.size() );
+            return fingerprint;
+        }
+        catch( IOException ex )
+        {
+            throw new MojoExecutionException( "Unable to copy dependencies to '" + dependenciesPath
+                                              + "' for packaging.", ex );
+        }
+        finally
+        {
+            phase.end();
+        }
+    }
+
+    /**
+     * @return Dependencies to stage by target file name
+     */
+    private Map<String, File> analyzeDependencies( Map<String, File> dependencies, File mergedDependenciesDir )
+        throws MojoExecutionException, IOException
+    {
+        DependencyAnalyzer analyzer = new DependencyAnalyzer( getLog() );
+        Map<String, File> analyzed = dependencies;
+        if( deduplicateDependencies )
+        {
+            analyzed = analyzer.deduplicate( analyzed );
+        }
+        if( reportDependencyOverlaps )
+        {
+            analyzer.reportOverlaps( analyzed );
+        }
+        if( mergeDependenciesThreshold > 0 )
+        {
+            FileUtils.deleteDirectory( mergedDependenciesDir );
+            analyzed = analyzer.mergeSmallJars( analyzed, mergeDependenciesThreshold,
+                                                new File( mergedDependenciesDir, "merged-dependencies.jar" ),
+                                                reproducibleTime() );
+        }
+        return analyzed;
+    }
+
+    private List<Artifact> sortedArtifacts()
+    {
+        List<Artifact> artifacts = new ArrayList<Artifact>( (Set<Artifact>) project.getArtifacts() );
+        Collections.sort( artifacts, new Comparator<Artifact>()
+        {
+            @Override
+            public int compare( Artifact left, Artifact right )
+            {
+                return left.getId().compareTo( right.getId() );
+            }
+
+        } );
+        return artifacts;
+    }
+
+    private String nativeFingerprint( String javaFxJarFingerprint, String dependenciesFingerprint )
+        throws MojoExecutionException
+    {
+        if( !incremental )
+        {
+            return null;
+        }
+        try
+        {
+            Fingerprint fingerprint = addPackagingInputs( new Fingerprint().
+                add( STAGE_CREATE_JAR_OUTPUT, javaFxJarFingerprint ).
+                add( STAGE_DEPENDENCIES, dependenciesFingerprint ) );
+            if( keystore != null )
+            {
+                // JNLP JARs are signed in place, resign them from unsigned ones when signing changes
+                fingerprint.addFile( "keystore", keystore ).
+                    add( "storetype", storetype ).
+                    add( "alias", alias ).
+                    add( "tsaUrl", tsaUrl );
+            }
+            return fingerprint.value();
+        }
+        catch( IOException ex )
+        {
+            throw new MojoExecutionException( "Unable to fingerprint icons", ex );
+        }
+    }
+
+    /**
+     * @return Key of the bundle cache entry, content of the packager inputs and runtime it embeds
+     */
+    private String bundleCacheKey( File javaFxJar, File dependenciesDir )
+        throws MojoExecutionException
+    {
+        try
+        {
+            List<File> dependencies = new ArrayList<File>();
+            File[] dependencyFiles = dependenciesDir.listFiles();
+            if( dependencyFiles != null )
+            {
+                dependencies.addAll( Arrays.asList( dependencyFiles ) );
+                Collections.sort( dependencies );
+            }
+            return addPackagingInputs( new Fingerprint().
+                addFile( "javafx-jar", javaFxJar ).
+                addFiles( "dependencies", dependencies ).
+                add( "javafx.runtime.version", javaFxSdk().getVersion() ).
+                add( "java.version", System.getProperty( "java.version" ) ).
+                add( "java.vendor", System.getProperty( "java.vendor" ) ).
+                add( "os.name", System.getProperty( "os.name" ) ).
+                add( "os.arch", System.getProperty( "os.arch" ) ) ).
+                value();
+        }
+        catch( IOException ex )
+        {
+            throw new MojoExecutionException( "Unable to compute bundle cache key", ex );
+        }
+    }
+
+    private Fingerprint addPackagingInputs( Fingerprint fingerprint )
+        throws MojoExecutionException, IOException
+    {
+        return fingerprint.
+            add( "bundles", bundles ).
+            add( "appId", appId ).
+            add( "appName", appName ).
+            add( "appDescription", appDescription ).
+            add( "appVendor", appVendor ).
+            add( "appCategory", appCategory ).
+            add( "appCopyright", appCopyright ).
+            add( "width", width ).
+            add( "height", height ).
+            add( "allPermissions", allPermissions ).
+            add( "mainClass", mainClass ).
+            add( "preloaderClass", preloaderClass ).
+            add( "jvmArgs", jvmArgs ).
+            add( "jvmProps", jvmProps ).
+            add( "performanceProfiles", performanceProfiles ).
+            add( "version", project.getVersion() ).
+            add( "finalName", project.getBuild().getFinalName() ).
+            add( "reproducibleTime", reproducibleTime() ).
+            add( "jnlpCompression", jnlpCompression ).
+            add( "trainingClass", trainingClass ).
+            add( "trainingArgs", trainingArgs ).
+            add( "resourceProcessors", resourceProcessors ).
+            add( "shrink", shrink ).
+            add( "shrinkKeep", shrinkKeep ).
+            add( "trimRuntime", trimRuntime ).
+            add( "runtimeModules", runtimeModules ).
+            add( "cds", classDataSharing ).
+            addFiles( "icons", icons );
+    }
+
+    /**
+     * @return JavaFX SDK of the JRE running the build
+     */
+    private JavaFxSdk javaFxSdk()
+        throws IOException
+    {
+        return JavaFxSdk.discover( new File( System.getProperty( "java.home" ) ), sdkCacheFile );
+    }
+
+    /**
+     * @return Packager output directory by requested bundle type, the native directory itself when a single bundle
+     *         type is requested
+     */
+    private Map<BundleType, File> bundleOutputDirs( File javaFxNativeDir )
+        throws MojoExecutionException
+    {
+        Set<BundleType> bundleTypes = new LinkedHashSet<BundleType>();
+        for( String bundle : StringUtils.split( bundles, "," ) )
+        {
+            String name = bundle.trim();
+            if( name.length() > 0 )
+            {
+                try
+                {
+                    bundleTypes.add( BundleType.valueOf( name.toUpperCase( Locale.ENGLISH ) ) );
+                }
+                catch( IllegalArgumentException ex )
+                {
+                    throw new MojoExecutionException( "Unknown bundle type '" + name + "', must be one of "
+                                                      + Arrays.toString( BundleType.values() ) );
+                }
+            }
+        }
+        if( bundleTypes.size() > 1 )
+        {
+            // JNLP artifact is generated whatever the bundle type
+            bundleTypes.remove( BundleType.NONE );
+        }
+        if( bundleTypes.isEmpty() )
+        {
+            bundleTypes.add( BundleType.NONE );
+        }
+        Map<BundleType, File> outputDirs = new LinkedHashMap<BundleType, File>();
+        for( BundleType bundleType : bundleTypes )
+        {
+            String bundleDir = bundleType.name().toLowerCase( Locale.ENGLISH );
+            outputDirs.put( bundleType, bundleTypes.size() == 1
+                                        ? javaFxNativeDir
+                                        : new File( javaFxNativeDir, bundleDir ) );
+        }
+        return outputDirs;
+    }
+
+    /**
+     * @return Packager output directories of each performance profile, by bundle type, JNLP only runs excluded
+     */
+    private Map<PerformanceProfile, Map<BundleType, File>> profileOutputDirs( File javaFxNativeDir,
+                                                                              Set<BundleType> bundleTypes )
+        throws MojoExecutionException
+    {
+        Map<PerformanceProfile, Map<BundleType, File>> profileOutputDirs =
+            new LinkedHashMap<PerformanceProfile, Map<BundleType, File>>();
+        if( performanceProfiles == null || performanceProfiles.isEmpty() )
+        {
+            return profileOutputDirs;
+        }
+        if( bundleTypes.equals( Collections.singleton( BundleType.NONE ) ) )
+        {
+            getLog().warn( "Performance profiles only apply to native bundles, ignoring them" );
+            return profileOutputDirs;
+        }
+        Set<String> names = new HashSet<String>();
+        for( PerformanceProfile profile : performanceProfiles )
+        {
+            String name = profile.getName();
+            if( name == null || !name.matches( "[A-Za-z0-9_.-]+" ) )
+            {
+                throw new MojoExecutionException( "Invalid performance profile name '" + name
+                                                  + "', must be made of letters, digits, '.', '_' and '-'" );
+            }
+            if( !names.add( name ) )
+            {
+                throw new MojoExecutionException( "Duplicate performance profile '" + name + "'" );
+            }
+            Map<BundleType, File> outputDirs = new LinkedHashMap<BundleType, File>();
+            for( BundleType bundleType : bundleTypes )
+            {
+                if( bundleType != BundleType.NONE )
+                {
+                    String bundleDir = bundleType.name().toLowerCase( Locale.ENGLISH );
+                    outputDirs.put( bundleType, new File( javaFxNativeDir, "profiles/" + name + "/" + bundleDir ) );
+                }
+            }
+            profileOutputDirs.put( profile, outputDirs );
+        }
+        return profileOutputDirs;
+    }
+
+    private void generateDeploymentPackages( FingerprintManifest fingerprints, String nativeFingerprint,
+                                             File javaFxCreateJarDir, String javaFxJarName, File dependenciesDir,
+                                             File javaFxNativeDir, Map<BundleType, File> bundleOutputDirs,
+                                             Map<PerformanceProfile, Map<BundleType, File>> profileOutputDirs,
+                                             File javaFxJnlpDir )
+        throws MojoExecutionException
+    {
+        try
+        {
+            if( fingerprints.isUpToDate( STAGE_NATIVE, nativeFingerprint, javaFxNativeDir, javaFxJnlpDir ) )
+            {
+                getLog().info( "JavaFX Application packages are up to date" );
+                metrics.begin( STAGE_NATIVE ).upToDate().end();
+                return;
+            }
+            if( fingerprints.isEnabled() || bundleCache )
+            {
+                // Remove packages left by a previous run
+                fingerprints.invalidate( STAGE_NATIVE );
+                FileUtils.deleteDirectory( javaFxNativeDir );
+                FileUtils.deleteDirectory( javaFxJnlpDir );
+            }
+        }
+        catch( IOException ex )
+        {
+            throw new MojoExecutionException( "Unable to clean JavaFX Native Bundle(s)", ex );
+        }
+
+        BundleCache cache = null;
+        String cacheKey = null;
+        if( bundleCache )
+        {
+            cache = new BundleCache( bundleCacheDirectory, bundleCacheMaxSize * 1024 * 1024, getLog() );
+            cacheKey = bundleCacheKey( new File( javaFxCreateJarDir, javaFxJarName ), dependenciesDir );
+        }
+
+        PackagingMetrics.Phase phase = metrics.begin( STAGE_NATIVE );
+        try
+        {
+            if( cache != null && cache.restore( cacheKey, javaFxNativeDir ) )
+            {
+                getLog().info( "JavaFX Application packages restored from cache " + cacheKey );
+            }
+            else
+            {
+                phase.read( new File( javaFxCreateJarDir, javaFxJarName ) ).read( dependenciesDir );
+                // Profile variants reuse the JavaFX JAR and staged dependencies
+                PackagerRunner runner = new PackagerRunner( getLog(), packagerLog, parallelBundles, packagerThreads );
+                addPackagerRuns( runner, javaFxCreateJarDir, javaFxJarName, dependenciesDir, bundleOutputDirs, null );
+                for( Map.Entry<PerformanceProfile, Map<BundleType, File>> profile : profileOutputDirs.entrySet() )
+                {
+                    addPackagerRuns( runner, javaFxCreateJarDir, javaFxJarName, dependenciesDir, profile.getValue(),
+                                     profile.getKey() );
+                }
+                runner.run();
+                if( cache != null )
+                {
+                    storeInCache( cache, cacheKey, javaFxNativeDir );
+                }
+            }
+
+            // Gather JNLP Artifact files, identical for all bundle types
+            File jnlpSourceDir = bundleOutputDirs.values().iterator().next();
+            FileUtils.mkdir( javaFxJnlpDir.getAbsolutePath() );
+            for( File file : jnlpSourceDir.listFiles() )
+            {
+                if( file.isFile() )
+                {
+                    FileUtils.rename( file, new File( javaFxJnlpDir, file.getName() ) );
+                }
+            }
+            JnlpResources jnlpResources = new JnlpResources( getLog(), javaFxJnlpDir );
+            Set<String> compressions = jnlpCompressions();
+            JarSigner signer = jarSigner();
+            if( signer != null )
+            {
+                if( compressions.contains( JnlpResources.PACK200 ) )
+                {
+                    jnlpResources.normalize( archiveThreads );
+                }
+                signer.sign( jnlpResources.jars() );
+            }
+            jnlpResources.compress( compressions.contains( JnlpResources.PACK200 ),
+                                    compressions.contains( JnlpResources.GZIP ), archiveThreads );
+            jnlpResources.writeManifest();
+
+            fingerprints.record( STAGE_NATIVE, nativeFingerprint );
+            phase.wrote( javaFxNativeDir ).wrote( javaFxJnlpDir );
+        }
+        catch( PackagerException ex )
         {
             throw new MojoExecutionException( "Unable to package JavaFX Native Bundle(s)", ex );
         }
@@ -336,6 +1388,197 @@ public class JavaFXPackageMojo
         {
             throw new MojoExecutionException( "Unable to attach JavaFX Native Bundle(s)", ex );
         }
+        finally
+        {
+            phase.end();
+        }
+    }
+
+    /**
+     * One packager run per bundle type, each in its own output directory.
+     *
+     * @param profile Performance profile of the bundles, {@literal null} for the common ones
+     */
+    private void addPackagerRuns( PackagerRunner runner, File javaFxCreateJarDir, String javaFxJarName,
+                                  File dependenciesDir, Map<BundleType, File> bundleOutputDirs,
+                                  PerformanceProfile profile )
+        throws MojoExecutionException
+    {
+        String label = profile == null ? "" : ", " + profile.getName() + " profile";
+        for( Map.Entry<BundleType, File> bundleOutputDir : bundleOutputDirs.entrySet() )
+        {
+            BundleType bundleType = bundleOutputDir.getKey();
+            runner.add( bundleType.name().toLowerCase( Locale.ENGLISH ) + label,
+                        deployParams( bundleType, bundleOutputDir.getValue(), javaFxCreateJarDir, javaFxJarName,
+                                      dependenciesDir, profile ) );
+        }
+    }
+
+    private void storeInCache( BundleCache cache, String cacheKey, File javaFxNativeDir )
+    {
+        try
+        {
+            cache.store( cacheKey, javaFxNativeDir );
+        }
+        catch( IOException ex )
+        {
+            // The cache is an optimization, never fail the build because of it
+            getLog().warn( "Unable to store JavaFX Native Bundle(s) in cache: " + ex.getMessage() );
+            getLog().debug( ex );
+        }
+    }
+
+    /**
+     * @return Signer of the JNLP JARs, {@literal null} if no keystore is configured
+     */
+    private JarSigner jarSigner()
+        throws MojoExecutionException
+    {
+        if( keystore == null )
+        {
+            if( allPermissions )
+            {
+                getLog().warn( "allPermissions requires signed JARs, set keystore to sign them" );
+            }
+            return null;
+        }
+        if( StringUtils.isEmpty( alias ) || storepass == null )
+        {
+            throw new MojoExecutionException( "Signing JARs with keystore " + keystore
+                                              + " requires the alias and storepass parameters" );
+        }
+        return new JarSigner( getLog(), keystore, storetype, storepass, alias, keypass, tsaUrl,
+                              signatureCacheDirectory, signingThreads );
+    }
+
+    private Set<String> jnlpCompressions()
+        throws MojoExecutionException
+    {
+        Set<String> compressions = new HashSet<String>();
+        for( String compression : StringUtils.split( StringUtils.defaultString( jnlpCompression ), "," ) )
+        {
+            String name = compression.trim().toLowerCase( Locale.ENGLISH );
+            if( name.length() == 0 )
+            {
+                continue;
+            }
+            if( !JnlpResources.PACK200.equals( name ) && !JnlpResources.GZIP.equals( name ) )
+            {
+                throw new MojoExecutionException( "Unknown JNLP compression '" + name + "', must be one of "
+                                                  + JnlpResources.PACK200 + " or " + JnlpResources.GZIP );
+            }
+            compressions.add( name );
+        }
+        return compressions;
+    }
+
+    /**
+     * @param profile Performance profile of the bundle, {@literal null} for the common ones
+     */
+    private DeployParams deployParams( BundleType bundleType, File outputDir, File javaFxCreateJarDir,
+                                       String javaFxJarName, File dependenciesDir, PerformanceProfile profile )
+        throws MojoExecutionException
+    {
+        DeployParams deployParams = new DeployParams();
+        deployParams.setVerbose( verbose );
+        deployParams.setApplicationClass( mainClass );
+        deployParams.setId( appId );
+        deployParams.setAppId( appId );
+        deployParams.setAppName( appName );
+        deployParams.setVersion( project.getVersion() );
+        deployParams.setTitle( appName );
+        deployParams.setDescription( appDescription );
+        if( !StringUtils.isEmpty( appVendor ) )
+        {
+            deployParams.setVendor( appVendor );
+        }
+        if( !StringUtils.isEmpty( appCategory ) )
+        {
+            deployParams.setCategory( appCategory );
+        }
+        if( !StringUtils.isEmpty( appCopyright ) )
+        {
+            deployParams.setCopyright( appCopyright );
+        }
+        if( width != null && width > 0 )
+        {
+            deployParams.setWidth( width );
+        }
+        if( height != null && height > 0 )
+        {
+            deployParams.setHeight( height );
+        }
+        deployParams.setAllPermissions( allPermissions );
+        if( !StringUtils.isEmpty( preloaderClass ) )
+        {
+            deployParams.setPreloader( preloaderClass );
+        }
+        if( jvmArgs != null )
+        {
+            for( String jvmArgument : jvmArgs )
+            {
+                deployParams.addJvmArg( jvmArgument );
+            }
+        }
+        Map<String, String> properties = new LinkedHashMap<String, String>();
+        if( jvmProps != null )
+        {
+            properties.putAll( jvmProps );
+        }
+        if( profile != null )
+        {
+            for( String jvmArgument : profile.getJvmArgs() )
+            {
+                deployParams.addJvmArg( jvmArgument );
+            }
+            properties.putAll( profile.getJvmProps() );
+        }
+        if( classDataSharing && bundleType != BundleType.NONE )
+        {
+            // Also in the JNLP artifact of the run, Web Start ignores these non secure arguments
+            for( String jvmArgument : ClassDataSharing.jvmArgs() )
+            {
+                deployParams.addJvmArg( jvmArgument );
+            }
+        }
+        for( Map.Entry<String, String> jvmProp : properties.entrySet() )
+        {
+            deployParams.addJvmProperty( jvmProp.getKey(), jvmProp.getValue() );
+        }
+        if( packagedIcons != null )
+        {
+            for( File icon : packagedIcons )
+            {
+                deployParams.addIcon( icon.getAbsolutePath(), null, -1, -1, -1, DeployParams.RunMode.ALL );
+            }
+        }
+
+        if( bundledRuntime != null )
+        {
+            try
+            {
+                RuntimeStage.bundle( getLog(), deployParams, bundledRuntime );
+            }
+            catch( IOException ex )
+            {
+                throw new MojoExecutionException( "Unable to bundle trimmed runtime " + bundledRuntime, ex );
+            }
+            catch( ReflectiveOperationException ex )
+            {
+                throw new MojoExecutionException( "Unable to bundle trimmed runtime " + bundledRuntime, ex );
+            }
+        }
+
+        deployParams.setOutdir( outputDir );
+        deployParams.setOutfile( project.getBuild().getFinalName() );
+        deployParams.setBundleType( bundleType );
+
+        deployParams.addResource( javaFxCreateJarDir, javaFxJarName );
+        if( dependenciesDir.exists() )
+        {
+            deployParams.addResource( dependenciesDir, "" );
+        }
+        return deployParams;
     }
 
 }
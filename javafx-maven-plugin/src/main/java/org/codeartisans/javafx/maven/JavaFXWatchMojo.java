@@ -0,0 +1,63 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+
+/**
+ * Package the project, unless a package execution already did in this session, then keep the JavaFX JAR and the
+ * application images up to date as classes are compiled.
+ *
+ * Run with {@literal mvn package javafx:watch} and compile from the IDE or another terminal. Only the changed entries
+ * are rewritten, resource processing, class load ordering, bundles generation and JNLP output are left to the next
+ * package run.
+ *
+ * @goal watch
+ * @requiresDependencyResolution
+ */
+public class JavaFXWatchMojo
+    extends JavaFXPackageMojo
+{
+
+    /**
+     * Delay in milliseconds without changes after which the JavaFX JAR is updated.
+     *
+     * @parameter property="watchDebounce" default-value="300"
+     */
+    private long watchDebounce;
+
+    @Override
+    public void execute()
+        throws MojoExecutionException, MojoFailureException
+    {
+        if( isPackagedInSession() )
+        {
+            getLog().info( "Packaged in this session, watching the JavaFX JAR" );
+        }
+        else if( isProjectJarBuilt() )
+        {
+            super.execute();
+        }
+        else
+        {
+            getLog().info( "Project JAR not built in this session, updating the previously packaged JavaFX JAR" );
+        }
+        // Fails if nothing was ever packaged
+        watch( watchDebounce );
+    }
+
+}
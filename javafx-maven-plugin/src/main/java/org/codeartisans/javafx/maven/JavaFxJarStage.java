@@ -0,0 +1,314 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import com.sun.javafx.tools.packager.CreateJarParams;
+import com.sun.javafx.tools.packager.PackagerException;
+import com.sun.javafx.tools.packager.PackagerLib;
+import de.schlichtherle.truezip.file.TFile;
+import de.schlichtherle.truezip.file.TVFS;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.StringUtils;
+
+/**
+ * JavaFX JAR creation stage of the package goal.
+ *
+ * Streams the project JAR entries next to a launcher only JAR built by the packager, or packages the unpacked project
+ * JAR when streaming is disabled or fails. Resources are then processed and entries laid out in class loading order
+ * if configured.
+ */
+/* package */ class JavaFxJarStage
+{
+
+    private static final String STAGE_UNPACK = "unpack";
+    private final Log log;
+    private final PackagingMetrics metrics;
+    private final File projectJar;
+    private final String mainClass;
+    private final String preloaderClass;
+    private final Boolean verbose;
+    private final Long reproducibleTime;
+    private boolean streamJar;
+    private ResourcePipeline resourcePipeline;
+    private String resourceProcessors;
+    private boolean classOrder;
+    private String trainingClass;
+    private List<String> trainingArgs;
+    private int trainingDuration;
+    private String classOrderStoredEntries;
+    private List<File> dependencies;
+
+    /**
+     * @param reproducibleTime Time of all JAR entries, {@literal null} to keep their modification time
+     */
+    /* package */ JavaFxJarStage( Log log, PackagingMetrics metrics, File projectJar, String mainClass,
+                                  String preloaderClass, Boolean verbose, Long reproducibleTime )
+    {
+        this.log = log;
+        this.metrics = metrics;
+        this.projectJar = projectJar;
+        this.mainClass = mainClass;
+        this.preloaderClass = preloaderClass;
+        this.verbose = verbose;
+        this.reproducibleTime = reproducibleTime;
+    }
+
+    /**
+     * @param streamJar Stream the project JAR entries instead of unpacking them
+     */
+    /* package */ JavaFxJarStage streamJar( boolean streamJar )
+    {
+        this.streamJar = streamJar;
+        return this;
+    }
+
+    /**
+     * @param resourcePipeline   Pipeline processing the JAR resources, {@literal null} if none
+     * @param resourceProcessors Names of its processors, part of the stage fingerprint
+     */
+    /* package */ JavaFxJarStage resources( ResourcePipeline resourcePipeline, String resourceProcessors )
+    {
+        this.resourcePipeline = resourcePipeline;
+        this.resourceProcessors = resourceProcessors;
+        return this;
+    }
+
+    /**
+     * @param classOrder       Lay out the JAR in class loading order
+     * @param trainingClass    Class run by the training runs, the main class if empty
+     * @param trainingArgs     JVM arguments of the training runs
+     * @param trainingDuration Duration of the training runs in seconds
+     * @param storedEntries    Comma separated patterns of entries stored uncompressed
+     * @param dependencies     Dependencies of the project, on the class path of the training runs
+     */
+    /* package */ JavaFxJarStage classOrder( boolean classOrder, String trainingClass, List<String> trainingArgs,
+                                             int trainingDuration, String storedEntries, List<File> dependencies )
+    {
+        this.classOrder = classOrder;
+        this.trainingClass = trainingClass;
+        this.trainingArgs = trainingArgs;
+        this.trainingDuration = trainingDuration;
+        this.classOrderStoredEntries = storedEntries;
+        this.dependencies = dependencies;
+        return this;
+    }
+
+    /**
+     * @return Fingerprint of the created JavaFX JAR
+     */
+    /* package */ String run( FingerprintManifest fingerprints, File buildDir, File javaFxJar )
+        throws IOException, PackagerException
+    {
+        String projectJarFingerprint = projectJarFingerprint( fingerprints );
+        String fingerprint = null;
+        if( fingerprints.isEnabled() )
+        {
+            fingerprint = new Fingerprint().
+                add( STAGE_UNPACK, projectJarFingerprint ).
+                add( "mainClass", mainClass ).
+                add( "preloaderClass", preloaderClass ).
+                add( "streamJar", streamJar ).
+                add( "reproducibleTime", reproducibleTime ).
+                add( "resourceProcessors", resourceProcessors ).
+                add( "classOrder", classOrder ).
+                add( "classOrderStoredEntries", classOrderStoredEntries ).
+                add( "trainingClass", trainingClass ).
+                add( "trainingArgs", trainingArgs ).
+                add( "trainingDuration", trainingDuration ).
+                value();
+        }
+        PackagingMetrics.Phase phase = metrics.begin( JavaFXPackageMojo.STAGE_CREATE_JAR );
+        try
+        {
+            if( fingerprints.isUpToDate( JavaFXPackageMojo.STAGE_CREATE_JAR, fingerprint, javaFxJar ) )
+            {
+                log.info( "JavaFX JAR is up to date" );
+                phase.upToDate();
+            }
+            else
+            {
+                fingerprints.invalidate( JavaFXPackageMojo.STAGE_CREATE_JAR );
+
+                log.info( "Packaging JavaFX JAR" );
+
+                boolean streamed = false;
+                if( streamJar )
+                {
+                    try
+                    {
+                        streamJavaFxJar( new File( buildDir, "javafx-launcher-jar" ), javaFxJar );
+                        streamed = true;
+                    }
+                    catch( IOException ex )
+                    {
+                        log.warn( "Unable to stream project JAR into the JavaFX JAR, falling back to unpacking it: "
+                                  + ex.getMessage() );
+                        log.debug( ex );
+                    }
+                }
+                if( !streamed )
+                {
+                    // Unpack main artifact JAR, necessary to keep maven metadata in JavaFX JAR
+                    File unpackedJarDir = new File( buildDir, "javafx-unpacked-project-artifact" );
+                    unpackProjectJar( fingerprints, projectJarFingerprint, unpackedJarDir );
+                    packageAsJar( unpackedJarDir, javaFxJar.getParentFile(), javaFxJar.getName() );
+                    if( reproducibleTime != null )
+                    {
+                        JarRewriter.normalize( javaFxJar, reproducibleTime );
+                    }
+                }
+                if( resourcePipeline != null )
+                {
+                    resourcePipeline.processJar( javaFxJar, reproducibleTime );
+                }
+                if( classOrder )
+                {
+                    applyClassLoadOrder( new File( buildDir, "javafx-class-order.log" ), javaFxJar );
+                }
+
+                fingerprints.record( JavaFXPackageMojo.STAGE_CREATE_JAR, fingerprint );
+                if( fingerprints.isEnabled() )
+                {
+                    fingerprints.record( JavaFXPackageMojo.STAGE_CREATE_JAR_OUTPUT, Fingerprint.hash( javaFxJar ) );
+                }
+                phase.read( projectJar ).wrote( javaFxJar );
+            }
+
+            // Replace main artifact with JavaFX JAR
+            FileUtils.forceDelete( projectJar );
+            projectJar.delete();
+            FileUtils.copyFile( javaFxJar, projectJar );
+            phase.read( javaFxJar ).wrote( projectJar );
+
+            return fingerprints.get( JavaFXPackageMojo.STAGE_CREATE_JAR_OUTPUT );
+        }
+        finally
+        {
+            phase.end();
+        }
+    }
+
+    /**
+     * @return Fingerprint of the project JAR, or of the one it was created from if it is still the JavaFX JAR
+     *         created by the previous run, the project JAR being replaced by the JavaFX JAR
+     */
+    private String projectJarFingerprint( FingerprintManifest fingerprints )
+        throws IOException
+    {
+        if( !fingerprints.isEnabled() )
+        {
+            return null;
+        }
+        String jarHash = Fingerprint.hash( projectJar );
+        if( jarHash.equals( fingerprints.get( JavaFXPackageMojo.STAGE_CREATE_JAR_OUTPUT ) )
+            && fingerprints.get( STAGE_UNPACK ) != null )
+        {
+            return fingerprints.get( STAGE_UNPACK );
+        }
+        return new Fingerprint().add( "project-jar", jarHash ).value();
+    }
+
+    private void unpackProjectJar( FingerprintManifest fingerprints, String projectJarFingerprint,
+                                   File unpackedJarDir )
+        throws IOException
+    {
+        PackagingMetrics.Phase phase = metrics.begin( STAGE_UNPACK );
+        try
+        {
+            if( fingerprints.isUpToDate( STAGE_UNPACK, projectJarFingerprint, unpackedJarDir ) )
+            {
+                log.info( "Unpacked project JAR is up to date" );
+                phase.upToDate();
+                return;
+            }
+            if( fingerprints.isEnabled() )
+            {
+                // Remove stale entries left by a previous run
+                fingerprints.invalidate( STAGE_UNPACK );
+                FileUtils.deleteDirectory( unpackedJarDir );
+            }
+            FileUtils.mkdir( unpackedJarDir.getAbsolutePath() );
+            TFile projectJarFile = new TFile( projectJar );
+            projectJarFile.cp_rp( unpackedJarDir );
+            // Only this archive, others may be in use by concurrent builds
+            TVFS.umount( projectJarFile );
+            fingerprints.record( STAGE_UNPACK, projectJarFingerprint );
+            phase.read( projectJar ).wrote( unpackedJarDir );
+        }
+        finally
+        {
+            phase.end();
+        }
+    }
+
+    /**
+     * Build a launcher only JAR with the packager and stream the project JAR entries next to its content.
+     */
+    private void streamJavaFxJar( File launcherJarDir, File javaFxJar )
+        throws IOException, PackagerException
+    {
+        File launcherResourcesDir = new File( launcherJarDir, "resources" );
+        FileUtils.deleteDirectory( launcherJarDir );
+        FileUtils.forceMkdir( launcherResourcesDir );
+        JarRewriter.extractManifest( projectJar, launcherResourcesDir );
+
+        String launcherJarName = "launcher.jar";
+        packageAsJar( launcherResourcesDir, launcherJarDir, launcherJarName );
+
+        FileUtils.forceMkdir( javaFxJar.getParentFile() );
+        JarRewriter.rewrite( projectJar, new File( launcherJarDir, launcherJarName ), javaFxJar, reproducibleTime );
+    }
+
+    private void applyClassLoadOrder( File logFile, File javaFxJar )
+        throws IOException
+    {
+        List<File> classpath = new ArrayList<File>();
+        classpath.add( javaFxJar );
+        classpath.addAll( dependencies );
+        ClassLoadOrder order = new ClassLoadOrder( log );
+        List<String> loadedEntries = order.train( classpath,
+                                                  StringUtils.isEmpty( trainingClass ) ? mainClass : trainingClass,
+                                                  trainingArgs, trainingDuration, logFile );
+        order.apply( javaFxJar, loadedEntries,
+                     StringUtils.split( StringUtils.defaultString( classOrderStoredEntries ), "," ),
+                     reproducibleTime );
+    }
+
+    private void packageAsJar( File resourcesDir, File outputDir, String outputName )
+        throws PackagerException
+    {
+        CreateJarParams createJar = new CreateJarParams();
+        createJar.setVerbose( verbose );
+        createJar.setApplicationClass( mainClass );
+        if( !StringUtils.isEmpty( preloaderClass ) )
+        {
+            createJar.setPreloader( preloaderClass );
+        }
+
+        createJar.setOutdir( outputDir );
+        createJar.setOutfile( outputName );
+        createJar.addResource( resourcesDir, "" );
+
+        PackagerLib packager = new PackagerLib();
+        packager.packageAsJar( createJar );
+    }
+
+}
@@ -0,0 +1,470 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.IOUtil;
+import org.codehaus.plexus.util.WriterFactory;
+
+/**
+ * Web Start resources of the JNLP directory.
+ *
+ * Writes compressed variants of the JARs as served by the JNLP download servlet, {@literal .jar.pack.gz} and
+ * {@literal .jar.gz}, and a manifest of the JARs content hashes. Given the manifest of a previous release, copies
+ * only the JARs that changed so that clients update traffic is proportional to the change.
+ *
+ * JARs already signed are never rewritten, their signature would no longer verify.
+ */
+/* package */ class JnlpResources
+{
+
+    /* package */ static final String MANIFEST_NAME = "jnlp-resources.properties";
+    /* package */ static final String PACK200 = "pack200";
+    /* package */ static final String GZIP = "gzip";
+    private static final String PACK_GZ = ".pack.gz";
+    private static final String GZ = ".gz";
+    private static final String PACK_ENABLED = "jnlp.packEnabled";
+    private final Log log;
+    private final File jnlpDir;
+    private final Set<String> normalized = Collections.newSetFromMap( new ConcurrentHashMap<String, Boolean>() );
+
+    /* package */ JnlpResources( Log log, File jnlpDir )
+    {
+        this.log = log;
+        this.jnlpDir = jnlpDir;
+    }
+
+    /**
+     * @param pack200 Write {@literal .jar.pack.gz} variants, skipped with a warning on runtimes without Pack200 and
+     *                for signed JARs not {@link #normalize(int) normalized} before signing
+     * @param gzip    Write {@literal .jar.gz} variants
+     * @param threads Number of JARs compressed concurrently, {@literal 0} for the number of available processors
+     */
+    /* package */ void compress( boolean pack200, final boolean gzip, int threads )
+        throws IOException
+    {
+        final boolean packAvailable = pack200 && isPack200Available();
+        if( !packAvailable && !gzip )
+        {
+            return;
+        }
+        List<File> jars = jars();
+        if( jars.isEmpty() )
+        {
+            return;
+        }
+        int poolSize = Math.min( threads > 0 ? threads : Runtime.getRuntime().availableProcessors(), jars.size() );
+        ExecutorService executor = Executors.newFixedThreadPool( poolSize );
+        try
+        {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for( final File jar : jars )
+            {
+                futures.add( executor.submit( new Callable<Void>()
+                {
+                    @Override
+                    public Void call()
+                        throws IOException
+                    {
+                        if( packAvailable && isPackable( jar ) )
+                        {
+                            pack( jar, new File( jar.getParentFile(), jar.getName() + PACK_GZ ) );
+                        }
+                        if( gzip )
+                        {
+                            gzip( jar, new File( jar.getParentFile(), jar.getName() + GZ ) );
+                        }
+                        return null;
+                    }
+
+                } ) );
+            }
+            for( Future<Void> future : futures )
+            {
+                DependencyStager.await( future );
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+        if( packAvailable )
+        {
+            enablePack();
+        }
+        log.info( "Compressed " + jars.size() + " JNLP resource(s)" );
+    }
+
+    /**
+     * Add the {@literal jnlp.packEnabled} property to the JNLP files so that Web Start asks for the
+     * {@literal .jar.pack.gz} variants. Native launchers never get it.
+     */
+    private void enablePack()
+        throws IOException
+    {
+        File[] files = jnlpDir.listFiles();
+        if( files == null )
+        {
+            return;
+        }
+        for( File file : files )
+        {
+            if( !file.isFile() || !file.getName().endsWith( ".jnlp" ) )
+            {
+                continue;
+            }
+            String jnlp = FileUtils.fileRead( file, "UTF-8" );
+            if( jnlp.contains( PACK_ENABLED ) )
+            {
+                continue;
+            }
+            int resources = jnlp.indexOf( "<resources>" );
+            if( resources < 0 )
+            {
+                log.warn( "No resources in " + file.getName() + ", Web Start will not ask for the Pack200 variants" );
+                continue;
+            }
+            int insert = resources + "<resources>".length();
+            FileUtils.fileWrite( file.getAbsolutePath(), "UTF-8",
+                                 jnlp.substring( 0, insert ) + "\n    <property name=\"" + PACK_ENABLED
+                                 + "\" value=\"true\"/>" + jnlp.substring( insert ) );
+        }
+    }
+
+    /**
+     * Write the manifest of the JARs content hashes, sorted by name.
+     */
+    /* package */ void writeManifest()
+        throws IOException
+    {
+        Writer writer = WriterFactory.newWriter( new File( jnlpDir, MANIFEST_NAME ), "ISO-8859-1" );
+        try
+        {
+            for( Map.Entry<String, String> hash : hashes().entrySet() )
+            {
+                writer.write( hash.getKey() + "=" + hash.getValue() + "\n" );
+            }
+        }
+        finally
+        {
+            IOUtil.close( writer );
+        }
+    }
+
+    /**
+     * Copy to the delta directory the JNLP files, the manifest, and the JARs, with their variants, that are new or
+     * changed since the previous manifest.
+     *
+     * @return Number of new or changed JARs
+     */
+    /* package */ int delta( File previousManifest, File deltaDir )
+        throws IOException
+    {
+        Properties previous = new Properties();
+        InputStream input = new FileInputStream( previousManifest );
+        try
+        {
+            previous.load( input );
+        }
+        finally
+        {
+            IOUtil.close( input );
+        }
+        FileUtils.deleteDirectory( deltaDir );
+        FileUtils.forceMkdir( deltaDir );
+        Map<String, String> hashes = hashes();
+        int changed = 0;
+        File[] files = jnlpDir.listFiles();
+        Arrays.sort( files );
+        for( File file : files )
+        {
+            if( !file.isFile() )
+            {
+                continue;
+            }
+            String jarName = jarNameOf( file.getName() );
+            if( jarName != null )
+            {
+                String hash = hashes.get( jarName );
+                if( hash != null && hash.equals( previous.getProperty( jarName ) ) )
+                {
+                    continue;
+                }
+                if( jarName.equals( file.getName() ) )
+                {
+                    changed++;
+                }
+            }
+            FileUtils.copyFile( file, new File( deltaDir, file.getName() ) );
+        }
+        previous.keySet().removeAll( hashes.keySet() );
+        log.info( changed + " of " + hashes.size() + " JNLP JAR(s) changed since the previous release, "
+                  + previous.size() + " removed" );
+        return changed;
+    }
+
+    /**
+     * @return Name of the JAR the given file is or is a variant of, {@literal null} if not a JAR related file
+     */
+    private static String jarNameOf( String fileName )
+    {
+        for( String suffix : new String[]
+        {
+            PACK_GZ, GZ, ""
+        } )
+        {
+            if( fileName.endsWith( ".jar" + suffix ) )
+            {
+                return fileName.substring( 0, fileName.length() - suffix.length() );
+            }
+        }
+        return null;
+    }
+
+    private Map<String, String> hashes()
+        throws IOException
+    {
+        Map<String, String> hashes = new TreeMap<String, String>();
+        for( File jar : jars() )
+        {
+            hashes.put( jar.getName(), Fingerprint.hash( jar ) );
+        }
+        return hashes;
+    }
+
+    /* package */ List<File> jars()
+    {
+        List<File> jars = new ArrayList<File>();
+        File[] files = jnlpDir.listFiles();
+        if( files != null )
+        {
+            for( File file : files )
+            {
+                if( file.isFile() && file.getName().endsWith( ".jar" ) )
+                {
+                    jars.add( file );
+                }
+            }
+        }
+        return jars;
+    }
+
+    private boolean isPack200Available()
+    {
+        if( Pack200Tool.isAvailable() )
+        {
+            return true;
+        }
+        log.warn( "Pack200 is not available on this runtime, no .pack.gz variants will be written" );
+        return false;
+    }
+
+    /**
+     * @return {@literal false} for JARs signed without being normalized first, their signature would not verify once
+     *         unpacked
+     */
+    private boolean isPackable( File jar )
+        throws IOException
+    {
+        if( normalized.contains( jar.getName() ) || !DependencyAnalyzer.isSigned( jar ) )
+        {
+            return true;
+        }
+        log.warn( jar.getName() + " was signed before being normalized, no .pack.gz variant will be written" );
+        return false;
+    }
+
+    /**
+     * Pack200 variants are optional, clients fall back to the JAR, so failures are only logged.
+     */
+    private void pack( File jar, File packGz )
+    {
+        boolean success = false;
+        try
+        {
+            JarFile input = new JarFile( jar );
+            OutputStream output = gzipOutput( packGz );
+            try
+            {
+                Pack200Tool.pack( input, output );
+                success = true;
+            }
+            finally
+            {
+                input.close();
+                IOUtil.close( output );
+            }
+        }
+        catch( IOException ex )
+        {
+            log.warn( "Unable to pack " + jar.getName() + ", no .pack.gz variant will be written: " + ex.getMessage() );
+        }
+        finally
+        {
+            if( !success )
+            {
+                packGz.delete();
+            }
+        }
+    }
+
+    /**
+     * Normalize the JARs with a Pack200 round trip, signatures of JARs signed once normalized still verify after
+     * packing. JARs already signed are left as is. Does nothing on runtimes without Pack200.
+     *
+     * @param threads Number of JARs normalized concurrently, {@literal 0} for the number of available processors
+     */
+    /* package */ void normalize( int threads )
+        throws IOException
+    {
+        List<File> jars = jars();
+        if( jars.isEmpty() || !isPack200Available() )
+        {
+            return;
+        }
+        int poolSize = Math.min( threads > 0 ? threads : Runtime.getRuntime().availableProcessors(), jars.size() );
+        ExecutorService executor = Executors.newFixedThreadPool( poolSize );
+        try
+        {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for( final File jar : jars )
+            {
+                futures.add( executor.submit( new Callable<Void>()
+                {
+                    @Override
+                    public Void call()
+                        throws IOException
+                    {
+                        if( DependencyAnalyzer.isSigned( jar ) )
+                        {
+                            log.info( "Leaving signed " + jar.getName() + " as is, normalizing it would break its "
+                                      + "signature" );
+                        }
+                        else
+                        {
+                            normalize( jar );
+                            normalized.add( jar.getName() );
+                        }
+                        return null;
+                    }
+
+                } ) );
+            }
+            for( Future<Void> future : futures )
+            {
+                DependencyStager.await( future );
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void normalize( File jar )
+        throws IOException
+    {
+        File packed = new File( jar.getParentFile(), jar.getName() + ".pack" );
+        File normalized = new File( jar.getParentFile(), jar.getName() + ".normalized" );
+        try
+        {
+            JarFile input = new JarFile( jar );
+            OutputStream packOutput = new BufferedOutputStream( new FileOutputStream( packed ) );
+            try
+            {
+                Pack200Tool.pack( input, packOutput );
+            }
+            finally
+            {
+                input.close();
+                IOUtil.close( packOutput );
+            }
+            JarOutputStream output = new JarOutputStream( new BufferedOutputStream(
+                new FileOutputStream( normalized ) ) );
+            try
+            {
+                Pack200Tool.unpack( packed, output );
+            }
+            finally
+            {
+                IOUtil.close( output );
+            }
+            // Replaced, not written in place, staged JARs may be hard links
+            FileUtils.forceDelete( jar );
+            FileUtils.rename( normalized, jar );
+        }
+        finally
+        {
+            packed.delete();
+            normalized.delete();
+        }
+    }
+
+    private static void gzip( File jar, File gz )
+        throws IOException
+    {
+        InputStream input = new FileInputStream( jar );
+        OutputStream output = gzipOutput( gz );
+        try
+        {
+            IOUtil.copy( input, output );
+        }
+        finally
+        {
+            IOUtil.close( input );
+            IOUtil.close( output );
+        }
+    }
+
+    private static OutputStream gzipOutput( File file )
+        throws IOException
+    {
+        return new GZIPOutputStream( new BufferedOutputStream( new FileOutputStream( file ) ), 64 * 1024 )
+        {
+            {
+                def.setLevel( Deflater.BEST_COMPRESSION );
+            }
+
+        };
+    }
+
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+/**
+ * Minimal JSON output support for reports.
+ */
+/* package */ final class Json
+{
+
+    /**
+     * @return JSON string literal of the given value, {@literal null} literal for {@literal null}
+     */
+    /* package */ static String quote( String value )
+    {
+        if( value == null )
+        {
+            return "null";
+        }
+        StringBuilder sb = new StringBuilder( value.length() + 2 ).append( '"' );
+        for( int idx = 0; idx < value.length(); idx++ )
+        {
+            char ch = value.charAt( idx );
+            switch( ch )
+            {
+                case '"':
+                    sb.append( "\\\"" );
+                    break;
+                case '\\':
+                    sb.append( "\\\\" );
+                    break;
+                case '\n':
+                    sb.append( "\\n" );
+                    break;
+                case '\r':
+                    sb.append( "\\r" );
+                    break;
+                case '\t':
+                    sb.append( "\\t" );
+                    break;
+                default:
+                    if( ch < 0x20 )
+                    {
+                        sb.append( String.format( "\\u%04x", (int) ch ) );
+                    }
+                    else
+                    {
+                        sb.append( ch );
+                    }
+            }
+        }
+        return sb.append( '"' ).toString();
+    }
+
+    private Json()
+    {
+    }
+
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+
+/**
+ * Pack200 through reflection.
+ *
+ * {@literal java.util.jar.Pack200} was removed from Java 14 runtimes, it is not compiled against so that the plugin
+ * builds and runs on any JDK, Pack200 being only available when the build runtime has it.
+ */
+/* package */ final class Pack200Tool
+{
+
+    private static final Class<?> PACK200 = pack200Class();
+
+    /**
+     * @return Whether the runtime has Pack200
+     */
+    /* package */ static boolean isAvailable()
+    {
+        return PACK200 != null;
+    }
+
+    /**
+     * Pack a JAR, packer settings are identical for all JARs as normalization only holds for identical settings.
+     */
+    /* package */ static void pack( JarFile input, OutputStream output )
+        throws IOException
+    {
+        Object packer = invoke( method( null, "newPacker" ), null );
+        @SuppressWarnings( "unchecked" )
+        Map<String, String> properties = (Map<String, String>) invoke( method( "Packer", "properties" ), packer );
+        properties.put( "pack.effort", "9" );
+        // Single segment for best compression, files order kept as class loading may depend on it
+        properties.put( "pack.segment.limit", "-1" );
+        properties.put( "pack.keep.file.order", "true" );
+        // Class files the packer does not understand, newer versions for example, are passed as is
+        properties.put( "com.sun.java.util.jar.pack.class.format.error", "pass" );
+        invoke( method( "Packer", "pack", JarFile.class, OutputStream.class ), packer, input, output );
+    }
+
+    /* package */ static void unpack( File input, JarOutputStream output )
+        throws IOException
+    {
+        Object unpacker = invoke( method( null, "newUnpacker" ), null );
+        invoke( method( "Unpacker", "unpack", File.class, JarOutputStream.class ), unpacker, input, output );
+    }
+
+    /**
+     * @param type Nested type of {@literal Pack200} declaring the method, {@literal null} for {@literal Pack200} itself
+     */
+    private static Method method( String type, String name, Class<?>... parameterTypes )
+        throws IOException
+    {
+        try
+        {
+            Class<?> declaringClass = type == null ? PACK200 : Class.forName( PACK200.getName() + "$" + type );
+            return declaringClass.getMethod( name, parameterTypes );
+        }
+        catch( ReflectiveOperationException ex )
+        {
+            throw new IOException( "Unable to use Pack200", ex );
+        }
+    }
+
+    private static Object invoke( Method method, Object target, Object... args )
+        throws IOException
+    {
+        try
+        {
+            return method.invoke( target, args );
+        }
+        catch( InvocationTargetException ex )
+        {
+            if( ex.getCause() instanceof IOException )
+            {
+                throw (IOException) ex.getCause();
+            }
+            throw new IOException( ex.getCause() );
+        }
+        catch( IllegalAccessException ex )
+        {
+            throw new IOException( "Unable to use Pack200", ex );
+        }
+    }
+
+    private static Class<?> pack200Class()
+    {
+        try
+        {
+            return Class.forName( "java.util.jar.Pack200" );
+        }
+        catch( ClassNotFoundException ex )
+        {
+            return null;
+        }
+    }
+
+    private Pack200Tool()
+    {
+    }
+
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import com.sun.javafx.tools.packager.Log;
+import java.util.concurrent.Callable;
+
+/**
+ * Packager logging of one plugin execution.
+ *
+ * The packager logger is global to the JVM, a single dispatcher is installed and forwards messages to the execution
+ * attached to the calling thread so that concurrent executions of parallel builds each log to their own Maven log.
+ * Threads without an attached execution log to the standard output like the default packager logger.
+ */
+/* package */ final class PackagerLog
+{
+
+    private static final ThreadLocal<PackagerLog> CURRENT = new ThreadLocal<PackagerLog>();
+    private static final Log.Logger DISPATCHER = new Log.Logger( false )
+    {
+        @Override
+        public void info( String msg )
+        {
+            PackagerLog current = CURRENT.get();
+            if( current == null )
+            {
+                super.info( msg );
+            }
+            else
+            {
+                current.log.info( msg );
+            }
+        }
+
+        @Override
+        public void verbose( String msg )
+        {
+            PackagerLog current = CURRENT.get();
+            if( current == null )
+            {
+                super.verbose( msg );
+            }
+            else if( current.verbose )
+            {
+                current.log.info( msg );
+            }
+            else
+            {
+                current.log.debug( msg );
+            }
+        }
+
+    };
+    private final org.apache.maven.plugin.logging.Log log;
+    private final boolean verbose;
+
+    /**
+     * @param verbose Log verbose packager messages at info level, at debug level otherwise
+     */
+    /* package */ PackagerLog( org.apache.maven.plugin.logging.Log log, boolean verbose )
+    {
+        this.log = log;
+        this.verbose = verbose;
+    }
+
+    /**
+     * Route the packager messages of the calling thread to this execution until {@link #detach()}.
+     */
+    /* package */ void attach()
+    {
+        Log.setLogger( DISPATCHER );
+        CURRENT.set( this );
+    }
+
+    /* package */ static void detach()
+    {
+        CURRENT.remove();
+    }
+
+    /**
+     * @return Task running with this execution attached to its thread
+     */
+    /* package */ <T> Callable<T> bind( final Callable<T> task )
+    {
+        return new Callable<T>()
+        {
+            @Override
+            public T call()
+                throws Exception
+            {
+                attach();
+                try
+                {
+                    return task.call();
+                }
+                finally
+                {
+                    detach();
+                }
+            }
+
+        };
+    }
+
+}
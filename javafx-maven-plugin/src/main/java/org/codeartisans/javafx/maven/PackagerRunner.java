@@ -0,0 +1,136 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import com.sun.javafx.tools.packager.DeployParams;
+import com.sun.javafx.tools.packager.PackagerException;
+import com.sun.javafx.tools.packager.PackagerLib;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Runs the JavaFX packager once per queued deployment, sequentially or on a bounded thread pool.
+ *
+ * Each run gets its own {@link PackagerLib} and output directory. Concurrent runs log through the {@link PackagerLog}
+ * of the execution that queued them.
+ */
+/* package */ class PackagerRunner
+{
+
+    private final Log log;
+    private final PackagerLog packagerLog;
+    private final boolean parallel;
+    private final int threads;
+    private final List<Callable<Void>> runs = new ArrayList<Callable<Void>>();
+
+    /**
+     * @param parallel Run the packager concurrently when several deployments are queued
+     * @param threads  Maximum number of concurrent runs, {@literal 0} for the number of available processors
+     */
+    /* package */ PackagerRunner( Log log, PackagerLog packagerLog, boolean parallel, int threads )
+    {
+        this.log = log;
+        this.packagerLog = packagerLog;
+        this.parallel = parallel;
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * @param description Logged when the run starts
+     */
+    /* package */ void add( final String description, final DeployParams deployParams )
+    {
+        runs.add( new Callable<Void>()
+        {
+            @Override
+            public Void call()
+                throws PackagerException
+            {
+                log.info( "Packaging JavaFX Application (" + description + ")" );
+
+                PackagerLib packager = new PackagerLib();
+                packager.generateDeploymentPackages( deployParams );
+                return null;
+            }
+
+        } );
+    }
+
+    /* package */ void run()
+        throws PackagerException, IOException
+    {
+        if( !parallel || runs.size() == 1 )
+        {
+            for( Callable<Void> run : runs )
+            {
+                try
+                {
+                    run.call();
+                }
+                catch( PackagerException ex )
+                {
+                    throw ex;
+                }
+                catch( Exception ex )
+                {
+                    throw new IOException( ex );
+                }
+            }
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool( Math.min( threads, runs.size() ) );
+        try
+        {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for( Callable<Void> run : runs )
+            {
+                futures.add( executor.submit( packagerLog.bind( run ) ) );
+            }
+            for( Future<Void> future : futures )
+            {
+                try
+                {
+                    future.get();
+                }
+                catch( InterruptedException ex )
+                {
+                    Thread.currentThread().interrupt();
+                    throw new IOException( "Interrupted", ex );
+                }
+                catch( ExecutionException ex )
+                {
+                    if( ex.getCause() instanceof PackagerException )
+                    {
+                        throw (PackagerException) ex.getCause();
+                    }
+                    throw new IOException( ex.getCause() );
+                }
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+}
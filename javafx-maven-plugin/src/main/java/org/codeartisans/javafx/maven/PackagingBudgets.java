@@ -0,0 +1,127 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.util.IOUtil;
+import org.codehaus.plexus.util.WriterFactory;
+
+/**
+ * Sizes and startup time of the packaged application checked against their budgets.
+ *
+ * A budget of {@literal 0} or less disables the check, the measurement is still reported.
+ */
+/* package */ class PackagingBudgets
+{
+
+    /* package */ static final String BYTES = "bytes";
+    /* package */ static final String MILLIS = "ms";
+
+    private static class Measurement
+    {
+
+        private final String name;
+        private final long value;
+        private final String unit;
+        private final long budget;
+
+        private Measurement( String name, long value, String unit, long budget )
+        {
+            this.name = name;
+            this.value = value;
+            this.unit = unit;
+            this.budget = budget;
+        }
+
+        private boolean exceeded()
+        {
+            return budget > 0 && value > budget;
+        }
+
+    }
+
+    private final List<Measurement> measurements = new ArrayList<Measurement>();
+
+    /* package */ void measure( String name, long value, String unit, long budget )
+    {
+        measurements.add( new Measurement( name, value, unit, budget ) );
+    }
+
+    /**
+     * @return Description of the exceeded budgets, empty if none
+     */
+    /* package */ List<String> exceeded()
+    {
+        List<String> exceeded = new ArrayList<String>();
+        for( Measurement measurement : measurements )
+        {
+            if( measurement.exceeded() )
+            {
+                exceeded.add( measurement.name + " is " + measurement.value + " " + measurement.unit
+                              + ", over its budget of " + measurement.budget + " " + measurement.unit );
+            }
+        }
+        return exceeded;
+    }
+
+    /* package */ void log( Log log )
+    {
+        String format = "%-40s %14s %14s  %s";
+        log.info( "JavaFX packaging budgets:" );
+        log.info( String.format( format, "Measurement", "Value", "Budget", "" ) );
+        for( Measurement measurement : measurements )
+        {
+            log.info( String.format( format, measurement.name, measurement.value + " " + measurement.unit,
+                                     measurement.budget > 0 ? measurement.budget + " " + measurement.unit : "",
+                                     measurement.exceeded() ? "EXCEEDED" : "" ) );
+        }
+    }
+
+    /* package */ void writeJson( File file, String projectId )
+        throws IOException
+    {
+        StringBuilder json = new StringBuilder();
+        json.append( "{\n" );
+        json.append( "  \"project\": " ).append( Json.quote( projectId ) ).append( ",\n" );
+        json.append( "  \"measurements\": [" );
+        for( int idx = 0; idx < measurements.size(); idx++ )
+        {
+            Measurement measurement = measurements.get( idx );
+            json.append( idx == 0 ? "\n" : ",\n" );
+            json.append( "    { \"name\": " ).append( Json.quote( measurement.name ) ).
+                append( ", \"value\": " ).append( measurement.value ).
+                append( ", \"unit\": " ).append( Json.quote( measurement.unit ) ).
+                append( ", \"budget\": " ).append( measurement.budget > 0 ? measurement.budget : 0 ).
+                append( ", \"exceeded\": " ).append( measurement.exceeded() ).append( " }" );
+        }
+        json.append( "\n  ]\n}\n" );
+        Writer writer = WriterFactory.newWriter( file, "UTF-8" );
+        try
+        {
+            writer.write( json.toString() );
+        }
+        finally
+        {
+            IOUtil.close( writer );
+        }
+    }
+
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.util.IOUtil;
+import org.codehaus.plexus.util.WriterFactory;
+
+/**
+ * Wall time and I/O volume of the packaging phases.
+ *
+ * Byte counts are estimated from the size of the files each phase reads and writes, not measured at the stream
+ * level. Phases may be nested, unpacking happens during JAR creation for example, nested time is then also accounted
+ * in the enclosing phase.
+ */
+/* package */ class PackagingMetrics
+{
+
+    /* package */ class Phase
+    {
+
+        private final String name;
+        private final long start = System.nanoTime();
+        private long nanos = -1;
+        private long bytesRead;
+        private long bytesWritten;
+        private int files;
+        private boolean upToDate;
+
+        private Phase( String name )
+        {
+            this.name = name;
+        }
+
+        /* package */ Phase read( long bytes )
+        {
+            bytesRead += bytes;
+            return this;
+        }
+
+        /**
+         * @param file File or directory tree read by this phase
+         */
+        /* package */ Phase read( File file )
+            throws IOException
+        {
+            return read( FileTrees.size( file.toPath() ) );
+        }
+
+        /* package */ Phase wrote( long bytes, int files )
+        {
+            this.bytesWritten += bytes;
+            this.files += files;
+            return this;
+        }
+
+        /**
+         * @param file File or directory tree written by this phase
+         */
+        /* package */ Phase wrote( File file )
+            throws IOException
+        {
+            return wrote( FileTrees.size( file.toPath() ), FileTrees.count( file.toPath() ) );
+        }
+
+        /* package */ Phase upToDate()
+        {
+            upToDate = true;
+            return this;
+        }
+
+        /* package */ void end()
+        {
+            if( nanos < 0 )
+            {
+                nanos = System.nanoTime() - start;
+            }
+        }
+
+        private long millis()
+        {
+            return TimeUnit.NANOSECONDS.toMillis( nanos < 0 ? System.nanoTime() - start : nanos );
+        }
+
+    }
+
+    private final long startedAt = System.currentTimeMillis();
+    private final long start = System.nanoTime();
+    private final List<Phase> phases = new ArrayList<Phase>();
+
+    /**
+     * Begin a phase, callers must {@link Phase#end()} it, preferably in a finally block.
+     */
+    /* package */ Phase begin( String name )
+    {
+        Phase phase = new Phase( name );
+        phases.add( phase );
+        return phase;
+    }
+
+    /* package */ void log( Log log )
+    {
+        String format = "%-14s %10s %12s %13s %7s  %s";
+        log.info( "JavaFX packaging summary:" );
+        log.info( String.format( format, "Phase", "Time (ms)", "Read (KiB)", "Written (KiB)", "Files", "" ) );
+        for( Phase phase : phases )
+        {
+            log.info( String.format( format, phase.name, phase.millis(), phase.bytesRead / 1024,
+                                     phase.bytesWritten / 1024, phase.files, phase.upToDate ? "up to date" : "" ) );
+        }
+        log.info( String.format( format, "total", totalMillis(), "", "", "", "" ) );
+    }
+
+    /* package */ void writeJson( File file, String projectId )
+        throws IOException
+    {
+        StringBuilder json = new StringBuilder();
+        json.append( "{\n" );
+        json.append( "  \"project\": " ).append( Json.quote( projectId ) ).append( ",\n" );
+        json.append( "  \"startedAt\": " ).append( startedAt ).append( ",\n" );
+        json.append( "  \"totalMillis\": " ).append( totalMillis() ).append( ",\n" );
+        json.append( "  \"phases\": [" );
+        for( int idx = 0; idx < phases.size(); idx++ )
+        {
+            Phase phase = phases.get( idx );
+            json.append( idx == 0 ? "\n" : ",\n" );
+            json.append( "    { \"name\": " ).append( Json.quote( phase.name ) ).
+                append( ", \"millis\": " ).append( phase.millis() ).
+                append( ", \"bytesRead\": " ).append( phase.bytesRead ).
+                append( ", \"bytesWritten\": " ).append( phase.bytesWritten ).
+                append( ", \"files\": " ).append( phase.files ).
+                append( ", \"upToDate\": " ).append( phase.upToDate ).append( " }" );
+        }
+        json.append( "\n  ]\n}\n" );
+        Writer writer = WriterFactory.newWriter( file, "UTF-8" );
+        try
+        {
+            writer.write( json.toString() );
+        }
+        finally
+        {
+            IOUtil.close( writer );
+        }
+    }
+
+    private long totalMillis()
+    {
+        return TimeUnit.NANOSECONDS.toMillis( System.nanoTime() - start );
+    }
+
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Raw deflate using several threads, the pigz way.
+ *
+ * Input is split in blocks compressed independently, each primed with the last 32KiB of the previous block as
+ * dictionary and ended with a sync flush so that the compressed blocks can simply be concatenated. Only the last
+ * block is finished. The result is a regular deflate stream, slightly larger than a single threaded one.
+ */
+/* package */ class ParallelDeflater
+{
+
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+    private static final int DEFAULT_BLOCK_SIZE = 128 * 1024;
+
+    /* package */ static class Result
+    {
+
+        /* package */ long crc;
+        /* package */ long size;
+        /* package */ long compressedSize;
+
+    }
+
+    private final ExecutorService executor;
+    private final int level;
+    private final int blockSize;
+    private final int window;
+
+    /* package */ ParallelDeflater( ExecutorService executor, int threads, int level )
+    {
+        this( executor, threads, level, DEFAULT_BLOCK_SIZE );
+    }
+
+    /* package */ ParallelDeflater( ExecutorService executor, int threads, int level, int blockSize )
+    {
+        this.executor = executor;
+        this.level = level;
+        this.blockSize = blockSize;
+        // Bound memory use to a few blocks per thread
+        this.window = Math.max( 2, threads * 2 );
+    }
+
+    /* package */ Result deflate( InputStream input, OutputStream output )
+        throws IOException
+    {
+        Result result = new Result();
+        CRC32 crc = new CRC32();
+        Deque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+        byte[] previous = null;
+        byte[] block = readBlock( input );
+        try
+        {
+            while( block != null )
+            {
+                byte[] next = readBlock( input );
+                crc.update( block );
+                result.size += block.length;
+                pending.add( executor.submit( new BlockDeflate( dictionaryOf( previous ), block, next == null ) ) );
+                while( pending.size() >= window )
+                {
+                    result.compressedSize += write( pending.poll(), output );
+                }
+                previous = block;
+                block = next;
+            }
+            if( result.size == 0 )
+            {
+                // Empty input, a single final empty block
+                pending.add( executor.submit( new BlockDeflate( null, new byte[ 0 ], true ) ) );
+            }
+            while( !pending.isEmpty() )
+            {
+                result.compressedSize += write( pending.poll(), output );
+            }
+        }
+        finally
+        {
+            for( Future<byte[]> future : pending )
+            {
+                future.cancel( true );
+            }
+        }
+        result.crc = crc.getValue();
+        return result;
+    }
+
+    private byte[] readBlock( InputStream input )
+        throws IOException
+    {
+        byte[] block = new byte[ blockSize ];
+        int length = 0;
+        int count;
+        while( length < blockSize && ( count = input.read( block, length, blockSize - length ) ) != -1 )
+        {
+            length += count;
+        }
+        if( length == 0 )
+        {
+            return null;
+        }
+        return length == blockSize ? block : Arrays.copyOf( block, length );
+    }
+
+    private static byte[] dictionaryOf( byte[] previous )
+    {
+        if( previous == null )
+        {
+            return null;
+        }
+        int length = Math.min( DICTIONARY_SIZE, previous.length );
+        return Arrays.copyOfRange( previous, previous.length - length, previous.length );
+    }
+
+    private static long write( Future<byte[]> future, OutputStream output )
+        throws IOException
+    {
+        byte[] compressed = DependencyStager.await( future );
+        output.write( compressed );
+        return compressed.length;
+    }
+
+    private class BlockDeflate
+        implements Callable<byte[]>
+    {
+
+        private final byte[] dictionary;
+        private final byte[] block;
+        private final boolean last;
+
+        private BlockDeflate( byte[] dictionary, byte[] block, boolean last )
+        {
+            this.dictionary = dictionary;
+            this.block = block;
+            this.last = last;
+        }
+
+        @Override
+        public byte[] call()
+        {
+            Deflater deflater = new Deflater( level, true );
+            try
+            {
+                if( dictionary != null )
+                {
+                    deflater.setDictionary( dictionary );
+                }
+                deflater.setInput( block );
+                byte[] buffer = new byte[ block.length + block.length / 8 + 64 ];
+                int length = 0;
+                if( last )
+                {
+                    deflater.finish();
+                    while( !deflater.finished() )
+                    {
+                        if( length == buffer.length )
+                        {
+                            buffer = Arrays.copyOf( buffer, buffer.length * 2 );
+                        }
+                        length += deflater.deflate( buffer, length, buffer.length - length );
+                    }
+                }
+                else
+                {
+                    int count;
+                    do
+                    {
+                        if( length == buffer.length )
+                        {
+                            buffer = Arrays.copyOf( buffer, buffer.length * 2 );
+                        }
+                        count = deflater.deflate( buffer, length, buffer.length - length, Deflater.SYNC_FLUSH );
+                        length += count;
+                    }
+                    while( length == buffer.length || !deflater.needsInput() );
+                }
+                return Arrays.copyOf( buffer, length );
+            }
+            finally
+            {
+                deflater.end();
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Named JVM tuning of native bundles, heap sizing, garbage collector or rendering pipeline for example.
+ *
+ * Each profile produces a variant of the native bundles whose artifacts are attached with the profile name as a
+ * classifier prefix. Its JVM arguments are appended to the common ones and its JVM properties override them.
+ */
+public class PerformanceProfile
+{
+
+    private String name;
+    private List<String> jvmArgs;
+    private Map<String, String> jvmProps;
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public List<String> getJvmArgs()
+    {
+        return jvmArgs == null ? Collections.<String>emptyList() : jvmArgs;
+    }
+
+    public Map<String, String> getJvmProps()
+    {
+        return jvmProps == null ? Collections.<String, String>emptyMap() : jvmProps;
+    }
+
+    @Override
+    public String toString()
+    {
+        // Stable, used in fingerprints
+        return name + getJvmArgs() + new TreeMap<String, String>( getJvmProps() );
+    }
+
+}
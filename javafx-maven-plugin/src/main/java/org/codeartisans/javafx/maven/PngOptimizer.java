@@ -0,0 +1,184 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Lossless PNG recompression.
+ *
+ * Image data is inflated and deflated again at the best compression level, trying both the default and filtered
+ * strategies, and written back as a single IDAT chunk. Filtered scanlines and every other chunk are left untouched so
+ * that decoded images are identical. Images are kept as is when no smaller output is found.
+ */
+/* package */ class PngOptimizer
+    implements ResourceProcessor
+{
+
+    private static final byte[] SIGNATURE = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' };
+    private static final Charset ASCII = Charset.forName( "US-ASCII" );
+    private static final String IDAT = "IDAT";
+
+    @Override
+    public String id()
+    {
+        return "png-1";
+    }
+
+    @Override
+    public boolean accepts( String name )
+    {
+        return name.toLowerCase( Locale.ENGLISH ).endsWith( ".png" );
+    }
+
+    @Override
+    public String outputName( String name )
+    {
+        return name;
+    }
+
+    @Override
+    public byte[] process( String name, byte[] content )
+        throws IOException
+    {
+        if( content.length < SIGNATURE.length
+            || !Arrays.equals( SIGNATURE, Arrays.copyOf( content, SIGNATURE.length ) ) )
+        {
+            throw new IOException( "Not a PNG image: " + name );
+        }
+        ByteBuffer buffer = ByteBuffer.wrap( content );
+        buffer.position( SIGNATURE.length );
+        ByteArrayOutputStream imageData = new ByteArrayOutputStream( content.length );
+        int firstIdat = -1;
+        int idatLength = 0;
+        while( buffer.remaining() >= 12 )
+        {
+            int start = buffer.position();
+            int length = buffer.getInt();
+            if( length < 0 || length > buffer.remaining() - 8 )
+            {
+                throw new IOException( "Truncated PNG chunk in " + name );
+            }
+            String type = new String( content, start + 4, 4, ASCII );
+            if( IDAT.equals( type ) )
+            {
+                if( firstIdat < 0 )
+                {
+                    firstIdat = start;
+                }
+                else if( start != firstIdat + idatLength )
+                {
+                    throw new IOException( "Non consecutive IDAT chunks in " + name );
+                }
+                imageData.write( content, start + 8, length );
+                idatLength += length + 12;
+            }
+            buffer.position( start + length + 12 );
+        }
+        if( firstIdat < 0 )
+        {
+            throw new IOException( "No image data in " + name );
+        }
+        byte[] raw = inflate( imageData.toByteArray(), name );
+        byte[] best = null;
+        for( int strategy : new int[]{ Deflater.DEFAULT_STRATEGY, Deflater.FILTERED } )
+        {
+            byte[] candidate = deflate( raw, strategy );
+            if( best == null || candidate.length < best.length )
+            {
+                best = candidate;
+            }
+        }
+        int optimizedLength = content.length - idatLength + best.length + 12;
+        if( optimizedLength >= content.length )
+        {
+            return null;
+        }
+        ByteBuffer optimized = ByteBuffer.allocate( optimizedLength );
+        optimized.put( content, 0, firstIdat );
+        optimized.putInt( best.length );
+        optimized.put( IDAT.getBytes( ASCII ) );
+        optimized.put( best );
+        CRC32 crc = new CRC32();
+        crc.update( IDAT.getBytes( ASCII ) );
+        crc.update( best );
+        optimized.putInt( (int) crc.getValue() );
+        optimized.put( content, firstIdat + idatLength, content.length - firstIdat - idatLength );
+        return optimized.array();
+    }
+
+    private static byte[] inflate( byte[] data, String name )
+        throws IOException
+    {
+        Inflater inflater = new Inflater();
+        try
+        {
+            inflater.setInput( data );
+            ByteArrayOutputStream output = new ByteArrayOutputStream( data.length * 4 );
+            byte[] chunk = new byte[ 64 * 1024 ];
+            while( !inflater.finished() )
+            {
+                int count = inflater.inflate( chunk );
+                if( count == 0 && ( inflater.needsInput() || inflater.needsDictionary() ) )
+                {
+                    throw new IOException( "Truncated image data in " + name );
+                }
+                output.write( chunk, 0, count );
+            }
+            return output.toByteArray();
+        }
+        catch( DataFormatException ex )
+        {
+            throw new IOException( "Corrupted image data in " + name, ex );
+        }
+        finally
+        {
+            inflater.end();
+        }
+    }
+
+    private static byte[] deflate( byte[] data, int strategy )
+    {
+        Deflater deflater = new Deflater( Deflater.BEST_COMPRESSION );
+        try
+        {
+            deflater.setStrategy( strategy );
+            deflater.setInput( data );
+            deflater.finish();
+            ByteArrayOutputStream output = new ByteArrayOutputStream( data.length / 2 + 64 );
+            byte[] chunk = new byte[ 64 * 1024 ];
+            while( !deflater.finished() )
+            {
+                output.write( chunk, 0, deflater.deflate( chunk ) );
+            }
+            return output.toByteArray();
+        }
+        finally
+        {
+            deflater.end();
+        }
+    }
+
+}
@@ -0,0 +1,372 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Read-only ZIP file giving access to the raw, still compressed, entries data.
+ *
+ * Only reads the central directory, entries data can then be copied as-is to a {@link RawZipWriter} without being
+ * inflated and deflated again. ZIP64 and encrypted archives are not supported and fail with a
+ * {@link ZipException}, callers are expected to fall back to a regular ZIP implementation.
+ */
+/* package */ class RawZipFile
+    implements Closeable
+{
+
+    /* package */ static final int METHOD_STORED = 0;
+    /* package */ static final int METHOD_DEFLATED = 8;
+    /* package */ static final int FLAG_ENCRYPTED = 1;
+    /* package */ static final int FLAG_DATA_DESCRIPTOR = 1 << 3;
+    /* package */ static final int FLAG_UTF8 = 1 << 11;
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_LENGTH = 22;
+    private static final Charset UTF_8 = Charset.forName( "UTF-8" );
+    private static final Charset CP437 = cp437();
+
+    /* package */ static class Entry
+    {
+
+        /* package */ String name;
+        /* package */ int versionMadeBy;
+        /* package */ int flags;
+        /* package */ int method;
+        /* package */ int dosTime;
+        /* package */ long crc;
+        /* package */ long compressedSize;
+        /* package */ long size;
+        /* package */ long externalAttributes;
+        /* package */ long localHeaderOffset;
+
+        /* package */ boolean isDirectory()
+        {
+            return name.endsWith( "/" );
+        }
+
+        @Override
+        public String toString()
+        {
+            return name;
+        }
+
+    }
+
+    private final File file;
+    private final RandomAccessFile randomAccessFile;
+    private final FileChannel channel;
+    private final List<Entry> entries;
+
+    /* package */ RawZipFile( File file )
+        throws IOException
+    {
+        this.file = file;
+        this.randomAccessFile = new RandomAccessFile( file, "r" );
+        this.channel = randomAccessFile.getChannel();
+        try
+        {
+            this.entries = Collections.unmodifiableList( readCentralDirectory() );
+        }
+        catch( IOException ex )
+        {
+            close();
+            throw ex;
+        }
+    }
+
+    /* package */ File getFile()
+    {
+        return file;
+    }
+
+    /**
+     * @return Entries in central directory order
+     */
+    /* package */ List<Entry> entries()
+    {
+        return entries;
+    }
+
+    /* package */ Entry getEntry( String name )
+    {
+        for( Entry entry : entries )
+        {
+            if( entry.name.equals( name ) )
+            {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /* package */ FileChannel channel()
+    {
+        return channel;
+    }
+
+    /**
+     * @return Offset of the entry data in the ZIP file
+     */
+    /* package */ long dataOffset( Entry entry )
+        throws IOException
+    {
+        ByteBuffer header = read( entry.localHeaderOffset, 30 );
+        if( header.getInt( 0 ) != LOCAL_HEADER_SIGNATURE )
+        {
+            throw new ZipException( "Invalid local header for '" + entry.name + "' in " + file );
+        }
+        int nameLength = header.getShort( 26 ) & 0xFFFF;
+        int extraLength = header.getShort( 28 ) & 0xFFFF;
+        return entry.localHeaderOffset + 30 + nameLength + extraLength;
+    }
+
+    /**
+     * @return Stream of the raw entry data, compressed if the entry is
+     */
+    /* package */ InputStream openRaw( Entry entry )
+        throws IOException
+    {
+        return new RangeInputStream( dataOffset( entry ), entry.compressedSize );
+    }
+
+    /**
+     * @return Stream of the uncompressed entry data
+     */
+    /* package */ InputStream open( final Entry entry )
+        throws IOException
+    {
+        InputStream raw = openRaw( entry );
+        switch( entry.method )
+        {
+            case METHOD_STORED:
+                return raw;
+            case METHOD_DEFLATED:
+                final Inflater inflater = new Inflater( true );
+                return new InflaterInputStream( raw, inflater, 64 * 1024 )
+                {
+                    private boolean dummyFed;
+
+                    @Override
+                    protected void fill()
+                        throws IOException
+                    {
+                        len = in.read( buf, 0, buf.length );
+                        if( len == -1 )
+                        {
+                            // Raw inflater may need an extra dummy byte to detect the end of data,
+                            // see java.util.zip.ZipFile
+                            if( dummyFed )
+                            {
+                                throw new ZipException( "Unexpected end of data for '" + entry.name + "'" );
+                            }
+                            dummyFed = true;
+                            buf[0] = 0;
+                            len = 1;
+                        }
+                        inf.setInput( buf, 0, len );
+                    }
+
+                    @Override
+                    public void close()
+                        throws IOException
+                    {
+                        super.close();
+                        inflater.end();
+                    }
+
+                };
+            default:
+                throw new ZipException( "Unsupported compression method " + entry.method + " for '" + entry.name
+                                        + "' in " + file );
+        }
+    }
+
+    @Override
+    public void close()
+        throws IOException
+    {
+        randomAccessFile.close();
+    }
+
+    private List<Entry> readCentralDirectory()
+        throws IOException
+    {
+        long fileLength = channel.size();
+        if( fileLength < END_OF_CENTRAL_DIRECTORY_LENGTH )
+        {
+            throw new ZipException( "Not a ZIP file: " + file );
+        }
+
+        // End of central directory is followed by an optional comment of at most 64KiB
+        int tailLength = (int) Math.min( fileLength, END_OF_CENTRAL_DIRECTORY_LENGTH + 0xFFFF );
+        ByteBuffer tail = read( fileLength - tailLength, tailLength );
+        int eocd = -1;
+        for( int idx = tailLength - END_OF_CENTRAL_DIRECTORY_LENGTH; idx >= 0; idx-- )
+        {
+            if( tail.getInt( idx ) == END_OF_CENTRAL_DIRECTORY_SIGNATURE )
+            {
+                eocd = idx;
+                break;
+            }
+        }
+        if( eocd < 0 )
+        {
+            throw new ZipException( "Not a ZIP file: " + file );
+        }
+        int count = tail.getShort( eocd + 10 ) & 0xFFFF;
+        long centralDirectorySize = tail.getInt( eocd + 12 ) & 0xFFFFFFFFL;
+        long centralDirectoryOffset = tail.getInt( eocd + 16 ) & 0xFFFFFFFFL;
+        if( count == 0xFFFF || centralDirectorySize == 0xFFFFFFFFL || centralDirectoryOffset == 0xFFFFFFFFL )
+        {
+            throw new ZipException( "ZIP64 archives are not supported: " + file );
+        }
+
+        ByteBuffer directory = read( centralDirectoryOffset, (int) centralDirectorySize );
+        List<Entry> result = new ArrayList<Entry>( count );
+        int position = 0;
+        for( int idx = 0; idx < count; idx++ )
+        {
+            if( directory.getInt( position ) != CENTRAL_HEADER_SIGNATURE )
+            {
+                throw new ZipException( "Invalid central directory in " + file );
+            }
+            Entry entry = new Entry();
+            entry.versionMadeBy = directory.getShort( position + 4 ) & 0xFFFF;
+            entry.flags = directory.getShort( position + 8 ) & 0xFFFF;
+            entry.method = directory.getShort( position + 10 ) & 0xFFFF;
+            entry.dosTime = directory.getInt( position + 12 );
+            entry.crc = directory.getInt( position + 16 ) & 0xFFFFFFFFL;
+            entry.compressedSize = directory.getInt( position + 20 ) & 0xFFFFFFFFL;
+            entry.size = directory.getInt( position + 24 ) & 0xFFFFFFFFL;
+            int nameLength = directory.getShort( position + 28 ) & 0xFFFF;
+            int extraLength = directory.getShort( position + 30 ) & 0xFFFF;
+            int commentLength = directory.getShort( position + 32 ) & 0xFFFF;
+            entry.externalAttributes = directory.getInt( position + 38 ) & 0xFFFFFFFFL;
+            entry.localHeaderOffset = directory.getInt( position + 42 ) & 0xFFFFFFFFL;
+            byte[] name = new byte[ nameLength ];
+            directory.position( position + 46 );
+            directory.get( name );
+            entry.name = new String( name, ( entry.flags & FLAG_UTF8 ) != 0 ? UTF_8 : CP437 );
+            if( ( entry.flags & FLAG_ENCRYPTED ) != 0 )
+            {
+                throw new ZipException( "Encrypted entries are not supported: '" + entry.name + "' in " + file );
+            }
+            if( entry.compressedSize == 0xFFFFFFFFL || entry.size == 0xFFFFFFFFL
+                || entry.localHeaderOffset == 0xFFFFFFFFL )
+            {
+                throw new ZipException( "ZIP64 entries are not supported: '" + entry.name + "' in " + file );
+            }
+            result.add( entry );
+            position += 46 + nameLength + extraLength + commentLength;
+        }
+        return result;
+    }
+
+    private ByteBuffer read( long position, int length )
+        throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate( length ).order( ByteOrder.LITTLE_ENDIAN );
+        while( buffer.hasRemaining() )
+        {
+            if( channel.read( buffer, position + buffer.position() ) < 0 )
+            {
+                throw new ZipException( "Truncated ZIP file: " + file );
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static Charset cp437()
+    {
+        try
+        {
+            return Charset.forName( "IBM437" );
+        }
+        catch( IllegalArgumentException ex )
+        {
+            return UTF_8;
+        }
+    }
+
+    /**
+     * Positional reads on the shared channel, several entries can be read concurrently.
+     */
+    private class RangeInputStream
+        extends InputStream
+    {
+
+        private long position;
+        private long remaining;
+
+        private RangeInputStream( long position, long length )
+        {
+            this.position = position;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read()
+            throws IOException
+        {
+            byte[] single = new byte[ 1 ];
+            return read( single, 0, 1 ) == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read( byte[] buffer, int offset, int length )
+            throws IOException
+        {
+            if( remaining <= 0 )
+            {
+                return -1;
+            }
+            int count = channel.read( ByteBuffer.wrap( buffer, offset, (int) Math.min( length, remaining ) ),
+                                      position );
+            if( count < 0 )
+            {
+                throw new ZipException( "Truncated ZIP file: " + file );
+            }
+            position += count;
+            remaining -= count;
+            return count;
+        }
+
+        @Override
+        public int available()
+        {
+            return (int) Math.min( Integer.MAX_VALUE, remaining );
+        }
+
+    }
+
+}
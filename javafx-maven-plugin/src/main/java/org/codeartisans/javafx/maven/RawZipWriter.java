@@ -0,0 +1,732 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipException;
+import org.codehaus.plexus.util.IOUtil;
+
+import static org.codeartisans.javafx.maven.RawZipFile.*;
+
+/**
+ * Sequential ZIP writer able to copy raw entries from a {@link RawZipFile}.
+ *
+ * Local headers always carry sizes and CRC, they are patched in place once an entry data has been written, no data
+ * descriptors are used. Raw copies are done with {@link FileChannel#transferTo}.
+ *
+ * ZIP64 end records and extra fields are written once the entries count, an entry size or an offset exceeds the
+ * limits of the original format. Local headers of entries whose size is not known upfront have no room for ZIP64
+ * sizes, such entries are limited to 4 GiB.
+ */
+/* package */ class RawZipWriter
+    implements Closeable
+{
+
+    private static final Charset UTF_8 = Charset.forName( "UTF-8" );
+    private static final int VERSION_STORED = 10;
+    private static final int VERSION_DEFLATED = 20;
+    private static final int VERSION_ZIP64 = 45;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+    private static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+    private static final int ZIP64_LOCAL_EXTRA_LENGTH = 20;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int VERSION_MADE_BY_UNIX = 3 << 8;
+    private static final int S_IFMT = 0170000;
+    private static final int S_IFDIR = 0040000;
+    private static final int S_IFREG = 0100000;
+    private static final int S_IFLNK = 0120000;
+    /* package */ static final int NO_MODE = -1;
+
+    private static class CentralRecord
+    {
+
+        private byte[] name;
+        private int versionMadeBy;
+        private int versionNeeded;
+        private int flags;
+        private int method;
+        private int dosTime;
+        private long crc;
+        private long compressedSize;
+        private long size;
+        private long externalAttributes;
+        private long localHeaderOffset;
+        private boolean zip64;
+
+    }
+
+    private final File file;
+    private final RandomAccessFile randomAccessFile;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate( BUFFER_SIZE ).order( ByteOrder.LITTLE_ENDIAN );
+    private final List<CentralRecord> records = new ArrayList<CentralRecord>();
+    private final Set<String> names = new HashSet<String>();
+    private long position;
+    private int level = Deflater.DEFAULT_COMPRESSION;
+    private ExecutorService parallelExecutor;
+    private int parallelThreads;
+    private long parallelThreshold;
+    private Integer fixedDosTime;
+    private boolean closed;
+
+    /* package */ RawZipWriter( File file )
+        throws IOException
+    {
+        this.file = file;
+        this.randomAccessFile = new RandomAccessFile( file, "rw" );
+        this.randomAccessFile.setLength( 0 );
+        this.channel = randomAccessFile.getChannel();
+    }
+
+    /**
+     * @param level Deflate level used by subsequent {@code put} calls, {@link Deflater#NO_COMPRESSION} stores entries
+     */
+    /* package */ void setLevel( int level )
+    {
+        if( level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION )
+        {
+            throw new IllegalArgumentException( "Invalid compression level: " + level );
+        }
+        this.level = level;
+    }
+
+    /**
+     * Make entries put after this call reproducible: they all get the given time, whatever their own, and normalized
+     * Unix permissions.
+     *
+     * @param time Time of all entries, in milliseconds since the epoch, converted to MS-DOS time in UTC so that the
+     *             output does not depend on the default time zone
+     */
+    /* package */ void setReproducible( long time )
+    {
+        Calendar calendar = Calendar.getInstance( TimeZone.getTimeZone( "UTC" ) );
+        calendar.setTimeInMillis( time );
+        this.fixedDosTime = toDosTime( calendar );
+    }
+
+    /* package */ boolean contains( String name )
+    {
+        return names.contains( name );
+    }
+
+    /**
+     * Entries put after this call larger than the given threshold are deflated using several threads.
+     *
+     * @param executor  Executor to use, {@literal null} to disable parallel deflate
+     * @param threads   Number of threads of the executor
+     * @param threshold Minimum size in bytes of entries deflated in parallel
+     */
+    /* package */ void setParallelDeflate( ExecutorService executor, int threads, long threshold )
+    {
+        this.parallelExecutor = executor;
+        this.parallelThreads = threads;
+        this.parallelThreshold = threshold;
+    }
+
+    /* package */ void putDirectory( String name, long time )
+        throws IOException
+    {
+        putDirectory( name, time, NO_MODE );
+    }
+
+    /**
+     * @param unixMode Unix permissions, {@link #NO_MODE} to leave them unset
+     */
+    /* package */ void putDirectory( String name, long time, int unixMode )
+        throws IOException
+    {
+        CentralRecord record = newRecord( name.endsWith( "/" ) ? name : name + "/", METHOD_STORED, time );
+        setUnixMode( record, S_IFDIR, unixMode );
+        writeLocalHeader( record );
+    }
+
+    /* package */ void putSymbolicLink( String name, long time, String target )
+        throws IOException
+    {
+        CentralRecord record = newRecord( name, METHOD_STORED, time );
+        setUnixMode( record, S_IFLNK, 0777 );
+        writeLocalHeader( record );
+        writeData( record, new ByteArrayInputStream( target.getBytes( UTF_8 ) ) );
+    }
+
+    /* package */ void putEntry( String name, long time, File source )
+        throws IOException
+    {
+        putEntry( name, time, NO_MODE, source );
+    }
+
+    /**
+     * @param unixMode Unix permissions, {@link #NO_MODE} to leave them unset
+     */
+    /* package */ void putEntry( String name, long time, int unixMode, File source )
+        throws IOException
+    {
+        InputStream input = new FileInputStream( source );
+        try
+        {
+            putEntry( name, time, unixMode, input, source.length() );
+        }
+        finally
+        {
+            IOUtil.close( input );
+        }
+    }
+
+    /* package */ void putEntry( String name, long time, byte[] data )
+        throws IOException
+    {
+        putEntry( name, time, NO_MODE, new ByteArrayInputStream( data ), data.length );
+    }
+
+    /**
+     * Write an entry, compressed according to the current level.
+     */
+    /* package */ void putEntry( String name, long time, InputStream data )
+        throws IOException
+    {
+        putEntry( name, time, NO_MODE, data, -1 );
+    }
+
+    private void putEntry( String name, long time, int unixMode, InputStream data, long sizeHint )
+        throws IOException
+    {
+        int method = level == Deflater.NO_COMPRESSION ? METHOD_STORED : METHOD_DEFLATED;
+        CentralRecord record = newRecord( name, method, time );
+        setUnixMode( record, S_IFREG, unixMode );
+        record.zip64 = mayExceedZipLimits( sizeHint );
+        writeLocalHeader( record );
+        if( method == METHOD_DEFLATED && parallelExecutor != null && sizeHint >= parallelThreshold )
+        {
+            ParallelDeflater deflater = new ParallelDeflater( parallelExecutor, parallelThreads, level );
+            ParallelDeflater.Result result = deflater.deflate( data, new EntryDataOutputStream() );
+            record.crc = result.crc;
+            record.size = result.size;
+            record.compressedSize = result.compressedSize;
+            patchLocalHeader( record );
+        }
+        else
+        {
+            writeData( record, data );
+        }
+    }
+
+    private void writeData( CentralRecord record, InputStream data )
+        throws IOException
+    {
+        long dataStart = position;
+        CRC32 crc = new CRC32();
+        byte[] input = new byte[ BUFFER_SIZE ];
+        long size = 0;
+        if( record.method == METHOD_STORED )
+        {
+            int count;
+            while( ( count = data.read( input ) ) != -1 )
+            {
+                crc.update( input, 0, count );
+                write( input, 0, count );
+                size += count;
+            }
+        }
+        else
+        {
+            Deflater deflater = new Deflater( level, true );
+            try
+            {
+                byte[] output = new byte[ BUFFER_SIZE ];
+                int count;
+                while( ( count = data.read( input ) ) != -1 )
+                {
+                    crc.update( input, 0, count );
+                    size += count;
+                    deflater.setInput( input, 0, count );
+                    while( !deflater.needsInput() )
+                    {
+                        write( output, 0, deflater.deflate( output ) );
+                    }
+                }
+                deflater.finish();
+                while( !deflater.finished() )
+                {
+                    write( output, 0, deflater.deflate( output ) );
+                }
+            }
+            finally
+            {
+                deflater.end();
+            }
+        }
+        record.crc = crc.getValue();
+        record.size = size;
+        record.compressedSize = position - dataStart;
+        patchLocalHeader( record );
+    }
+
+    /**
+     * Copy an entry without inflating and deflating its data again.
+     */
+    /* package */ void copyEntry( RawZipFile source, RawZipFile.Entry entry )
+        throws IOException
+    {
+        copyEntry( source, entry, entry.name );
+    }
+
+    /* package */ void copyEntry( RawZipFile source, RawZipFile.Entry entry, String name )
+        throws IOException
+    {
+        CentralRecord record = newRecord( name, entry.method, 0 );
+        record.flags |= entry.flags & ~( FLAG_DATA_DESCRIPTOR | FLAG_UTF8 );
+        copyAttributes( record, entry );
+        record.crc = entry.crc;
+        record.size = entry.size;
+        record.compressedSize = entry.compressedSize;
+        record.zip64 = entry.size >= ZIP64_MAGIC || entry.compressedSize >= ZIP64_MAGIC;
+        writeLocalHeader( record );
+        flush();
+        long offset = source.dataOffset( entry );
+        long remaining = entry.compressedSize;
+        while( remaining > 0 )
+        {
+            long count = source.channel().transferTo( offset, remaining, channel );
+            if( count <= 0 )
+            {
+                throw new ZipException( "Truncated entry '" + entry.name + "' in " + source.getFile() );
+            }
+            offset += count;
+            remaining -= count;
+        }
+        position += entry.compressedSize;
+        channel.position( position );
+    }
+
+    /**
+     * Copy an entry without compression, inflating its data if needed.
+     */
+    /* package */ void storeEntry( RawZipFile source, RawZipFile.Entry entry )
+        throws IOException
+    {
+        if( entry.method == METHOD_STORED )
+        {
+            copyEntry( source, entry );
+            return;
+        }
+        CentralRecord record = newRecord( entry.name, METHOD_STORED, 0 );
+        copyAttributes( record, entry );
+        record.zip64 = entry.size >= ZIP64_MAGIC;
+        writeLocalHeader( record );
+        InputStream data = source.open( entry );
+        try
+        {
+            writeData( record, data );
+        }
+        finally
+        {
+            data.close();
+        }
+    }
+
+    private void copyAttributes( CentralRecord record, RawZipFile.Entry entry )
+    {
+        if( fixedDosTime == null )
+        {
+            record.dosTime = entry.dosTime;
+            record.versionMadeBy = entry.versionMadeBy;
+            record.externalAttributes = entry.externalAttributes;
+        }
+        else
+        {
+            boolean unix = entry.versionMadeBy >> 8 == 3;
+            int mode = unix ? (int) ( entry.externalAttributes >> 16 ) & 0177777 : 0;
+            int fileType = unix && ( mode & S_IFMT ) != 0 ? mode & S_IFMT : entry.isDirectory() ? S_IFDIR : S_IFREG;
+            setUnixMode( record, fileType, unix ? mode & 07777 : NO_MODE );
+        }
+    }
+
+    @Override
+    public void close()
+        throws IOException
+    {
+        if( closed )
+        {
+            return;
+        }
+        closed = true;
+        try
+        {
+            long centralDirectoryOffset = position;
+            for( CentralRecord record : records )
+            {
+                writeCentralHeader( record );
+            }
+            long centralDirectorySize = position - centralDirectoryOffset;
+            if( records.size() >= ZIP64_MAGIC_COUNT || centralDirectorySize >= ZIP64_MAGIC
+                || centralDirectoryOffset >= ZIP64_MAGIC )
+            {
+                writeZip64End( centralDirectorySize, centralDirectoryOffset );
+            }
+            ensure( 22 );
+            buffer.putInt( 0x06054b50 );
+            buffer.putShort( (short) 0 );
+            buffer.putShort( (short) 0 );
+            buffer.putShort( (short) Math.min( records.size(), ZIP64_MAGIC_COUNT ) );
+            buffer.putShort( (short) Math.min( records.size(), ZIP64_MAGIC_COUNT ) );
+            buffer.putInt( (int) Math.min( centralDirectorySize, ZIP64_MAGIC ) );
+            buffer.putInt( (int) Math.min( centralDirectoryOffset, ZIP64_MAGIC ) );
+            buffer.putShort( (short) 0 );
+            position += 22;
+            flush();
+        }
+        finally
+        {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * Write the ZIP64 end of central directory record and its locator.
+     */
+    private void writeZip64End( long centralDirectorySize, long centralDirectoryOffset )
+        throws IOException
+    {
+        long zip64EndOffset = position;
+        ensure( 56 + 20 );
+        buffer.putInt( 0x06064b50 );
+        // Size of the remaining record
+        buffer.putLong( 44 );
+        buffer.putShort( (short) VERSION_ZIP64 );
+        buffer.putShort( (short) VERSION_ZIP64 );
+        buffer.putInt( 0 );
+        buffer.putInt( 0 );
+        buffer.putLong( records.size() );
+        buffer.putLong( records.size() );
+        buffer.putLong( centralDirectorySize );
+        buffer.putLong( centralDirectoryOffset );
+        buffer.putInt( 0x07064b50 );
+        buffer.putInt( 0 );
+        buffer.putLong( zip64EndOffset );
+        buffer.putInt( 1 );
+        position += 56 + 20;
+    }
+
+    /**
+     * @param size Size of the entry data, {@literal -1} if unknown
+     *
+     * @return {@literal true} if the entry data, deflated or not, may reach the 4 GiB limit
+     */
+    private static boolean mayExceedZipLimits( long size )
+    {
+        // Deflate worst case expansion is far less than a thousandth
+        return size >= 0 && size + size / 1000 + 1024 >= ZIP64_MAGIC;
+    }
+
+    private CentralRecord newRecord( String name, int method, long time )
+        throws ZipException
+    {
+        if( !names.add( name ) )
+        {
+            throw new ZipException( "Duplicate entry '" + name + "' in " + file );
+        }
+        CentralRecord record = new CentralRecord();
+        record.name = name.getBytes( UTF_8 );
+        record.flags = record.name.length != name.length() || !isAscii( name ) ? FLAG_UTF8 : 0;
+        record.method = method;
+        record.versionNeeded = method == METHOD_STORED ? VERSION_STORED : VERSION_DEFLATED;
+        record.versionMadeBy = VERSION_DEFLATED;
+        record.dosTime = fixedDosTime != null ? fixedDosTime : toDosTime( time );
+        record.externalAttributes = name.endsWith( "/" ) ? 0x10 : 0;
+        record.localHeaderOffset = position;
+        records.add( record );
+        return record;
+    }
+
+    private void setUnixMode( CentralRecord record, int fileType, int unixMode )
+    {
+        if( fixedDosTime != null )
+        {
+            unixMode = normalizedMode( fileType, unixMode );
+        }
+        if( unixMode != NO_MODE )
+        {
+            record.versionMadeBy = VERSION_MADE_BY_UNIX | VERSION_DEFLATED;
+            record.externalAttributes = ( fileType == S_IFDIR ? 0x10 : 0 )
+                                        | (long) ( fileType | ( unixMode & 07777 ) ) << 16;
+        }
+    }
+
+    /**
+     * @return {@literal 0755} for directories and executables, {@literal 0777} for links, {@literal 0644} otherwise
+     */
+    private static int normalizedMode( int fileType, int unixMode )
+    {
+        switch( fileType )
+        {
+            case S_IFDIR:
+                return 0755;
+            case S_IFLNK:
+                return 0777;
+            default:
+                return unixMode != NO_MODE && ( unixMode & 0111 ) != 0 ? 0755 : 0644;
+        }
+    }
+
+    /**
+     * Sizes of ZIP64 entries are in a ZIP64 extra field, written when the entry data is, see {@link #patchLocalHeader}.
+     */
+    private void writeLocalHeader( CentralRecord record )
+        throws IOException
+    {
+        int extraLength = record.zip64 ? ZIP64_LOCAL_EXTRA_LENGTH : 0;
+        ensure( 30 + record.name.length + extraLength );
+        buffer.putInt( 0x04034b50 );
+        buffer.putShort( (short) ( record.zip64 ? VERSION_ZIP64 : record.versionNeeded ) );
+        buffer.putShort( (short) record.flags );
+        buffer.putShort( (short) record.method );
+        buffer.putInt( record.dosTime );
+        buffer.putInt( (int) record.crc );
+        buffer.putInt( record.zip64 ? (int) ZIP64_MAGIC : (int) record.compressedSize );
+        buffer.putInt( record.zip64 ? (int) ZIP64_MAGIC : (int) record.size );
+        buffer.putShort( (short) record.name.length );
+        buffer.putShort( (short) extraLength );
+        buffer.put( record.name );
+        if( record.zip64 )
+        {
+            buffer.putShort( (short) ZIP64_EXTRA_ID );
+            buffer.putShort( (short) 16 );
+            buffer.putLong( record.size );
+            buffer.putLong( record.compressedSize );
+        }
+        position += 30 + record.name.length + extraLength;
+    }
+
+    private void patchLocalHeader( CentralRecord record )
+        throws IOException
+    {
+        if( !record.zip64 && ( record.compressedSize >= ZIP64_MAGIC || record.size >= ZIP64_MAGIC ) )
+        {
+            throw new ZipException( "Entry '" + new String( record.name, UTF_8 ) + "' of unknown size reached 4 GiB, "
+                                    + "its local header has no room for ZIP64 sizes: " + file );
+        }
+        flush();
+        ByteBuffer patch = ByteBuffer.allocate( 16 ).order( ByteOrder.LITTLE_ENDIAN );
+        patch.putInt( (int) record.crc );
+        patch.flip();
+        write( patch, record.localHeaderOffset + 14 );
+        patch.clear();
+        if( record.zip64 )
+        {
+            patch.putLong( record.size );
+            patch.putLong( record.compressedSize );
+            patch.flip();
+            write( patch, record.localHeaderOffset + 30 + record.name.length + 4 );
+        }
+        else
+        {
+            patch.putInt( (int) record.compressedSize );
+            patch.putInt( (int) record.size );
+            patch.flip();
+            write( patch, record.localHeaderOffset + 18 );
+        }
+    }
+
+    private void write( ByteBuffer bytes, long filePosition )
+        throws IOException
+    {
+        while( bytes.hasRemaining() )
+        {
+            filePosition += channel.write( bytes, filePosition );
+        }
+    }
+
+    /**
+     * Sizes and offset exceeding the original format limits go to a ZIP64 extra field, in this order.
+     */
+    private void writeCentralHeader( CentralRecord record )
+        throws IOException
+    {
+        boolean zip64Sizes = record.size >= ZIP64_MAGIC || record.compressedSize >= ZIP64_MAGIC;
+        boolean zip64Offset = record.localHeaderOffset >= ZIP64_MAGIC;
+        int zip64Length = ( zip64Sizes ? 16 : 0 ) + ( zip64Offset ? 8 : 0 );
+        int extraLength = zip64Length > 0 ? 4 + zip64Length : 0;
+        ensure( 46 + record.name.length + extraLength );
+        buffer.putInt( 0x02014b50 );
+        buffer.putShort( (short) record.versionMadeBy );
+        buffer.putShort( (short) ( zip64Length > 0 || record.zip64 ? VERSION_ZIP64 : record.versionNeeded ) );
+        buffer.putShort( (short) record.flags );
+        buffer.putShort( (short) record.method );
+        buffer.putInt( record.dosTime );
+        buffer.putInt( (int) record.crc );
+        buffer.putInt( zip64Sizes ? (int) ZIP64_MAGIC : (int) record.compressedSize );
+        buffer.putInt( zip64Sizes ? (int) ZIP64_MAGIC : (int) record.size );
+        buffer.putShort( (short) record.name.length );
+        buffer.putShort( (short) extraLength );
+        buffer.putShort( (short) 0 );
+        buffer.putShort( (short) 0 );
+        buffer.putShort( (short) 0 );
+        buffer.putInt( (int) record.externalAttributes );
+        buffer.putInt( zip64Offset ? (int) ZIP64_MAGIC : (int) record.localHeaderOffset );
+        buffer.put( record.name );
+        if( zip64Length > 0 )
+        {
+            buffer.putShort( (short) ZIP64_EXTRA_ID );
+            buffer.putShort( (short) zip64Length );
+            if( zip64Sizes )
+            {
+                buffer.putLong( record.size );
+                buffer.putLong( record.compressedSize );
+            }
+            if( zip64Offset )
+            {
+                buffer.putLong( record.localHeaderOffset );
+            }
+        }
+        position += 46 + record.name.length + extraLength;
+    }
+
+    private void write( byte[] bytes, int offset, int length )
+        throws IOException
+    {
+        while( length > 0 )
+        {
+            if( !buffer.hasRemaining() )
+            {
+                flush();
+            }
+            int count = Math.min( length, buffer.remaining() );
+            buffer.put( bytes, offset, count );
+            offset += count;
+            length -= count;
+            position += count;
+        }
+    }
+
+    private void ensure( int length )
+        throws IOException
+    {
+        if( buffer.remaining() < length )
+        {
+            flush();
+        }
+    }
+
+    private void flush()
+        throws IOException
+    {
+        buffer.flip();
+        while( buffer.hasRemaining() )
+        {
+            channel.write( buffer );
+        }
+        buffer.clear();
+    }
+
+    private static boolean isAscii( String name )
+    {
+        for( int idx = 0; idx < name.length(); idx++ )
+        {
+            if( name.charAt( idx ) > 0x7F )
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return MS-DOS date and time, in the default time zone as {@link java.util.zip.ZipEntry} does
+     */
+    /* package */ static int toDosTime( long time )
+    {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis( time );
+        return toDosTime( calendar );
+    }
+
+    /* package */ static int toDosTime( Calendar calendar )
+    {
+        int year = calendar.get( Calendar.YEAR );
+        if( year < 1980 )
+        {
+            // 1980-01-01 00:00:00, the MS-DOS epoch
+            return ( 1 << 21 ) | ( 1 << 16 );
+        }
+        return ( year - 1980 ) << 25
+               | ( calendar.get( Calendar.MONTH ) + 1 ) << 21
+               | calendar.get( Calendar.DAY_OF_MONTH ) << 16
+               | calendar.get( Calendar.HOUR_OF_DAY ) << 11
+               | calendar.get( Calendar.MINUTE ) << 5
+               | calendar.get( Calendar.SECOND ) >> 1;
+    }
+
+    /**
+     * @return Time in milliseconds of an MS-DOS date and time, see {@link #toDosTime(long)}
+     */
+    /* package */ static long fromDosTime( int dosTime )
+    {
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set( ( ( dosTime >> 25 ) & 0x7F ) + 1980, ( ( dosTime >> 21 ) & 0x0F ) - 1,
+                      ( dosTime >> 16 ) & 0x1F, ( dosTime >> 11 ) & 0x1F, ( dosTime >> 5 ) & 0x3F,
+                      ( dosTime << 1 ) & 0x3E );
+        return calendar.getTimeInMillis();
+    }
+
+    /**
+     * Entry data written through the writer buffer.
+     */
+    private class EntryDataOutputStream
+        extends OutputStream
+    {
+
+        @Override
+        public void write( int single )
+            throws IOException
+        {
+            RawZipWriter.this.write( new byte[]
+            {
+                (byte) single
+            }, 0, 1 );
+        }
+
+        @Override
+        public void write( byte[] bytes, int offset, int length )
+            throws IOException
+        {
+            RawZipWriter.this.write( bytes, offset, length );
+        }
+
+    }
+
+}
@@ -0,0 +1,357 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Run {@link ResourceProcessor}s over JAR entries and files.
+ *
+ * Resources are processed concurrently. Results are cached by processor and content hash so that unchanged resources
+ * are never processed twice, resources left as is by a processor are cached as empty files. Processing failures are
+ * logged and leave the resource untouched.
+ */
+/* package */ class ResourcePipeline
+{
+
+    private static final Charset UTF_8 = Charset.forName( "UTF-8" );
+    private static final byte[] UNCHANGED = new byte[ 0 ];
+    private final Log log;
+    private final List<ResourceProcessor> processors;
+    private final Path cacheDir;
+    private final int threads;
+    private final AtomicInteger processed = new AtomicInteger();
+    private final AtomicInteger cached = new AtomicInteger();
+    private final AtomicLong saved = new AtomicLong();
+
+    /**
+     * @param threads Number of threads, {@literal 0} for the number of available processors
+     */
+    /* package */ ResourcePipeline( Log log, List<ResourceProcessor> processors, File cacheDir, int threads )
+    {
+        this.log = log;
+        this.processors = processors;
+        this.cacheDir = cacheDir.toPath();
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Process the entries of a JAR in place, keeping their order.
+     *
+     * @param reproducibleTime Time of all entries to produce a reproducible JAR, {@literal null} to keep entries times
+     */
+    /* package */ void processJar( File jar, Long reproducibleTime )
+        throws IOException
+    {
+        File processedJar = new File( jar.getParentFile(), jar.getName() + ".processed" );
+        RawZipFile input = new RawZipFile( jar );
+        RawZipWriter output = null;
+        ExecutorService executor = Executors.newFixedThreadPool( threads );
+        boolean success = false;
+        try
+        {
+            Map<RawZipFile.Entry, ResourceProcessor> accepted =
+                new LinkedHashMap<RawZipFile.Entry, ResourceProcessor>();
+            for( RawZipFile.Entry entry : input.entries() )
+            {
+                ResourceProcessor processor = processorFor( entry.name );
+                if( processor != null && !entry.isDirectory() )
+                {
+                    accepted.put( entry, processor );
+                }
+            }
+            if( accepted.isEmpty() )
+            {
+                return;
+            }
+            // Entries are read sequentially, processing is CPU bound
+            Map<RawZipFile.Entry, Future<byte[]>> results = new LinkedHashMap<RawZipFile.Entry, Future<byte[]>>();
+            for( Map.Entry<RawZipFile.Entry, ResourceProcessor> each : accepted.entrySet() )
+            {
+                results.put( each.getKey(), executor.submit( task( each.getValue(), each.getKey().name,
+                                                                   read( input, each.getKey() ) ) ) );
+            }
+
+            output = new RawZipWriter( processedJar );
+            if( reproducibleTime != null )
+            {
+                output.setReproducible( reproducibleTime );
+            }
+            for( RawZipFile.Entry entry : input.entries() )
+            {
+                Future<byte[]> result = results.get( entry );
+                byte[] content = result == null ? null : get( result );
+                if( content == null )
+                {
+                    output.copyEntry( input, entry );
+                    continue;
+                }
+                String outputName = accepted.get( entry ).outputName( entry.name );
+                long time = RawZipWriter.fromDosTime( entry.dosTime );
+                if( outputName.equals( entry.name ) )
+                {
+                    output.putEntry( entry.name, time, content );
+                    saved.addAndGet( entry.size - content.length );
+                }
+                else
+                {
+                    output.copyEntry( input, entry );
+                    // Resources provided by the project win
+                    if( input.getEntry( outputName ) == null && !output.contains( outputName ) )
+                    {
+                        output.putEntry( outputName, time, content );
+                    }
+                }
+            }
+            output.close();
+            success = true;
+        }
+        finally
+        {
+            executor.shutdownNow();
+            JarRewriter.closeQuietly( output );
+            input.close();
+            if( !success )
+            {
+                processedJar.delete();
+            }
+        }
+        FileUtils.forceDelete( jar );
+        FileUtils.rename( processedJar, jar );
+        log.info( "Processed " + processed.get() + " resources of " + jar.getName() + ", " + cached.get()
+                  + " from cache, " + saved.get() + " bytes saved" );
+    }
+
+    /**
+     * Process a file, icons for example.
+     *
+     * @return The processed file written in the output directory, or the given file if left as is
+     */
+    /* package */ File processFile( File file, File outputDir )
+        throws IOException
+    {
+        ResourceProcessor processor = processorFor( file.getName() );
+        if( processor == null )
+        {
+            return file;
+        }
+        byte[] content = process( processor, file.getName(), Files.readAllBytes( file.toPath() ) );
+        if( content == null )
+        {
+            return file;
+        }
+        String outputName = processor.outputName( file.getName() );
+        if( outputName.equals( file.getName() ) )
+        {
+            saved.addAndGet( file.length() - content.length );
+        }
+        File processedFile = new File( outputDir, outputName );
+        FileUtils.forceMkdir( outputDir );
+        Files.write( processedFile.toPath(), content );
+        return processedFile;
+    }
+
+    /**
+     * @return Number of bytes saved by the processors that replace resources
+     */
+    /* package */ long savedBytes()
+    {
+        return saved.get();
+    }
+
+    private ResourceProcessor processorFor( String name )
+    {
+        for( ResourceProcessor processor : processors )
+        {
+            if( processor.accepts( name ) )
+            {
+                return processor;
+            }
+        }
+        return null;
+    }
+
+    private Callable<byte[]> task( final ResourceProcessor processor, final String name, final byte[] content )
+    {
+        return new Callable<byte[]>()
+        {
+            @Override
+            public byte[] call()
+            {
+                return process( processor, name, content );
+            }
+
+        };
+    }
+
+    private byte[] process( ResourceProcessor processor, String name, byte[] content )
+    {
+        String key = cacheKey( processor, content );
+        byte[] result = loadCached( key );
+        if( result != null )
+        {
+            cached.incrementAndGet();
+            return result == UNCHANGED ? null : result;
+        }
+        try
+        {
+            result = processor.process( name, content );
+        }
+        catch( IOException ex )
+        {
+            log.warn( "Unable to process " + name + ", leaving it as is: " + ex.getMessage() );
+            return null;
+        }
+        processed.incrementAndGet();
+        storeCached( key, result == null ? UNCHANGED : result );
+        return result;
+    }
+
+    private static byte[] read( RawZipFile input, RawZipFile.Entry entry )
+        throws IOException
+    {
+        InputStream stream = input.open( entry );
+        try
+        {
+            return IOUtil.toByteArray( stream );
+        }
+        finally
+        {
+            IOUtil.close( stream );
+        }
+    }
+
+    private static byte[] get( Future<byte[]> result )
+        throws IOException
+    {
+        try
+        {
+            return result.get();
+        }
+        catch( InterruptedException ex )
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException( "Interrupted while processing resources", ex );
+        }
+        catch( ExecutionException ex )
+        {
+            throw new IOException( "Unable to process resources", ex.getCause() );
+        }
+    }
+
+    private static String cacheKey( ResourceProcessor processor, byte[] content )
+    {
+        try
+        {
+            MessageDigest digest = MessageDigest.getInstance( "SHA-1" );
+            digest.update( processor.id().getBytes( UTF_8 ) );
+            digest.update( (byte) 0 );
+            digest.update( content );
+            return Fingerprint.toHex( digest.digest() );
+        }
+        catch( NoSuchAlgorithmException ex )
+        {
+            throw new IllegalStateException( "SHA-1 is not available", ex );
+        }
+    }
+
+    private Path cacheFile( String key )
+    {
+        return cacheDir.resolve( key.substring( 0, 2 ) ).resolve( key );
+    }
+
+    private byte[] loadCached( String key )
+    {
+        Path file = cacheFile( key );
+        if( !Files.isRegularFile( file ) )
+        {
+            return null;
+        }
+        try
+        {
+            byte[] content = Files.readAllBytes( file );
+            return content.length == 0 ? UNCHANGED : content;
+        }
+        catch( IOException ex )
+        {
+            log.debug( "Unable to read cached resource " + file + ": " + ex.getMessage() );
+            return null;
+        }
+    }
+
+    private void storeCached( String key, byte[] content )
+    {
+        Path file = cacheFile( key );
+        Path temp = file.resolveSibling( ".tmp-" + key + "-" + UUID.randomUUID() );
+        try
+        {
+            Files.createDirectories( file.getParent() );
+            Files.write( temp, content );
+            try
+            {
+                Files.move( temp, file, StandardCopyOption.ATOMIC_MOVE );
+            }
+            catch( AtomicMoveNotSupportedException ex )
+            {
+                Files.move( temp, file );
+            }
+        }
+        catch( FileAlreadyExistsException ex )
+        {
+            // Concurrently processed
+        }
+        catch( IOException ex )
+        {
+            log.debug( "Unable to cache processed resource " + file + ": " + ex.getMessage() );
+        }
+        finally
+        {
+            try
+            {
+                Files.deleteIfExists( temp );
+            }
+            catch( IOException ignored )
+            {
+            }
+        }
+    }
+
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import java.io.IOException;
+
+/**
+ * Build time transformation of a JAR resource, see {@link ResourcePipeline}.
+ *
+ * Implementations must be thread safe, resources are processed concurrently.
+ */
+/* package */ interface ResourceProcessor
+{
+
+    /**
+     * @return Identifier of the processor, part of the cache keys, to change when the output changes
+     */
+    String id();
+
+    /**
+     * @return {@literal true} if the given entry should be processed
+     */
+    boolean accepts( String name );
+
+    /**
+     * @return Name of the processed entry, the original entry is kept next to it when the names differ
+     */
+    String outputName( String name );
+
+    /**
+     * @return Processed content, {@literal null} to leave the entry as is
+     */
+    byte[] process( String name, byte[] content )
+        throws IOException;
+
+}
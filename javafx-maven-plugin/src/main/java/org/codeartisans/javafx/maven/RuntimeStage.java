@@ -0,0 +1,182 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import com.sun.javafx.tools.packager.DeployParams;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.StringUtils;
+
+/**
+ * Runtime trimming stage of the package goal.
+ *
+ * Links a runtime image of the modules used by the JavaFX JAR and the dependencies to {@literal image/} in the runtime
+ * directory and reports what was left out, see {@link RuntimeTrimmer}. The image is then handed to the packager API
+ * of the JDK running the build.
+ */
+/* package */ class RuntimeStage
+{
+
+    /* package */ static final String NAME = "runtime";
+    private final Log log;
+    private final PackagingMetrics metrics;
+    private final boolean shrink;
+    private final String shrinkKeep;
+    private final String runtimeModules;
+    private final boolean cds;
+
+    /**
+     * @param shrink         Whether the class path was shrunk, part of the stage fingerprint
+     * @param shrinkKeep     Patterns kept by the shrinker, part of the stage fingerprint
+     * @param runtimeModules Comma separated modules always linked into the image
+     * @param cds            Whether the image is the base of an application Class Data Sharing archive
+     */
+    /* package */ RuntimeStage( Log log, PackagingMetrics metrics, boolean shrink, String shrinkKeep,
+                                String runtimeModules, boolean cds )
+    {
+        this.log = log;
+        this.metrics = metrics;
+        this.shrink = shrink;
+        this.shrinkKeep = shrinkKeep;
+        this.runtimeModules = runtimeModules;
+        this.cds = cds;
+    }
+
+    /**
+     * @return Trimmed runtime image, {@literal null} if the build runtime cannot link one
+     */
+    /* package */ File run( FingerprintManifest fingerprints, String javaFxJarFingerprint,
+                            String dependenciesFingerprint, File javaFxJar, File dependenciesDir,
+                            File javaFxRuntimeDir )
+        throws IOException
+    {
+        File image = new File( javaFxRuntimeDir, "image" );
+        File report = new File( javaFxRuntimeDir, "runtime-report.json" );
+        String fingerprint = null;
+        if( fingerprints.isEnabled() )
+        {
+            fingerprint = new Fingerprint().
+                add( JavaFXPackageMojo.STAGE_CREATE_JAR_OUTPUT, javaFxJarFingerprint ).
+                add( JavaFXPackageMojo.STAGE_DEPENDENCIES, dependenciesFingerprint ).
+                add( "shrink", shrink ).
+                add( "shrinkKeep", shrinkKeep ).
+                add( "runtimeModules", runtimeModules ).
+                add( "cds", cds ).
+                add( "java.home", System.getProperty( "java.home" ) ).
+                value();
+        }
+        PackagingMetrics.Phase phase = metrics.begin( NAME );
+        try
+        {
+            if( fingerprints.isUpToDate( NAME, fingerprint, report ) )
+            {
+                log.info( "Trimmed runtime is up to date" );
+                phase.upToDate();
+                return image.isDirectory() ? image : null;
+            }
+            fingerprints.invalidate( NAME );
+            FileUtils.deleteDirectory( javaFxRuntimeDir );
+            FileUtils.forceMkdir( javaFxRuntimeDir );
+
+            List<File> jars = new ArrayList<File>();
+            jars.add( javaFxJar );
+            File[] dependencies = dependenciesDir.listFiles();
+            if( dependencies != null )
+            {
+                Arrays.sort( dependencies );
+                for( File dependency : dependencies )
+                {
+                    if( dependency.getName().endsWith( ".jar" ) )
+                    {
+                        jars.add( dependency );
+                    }
+                }
+            }
+
+            RuntimeTrimmer trimmer = new RuntimeTrimmer( log );
+            Map<String, String> systemModules = trimmer.systemModules();
+            Set<String> usedPackages = trimmer.usedPackages( jars, systemModules.isEmpty()
+                                                                   ? null
+                                                                   : systemModules.keySet() );
+            Set<String> requiredModules = RuntimeTrimmer.requiredModules( usedPackages, systemModules );
+            Set<String> allowedModules = RuntimeTrimmer.allowedModules( runtimeModules );
+            Set<String> imageModules = new TreeSet<String>();
+            File imageDir = null;
+            if( systemModules.isEmpty() )
+            {
+                log.warn( "Trimming the runtime requires Java 9 or later, the whole runtime will be bundled, "
+                          + "used packages are reported in " + report );
+            }
+            else
+            {
+                Set<String> modules = RuntimeTrimmer.linkedModules( requiredModules, allowedModules,
+                                                                    systemModules.values() );
+                imageModules = trimmer.jlink( modules, cds, image, new File( javaFxRuntimeDir, "jlink.log" ) );
+                imageDir = image;
+                log.info( "Trimmed runtime to " + imageModules.size() + " modules: " + imageModules );
+            }
+            trimmer.writeReport( report, usedPackages, requiredModules, allowedModules,
+                                 new TreeSet<String>( systemModules.values() ), imageModules, imageDir );
+            fingerprints.record( NAME, fingerprint );
+            phase.read( javaFxJar ).read( dependenciesDir ).wrote( javaFxRuntimeDir );
+            return imageDir;
+        }
+        finally
+        {
+            phase.end();
+        }
+    }
+
+    /**
+     * Bundle a trimmed runtime image, through the packager API of the JDK running the build: an explicit runtime
+     * source up to Java 8 packagers, the modules to link for later ones.
+     */
+    /* package */ static void bundle( Log log, DeployParams deployParams, File image )
+        throws IOException, ReflectiveOperationException
+    {
+        try
+        {
+            DeployParams.class.getMethod( "setJavaRuntimeSource", File.class ).invoke( deployParams, image );
+            return;
+        }
+        catch( NoSuchMethodException ex )
+        {
+            log.debug( "No runtime source in this packager, passing modules to link" );
+        }
+        try
+        {
+            String modules = StringUtils.join( RuntimeTrimmer.imageModules( image ).iterator(), "," );
+            Method addBundleArgument = DeployParams.class.getMethod( "addBundleArgument", String.class,
+                                                                     Object.class );
+            addBundleArgument.invoke( deployParams, "add-modules", modules );
+            addBundleArgument.invoke( deployParams, "limit-modules", modules );
+        }
+        catch( NoSuchMethodException ex )
+        {
+            log.warn( "This packager cannot bundle a trimmed runtime, the whole runtime will be bundled" );
+        }
+    }
+
+}
@@ -0,0 +1,372 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.util.IOUtil;
+import org.codehaus.plexus.util.StringUtils;
+import org.codehaus.plexus.util.WriterFactory;
+
+/**
+ * Java runtime trimmed to the modules an application uses.
+ *
+ * The class files of the application JARs are scanned for the runtime packages they reference, see
+ * {@link ConstantPoolScanner}, including the classes named by string constants. Packages are mapped to the system
+ * modules of the runtime running the build and {@literal jlink} produces an image of these modules and their
+ * dependencies. Modules are only available from Java 9, on older runtimes only the used packages are reported.
+ */
+/* package */ class RuntimeTrimmer
+{
+
+    private static final String CLASS = ".class";
+    private static final List<String> JLINK_OPTIONS = Arrays.asList( "--strip-debug", "--no-header-files",
+                                                                                "--no-man-pages", "--compress=2" );
+    /**
+     * Packages of the Java 8 runtime, used when system modules cannot be listed.
+     */
+    private static final String[] RUNTIME_PREFIXES =
+    {
+        "java.", "javax.", "javafx.", "jdk.", "sun.", "com.sun.", "com.oracle.", "netscape.", "org.ietf.", "org.omg.",
+        "org.w3c.", "org.xml."
+    };
+    private final Log log;
+    private final File javaHome;
+
+    /* package */ RuntimeTrimmer( Log log )
+    {
+        this.log = log;
+        this.javaHome = new File( System.getProperty( "java.home" ) );
+    }
+
+    /**
+     * @return System modules names by package binary name, empty before Java 9
+     */
+    /* package */ Map<String, String> systemModules()
+        throws IOException
+    {
+        Map<String, String> modules = new TreeMap<String, String>();
+        Class<?> finderClass;
+        try
+        {
+            finderClass = Class.forName( "java.lang.module.ModuleFinder" );
+        }
+        catch( ClassNotFoundException ex )
+        {
+            return modules;
+        }
+        try
+        {
+            // Reflection as the plugin is built for Java 7
+            Class<?> referenceClass = Class.forName( "java.lang.module.ModuleReference" );
+            Class<?> descriptorClass = Class.forName( "java.lang.module.ModuleDescriptor" );
+            Object finder = finderClass.getMethod( "ofSystem" ).invoke( null );
+            for( Object reference : (Set<?>) finderClass.getMethod( "findAll" ).invoke( finder ) )
+            {
+                Object descriptor = referenceClass.getMethod( "descriptor" ).invoke( reference );
+                String name = (String) descriptorClass.getMethod( "name" ).invoke( descriptor );
+                for( Object modulePackage : (Set<?>) descriptorClass.getMethod( "packages" ).invoke( descriptor ) )
+                {
+                    modules.put( (String) modulePackage, name );
+                }
+            }
+            return modules;
+        }
+        catch( ReflectiveOperationException ex )
+        {
+            throw new IOException( "Unable to list the runtime system modules", ex );
+        }
+    }
+
+    /**
+     * @param runtimePackages Packages of the runtime, to tell them from missing dependencies, {@literal null} for
+     *                        the well known Java 8 runtime packages
+     *
+     * @return Binary names of the runtime packages used by the classes of the given JARs
+     */
+    /* package */ Set<String> usedPackages( List<File> jars, Set<String> runtimePackages )
+        throws IOException
+    {
+        Set<String> classPathPackages = new HashSet<String>();
+        Set<String> referencedPackages = new HashSet<String>();
+        for( File jar : jars )
+        {
+            RawZipFile zip = new RawZipFile( jar );
+            try
+            {
+                for( RawZipFile.Entry entry : zip.entries() )
+                {
+                    if( !entry.name.endsWith( CLASS ) || entry.name.startsWith( "META-INF/" ) )
+                    {
+                        continue;
+                    }
+                    classPathPackages.add( packageOf( entry.name.substring( 0, entry.name.length() - 6 ) ) );
+                    ConstantPoolScanner.References references;
+                    InputStream input = zip.open( entry );
+                    try
+                    {
+                        references = ConstantPoolScanner.scan( IOUtil.toByteArray( input ) );
+                    }
+                    catch( IOException ex )
+                    {
+                        log.warn( "Unable to scan " + entry.name + " of " + jar.getName() + ": " + ex.getMessage() );
+                        continue;
+                    }
+                    finally
+                    {
+                        IOUtil.close( input );
+                    }
+                    for( String referenced : references.classes )
+                    {
+                        referencedPackages.add( packageOf( referenced ) );
+                    }
+                    for( String string : references.strings )
+                    {
+                        // Reflection, Class.forName( "javax.script.ScriptEngineManager" ) for example
+                        if( string.matches( "[\\w$]+(\\.[\\w$]+)+" ) )
+                        {
+                            referencedPackages.add( packageOf( string.replace( '.', '/' ) ) );
+                        }
+                    }
+                }
+            }
+            finally
+            {
+                zip.close();
+            }
+        }
+        Set<String> used = new TreeSet<String>();
+        for( String referenced : referencedPackages )
+        {
+            String binaryName = referenced.replace( '/', '.' );
+            boolean runtime = runtimePackages == null
+                              ? isRuntimePackage( binaryName )
+                              : runtimePackages.contains( binaryName );
+            if( runtime && !classPathPackages.contains( referenced ) )
+            {
+                used.add( binaryName );
+            }
+        }
+        return used;
+    }
+
+    /**
+     * @param systemModules System modules names by package binary name, see {@link #systemModules()}
+     *
+     * @return Names of the system modules exporting the given packages
+     */
+    /* package */ static Set<String> requiredModules( Set<String> usedPackages, Map<String, String> systemModules )
+    {
+        Set<String> modules = new TreeSet<String>();
+        for( String usedPackage : usedPackages )
+        {
+            String module = systemModules.get( usedPackage );
+            if( module != null )
+            {
+                modules.add( module );
+            }
+        }
+        return modules;
+    }
+
+    /**
+     * @param runtimeModules Comma separated modules, may be {@literal null}
+     *
+     * @return Modules always linked into the image
+     */
+    /* package */ static Set<String> allowedModules( String runtimeModules )
+    {
+        Set<String> modules = new TreeSet<String>();
+        for( String module : StringUtils.split( StringUtils.defaultString( runtimeModules ), "," ) )
+        {
+            if( module.trim().length() > 0 )
+            {
+                modules.add( module.trim() );
+            }
+        }
+        return modules;
+    }
+
+    /**
+     * @return Modules to link: the required and allowed ones plus those the native launchers use if available
+     */
+    /* package */ static Set<String> linkedModules( Set<String> requiredModules, Set<String> allowedModules,
+                                                    Collection<String> systemModules )
+    {
+        Set<String> modules = new TreeSet<String>( requiredModules );
+        modules.addAll( allowedModules );
+        if( systemModules.contains( "jdk.packager.services" ) )
+        {
+            modules.add( "jdk.packager.services" );
+        }
+        return modules;
+    }
+
+    /**
+     * Link a runtime image of the given modules and their dependencies.
+     *
+     * @param cdsArchive Include the default Class Data Sharing archive, the base of application archives
+     *
+     * @return Modules of the image
+     */
+    /* package */ Set<String> jlink( Collection<String> modules, boolean cdsArchive, File imageDir, File logFile )
+        throws IOException
+    {
+        File jlink = new File( javaHome, "bin/" + ( File.separatorChar == '\\' ? "jlink.exe" : "jlink" ) );
+        if( !jlink.isFile() )
+        {
+            throw new IOException( "No jlink in " + javaHome + ", trimming the runtime requires a JDK" );
+        }
+        List<String> command = new ArrayList<String>();
+        command.add( jlink.getAbsolutePath() );
+        command.add( "--add-modules" );
+        command.add( StringUtils.join( modules.iterator(), "," ) );
+        command.add( "--output" );
+        command.add( imageDir.getAbsolutePath() );
+        command.addAll( JLINK_OPTIONS );
+        if( cdsArchive )
+        {
+            command.add( "--generate-cds-archive" );
+        }
+        log.debug( "Running " + StringUtils.join( command.iterator(), " " ) );
+        ProcessBuilder builder = new ProcessBuilder( command );
+        builder.redirectErrorStream( true );
+        builder.redirectOutput( ProcessBuilder.Redirect.appendTo( logFile ) );
+        try
+        {
+            int exitCode = builder.start().waitFor();
+            if( exitCode != 0 )
+            {
+                throw new IOException( "jlink exited with " + exitCode + ", see " + logFile );
+            }
+        }
+        catch( InterruptedException ex )
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException( "Interrupted", ex );
+        }
+        return imageModules( imageDir );
+    }
+
+    /**
+     * @return Modules listed in the {@literal release} file of a runtime image
+     */
+    /* package */ static Set<String> imageModules( File imageDir )
+        throws IOException
+    {
+        Set<String> modules = new TreeSet<String>();
+        BufferedReader reader = new BufferedReader( new InputStreamReader(
+            new FileInputStream( new File( imageDir, "release" ) ), "UTF-8" ) );
+        try
+        {
+            for( String line = reader.readLine(); line != null; line = reader.readLine() )
+            {
+                if( line.startsWith( "MODULES=" ) )
+                {
+                    String value = line.substring( "MODULES=".length() ).replace( "\"", "" ).trim();
+                    for( String module : StringUtils.split( value, " " ) )
+                    {
+                        modules.add( module );
+                    }
+                }
+            }
+        }
+        finally
+        {
+            IOUtil.close( reader );
+        }
+        return modules;
+    }
+
+    /**
+     * @param imageDir Runtime image, {@literal null} if none could be produced
+     */
+    /* package */ void writeReport( File file, Set<String> usedPackages, Set<String> requiredModules,
+                                    Set<String> allowedModules, Collection<String> systemModules,
+                                    Set<String> imageModules, File imageDir )
+        throws IOException
+    {
+        Set<String> removed = new TreeSet<String>( systemModules );
+        removed.removeAll( imageModules );
+        StringBuilder json = new StringBuilder();
+        json.append( "{\n" );
+        json.append( "  \"javaHome\": " ).append( Json.quote( javaHome.getAbsolutePath() ) ).append( ",\n" );
+        json.append( "  \"javaHomeSize\": " ).append( FileTrees.size( javaHome.toPath() ) ).append( ",\n" );
+        json.append( "  \"imageSize\": " ).append( imageDir == null ? -1 : FileTrees.size( imageDir.toPath() ) ).
+            append( ",\n" );
+        appendArray( json, "usedPackages", usedPackages ).append( ",\n" );
+        appendArray( json, "requiredModules", requiredModules ).append( ",\n" );
+        appendArray( json, "allowedModules", allowedModules ).append( ",\n" );
+        appendArray( json, "imageModules", imageModules ).append( ",\n" );
+        appendArray( json, "removedModules", imageDir == null ? new TreeSet<String>() : removed ).append( "\n" );
+        json.append( "}\n" );
+        Writer writer = WriterFactory.newWriter( file, "UTF-8" );
+        try
+        {
+            writer.write( json.toString() );
+        }
+        finally
+        {
+            IOUtil.close( writer );
+        }
+    }
+
+    private static StringBuilder appendArray( StringBuilder json, String name, Collection<String> values )
+    {
+        json.append( "  " ).append( Json.quote( name ) ).append( ": [" );
+        boolean first = true;
+        for( String value : values )
+        {
+            json.append( first ? " " : ", " ).append( Json.quote( value ) );
+            first = false;
+        }
+        return json.append( values.isEmpty() ? "]" : " ]" );
+    }
+
+    private static boolean isRuntimePackage( String binaryName )
+    {
+        for( String prefix : RUNTIME_PREFIXES )
+        {
+            if( binaryName.startsWith( prefix ) )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String packageOf( String internalName )
+    {
+        int slash = internalName.lastIndexOf( '/' );
+        return slash < 0 ? "" : internalName.substring( 0, slash );
+    }
+
+}
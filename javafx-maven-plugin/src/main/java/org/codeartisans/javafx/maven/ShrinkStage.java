@@ -0,0 +1,166 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.StringUtils;
+
+/**
+ * Class path shrinking stage of the package goal.
+ *
+ * Writes shrunk copies of the JavaFX JAR to {@literal jar/} and of the staged dependencies to {@literal dependencies/}
+ * in the shrink directory, see {@link Shrinker}. Roots are the classes named by the JavaFX JAR manifest and the
+ * configured main and preloader classes.
+ */
+/* package */ class ShrinkStage
+{
+
+    /* package */ static final String NAME = "shrink";
+    private final Log log;
+    private final PackagingMetrics metrics;
+    private final String mainClass;
+    private final String preloaderClass;
+    private final String shrinkKeep;
+
+    /**
+     * @param shrinkKeep Comma separated patterns of classes and resources always kept
+     */
+    /* package */ ShrinkStage( Log log, PackagingMetrics metrics, String mainClass, String preloaderClass,
+                               String shrinkKeep )
+    {
+        this.log = log;
+        this.metrics = metrics;
+        this.mainClass = mainClass;
+        this.preloaderClass = preloaderClass;
+        this.shrinkKeep = shrinkKeep;
+    }
+
+    /* package */ void run( FingerprintManifest fingerprints, String javaFxJarFingerprint,
+                            String dependenciesFingerprint, File javaFxJar, File dependenciesDir,
+                            File javaFxShrinkDir )
+        throws IOException
+    {
+        String fingerprint = null;
+        if( fingerprints.isEnabled() )
+        {
+            fingerprint = new Fingerprint().
+                add( JavaFXPackageMojo.STAGE_CREATE_JAR_OUTPUT, javaFxJarFingerprint ).
+                add( JavaFXPackageMojo.STAGE_DEPENDENCIES, dependenciesFingerprint ).
+                add( "mainClass", mainClass ).
+                add( "preloaderClass", preloaderClass ).
+                add( "shrinkKeep", shrinkKeep ).
+                value();
+        }
+        PackagingMetrics.Phase phase = metrics.begin( NAME );
+        try
+        {
+            if( fingerprints.isUpToDate( NAME, fingerprint, javaFxShrinkDir ) )
+            {
+                log.info( "Shrunk class path is up to date" );
+                phase.upToDate();
+                return;
+            }
+            fingerprints.invalidate( NAME );
+            FileUtils.deleteDirectory( javaFxShrinkDir );
+            File jarDir = new File( javaFxShrinkDir, "jar" );
+            File shrunkDependenciesDir = new File( javaFxShrinkDir, "dependencies" );
+            FileUtils.forceMkdir( jarDir );
+            FileUtils.forceMkdir( shrunkDependenciesDir );
+
+            Map<File, File> jars = new LinkedHashMap<File, File>();
+            jars.put( javaFxJar, new File( jarDir, javaFxJar.getName() ) );
+            File[] dependencies = dependenciesDir.listFiles();
+            if( dependencies != null )
+            {
+                Arrays.sort( dependencies );
+                for( File dependency : dependencies )
+                {
+                    if( dependency.getName().endsWith( ".jar" ) )
+                    {
+                        jars.put( dependency, new File( shrunkDependenciesDir, dependency.getName() ) );
+                    }
+                    else if( dependency.isFile() )
+                    {
+                        FileUtils.copyFile( dependency, new File( shrunkDependenciesDir, dependency.getName() ) );
+                    }
+                }
+            }
+
+            new Shrinker( log, StringUtils.split( StringUtils.defaultString( shrinkKeep ), "," ) ).
+                shrink( jars, roots( javaFxJar ), new File( javaFxShrinkDir, "removed.txt" ) );
+            fingerprints.record( NAME, fingerprint );
+            phase.read( javaFxJar ).read( dependenciesDir ).wrote( javaFxShrinkDir );
+        }
+        finally
+        {
+            phase.end();
+        }
+    }
+
+    /**
+     * @return Launcher classes and application classes named by the manifest, then the configured ones
+     */
+    private Set<String> roots( File javaFxJar )
+        throws IOException
+    {
+        Set<String> roots = new LinkedHashSet<String>();
+        JarFile jarFile = new JarFile( javaFxJar );
+        try
+        {
+            Manifest manifest = jarFile.getManifest();
+            if( manifest != null )
+            {
+                for( String attribute : new String[]
+                {
+                    "Main-Class", "JavaFX-Application-Class", "JavaFX-Preloader-Class"
+                } )
+                {
+                    String value = manifest.getMainAttributes().getValue( attribute );
+                    if( value != null )
+                    {
+                        roots.add( value.trim() );
+                    }
+                }
+            }
+        }
+        finally
+        {
+            jarFile.close();
+        }
+        for( String root : new String[]
+        {
+            mainClass, preloaderClass
+        } )
+        {
+            if( !StringUtils.isEmpty( root ) )
+            {
+                roots.add( root );
+            }
+        }
+        return roots;
+    }
+
+}
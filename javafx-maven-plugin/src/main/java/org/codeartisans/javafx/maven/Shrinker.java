@@ -0,0 +1,577 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.io.Writer;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.util.IOUtil;
+import org.codehaus.plexus.util.SelectorUtils;
+import org.codehaus.plexus.util.WriterFactory;
+
+/**
+ * Drops the classes and resources of a class path that are not reachable from its entry points.
+ *
+ * Reachability is computed at the class level from the constant pools, see {@link ConstantPoolScanner}. On top of
+ * the given entry points, roots are the classes matching the keep patterns, the implementations of reachable or
+ * runtime provided services, the classes named by string constants, the controllers, types and imported classes of
+ * reachable FXML files and the skins of reachable style sheets. Resources are kept when matching the keep patterns,
+ * when a reachable class, FXML file or style sheet names them, as resource bundles base names for example, or when
+ * under {@literal META-INF/}, service files of unreachable services aside. Signed JARs, and JARs not supported by
+ * {@link RawZipFile} like ZIP64 ones, are kept as is and all their classes are roots.
+ */
+/* package */ class Shrinker
+{
+
+    private static final String CLASS = ".class";
+    private static final String META_INF = "META-INF/";
+    private static final String SERVICES = "META-INF/services/";
+    private static final Pattern FXML_CONTROLLER = Pattern.compile( "fx:controller\\s*=\\s*\"([^\"]+)\"" );
+    private static final Pattern FXML_TYPE = Pattern.compile( "\\stype\\s*=\\s*\"([^\"]+)\"" );
+    private static final Pattern FXML_IMPORT = Pattern.compile( "<\\?import\\s+([\\w.$]+?)(\\.\\*)?\\s*\\?>" );
+    private static final Pattern FXML_ELEMENT = Pattern.compile( "<([A-Z][\\w$]*)[\\s/>]" );
+    private static final Pattern FXML_LOCATION = Pattern.compile( "\"@([^\"]+)\"" );
+    private static final Pattern FXML_INCLUDE = Pattern.compile( "<fx:include[^>]*\\ssource\\s*=\\s*\"([^\"]+)\"" );
+    private static final Pattern CSS_SKIN = Pattern.compile( "-fx-skin\\s*:\\s*[\"']([\\w.$]+)[\"']" );
+    private static final Pattern CSS_URL = Pattern.compile( "url\\(\\s*[\"']?([^\"')]+?)[\"']?\\s*\\)" );
+
+    private static class Source
+    {
+
+        private final RawZipFile zip;
+        private final RawZipFile.Entry entry;
+        private final ZipFile fallbackZip;
+        private final ZipEntry fallbackEntry;
+
+        private Source( RawZipFile zip, RawZipFile.Entry entry )
+        {
+            this.zip = zip;
+            this.entry = entry;
+            this.fallbackZip = null;
+            this.fallbackEntry = null;
+        }
+
+        private Source( ZipFile fallbackZip, ZipEntry fallbackEntry )
+        {
+            this.zip = null;
+            this.entry = null;
+            this.fallbackZip = fallbackZip;
+            this.fallbackEntry = fallbackEntry;
+        }
+
+        private InputStream open()
+            throws IOException
+        {
+            return zip != null ? zip.open( entry ) : fallbackZip.getInputStream( fallbackEntry );
+        }
+
+    }
+
+    private final Log log;
+    private final String[] keepPatterns;
+    /**
+     * Entry names to their first occurrence on the class path.
+     */
+    private final Map<String, Source> index = new HashMap<String, Source>();
+    private final Set<String> reachableClasses = new HashSet<String>();
+    private final Set<String> keptResources = new HashSet<String>();
+    /**
+     * Resource names referenced by reachable classes and resources.
+     */
+    private final Set<String> resourceReferences = new HashSet<String>();
+    private final Deque<String> pendingClasses = new ArrayDeque<String>();
+
+    /**
+     * @param keepPatterns Patterns of class and resource entry names always kept, {@literal com/acme/plugins/**} for
+     *                     example
+     */
+    /* package */ Shrinker( Log log, String[] keepPatterns )
+    {
+        this.log = log;
+        this.keepPatterns = keepPatterns;
+    }
+
+    /**
+     * Write shrunk copies of JARs.
+     *
+     * @param jars       Class path JARs mapped to the files to write their shrunk copy to
+     * @param roots      Binary names of the entry point classes
+     * @param reportFile File listing the removed entries
+     */
+    /* package */ void shrink( Map<File, File> jars, Collection<String> roots, File reportFile )
+        throws IOException
+    {
+        Map<File, RawZipFile> zips = new LinkedHashMap<File, RawZipFile>();
+        List<ZipFile> fallbackZips = new ArrayList<ZipFile>();
+        try
+        {
+            Set<File> keptAsIs = new HashSet<File>();
+            for( File jar : jars.keySet() )
+            {
+                boolean asIs = DependencyAnalyzer.isSigned( jar );
+                Map<String, Source> sources = new LinkedHashMap<String, Source>();
+                try
+                {
+                    RawZipFile zip = new RawZipFile( jar );
+                    zips.put( jar, zip );
+                    for( RawZipFile.Entry entry : zip.entries() )
+                    {
+                        sources.put( entry.name, new Source( zip, entry ) );
+                    }
+                }
+                catch( ZipException ex )
+                {
+                    log.info( "Keeping " + jar.getName() + " as is: " + ex.getMessage() );
+                    asIs = true;
+                    ZipFile zip = new ZipFile( jar );
+                    fallbackZips.add( zip );
+                    for( Enumeration<? extends ZipEntry> entries = zip.entries(); entries.hasMoreElements(); )
+                    {
+                        ZipEntry entry = entries.nextElement();
+                        sources.put( entry.getName(), new Source( zip, entry ) );
+                    }
+                }
+                if( asIs )
+                {
+                    keptAsIs.add( jar );
+                }
+                for( Map.Entry<String, Source> source : sources.entrySet() )
+                {
+                    String name = source.getKey();
+                    if( !index.containsKey( name ) )
+                    {
+                        index.put( name, source.getValue() );
+                    }
+                    if( name.endsWith( CLASS ) && ( asIs || name.startsWith( META_INF ) || isKept( name ) ) )
+                    {
+                        // Multi release classes are scanned as roots, they shadow the reachable base ones
+                        reach( name );
+                    }
+                }
+            }
+            for( String root : roots )
+            {
+                reachClassName( root );
+            }
+            for( String name : index.keySet() )
+            {
+                if( !name.endsWith( CLASS ) && !name.endsWith( "/" ) && isKept( name ) )
+                {
+                    keepResource( name );
+                }
+            }
+            resolve();
+            write( zips, jars, keptAsIs, reportFile );
+        }
+        finally
+        {
+            for( RawZipFile zip : zips.values() )
+            {
+                zip.close();
+            }
+            for( ZipFile zip : fallbackZips )
+            {
+                zip.close();
+            }
+        }
+    }
+
+    /**
+     * Iterate until no more classes nor resources become reachable.
+     */
+    private void resolve()
+        throws IOException
+    {
+        boolean changed = true;
+        while( changed )
+        {
+            while( !pendingClasses.isEmpty() )
+            {
+                scanClass( pendingClasses.pop() );
+            }
+            changed = false;
+            for( String name : index.keySet() )
+            {
+                if( name.startsWith( SERVICES ) && !name.endsWith( "/" ) && !keptResources.contains( name ) )
+                {
+                    String service = name.substring( SERVICES.length() ).replace( '.', '/' ) + CLASS;
+                    // Services of the runtime are always reachable
+                    if( !index.containsKey( service ) || reachableClasses.contains( service ) )
+                    {
+                        keepResource( name );
+                        changed = true;
+                    }
+                }
+                else if( !name.endsWith( CLASS ) && !name.endsWith( "/" ) && !keptResources.contains( name )
+                         && isReferenced( name ) )
+                {
+                    keepResource( name );
+                    changed = true;
+                }
+            }
+            changed |= !pendingClasses.isEmpty();
+        }
+    }
+
+    private void scanClass( String entryName )
+        throws IOException
+    {
+        ConstantPoolScanner.References references;
+        try
+        {
+            references = ConstantPoolScanner.scan( read( entryName ) );
+        }
+        catch( IOException ex )
+        {
+            log.warn( "Unable to scan " + entryName + ", its references are not followed: " + ex.getMessage() );
+            return;
+        }
+        for( String referenced : references.classes )
+        {
+            reach( referenced + CLASS );
+        }
+        String classPackage = entryName.lastIndexOf( '/' ) > 0
+                              ? entryName.substring( 0, entryName.lastIndexOf( '/' ) + 1 )
+                              : "";
+        for( String string : references.strings )
+        {
+            // Reflection, Class.forName( "com.acme.Plugin" ) for example
+            reachClassName( string );
+            addResourceReference( classPackage, string );
+        }
+    }
+
+    private void keepResource( String name )
+        throws IOException
+    {
+        if( !keptResources.add( name ) )
+        {
+            return;
+        }
+        String lowerCase = name.toLowerCase( Locale.ENGLISH );
+        if( name.startsWith( SERVICES ) )
+        {
+            for( String line : lines( name ) )
+            {
+                String implementation = line.replaceAll( "#.*", "" ).trim();
+                if( implementation.length() > 0 )
+                {
+                    reachClassName( implementation );
+                }
+            }
+        }
+        else if( lowerCase.endsWith( ".fxml" ) )
+        {
+            keepFxmlReferences( name, new String( read( name ), "UTF-8" ) );
+        }
+        else if( lowerCase.endsWith( ".css" ) )
+        {
+            String css = new String( read( name ), "UTF-8" );
+            Matcher skin = CSS_SKIN.matcher( css );
+            while( skin.find() )
+            {
+                reachClassName( skin.group( 1 ) );
+            }
+            Matcher url = CSS_URL.matcher( css );
+            while( url.find() )
+            {
+                addRelativeReference( name, url.group( 1 ) );
+            }
+        }
+    }
+
+    private void keepFxmlReferences( String name, String fxml )
+    {
+        for( Pattern pattern : new Pattern[]
+        {
+            FXML_CONTROLLER, FXML_TYPE
+        } )
+        {
+            Matcher matcher = pattern.matcher( fxml );
+            while( matcher.find() )
+            {
+                reachClassName( matcher.group( 1 ) );
+            }
+        }
+        List<String> packages = new ArrayList<String>();
+        Matcher imports = FXML_IMPORT.matcher( fxml );
+        while( imports.find() )
+        {
+            if( imports.group( 2 ) == null )
+            {
+                reachClassName( imports.group( 1 ) );
+            }
+            else
+            {
+                packages.add( imports.group( 1 ) );
+            }
+        }
+        Matcher elements = FXML_ELEMENT.matcher( fxml );
+        while( elements.find() )
+        {
+            for( String importedPackage : packages )
+            {
+                reachClassName( importedPackage + "." + elements.group( 1 ) );
+            }
+        }
+        for( Pattern pattern : new Pattern[]
+        {
+            FXML_LOCATION, FXML_INCLUDE
+        } )
+        {
+            Matcher matcher = pattern.matcher( fxml );
+            while( matcher.find() )
+            {
+                addRelativeReference( name, matcher.group( 1 ) );
+            }
+        }
+    }
+
+    /**
+     * @param className Binary name, {@literal com.acme.App} for example, anything else is ignored
+     */
+    private void reachClassName( String className )
+    {
+        if( className.length() > 0 && className.indexOf( '/' ) < 0 )
+        {
+            reach( className.trim().replace( '.', '/' ) + CLASS );
+        }
+    }
+
+    private void reach( String classEntry )
+    {
+        if( index.containsKey( classEntry ) && reachableClasses.add( classEntry ) )
+        {
+            pendingClasses.push( classEntry );
+        }
+    }
+
+    private void addResourceReference( String classPackage, String string )
+    {
+        if( string.length() == 0 || string.length() > 256 )
+        {
+            return;
+        }
+        if( string.startsWith( "/" ) )
+        {
+            resourceReferences.add( string.substring( 1 ) );
+        }
+        else
+        {
+            resourceReferences.add( string );
+            resourceReferences.add( classPackage + string );
+            // Resource bundle base names
+            resourceReferences.add( string.replace( '.', '/' ) );
+        }
+    }
+
+    private void addRelativeReference( String resource, String reference )
+    {
+        try
+        {
+            String resolved = new URI( null, null, resource, null ).resolve( new URI( null, null, reference, null ) ).
+                getPath();
+            resourceReferences.add( resolved.startsWith( "/" ) ? resolved.substring( 1 ) : resolved );
+        }
+        catch( URISyntaxException ex )
+        {
+            log.debug( "Ignoring reference " + reference + " of " + resource + ": " + ex.getMessage() );
+        }
+    }
+
+    /**
+     * @return {@literal true} if a name, a name without extension, a resource bundle base name or a binary style
+     *         sheet source name was referenced
+     */
+    private boolean isReferenced( String resource )
+    {
+        if( resource.startsWith( META_INF ) || resourceReferences.contains( resource ) )
+        {
+            return true;
+        }
+        if( resource.endsWith( ".bss" )
+            && resourceReferences.contains( resource.substring( 0, resource.length() - 4 ) + ".css" ) )
+        {
+            return true;
+        }
+        int slash = resource.lastIndexOf( '/' );
+        int dot = resource.lastIndexOf( '.' );
+        String base = dot > slash ? resource.substring( 0, dot ) : resource;
+        while( true )
+        {
+            if( resourceReferences.contains( base ) )
+            {
+                return true;
+            }
+            // Locale suffixes, messages_fr_FR.properties for example
+            int underscore = base.lastIndexOf( '_' );
+            if( underscore <= slash )
+            {
+                return false;
+            }
+            base = base.substring( 0, underscore );
+        }
+    }
+
+    private boolean isKept( String name )
+    {
+        for( String pattern : keepPatterns )
+        {
+            if( pattern.trim().length() > 0 && SelectorUtils.matchPath( pattern.trim(), name ) )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private byte[] read( String name )
+        throws IOException
+    {
+        InputStream input = index.get( name ).open();
+        try
+        {
+            return IOUtil.toByteArray( input );
+        }
+        finally
+        {
+            IOUtil.close( input );
+        }
+    }
+
+    private List<String> lines( String name )
+        throws IOException
+    {
+        List<String> lines = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader( new StringReader( new String( read( name ), "UTF-8" ) ) );
+        for( String line = reader.readLine(); line != null; line = reader.readLine() )
+        {
+            lines.add( line );
+        }
+        return lines;
+    }
+
+    private void write( Map<File, RawZipFile> zips, Map<File, File> jars, Set<File> keptAsIs, File reportFile )
+        throws IOException
+    {
+        Set<String> removed = new TreeSet<String>();
+        int classes = 0;
+        int resources = 0;
+        long before = 0;
+        long after = 0;
+        for( Map.Entry<File, File> jar : jars.entrySet() )
+        {
+            File target = jar.getValue();
+            before += jar.getKey().length();
+            if( keptAsIs.contains( jar.getKey() ) )
+            {
+                Files.copy( jar.getKey().toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING );
+                after += target.length();
+                continue;
+            }
+            RawZipFile zip = zips.get( jar.getKey() );
+            Set<String> keptDirectories = new HashSet<String>();
+            Set<String> kept = new HashSet<String>();
+            for( RawZipFile.Entry entry : zip.entries() )
+            {
+                if( entry.isDirectory() )
+                {
+                    continue;
+                }
+                boolean isClass = entry.name.endsWith( CLASS );
+                if( isClass ? reachableClasses.contains( entry.name ) : keptResources.contains( entry.name ) )
+                {
+                    kept.add( entry.name );
+                    int slash = entry.name.indexOf( '/' );
+                    for( ; slash > 0; slash = entry.name.indexOf( '/', slash + 1 ) )
+                    {
+                        keptDirectories.add( entry.name.substring( 0, slash + 1 ) );
+                    }
+                }
+                else
+                {
+                    removed.add( entry.name );
+                    if( isClass )
+                    {
+                        classes++;
+                    }
+                    else
+                    {
+                        resources++;
+                    }
+                }
+            }
+            RawZipWriter output = new RawZipWriter( target );
+            try
+            {
+                for( RawZipFile.Entry entry : zip.entries() )
+                {
+                    if( entry.isDirectory() ? keptDirectories.contains( entry.name ) : kept.contains( entry.name ) )
+                    {
+                        output.copyEntry( zip, entry );
+                    }
+                }
+                output.close();
+            }
+            finally
+            {
+                JarRewriter.closeQuietly( output );
+            }
+            after += target.length();
+        }
+        Writer writer = WriterFactory.newWriter( reportFile, "UTF-8" );
+        try
+        {
+            for( String name : removed )
+            {
+                writer.write( name + "\n" );
+            }
+        }
+        finally
+        {
+            IOUtil.close( writer );
+        }
+        log.info( "Shrunk class path from " + before / 1024 + "KiB to " + after / 1024 + "KiB, removed " + classes
+                  + " classes and " + resources + " resources, listed in " + reportFile );
+    }
+
+}
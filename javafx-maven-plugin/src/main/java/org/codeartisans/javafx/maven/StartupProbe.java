@@ -0,0 +1,68 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import java.util.Arrays;
+import javafx.application.Preloader;
+import javafx.application.Preloader.StateChangeNotification;
+import javafx.stage.Stage;
+
+/**
+ * Entry point of forked startup probe JVMs, see {@link ForkedJvm#probeStartup}.
+ *
+ * Launches the JavaFX application with this class as its preloader, prints the time at which the application is
+ * about to be started then exits. Only loaded by forked JVMs, the JVM running the build may not have JavaFX on its
+ * class path.
+ */
+public final class StartupProbe
+    extends Preloader
+{
+
+    /**
+     * Prefix of the line printed right before the application start method is called, followed by the current time.
+     */
+    /* package */ static final String BEFORE_START = "javafx.startup.before-start=";
+
+    /**
+     * @param args Application class then application arguments
+     */
+    public static void main( String[] args )
+        throws Exception
+    {
+        Class<?> applicationClass = Class.forName( args[0] );
+        String[] appArgs = Arrays.copyOfRange( args, 1, args.length );
+        Class.forName( "com.sun.javafx.application.LauncherImpl" ).
+            getMethod( "launchApplication", Class.class, Class.class, String[].class ).
+            invoke( null, applicationClass, StartupProbe.class, appArgs );
+    }
+
+    @Override
+    public void start( Stage stage )
+    {
+    }
+
+    @Override
+    public void handleStateChangeNotification( StateChangeNotification notification )
+    {
+        if( notification.getType() == StateChangeNotification.Type.BEFORE_START )
+        {
+            System.out.println( BEFORE_START + System.currentTimeMillis() );
+            System.out.flush();
+            System.exit( 0 );
+        }
+    }
+
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Streaming tar writer.
+ *
+ * Entries are written in POSIX ustar format, names, link targets and sizes that do not fit the ustar header are
+ * written to a preceding PAX extended header. Entries are owned by root, with the given permissions.
+ */
+/* package */ class TarWriter
+    implements Closeable
+{
+
+    private static final Charset UTF_8 = Charset.forName( "UTF-8" );
+    private static final int BLOCK_SIZE = 512;
+    private static final int RECORD_SIZE = 20 * BLOCK_SIZE;
+    private static final long MAX_OCTAL_SIZE = 077777777777L;
+    private static final byte TYPE_FILE = '0';
+    private static final byte TYPE_SYMLINK = '2';
+    private static final byte TYPE_DIRECTORY = '5';
+    private static final byte TYPE_PAX = 'x';
+    private final OutputStream output;
+    private final byte[] buffer = new byte[ 64 * 1024 ];
+    private long written;
+    private Long reproducibleTime;
+
+    /* package */ TarWriter( OutputStream output )
+    {
+        this.output = output;
+    }
+
+    /**
+     * @param time Time of all entries, overriding the given ones
+     */
+    /* package */ void setReproducible( long time )
+    {
+        this.reproducibleTime = time;
+    }
+
+    /**
+     * @param unixMode Unix permissions, {@link RawZipWriter#NO_MODE} for {@literal 0755}
+     */
+    /* package */ void putDirectory( String name, long time, int unixMode )
+        throws IOException
+    {
+        writeHeader( name.endsWith( "/" ) ? name : name + "/", TYPE_DIRECTORY,
+                     unixMode == RawZipWriter.NO_MODE ? 0755 : unixMode, 0, time, "" );
+    }
+
+    /* package */ void putSymbolicLink( String name, long time, String target )
+        throws IOException
+    {
+        writeHeader( name, TYPE_SYMLINK, 0777, 0, time, target );
+    }
+
+    /**
+     * @param unixMode Unix permissions, {@link RawZipWriter#NO_MODE} for {@literal 0644}
+     */
+    /* package */ void putEntry( String name, long time, int unixMode, File source )
+        throws IOException
+    {
+        long size = source.length();
+        writeHeader( name, TYPE_FILE, unixMode == RawZipWriter.NO_MODE ? 0644 : unixMode, size, time, "" );
+        InputStream input = new FileInputStream( source );
+        try
+        {
+            long remaining = size;
+            while( remaining > 0 )
+            {
+                int count = input.read( buffer, 0, (int) Math.min( buffer.length, remaining ) );
+                if( count == -1 )
+                {
+                    throw new IOException( source + " shrunk while being archived" );
+                }
+                write( buffer, count );
+                remaining -= count;
+            }
+        }
+        finally
+        {
+            IOUtil.close( input );
+        }
+        pad();
+    }
+
+    /**
+     * Write the end of archive marker, pad the last record and close the underlying stream.
+     */
+    @Override
+    public void close()
+        throws IOException
+    {
+        try
+        {
+            write( new byte[ 2 * BLOCK_SIZE ], 2 * BLOCK_SIZE );
+            int remainder = (int) ( written % RECORD_SIZE );
+            if( remainder != 0 )
+            {
+                write( new byte[ RECORD_SIZE - remainder ], RECORD_SIZE - remainder );
+            }
+        }
+        finally
+        {
+            output.close();
+        }
+    }
+
+    private void writeHeader( String name, byte type, int mode, long size, long time, String linkName )
+        throws IOException
+    {
+        long seconds = ( reproducibleTime != null ? reproducibleTime : time ) / 1000;
+        byte[] nameBytes = name.getBytes( UTF_8 );
+        byte[] linkNameBytes = linkName.getBytes( UTF_8 );
+        String[] splitName = splitName( nameBytes );
+
+        StringBuilder pax = new StringBuilder();
+        if( splitName == null )
+        {
+            appendPaxRecord( pax, "path", name );
+        }
+        if( linkNameBytes.length > 100 )
+        {
+            appendPaxRecord( pax, "linkpath", linkName );
+        }
+        if( size > MAX_OCTAL_SIZE )
+        {
+            appendPaxRecord( pax, "size", String.valueOf( size ) );
+        }
+        if( pax.length() > 0 )
+        {
+            byte[] records = pax.toString().getBytes( UTF_8 );
+            String paxName = "PaxHeaders/" + name.replaceAll( "/+$", "" );
+            paxName = paxName.substring( Math.max( 0, paxName.length() - 100 ) );
+            write( header( paxName.getBytes( UTF_8 ), "", TYPE_PAX, 0644, records.length, seconds, new byte[ 0 ] ),
+                   BLOCK_SIZE );
+            write( records, records.length );
+            pad();
+            if( splitName == null )
+            {
+                // Truncated fallback for readers ignoring PAX headers
+                splitName = new String[]
+                {
+                    "", new String( Arrays.copyOfRange( nameBytes, Math.max( 0, nameBytes.length - 100 ),
+                                                        nameBytes.length ), UTF_8 )
+                };
+            }
+        }
+        byte[] header = header( splitName[1].getBytes( UTF_8 ), splitName[0], type, mode,
+                                size > MAX_OCTAL_SIZE ? 0 : size, seconds,
+                                Arrays.copyOf( linkNameBytes, Math.min( 100, linkNameBytes.length ) ) );
+        write( header, BLOCK_SIZE );
+    }
+
+    private static byte[] header( byte[] name, String prefix, byte type, int mode, long size, long seconds,
+                                  byte[] linkName )
+    {
+        byte[] header = new byte[ BLOCK_SIZE ];
+        System.arraycopy( name, 0, header, 0, Math.min( 100, name.length ) );
+        octal( header, 100, 8, mode & 07777 );
+        octal( header, 108, 8, 0 );
+        octal( header, 116, 8, 0 );
+        octal( header, 124, 12, size );
+        octal( header, 136, 12, Math.max( 0, seconds ) );
+        header[156] = type;
+        System.arraycopy( linkName, 0, header, 157, linkName.length );
+        System.arraycopy( "ustar\u000000".getBytes( UTF_8 ), 0, header, 257, 8 );
+        octal( header, 329, 8, 0 );
+        octal( header, 337, 8, 0 );
+        byte[] prefixBytes = prefix.getBytes( UTF_8 );
+        System.arraycopy( prefixBytes, 0, header, 345, prefixBytes.length );
+        // Checksum computed with its own field filled with spaces
+        Arrays.fill( header, 148, 156, (byte) ' ' );
+        long checksum = 0;
+        for( byte b : header )
+        {
+            checksum += b & 0xff;
+        }
+        octal( header, 148, 7, checksum );
+        return header;
+    }
+
+    /**
+     * @return Prefix and name fitting the ustar header, {@literal null} if the name does not fit
+     */
+    private static String[] splitName( byte[] name )
+    {
+        String value = new String( name, UTF_8 );
+        if( name.length <= 100 )
+        {
+            return new String[]
+            {
+                "", value
+            };
+        }
+        for( int idx = value.indexOf( '/' ); idx > 0; idx = value.indexOf( '/', idx + 1 ) )
+        {
+            String prefix = value.substring( 0, idx );
+            String rest = value.substring( idx + 1 );
+            int prefixLength = prefix.getBytes( UTF_8 ).length;
+            int restLength = rest.getBytes( UTF_8 ).length;
+            if( prefixLength > 155 )
+            {
+                return null;
+            }
+            if( restLength <= 100 && restLength > 0 )
+            {
+                return new String[]
+                {
+                    prefix, rest
+                };
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Append a {@literal "<length> <key>=<value>\n"} record, the length counting itself.
+     */
+    private static void appendPaxRecord( StringBuilder pax, String key, String value )
+    {
+        int length = key.getBytes( UTF_8 ).length + value.getBytes( UTF_8 ).length + 3;
+        int total = length + String.valueOf( length ).length();
+        if( String.valueOf( total ).length() != String.valueOf( length ).length() )
+        {
+            total++;
+        }
+        pax.append( total ).append( ' ' ).append( key ).append( '=' ).append( value ).append( '\n' );
+    }
+
+    /**
+     * Write a zero padded octal number followed by a NUL in a field of the given length.
+     */
+    private static void octal( byte[] header, int offset, int length, long value )
+    {
+        String digits = Long.toOctalString( value );
+        int start = offset + length - 1 - digits.length();
+        Arrays.fill( header, offset, start, (byte) '0' );
+        System.arraycopy( digits.getBytes( UTF_8 ), 0, header, start, digits.length() );
+        header[offset + length - 1] = 0;
+    }
+
+    private void pad()
+        throws IOException
+    {
+        int remainder = (int) ( written % BLOCK_SIZE );
+        if( remainder != 0 )
+        {
+            write( new byte[ BLOCK_SIZE - remainder ], BLOCK_SIZE - remainder );
+        }
+    }
+
+    private void write( byte[] bytes, int length )
+        throws IOException
+    {
+        output.write( bytes, 0, length );
+        written += length;
+    }
+
+}
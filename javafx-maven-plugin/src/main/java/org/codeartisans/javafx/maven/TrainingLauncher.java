@@ -0,0 +1,91 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+
+/**
+ * Entry point of forked training JVMs, see {@link ForkedJvm#train}.
+ *
+ * Runs the application main class, or launches it if it is a JavaFX Application without main method, then exits
+ * after the training duration so that the JVM writes the list of classes it loaded.
+ */
+public final class TrainingLauncher
+{
+
+    /**
+     * @param args Training duration in seconds, main class then application arguments
+     */
+    public static void main( String[] args )
+        throws Exception
+    {
+        final long duration = Long.parseLong( args[0] ) * 1000;
+        Class<?> mainClass = Class.forName( args[1] );
+        String[] appArgs = Arrays.copyOfRange( args, 2, args.length );
+
+        Thread exit = new Thread( "training-exit" )
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    Thread.sleep( duration );
+                }
+                catch( InterruptedException ignored )
+                {
+                }
+                System.exit( 0 );
+            }
+
+        };
+        exit.setDaemon( true );
+        exit.start();
+
+        Method main = mainMethod( mainClass );
+        if( main != null )
+        {
+            main.invoke( null, (Object) appArgs );
+        }
+        else
+        {
+            Class<?> application = Class.forName( "javafx.application.Application" );
+            application.getMethod( "launch", Class.class, String[].class ).invoke( null, mainClass, appArgs );
+        }
+        // Applications returning early still train up to the given duration
+        exit.join();
+    }
+
+    private static Method mainMethod( Class<?> mainClass )
+    {
+        try
+        {
+            Method main = mainClass.getMethod( "main", String[].class );
+            return Modifier.isStatic( main.getModifiers() ) ? main : null;
+        }
+        catch( NoSuchMethodException ex )
+        {
+            return null;
+        }
+    }
+
+    private TrainingLauncher()
+    {
+    }
+
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Watch directory trees and report the changed files as JAR entry names.
+ *
+ * Each tree is registered recursively on a {@link WatchService}, directories created later are registered as they
+ * appear. Changes are debounced: once a change is seen, events are collected until the trees stay quiet for a while
+ * so that a compilation is reported as a single batch.
+ */
+/* package */ class TreeWatcher
+    implements Closeable
+{
+
+    private static class Root
+    {
+
+        private final Path path;
+        private final String prefix;
+
+        private Root( Path path, String prefix )
+        {
+            this.path = path;
+            this.prefix = prefix;
+        }
+
+    }
+
+    private final Log log;
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> directories = new HashMap<WatchKey, Path>();
+    private final Map<WatchKey, Root> roots = new HashMap<WatchKey, Root>();
+
+    /* package */ TreeWatcher( Log log )
+        throws IOException
+    {
+        this.log = log;
+        this.watchService = FileSystems.getDefault().newWatchService();
+    }
+
+    /**
+     * @param prefix Prefix of the entry names of the files in this tree, empty or ending with a slash
+     */
+    /* package */ void watch( File root, String prefix )
+        throws IOException
+    {
+        register( new Root( root.toPath(), prefix ), root.toPath(), null );
+    }
+
+    /**
+     * Block until files change then until the trees stay quiet for the given delay.
+     *
+     * @return Entry names of the changed files mapped to the files, {@literal null} for deleted files and directories
+     */
+    /* package */ Map<String, File> await( long debounceMillis )
+        throws IOException, InterruptedException
+    {
+        Map<String, File> changes = new TreeMap<String, File>();
+        WatchKey key = watchService.take();
+        while( key != null )
+        {
+            collect( key, changes );
+            key = watchService.poll( debounceMillis, TimeUnit.MILLISECONDS );
+        }
+        return changes;
+    }
+
+    @Override
+    public void close()
+        throws IOException
+    {
+        watchService.close();
+    }
+
+    private void collect( WatchKey key, Map<String, File> changes )
+        throws IOException
+    {
+        Path directory = directories.get( key );
+        Root root = roots.get( key );
+        for( WatchEvent<?> event : key.pollEvents() )
+        {
+            if( directory == null )
+            {
+                continue;
+            }
+            if( event.kind() == StandardWatchEventKinds.OVERFLOW )
+            {
+                // Events were lost, report the whole directory content as changed, deletions are missed
+                log.warn( "Too many changes in " + directory + " to track them all, rescanning it" );
+                register( root, directory, changes );
+                continue;
+            }
+            Path path = directory.resolve( (Path) event.context() );
+            if( event.kind() == StandardWatchEventKinds.ENTRY_DELETE )
+            {
+                changes.put( entryName( root, path ), null );
+            }
+            else if( Files.isDirectory( path ) )
+            {
+                if( event.kind() == StandardWatchEventKinds.ENTRY_CREATE )
+                {
+                    register( root, path, changes );
+                }
+            }
+            else if( Files.isRegularFile( path ) )
+            {
+                changes.put( entryName( root, path ), path.toFile() );
+            }
+        }
+        if( !key.reset() )
+        {
+            // Directory deleted
+            directories.remove( key );
+            roots.remove( key );
+        }
+    }
+
+    /**
+     * Register a directory tree.
+     *
+     * @param changes Where to report the files found in the tree as changed, {@literal null} for none
+     */
+    private void register( final Root root, Path start, final Map<String, File> changes )
+        throws IOException
+    {
+        if( !Files.isDirectory( start ) )
+        {
+            return;
+        }
+        Files.walkFileTree( start, new SimpleFileVisitor<Path>()
+        {
+            @Override
+            public FileVisitResult preVisitDirectory( Path dir, BasicFileAttributes attrs )
+                throws IOException
+            {
+                WatchKey key = dir.register( watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                                             StandardWatchEventKinds.ENTRY_DELETE,
+                                             StandardWatchEventKinds.ENTRY_MODIFY );
+                directories.put( key, dir );
+                roots.put( key, root );
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile( Path file, BasicFileAttributes attrs )
+            {
+                if( changes != null && attrs.isRegularFile() )
+                {
+                    changes.put( entryName( root, file ), file.toFile() );
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+        } );
+    }
+
+    private static String entryName( Root root, Path path )
+    {
+        return root.prefix + root.path.relativize( path ).toString().replace( File.separatorChar, '/' );
+    }
+
+}
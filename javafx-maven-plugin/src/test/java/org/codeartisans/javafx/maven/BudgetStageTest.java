@@ -0,0 +1,144 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import com.sun.javafx.tools.packager.bundlers.Bundler.BundleType;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BudgetStageTest
+{
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void budgetsAreExceededByGreaterValuesOnly()
+    {
+        PackagingBudgets budgets = new PackagingBudgets();
+        budgets.measure( "under", 99, PackagingBudgets.BYTES, 100 );
+        budgets.measure( "equal", 100, PackagingBudgets.BYTES, 100 );
+        budgets.measure( "over", 101, PackagingBudgets.BYTES, 100 );
+        budgets.measure( "none", Long.MAX_VALUE, PackagingBudgets.BYTES, 0 );
+        budgets.measure( "negative", 1, PackagingBudgets.MILLIS, -1 );
+
+        assertEquals( Arrays.asList( "over is 101 bytes, over its budget of 100 bytes" ), budgets.exceeded() );
+    }
+
+    @Test
+    public void reportsAllMeasurements()
+        throws IOException
+    {
+        File jar = new File( tmp.getRoot(), "app.jar" );
+        FileUtils.fileWrite( jar.getAbsolutePath(), "UTF-8", "0123456789" );
+        File dependencies = tmp.newFolder( "dependencies" );
+        FileUtils.fileWrite( new File( dependencies, "dep.jar" ).getAbsolutePath(), "UTF-8", "01234" );
+        File bundleOutputDir = tmp.newFolder( "native" );
+        File bundle = new File( bundleOutputDir, "bundles/app" );
+        bundle.mkdirs();
+        FileUtils.fileWrite( new File( bundle, "app.jar" ).getAbsolutePath(), "UTF-8", "0123456789012345" );
+        Map<BundleType, File> bundleOutputDirs = Collections.singletonMap( BundleType.IMAGE, bundleOutputDir );
+        Map<PerformanceProfile, Map<BundleType, File>> profileOutputDirs = Collections.emptyMap();
+        File report = new File( tmp.getRoot(), "javafx-budget-report.json" );
+
+        List<String> exceeded = new BudgetStage( new SystemStreamLog(), new PackagingMetrics(), 5, 0, 16, 0 ).
+            run( report, "org.acme:app:jar:1.0", jar, dependencies, bundleOutputDirs, profileOutputDirs,
+                 new File( tmp.getRoot(), "probe" ) );
+
+        assertEquals( Arrays.asList( "jar is 10 bytes, over its budget of 5 bytes" ), exceeded );
+        assertEquals( "{\n"
+                      + "  \"project\": \"org.acme:app:jar:1.0\",\n"
+                      + "  \"measurements\": [\n"
+                      + "    { \"name\": \"jar\", \"value\": 10, \"unit\": \"bytes\", \"budget\": 5,"
+                      + " \"exceeded\": true },\n"
+                      + "    { \"name\": \"dependencies\", \"value\": 5, \"unit\": \"bytes\", \"budget\": 0,"
+                      + " \"exceeded\": false },\n"
+                      + "    { \"name\": \"bundles/app\", \"value\": 16, \"unit\": \"bytes\", \"budget\": 16,"
+                      + " \"exceeded\": false }\n"
+                      + "  ]\n"
+                      + "}\n",
+                      FileUtils.fileRead( report, "UTF-8" ) );
+    }
+
+    @Test
+    public void exceededBudgetsFailTheBuildOrWarn()
+        throws MojoFailureException
+    {
+        List<String> exceeded = Arrays.asList( "jar is 10 bytes, over its budget of 5 bytes" );
+        File report = new File( tmp.getRoot(), "javafx-budget-report.json" );
+
+        RecordingLog log = new RecordingLog();
+        stage( log ).enforce( exceeded, report, false );
+        assertEquals( Arrays.asList( "[warn] jar is 10 bytes, over its budget of 5 bytes" ), log.messages );
+
+        log = new RecordingLog();
+        try
+        {
+            stage( log ).enforce( exceeded, report, true );
+            fail( "Exceeded budget should have failed the build" );
+        }
+        catch( MojoFailureException expected )
+        {
+            assertTrue( expected.getMessage(), expected.getMessage().startsWith( "1 JavaFX packaging budget(s)" ) );
+        }
+        assertEquals( Arrays.asList( "[error] jar is 10 bytes, over its budget of 5 bytes" ), log.messages );
+
+        log = new RecordingLog();
+        stage( log ).enforce( Collections.<String>emptyList(), report, true );
+        assertEquals( Collections.emptyList(), log.messages );
+    }
+
+    private static BudgetStage stage( RecordingLog log )
+    {
+        return new BudgetStage( log, new PackagingMetrics(), 5, 0, 0, 0 );
+    }
+
+    private static class RecordingLog
+        extends SystemStreamLog
+    {
+
+        private final List<String> messages = new ArrayList<String>();
+
+        @Override
+        public void warn( CharSequence content )
+        {
+            messages.add( "[warn] " + content );
+        }
+
+        @Override
+        public void error( CharSequence content )
+        {
+            messages.add( "[error] " + content );
+        }
+
+    }
+
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BundleCacheTest
+{
+
+    private static final long TIME = 1262304000000L;
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void restoresStoredEntriesOnly()
+        throws IOException
+    {
+        File cacheDir = new File( tmp.getRoot(), "cache" );
+        BundleCache cache = new BundleCache( cacheDir, Long.MAX_VALUE, new SystemStreamLog() );
+        File target = new File( tmp.getRoot(), "target" );
+
+        assertFalse( cache.restore( "key", target ) );
+        assertFalse( target.exists() );
+
+        cache.store( "key", bundles( "bundles", "content" ) );
+        target.mkdirs();
+        FileUtils.fileWrite( new File( target, "stale.txt" ).getAbsolutePath(), "UTF-8", "stale" );
+        assertTrue( cache.restore( "key", target ) );
+        assertEquals( "content", FileUtils.fileRead( new File( target, "app/bundle.txt" ), "UTF-8" ) );
+        assertFalse( new File( target, "stale.txt" ).exists() );
+
+        assertFalse( cache.restore( "other", target ) );
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedEntriesKeepingTheStoredOne()
+        throws IOException
+    {
+        File cacheDir = new File( tmp.getRoot(), "cache" );
+        // Room for two entries of 10 bytes
+        BundleCache cache = new BundleCache( cacheDir, 25, new SystemStreamLog() );
+        cache.store( "first", bundles( "first", "0123456789" ) );
+        cache.store( "second", bundles( "second", "0123456789" ) );
+        new File( cacheDir, "first" ).setLastModified( TIME + 2000 );
+        new File( cacheDir, "second" ).setLastModified( TIME );
+        assertEquals( TIME, new File( cacheDir, "second" ).lastModified() );
+
+        // Restoring updates the entry modification time, second is now the most recently used
+        assertTrue( cache.restore( "second", new File( tmp.getRoot(), "target" ) ) );
+        cache.store( "third", bundles( "third", "0123456789" ) );
+        assertEntries( cacheDir, "second", "third" );
+
+        // The just stored entry is kept even when older than the others or alone over the maximum size
+        new File( cacheDir, "second" ).setLastModified( System.currentTimeMillis() + 60000 );
+        cache.store( "fourth", bundles( "fourth", "01234567890123456789012345678901234567890123456789" ) );
+        assertEntries( cacheDir, "fourth" );
+    }
+
+    @Test
+    public void concurrentStoresOfTheSameKeyKeepOneCompleteEntry()
+        throws Exception
+    {
+        final File cacheDir = new File( tmp.getRoot(), "cache" );
+        final int stores = 8;
+        final CyclicBarrier start = new CyclicBarrier( stores );
+        ExecutorService executor = Executors.newFixedThreadPool( stores );
+        try
+        {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for( int idx = 0; idx < stores; idx++ )
+            {
+                final File bundles = bundles( "bundles-" + idx, "content" );
+                futures.add( executor.submit( new Callable<Void>()
+                {
+                    @Override
+                    public Void call()
+                        throws Exception
+                    {
+                        BundleCache cache = new BundleCache( cacheDir, Long.MAX_VALUE, new SystemStreamLog() );
+                        start.await();
+                        cache.store( "key", bundles );
+                        return null;
+                    }
+
+                } ) );
+            }
+            for( Future<Void> future : futures )
+            {
+                future.get();
+            }
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+
+        // No leftover temporary directories
+        assertEntries( cacheDir, "key" );
+        File target = new File( tmp.getRoot(), "target" );
+        assertTrue( new BundleCache( cacheDir, Long.MAX_VALUE, new SystemStreamLog() ).restore( "key", target ) );
+        assertEquals( "content", FileUtils.fileRead( new File( target, "app/bundle.txt" ), "UTF-8" ) );
+        assertEquals( 1, FileTrees.count( target.toPath() ) );
+    }
+
+    private File bundles( String name, String content )
+        throws IOException
+    {
+        File bundles = new File( tmp.getRoot(), name );
+        new File( bundles, "app" ).mkdirs();
+        FileUtils.fileWrite( new File( bundles, "app/bundle.txt" ).getAbsolutePath(), "UTF-8", content );
+        return bundles;
+    }
+
+    private static void assertEntries( File cacheDir, String... expected )
+    {
+        String[] entries = cacheDir.list();
+        Arrays.sort( entries );
+        assertEquals( Arrays.asList( expected ), Arrays.asList( entries ) );
+    }
+
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ClassDataSharingTest
+{
+
+    @Test
+    public void archivesAreCreatedByJava19AndLaterRuntimes()
+    {
+        assertFalse( ClassDataSharing.isSupported( null ) );
+        assertFalse( ClassDataSharing.isSupported( "1.8" ) );
+        assertFalse( ClassDataSharing.isSupported( "10" ) );
+        assertFalse( ClassDataSharing.isSupported( "18" ) );
+        assertFalse( ClassDataSharing.isSupported( "ea" ) );
+        assertTrue( ClassDataSharing.isSupported( "19" ) );
+        assertTrue( ClassDataSharing.isSupported( "21" ) );
+        assertTrue( ClassDataSharing.isSupported( "21.0.1" ) );
+    }
+
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Timestamp;
+import java.util.List;
+import org.codehaus.plexus.util.IOUtil;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ConstantPoolScannerTest
+{
+
+    /**
+     * References runtime classes through a field, a method signature, a generic type and reflection.
+     */
+    /* package */ static class Fixture
+    {
+
+        private Timestamp timestamp;
+
+        /* package */ List<java.util.logging.Level> levels( java.net.URI uri )
+            throws ClassNotFoundException
+        {
+            Class.forName( "javax.script.ScriptEngineManager" );
+            return null;
+        }
+
+    }
+
+    @Test
+    public void readsReferencedClassesAndStrings()
+        throws IOException
+    {
+        ConstantPoolScanner.References references = ConstantPoolScanner.scan( classFile( Fixture.class ) );
+
+        assertTrue( references.classes.toString(), references.classes.contains( "java/sql/Timestamp" ) );
+        assertTrue( references.classes.toString(), references.classes.contains( "java/net/URI" ) );
+        assertTrue( references.classes.toString(), references.classes.contains( "java/util/logging/Level" ) );
+        assertTrue( references.classes.toString(), references.classes.contains( "java/lang/Class" ) );
+        assertFalse( references.classes.toString(), references.classes.contains( "javax/script/ScriptEngineManager" ) );
+        assertTrue( references.strings.toString(), references.strings.contains( "javax.script.ScriptEngineManager" ) );
+    }
+
+    @Test( expected = IOException.class )
+    public void rejectsOtherFiles()
+        throws IOException
+    {
+        ConstantPoolScanner.scan( "PK\u0003\u0004 not a class file".getBytes( "UTF-8" ) );
+    }
+
+    /* package */ static byte[] classFile( Class<?> type )
+        throws IOException
+    {
+        String name = type.getName();
+        InputStream input = type.getResourceAsStream( name.substring( name.lastIndexOf( '.' ) + 1 ) + ".class" );
+        try
+        {
+            return IOUtil.toByteArray( input );
+        }
+        finally
+        {
+            IOUtil.close( input );
+        }
+    }
+
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DependencyAnalyzerTest
+{
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void zip64DependenciesAreReadThroughJavaUtilZip()
+        throws IOException
+    {
+        File zip64 = jar( "zip64.jar", 70000, "com/acme/Big" );
+        try
+        {
+            new RawZipFile( zip64 ).close();
+            fail( "Expected RawZipFile to reject ZIP64 archives" );
+        }
+        catch( ZipException expected )
+        {
+        }
+        Map<String, Long> entries = DependencyAnalyzer.entries( zip64 );
+        assertEquals( 70000, entries.size() );
+        assertFalse( DependencyAnalyzer.isSigned( zip64 ) );
+
+        Map<String, File> files = new LinkedHashMap<String, File>();
+        files.put( "zip64.jar", zip64 );
+        files.put( "small.jar", jar( "small.jar", 3, "com/acme/Big" ) );
+        new DependencyAnalyzer( new SystemStreamLog() ).reportOverlaps( files );
+    }
+
+    @Test
+    public void zip64DependenciesAreNotMerged()
+        throws IOException
+    {
+        Map<String, File> files = new LinkedHashMap<String, File>();
+        files.put( "zip64.jar", jar( "zip64.jar", 70000, "com/acme/Big" ) );
+        files.put( "one.jar", jar( "one.jar", 3, "com/acme/One" ) );
+        files.put( "two.jar", jar( "two.jar", 3, "com/acme/Two" ) );
+        File merged = new File( tmp.getRoot(), "merged/classpath.jar" );
+
+        Map<String, File> result = new DependencyAnalyzer( new SystemStreamLog() ).
+            mergeSmallJars( files, Long.MAX_VALUE, merged, null );
+
+        assertEquals( 2, result.size() );
+        assertTrue( result.containsKey( "zip64.jar" ) );
+        assertTrue( result.containsKey( "classpath.jar" ) );
+        Map<String, Long> mergedEntries = DependencyAnalyzer.entries( merged );
+        assertTrue( mergedEntries.containsKey( "com/acme/One0.class" ) );
+        assertTrue( mergedEntries.containsKey( "com/acme/Two2.class" ) );
+    }
+
+    @Test
+    public void unreadableDependenciesAreSkippedByOverlapsReport()
+        throws IOException
+    {
+        File garbage = tmp.newFile( "garbage.jar" );
+        new FileOutputStream( garbage ).close();
+        Map<String, File> files = new LinkedHashMap<String, File>();
+        files.put( "garbage.jar", garbage );
+        files.put( "one.jar", jar( "one.jar", 3, "com/acme/One" ) );
+        new DependencyAnalyzer( new SystemStreamLog() ).reportOverlaps( files );
+    }
+
+    private File jar( String name, int classes, String classPrefix )
+        throws IOException
+    {
+        File jar = new File( tmp.getRoot(), name );
+        ZipOutputStream output = new ZipOutputStream( new BufferedOutputStream( new FileOutputStream( jar ) ) );
+        try
+        {
+            output.setLevel( 0 );
+            for( int idx = 0; idx < classes; idx++ )
+            {
+                output.putNextEntry( new ZipEntry( classPrefix + idx + ".class" ) );
+                output.write( idx );
+                output.closeEntry();
+            }
+        }
+        finally
+        {
+            output.close();
+        }
+        return jar;
+    }
+
+}
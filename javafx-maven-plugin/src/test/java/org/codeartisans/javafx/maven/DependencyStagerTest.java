@@ -0,0 +1,113 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DependencyStagerTest
+{
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+    private File sourceDir;
+    private File targetDir;
+    private Map<String, File> files;
+
+    @Before
+    public void sources()
+        throws IOException
+    {
+        sourceDir = tmp.newFolder( "source" );
+        targetDir = new File( tmp.getRoot(), "target" );
+        files = new LinkedHashMap<String, File>();
+        for( int idx = 0; idx < 8; idx++ )
+        {
+            File source = new File( sourceDir, "dep-" + idx + ".jar" );
+            // Written files times have sub millisecond precision, not preserved by all copies
+            FileUtils.fileWrite( source.getAbsolutePath(), "UTF-8", "content of dependency " + idx );
+            files.put( source.getName(), source );
+        }
+    }
+
+    @Test
+    public void copiesAreUpToDateOnSecondRun()
+        throws IOException
+    {
+        DependencyStager stager = new DependencyStager( new SystemStreamLog(), 4, false );
+        assertTrue( stager.stage( targetDir, files ) > 0 );
+        for( String name : files.keySet() )
+        {
+            assertFalse( Files.isSameFile( files.get( name ).toPath(), new File( targetDir, name ).toPath() ) );
+        }
+        assertEquals( 0, stager.stage( targetDir, files ) );
+    }
+
+    @Test
+    public void linksAreUpToDateOnSecondRun()
+        throws IOException
+    {
+        DependencyStager stager = new DependencyStager( new SystemStreamLog(), 4, true );
+        assertEquals( 0, stager.stage( targetDir, files ) );
+        for( String name : files.keySet() )
+        {
+            assertTrue( Files.isSameFile( files.get( name ).toPath(), new File( targetDir, name ).toPath() ) );
+        }
+        assertEquals( 0, stager.stage( targetDir, files ) );
+    }
+
+    @Test
+    public void changedContentIsStagedAgain()
+        throws IOException
+    {
+        DependencyStager stager = new DependencyStager( new SystemStreamLog(), 4, false );
+        stager.stage( targetDir, files );
+        File source = files.get( "dep-3.jar" );
+        FileTime time = Files.getLastModifiedTime( source.toPath() );
+        // Same size and time, different content
+        FileUtils.fileWrite( source.getAbsolutePath(), "UTF-8", "CONTENT OF DEPENDENCY 3" );
+        Files.setLastModifiedTime( source.toPath(), time );
+        assertEquals( source.length(), stager.stage( targetDir, files ) );
+        assertEquals( "CONTENT OF DEPENDENCY 3", FileUtils.fileRead( new File( targetDir, "dep-3.jar" ), "UTF-8" ) );
+    }
+
+    @Test
+    public void staleFilesArePruned()
+        throws IOException
+    {
+        DependencyStager stager = new DependencyStager( new SystemStreamLog(), 4, false );
+        stager.stage( targetDir, files );
+        files.remove( "dep-5.jar" );
+        stager.stage( targetDir, files );
+        assertFalse( new File( targetDir, "dep-5.jar" ).exists() );
+        assertEquals( files.size(), targetDir.list().length );
+    }
+
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class DirectoryArchiverTest
+{
+
+    private static final long TIME = 1262304000000L;
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+    private File sourceDir;
+
+    @Before
+    public void sourceDir()
+        throws IOException
+    {
+        sourceDir = tmp.newFolder( "app" );
+        write( "b.txt", "b" );
+        write( "a/icon.png", "png" );
+        write( "a/z.jar", "jar" );
+        write( "bin/app", "#!/bin/sh" );
+        posixMode( new File( sourceDir, "bin/app" ), "rwxr-x---" );
+    }
+
+    @Test
+    public void reproducibleArchivesDoNotDependOnFilesTimes()
+        throws IOException
+    {
+        File first = new File( tmp.getRoot(), "first.zip" );
+        File second = new File( tmp.getRoot(), "second.zip" );
+        DirectoryArchiver archiver = new DirectoryArchiver().reproducible( TIME );
+
+        archiver.zip( sourceDir, "app/", first );
+        touchAll( sourceDir, System.currentTimeMillis() - 3600 * 1000 );
+        archiver.zip( sourceDir, "app/", second );
+
+        assertArrayEquals( Files.readAllBytes( first.toPath() ), Files.readAllBytes( second.toPath() ) );
+    }
+
+    @Test
+    public void archivesDependOnFilesTimesByDefault()
+        throws IOException
+    {
+        File first = new File( tmp.getRoot(), "first.zip" );
+        File second = new File( tmp.getRoot(), "second.zip" );
+
+        touchAll( sourceDir, TIME );
+        new DirectoryArchiver().zip( sourceDir, "", first );
+        touchAll( sourceDir, TIME + 3600 * 1000 );
+        new DirectoryArchiver().zip( sourceDir, "", second );
+
+        assertFalse( Arrays.equals( Files.readAllBytes( first.toPath() ), Files.readAllBytes( second.toPath() ) ) );
+    }
+
+    @Test
+    public void fingerprintsCoverTheArchiverConfiguration()
+    {
+        String content = new Fingerprint().add( "content", "v1" ).value();
+        String fingerprint = new DirectoryArchiver().fingerprint( content );
+
+        assertEquals( fingerprint, new DirectoryArchiver().fingerprint( content ) );
+        assertNull( new DirectoryArchiver().fingerprint( null ) );
+        assertFalse( fingerprint.equals( new DirectoryArchiver().fingerprint( new Fingerprint().add( "content", "v2" ).
+            value() ) ) );
+        assertFalse( fingerprint.equals( new DirectoryArchiver().level( 1 ).fingerprint( content ) ) );
+        assertFalse( fingerprint.equals( new DirectoryArchiver().storedExtensions( "png" ).fingerprint( content ) ) );
+        assertEquals( new DirectoryArchiver().storedExtensions( "png", "jpg" ).fingerprint( content ),
+                      new DirectoryArchiver().storedExtensions( "JPG", " png" ).fingerprint( content ) );
+        assertFalse( fingerprint.equals( new DirectoryArchiver().parallelDeflate( 1024, 0 ).fingerprint( content ) ) );
+        assertFalse( fingerprint.equals( new DirectoryArchiver().reproducible( 0L ).fingerprint( content ) ) );
+    }
+
+    @Test
+    public void entriesAreSortedByNameWithTheirModes()
+        throws IOException
+    {
+        File zip = new File( tmp.getRoot(), "app.zip" );
+        new DirectoryArchiver().storedExtensions( "PNG", " jar " ).reproducible( TIME ).zip( sourceDir, "app/", zip );
+
+        RawZipFile raw = new RawZipFile( zip );
+        try
+        {
+            List<String> names = new ArrayList<String>();
+            for( RawZipFile.Entry entry : raw.entries() )
+            {
+                names.add( entry.name );
+            }
+            assertEquals( Arrays.asList( "app/", "app/a/", "app/a/icon.png", "app/a/z.jar", "app/b.txt", "app/bin/",
+                                         "app/bin/app" ), names );
+            assertEquals( RawZipFile.METHOD_STORED, raw.getEntry( "app/a/icon.png" ).method );
+            assertEquals( RawZipFile.METHOD_STORED, raw.getEntry( "app/a/z.jar" ).method );
+            assertEquals( RawZipFile.METHOD_DEFLATED, raw.getEntry( "app/b.txt" ).method );
+            if( DirectoryArchiver.unixMode( sourceDir.toPath() ) != RawZipWriter.NO_MODE )
+            {
+                // Normalized by the reproducible mode
+                assertEquals( 0100755, raw.getEntry( "app/bin/app" ).externalAttributes >> 16 );
+                assertEquals( 0100644, raw.getEntry( "app/b.txt" ).externalAttributes >> 16 );
+            }
+        }
+        finally
+        {
+            raw.close();
+        }
+    }
+
+    private void write( String path, String content )
+        throws IOException
+    {
+        File file = new File( sourceDir, path );
+        file.getParentFile().mkdirs();
+        FileUtils.fileWrite( file.getAbsolutePath(), "UTF-8", content );
+    }
+
+    private static void posixMode( File file, String permissions )
+        throws IOException
+    {
+        try
+        {
+            Files.setPosixFilePermissions( file.toPath(), PosixFilePermissions.fromString( permissions ) );
+        }
+        catch( UnsupportedOperationException ex )
+        {
+            // Not a POSIX file system, modes are not archived
+        }
+    }
+
+    private static void touchAll( File dir, long time )
+    {
+        for( File child : dir.listFiles() )
+        {
+            if( child.isDirectory() )
+            {
+                touchAll( child, time );
+            }
+            child.setLastModified( time );
+        }
+    }
+
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import java.io.File;
+import java.io.IOException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FingerprintManifestTest
+{
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void recordedStagesAreUpToDateAcrossBuilds()
+        throws IOException
+    {
+        File buildDir = tmp.getRoot();
+        File output = tmp.newFile( "output.jar" );
+        FingerprintManifest.load( buildDir, true ).record( "create-jar", "f1" );
+
+        FingerprintManifest manifest = FingerprintManifest.load( buildDir, true );
+        assertTrue( manifest.isUpToDate( "create-jar", "f1", output ) );
+        assertFalse( manifest.isUpToDate( "create-jar", "f2", output ) );
+        assertFalse( manifest.isUpToDate( "native", "f1" ) );
+    }
+
+    @Test
+    public void missingOutputsAreNotUpToDate()
+        throws IOException
+    {
+        File buildDir = tmp.getRoot();
+        FingerprintManifest manifest = FingerprintManifest.load( buildDir, true );
+        manifest.record( "create-jar", "f1" );
+        assertFalse( manifest.isUpToDate( "create-jar", "f1", new File( buildDir, "output.jar" ) ) );
+    }
+
+    @Test
+    public void invalidatedStagesAreNotUpToDateAfterAFailedRun()
+        throws IOException
+    {
+        File buildDir = tmp.getRoot();
+        FingerprintManifest manifest = FingerprintManifest.load( buildDir, true );
+        manifest.record( "create-jar", "f1" );
+        manifest.invalidate( "create-jar" );
+        // The stage fails here, never recording again
+
+        assertNull( FingerprintManifest.load( buildDir, true ).get( "create-jar" ) );
+        assertFalse( FingerprintManifest.load( buildDir, true ).isUpToDate( "create-jar", "f1" ) );
+    }
+
+    @Test
+    public void disabledManifestsAreNeverUpToDateNorWritten()
+        throws IOException
+    {
+        File buildDir = tmp.getRoot();
+        FingerprintManifest.load( buildDir, true ).record( "create-jar", "f1" );
+
+        FingerprintManifest manifest = FingerprintManifest.load( buildDir, false );
+        assertFalse( manifest.isEnabled() );
+        assertFalse( manifest.isUpToDate( "create-jar", "f1" ) );
+        manifest.record( "native", "f2" );
+        assertNull( FingerprintManifest.load( buildDir, true ).get( "native" ) );
+    }
+
+}
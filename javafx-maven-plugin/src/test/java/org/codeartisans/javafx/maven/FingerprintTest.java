@@ -0,0 +1,122 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class FingerprintTest
+{
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void valuesAreLengthPrefixed()
+    {
+        assertNotEquals( new Fingerprint().add( "ab", "c" ).value(), new Fingerprint().add( "a", "bc" ).value() );
+        assertNotEquals( new Fingerprint().add( "a", (Object) null ).value(),
+                         new Fingerprint().add( "a", "null" ).value() );
+        assertEquals( new Fingerprint().add( "a", "b" ).value(), new Fingerprint().add( "a", "b" ).value() );
+    }
+
+    @Test
+    public void mapsAreFingerprintedWhateverTheirOrder()
+    {
+        Map<String, String> ordered = new LinkedHashMap<String, String>();
+        ordered.put( "b", "2" );
+        ordered.put( "a", "1" );
+        Map<String, String> other = new HashMap<String, String>();
+        other.put( "a", "1" );
+        other.put( "b", "2" );
+        assertEquals( new Fingerprint().add( "props", ordered ).value(),
+                      new Fingerprint().add( "props", other ).value() );
+        other.put( "b", "3" );
+        assertNotEquals( new Fingerprint().add( "props", ordered ).value(),
+                         new Fingerprint().add( "props", other ).value() );
+    }
+
+    @Test
+    public void collectionsAreFingerprintedInOrder()
+    {
+        assertNotEquals( new Fingerprint().add( "args", Arrays.asList( "a", "b" ) ).value(),
+                         new Fingerprint().add( "args", Arrays.asList( "b", "a" ) ).value() );
+        assertNotEquals( new Fingerprint().add( "args", Arrays.asList( "a,b" ) ).value(),
+                         new Fingerprint().add( "args", Arrays.asList( "a", "b" ) ).value() );
+    }
+
+    @Test
+    public void directoriesAreFingerprintedByContentAndLayout()
+        throws IOException
+    {
+        File dir = tmp.newFolder( "dir" );
+        write( new File( dir, "a.txt" ), "a" );
+        write( new File( dir, "sub/b.txt" ), "b" );
+        String value = new Fingerprint().addFile( "dir", dir ).value();
+
+        // Times are not part of the fingerprint
+        new File( dir, "a.txt" ).setLastModified( 0 );
+        assertEquals( value, new Fingerprint().addFile( "dir", dir ).value() );
+
+        write( new File( dir, "sub/b.txt" ), "changed" );
+        assertNotEquals( value, new Fingerprint().addFile( "dir", dir ).value() );
+
+        write( new File( dir, "sub/b.txt" ), "b" );
+        assertEquals( value, new Fingerprint().addFile( "dir", dir ).value() );
+        FileUtils.rename( new File( dir, "sub/b.txt" ), new File( dir, "b.txt" ) );
+        assertNotEquals( value, new Fingerprint().addFile( "dir", dir ).value() );
+    }
+
+    @Test
+    public void missingFilesAreFingerprinted()
+        throws IOException
+    {
+        File file = new File( tmp.getRoot(), "file.txt" );
+        String missing = new Fingerprint().addFile( "file", file ).value();
+        assertEquals( missing, new Fingerprint().addFile( "file", null ).value() );
+        write( file, "" );
+        assertNotEquals( missing, new Fingerprint().addFile( "file", file ).value() );
+    }
+
+    @Test
+    public void filesAreHashed()
+        throws IOException
+    {
+        File file = new File( tmp.getRoot(), "abc.txt" );
+        write( file, "abc" );
+        assertEquals( "a9993e364706816aba3e25717850c26c9cd0d89d", Fingerprint.hash( file ) );
+        assertEquals( "900150983cd24fb0d6963f7d28e17f72", Fingerprint.hash( file, "MD5" ) );
+    }
+
+    private static void write( File file, String content )
+        throws IOException
+    {
+        file.getParentFile().mkdirs();
+        FileUtils.fileWrite( file.getAbsolutePath(), "UTF-8", content );
+    }
+
+}
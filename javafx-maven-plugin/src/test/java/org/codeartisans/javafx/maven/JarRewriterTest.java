@@ -0,0 +1,231 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.IOUtil;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class JarRewriterTest
+{
+
+    private static final long TIME = 1262304000000L;
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void launcherEntriesAndAttributesTakePrecedence()
+        throws IOException
+    {
+        File project = jar( "project.jar", manifest( "Main-Class", "com.acme.Main", "Implementation-Title", "acme" ),
+                            "com/acme/Main.class", "com/acme/Shared.class" );
+        File launcher = jar( "launcher.jar", manifest( "Main-Class", "com/javafx/main/Main",
+                                                       "JavaFX-Application-Class", "com.acme.Main" ),
+                             "com/javafx/main/Main.class", "com/acme/Shared.class" );
+        File output = new File( tmp.getRoot(), "app-javafx.jar" );
+
+        JarRewriter.rewrite( project, launcher, output, null );
+
+        assertEquals( Arrays.asList( "META-INF/", "META-INF/MANIFEST.MF", "com/javafx/main/Main.class",
+                                     "com/acme/Shared.class", "com/acme/Main.class" ), names( output ) );
+        assertEquals( "launcher.jar com/acme/Shared.class", read( output, "com/acme/Shared.class" ) );
+        Attributes attributes = manifest( output ).getMainAttributes();
+        assertEquals( "com/javafx/main/Main", attributes.getValue( "Main-Class" ) );
+        assertEquals( "com.acme.Main", attributes.getValue( "JavaFX-Application-Class" ) );
+        assertEquals( "acme", attributes.getValue( "Implementation-Title" ) );
+    }
+
+    @Test
+    public void reproducibleJarsAreSortedAndIdentical()
+        throws IOException
+    {
+        File project = jar( "project.jar", null, "z/Last.class", "a/First.class" );
+        File launcher = jar( "launcher.jar", manifest( "Main-Class", "Launcher" ), "Launcher.class" );
+        File first = new File( tmp.getRoot(), "first.jar" );
+        File second = new File( tmp.getRoot(), "second.jar" );
+
+        JarRewriter.rewrite( project, launcher, first, TIME );
+        project.setLastModified( 0 );
+        JarRewriter.rewrite( project, launcher, second, TIME );
+
+        assertEquals( Arrays.asList( "META-INF/", "META-INF/MANIFEST.MF", "Launcher.class", "a/First.class",
+                                     "z/Last.class" ), names( first ) );
+        assertArrayEquals( Files.readAllBytes( first.toPath() ), Files.readAllBytes( second.toPath() ) );
+    }
+
+    @Test
+    public void manifestIsExtractedWhenPresent()
+        throws IOException
+    {
+        File target = tmp.newFolder( "resources" );
+        assertTrue( JarRewriter.extractManifest( jar( "with.jar", manifest( "Main-Class", "Main" ) ), target ) );
+        String extracted = FileUtils.fileRead( new File( target, JarFile.MANIFEST_NAME ), "UTF-8" );
+        assertTrue( extracted, extracted.contains( "Main-Class: Main" ) );
+        File empty = tmp.newFolder( "empty" );
+        assertFalse( JarRewriter.extractManifest( jar( "without.jar", null, "Main.class" ), empty ) );
+        assertFalse( new File( empty, JarFile.MANIFEST_NAME ).exists() );
+    }
+
+    @Test
+    public void changesAreAppliedKeepingOtherEntriesOrder()
+        throws IOException
+    {
+        File jar = jar( "app.jar", manifest( "Main-Class", "Main" ), "z/Kept.class", "a/Changed.class",
+                        "gone/One.class", "gone/sub/Two.class", "gone-not/Kept.class" );
+        File changed = write( "Changed.class", "changed" );
+        File added = write( "Added.class", "added" );
+        Map<String, File> changes = new HashMap<String, File>();
+        changes.put( "a/Changed.class", changed );
+        changes.put( "b/Added.class", added );
+        changes.put( "gone", null );
+        changes.put( JarFile.MANIFEST_NAME, write( "MANIFEST.MF", "Manifest-Version: 1.0\n" ) );
+
+        assertEquals( 4, JarRewriter.update( jar, changes, null ) );
+
+        assertEquals( Arrays.asList( "META-INF/MANIFEST.MF", "z/Kept.class", "a/Changed.class", "gone-not/Kept.class",
+                                     "b/Added.class" ), names( jar ) );
+        assertEquals( "changed", read( jar, "a/Changed.class" ) );
+        assertEquals( "added", read( jar, "b/Added.class" ) );
+        assertEquals( "Main", manifest( jar ).getMainAttributes().getValue( "Main-Class" ) );
+    }
+
+    @Test
+    public void normalizedJarsAreSortedWithTheManifestFirst()
+        throws IOException
+    {
+        File jar = jar( "app.jar", manifest( "Main-Class", "Main" ), "z/Last.class", "a/First.class" );
+        File copy = new File( tmp.getRoot(), "copy.jar" );
+        FileUtils.copyFile( jar, copy );
+
+        JarRewriter.normalize( jar, TIME );
+        JarRewriter.normalize( copy, TIME );
+
+        assertEquals( Arrays.asList( "META-INF/MANIFEST.MF", "a/First.class", "z/Last.class" ), names( jar ) );
+        assertArrayEquals( Files.readAllBytes( jar.toPath() ), Files.readAllBytes( copy.toPath() ) );
+    }
+
+    private static Manifest manifest( String... attributes )
+    {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put( Attributes.Name.MANIFEST_VERSION, "1.0" );
+        for( int idx = 0; idx < attributes.length; idx += 2 )
+        {
+            manifest.getMainAttributes().putValue( attributes[ idx ], attributes[ idx + 1 ] );
+        }
+        return manifest;
+    }
+
+    /**
+     * @return JAR holding the given manifest, if any, and entries whose content is the JAR and entry names
+     */
+    private File jar( String name, Manifest manifest, String... entries )
+        throws IOException
+    {
+        File jar = new File( tmp.getRoot(), name );
+        FileOutputStream file = new FileOutputStream( jar );
+        JarOutputStream output = manifest == null ? new JarOutputStream( file ) : new JarOutputStream( file, manifest );
+        try
+        {
+            for( String entry : entries )
+            {
+                output.putNextEntry( new JarEntry( entry ) );
+                output.write( ( name + " " + entry ).getBytes( "UTF-8" ) );
+            }
+        }
+        finally
+        {
+            output.close();
+        }
+        return jar;
+    }
+
+    private File write( String name, String content )
+        throws IOException
+    {
+        File file = new File( tmp.newFolder(), name );
+        FileUtils.fileWrite( file.getAbsolutePath(), "UTF-8", content );
+        return file;
+    }
+
+    private static List<String> names( File jar )
+        throws IOException
+    {
+        List<String> names = new ArrayList<String>();
+        RawZipFile zip = new RawZipFile( jar );
+        try
+        {
+            for( RawZipFile.Entry entry : zip.entries() )
+            {
+                names.add( entry.name );
+            }
+        }
+        finally
+        {
+            zip.close();
+        }
+        return names;
+    }
+
+    private static Manifest manifest( File jar )
+        throws IOException
+    {
+        JarFile jarFile = new JarFile( jar );
+        try
+        {
+            return jarFile.getManifest();
+        }
+        finally
+        {
+            jarFile.close();
+        }
+    }
+
+    private static String read( File jar, String name )
+        throws IOException
+    {
+        RawZipFile zip = new RawZipFile( jar );
+        try
+        {
+            return IOUtil.toString( zip.open( zip.getEntry( name ) ), "UTF-8" );
+        }
+        finally
+        {
+            zip.close();
+        }
+    }
+
+}
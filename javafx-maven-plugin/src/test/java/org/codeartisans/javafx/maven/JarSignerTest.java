@@ -0,0 +1,190 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.plexus.util.IOUtil;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class JarSignerTest
+{
+
+    private static final String STOREPASS = "storepass";
+    private static final long TIME = 1262304000000L;
+    @ClassRule
+    public static TemporaryFolder keystoreDir = new TemporaryFolder();
+    private static File keystore;
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    /**
+     * Keystore holding two self-signed certificates, {@literal first} and {@literal second}.
+     */
+    @BeforeClass
+    public static void keystore()
+        throws IOException, InterruptedException
+    {
+        keystore = new File( keystoreDir.getRoot(), "keystore.jks" );
+        for( String alias : Arrays.asList( "first", "second" ) )
+        {
+            Process keytool = new ProcessBuilder( jdkExecutable( "keytool" ).getAbsolutePath(), "-genkeypair",
+                                                  "-keystore", keystore.getAbsolutePath(), "-storetype", "JKS",
+                                                  "-storepass", STOREPASS, "-keypass", STOREPASS, "-alias", alias,
+                                                  "-dname", "CN=" + alias, "-keyalg", "RSA", "-keysize", "2048",
+                                                  "-validity", "2" ).
+                redirectErrorStream( true ).start();
+            String output = IOUtil.toString( keytool.getInputStream() );
+            assertEquals( output, 0, keytool.waitFor() );
+        }
+    }
+
+    @Test
+    public void signedJarsVerifyAndAreThenTakenFromTheCache()
+        throws IOException
+    {
+        File cacheDir = new File( tmp.getRoot(), "cache" );
+        List<File> jars = Arrays.asList( jar( "a.jar" ), jar( "b.jar" ) );
+
+        assertEquals( 2, signer( "first", cacheDir ).sign( jars ) );
+        for( File jar : jars )
+        {
+            assertSignedBy( jar, "CN=first" );
+        }
+
+        // Unchanged unsigned JARs, like those of the next build
+        jars = Arrays.asList( jar( "a.jar" ), jar( "b.jar" ) );
+        assertEquals( 0, signer( "first", cacheDir ).sign( jars ) );
+        for( File jar : jars )
+        {
+            assertSignedBy( jar, "CN=first" );
+        }
+        assertEquals( 2, cacheDir.list().length );
+    }
+
+    @Test
+    public void anotherCertificateMissesTheCache()
+        throws IOException
+    {
+        File cacheDir = new File( tmp.getRoot(), "cache" );
+        assertEquals( 1, signer( "first", cacheDir ).sign( Arrays.asList( jar( "a.jar" ) ) ) );
+
+        File jar = jar( "a.jar" );
+        assertEquals( 1, signer( "second", cacheDir ).sign( Arrays.asList( jar ) ) );
+        assertSignedBy( jar, "CN=second" );
+        assertEquals( 2, cacheDir.list().length );
+    }
+
+    private JarSigner signer( String alias, File cacheDir )
+    {
+        return new JarSigner( new SystemStreamLog(), keystore, "JKS", STOREPASS, alias, null, null, cacheDir, 2 );
+    }
+
+    /**
+     * @return Unsigned JAR, identical for identical names
+     */
+    private File jar( String name )
+        throws IOException
+    {
+        File jar = new File( tmp.getRoot(), name );
+        JarOutputStream output = new JarOutputStream( new FileOutputStream( jar ) );
+        try
+        {
+            JarEntry entry = new JarEntry( "com/acme/" + name + ".txt" );
+            entry.setTime( TIME );
+            output.putNextEntry( entry );
+            output.write( name.getBytes( "UTF-8" ) );
+        }
+        finally
+        {
+            output.close();
+        }
+        return jar;
+    }
+
+    /**
+     * Read all entries, {@link JarFile} then verifies their digests and fails on tampered ones.
+     */
+    private static void assertSignedBy( File jar, String subject )
+        throws IOException
+    {
+        assertTrue( DependencyAnalyzer.isSigned( jar ) );
+        JarFile jarFile = new JarFile( jar, true );
+        try
+        {
+            int verified = 0;
+            Enumeration<JarEntry> entries = jarFile.entries();
+            while( entries.hasMoreElements() )
+            {
+                JarEntry entry = entries.nextElement();
+                InputStream input = jarFile.getInputStream( entry );
+                try
+                {
+                    IOUtil.toByteArray( input );
+                }
+                finally
+                {
+                    IOUtil.close( input );
+                }
+                if( !entry.isDirectory() && !entry.getName().startsWith( "META-INF/" ) )
+                {
+                    assertNotNull( entry.getName(), entry.getCodeSigners() );
+                    assertEquals( subject, ( (X509Certificate) entry.getCodeSigners()[ 0 ].
+                        getSignerCertPath().getCertificates().get( 0 ) ).getSubjectX500Principal().getName() );
+                    verified++;
+                }
+            }
+            assertEquals( 1, verified );
+        }
+        finally
+        {
+            jarFile.close();
+        }
+    }
+
+    /**
+     * @return Executable of the JDK running the tests, {@literal java.home} is its JRE on Java 8 and older
+     */
+    private static File jdkExecutable( String name )
+    {
+        File javaHome = new File( System.getProperty( "java.home" ) );
+        File executable = new File( javaHome, "bin/" + name );
+        if( !executable.isFile() )
+        {
+            executable = new File( javaHome.getParentFile(), "bin/" + name );
+        }
+        return executable;
+    }
+
+}
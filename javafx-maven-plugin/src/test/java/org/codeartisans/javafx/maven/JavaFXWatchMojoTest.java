@@ -0,0 +1,68 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+
+public class JavaFXWatchMojoTest
+{
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void onlyApplicationImagesCopiesAreReplaced()
+        throws IOException
+    {
+        File javaFxJar = new File( tmp.newFolder( "javafx-create-jar" ), "app-javafx.jar" );
+        File nativeDir = tmp.newFolder( "javafx-native" );
+        File linuxImage = write( new File( nativeDir, "image/bundles/app/app/app-javafx.jar" ) );
+        File macImage = write( new File( nativeDir, "bundles/app.app/Contents/Java/app-javafx.jar" ) );
+        // JNLP output of the packager runs, signed and compressed from the JavaFX JAR
+        write( new File( nativeDir, "app-javafx.jar" ) );
+        write( new File( nativeDir, "image/app-javafx.jar" ) );
+        write( new File( nativeDir, "bundles/app/app/app-javafx.jar.pack.gz" ) );
+
+        assertEquals( new HashSet<File>( Arrays.asList( linuxImage, macImage ) ),
+                      new HashSet<File>( JarUpdater.imageCopies( javaFxJar, nativeDir ) ) );
+    }
+
+    @Test
+    public void missingPackagerOutputHasNoCopies()
+        throws IOException
+    {
+        File javaFxJar = new File( tmp.getRoot(), "app-javafx.jar" );
+        assertEquals( 0, JarUpdater.imageCopies( javaFxJar, new File( tmp.getRoot(), "missing" ) ).size() );
+    }
+
+    private static File write( File file )
+        throws IOException
+    {
+        file.getParentFile().mkdirs();
+        FileUtils.fileWrite( file.getAbsolutePath(), "UTF-8", file.getName() );
+        return file;
+    }
+
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+public class JnlpResourcesTest
+{
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+    private File jnlpDir;
+    private JnlpResources resources;
+
+    @Before
+    public void jnlpDir()
+        throws IOException
+    {
+        jnlpDir = tmp.newFolder( "javafx-jnlp" );
+        resources = new JnlpResources( new SystemStreamLog(), jnlpDir );
+    }
+
+    @Test
+    public void signedJarsAreNeverRewritten()
+        throws IOException
+    {
+        File unsigned = jar( "app.jar", false );
+        File signed = jar( "signed-dependency.jar", true );
+        String signedHash = Fingerprint.hash( signed );
+
+        resources.normalize( 2 );
+        resources.compress( true, true, 2 );
+
+        assertEquals( signedHash, Fingerprint.hash( signed ) );
+        assertEquals( isPack200Available(), new File( jnlpDir, unsigned.getName() + ".pack.gz" ).isFile() );
+        assertTrue( new File( jnlpDir, unsigned.getName() + ".gz" ).isFile() );
+        // Its signature would not verify once unpacked
+        assertFalse( new File( jnlpDir, signed.getName() + ".pack.gz" ).exists() );
+        assertTrue( new File( jnlpDir, signed.getName() + ".gz" ).isFile() );
+    }
+
+    @Test
+    public void jarsSignedOnceNormalizedArePacked()
+        throws IOException
+    {
+        assumeTrue( isPack200Available() );
+        File jar = jar( "app.jar", false );
+
+        resources.normalize( 1 );
+        // Signed after normalization, as the package goal does
+        jar( jar.getName(), true );
+        resources.compress( true, false, 1 );
+
+        assertTrue( new File( jnlpDir, jar.getName() + ".pack.gz" ).isFile() );
+    }
+
+    @Test
+    public void packedResourcesAreEnabledInJnlpFilesOnly()
+        throws IOException
+    {
+        assumeTrue( isPack200Available() );
+        jar( "app.jar", false );
+        File jnlp = new File( jnlpDir, "app.jnlp" );
+        FileUtils.fileWrite( jnlp.getAbsolutePath(), "UTF-8",
+                             "<jnlp>\n  <resources>\n    <jar href=\"app.jar\"/>\n  </resources>\n</jnlp>\n" );
+        File html = new File( jnlpDir, "app.html" );
+        FileUtils.fileWrite( html.getAbsolutePath(), "UTF-8", "<resources>" );
+
+        resources.compress( true, false, 1 );
+        resources.compress( true, false, 1 );
+
+        assertEquals( "<jnlp>\n  <resources>\n    <property name=\"jnlp.packEnabled\" value=\"true\"/>\n"
+                      + "    <jar href=\"app.jar\"/>\n  </resources>\n</jnlp>\n",
+                      FileUtils.fileRead( jnlp, "UTF-8" ) );
+        assertEquals( "<resources>", FileUtils.fileRead( html, "UTF-8" ) );
+    }
+
+    @Test
+    public void manifestListsJarsContentHashesSorted()
+        throws IOException
+    {
+        File second = jar( "b.jar", false );
+        File first = jar( "a.jar", false );
+        FileUtils.fileWrite( new File( jnlpDir, "app.jnlp" ).getAbsolutePath(), "UTF-8", "<jnlp/>" );
+
+        resources.writeManifest();
+
+        assertEquals( "a.jar=" + Fingerprint.hash( first ) + "\nb.jar=" + Fingerprint.hash( second ) + "\n",
+                      FileUtils.fileRead( new File( jnlpDir, JnlpResources.MANIFEST_NAME ), "ISO-8859-1" ) );
+    }
+
+    @Test
+    public void deltaHoldsOnlyChangedJarsWithTheirVariants()
+        throws IOException
+    {
+        jar( "unchanged.jar", false );
+        jar( "changed.jar", false );
+        jar( "removed.jar", false );
+        resources.writeManifest();
+        File previousManifest = new File( tmp.getRoot(), "previous.properties" );
+        FileUtils.rename( new File( jnlpDir, JnlpResources.MANIFEST_NAME ), previousManifest );
+
+        FileUtils.fileWrite( new File( jnlpDir, "changed.jar" ).getAbsolutePath(), "UTF-8", "changed" );
+        FileUtils.forceDelete( new File( jnlpDir, "removed.jar" ) );
+        jar( "added.jar", false );
+        FileUtils.fileWrite( new File( jnlpDir, "app.jnlp" ).getAbsolutePath(), "UTF-8", "<jnlp/>" );
+        resources.compress( false, true, 1 );
+        resources.writeManifest();
+        File deltaDir = new File( tmp.getRoot(), "delta" );
+
+        assertEquals( 2, resources.delta( previousManifest, deltaDir ) );
+
+        assertEquals( new HashSet<String>( Arrays.asList( "added.jar", "added.jar.gz", "changed.jar", "changed.jar.gz",
+                                                          "app.jnlp", JnlpResources.MANIFEST_NAME ) ),
+                      new HashSet<String>( Arrays.asList( deltaDir.list() ) ) );
+        assertEquals( "changed", FileUtils.fileRead( new File( deltaDir, "changed.jar" ), "UTF-8" ) );
+    }
+
+    private File jar( String name, boolean signed )
+        throws IOException
+    {
+        File jar = new File( jnlpDir, name );
+        JarOutputStream output = new JarOutputStream( new FileOutputStream( jar ) );
+        try
+        {
+            if( signed )
+            {
+                output.putNextEntry( new JarEntry( "META-INF/SIGNER.SF" ) );
+                output.write( "Signature-Version: 1.0\r\n".getBytes( "UTF-8" ) );
+            }
+            output.putNextEntry( new JarEntry( "com/acme/" + name + ".txt" ) );
+            output.write( name.getBytes( "UTF-8" ) );
+        }
+        finally
+        {
+            output.close();
+        }
+        return jar;
+    }
+
+    /**
+     * @return Whether the test runtime has Pack200, removed from Java 14 runtimes
+     */
+    private static boolean isPack200Available()
+    {
+        try
+        {
+            Class.forName( "java.util.jar.Pack200" );
+            return true;
+        }
+        catch( ClassNotFoundException ex )
+        {
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import com.sun.javafx.tools.packager.Log;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.plexus.util.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Concurrent executions of the package goal stages, as run by parallel builds, into separate build directories.
+ */
+public class ParallelExecutionsTest
+{
+
+    private static final int EXECUTIONS = 8;
+    private static final int ROUNDS = 3;
+    private static final int MESSAGES = 200;
+    private static final long REPRODUCIBLE_TIME = 1262304000000L;
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+    private Map<String, File> dependencies;
+    private ExecutorService executions;
+    // Shared by all executions like the packager runs pool of a single JVM
+    private ExecutorService packagerRuns;
+
+    @Before
+    public void setUp()
+        throws IOException
+    {
+        // Shared local repository, staged dependencies are hard linked to it
+        File repository = tmp.newFolder( "repository" );
+        dependencies = new LinkedHashMap<String, File>();
+        for( int idx = 0; idx < 16; idx++ )
+        {
+            File dependency = new File( repository, "dep-" + idx + ".jar" );
+            FileUtils.fileWrite( dependency.getAbsolutePath(), "UTF-8", "content of dependency " + idx );
+            dependencies.put( dependency.getName(), dependency );
+        }
+        executions = Executors.newFixedThreadPool( EXECUTIONS );
+        packagerRuns = Executors.newFixedThreadPool( 4 );
+    }
+
+    @After
+    public void tearDown()
+    {
+        executions.shutdownNow();
+        packagerRuns.shutdownNow();
+    }
+
+    @Test
+    public void executionsKeepTheirOutputsAndLogsApart()
+        throws Exception
+    {
+        final CyclicBarrier start = new CyclicBarrier( EXECUTIONS );
+        List<Future<CollectingLog>> futures = new ArrayList<Future<CollectingLog>>();
+        for( int idx = 0; idx < EXECUTIONS; idx++ )
+        {
+            final String module = "module-" + idx;
+            futures.add( executions.submit( new Callable<CollectingLog>()
+            {
+                @Override
+                public CollectingLog call()
+                    throws Exception
+                {
+                    CollectingLog log = new CollectingLog();
+                    start.await();
+                    for( int round = 0; round < ROUNDS; round++ )
+                    {
+                        execute( module, log );
+                    }
+                    return log;
+                }
+
+            } ) );
+        }
+
+        String zipHash = null;
+        for( int idx = 0; idx < EXECUTIONS; idx++ )
+        {
+            String module = "module-" + idx;
+            CollectingLog log = futures.get( idx ).get();
+            assertEquals( "Messages of " + module, ROUNDS * MESSAGES * 2, log.messages().size() );
+            for( String message : log.messages() )
+            {
+                assertTrue( module + " logged " + message, message.startsWith( module + " " ) );
+            }
+            File buildDir = new File( tmp.getRoot(), module + "/target" );
+            assertEquals( dependencies.keySet().size(), new File( buildDir, "dependencies" ).list().length );
+            assertEquals( module, FingerprintManifest.load( buildDir, true ).get( "dependencies" ) );
+            String hash = Fingerprint.hash( new File( buildDir, module + "-jnlp.zip" ) );
+            if( zipHash == null )
+            {
+                zipHash = hash;
+            }
+            assertEquals( "Archive of " + module, zipHash, hash );
+        }
+    }
+
+    /**
+     * One execution of a module: packager messages logged from its thread and from packager runs bound to it,
+     * dependencies staged, fingerprints recorded and the JNLP archive written in its own build directory.
+     */
+    private void execute( final String module, CollectingLog log )
+        throws Exception
+    {
+        File buildDir = new File( tmp.getRoot(), module + "/target" );
+        final PackagerLog packagerLog = new PackagerLog( log, false );
+        packagerLog.attach();
+        try
+        {
+            FingerprintManifest fingerprints = FingerprintManifest.load( buildDir, true );
+            fingerprints.invalidate( "dependencies" );
+            File dependenciesDir = new File( buildDir, "dependencies" );
+            new DependencyStager( log, 2, true ).stage( dependenciesDir, dependencies );
+            fingerprints.record( "dependencies", module );
+
+            List<Future<Void>> runs = new ArrayList<Future<Void>>();
+            for( int run = 0; run < 2; run++ )
+            {
+                runs.add( packagerRuns.submit( packagerLog.bind( new Callable<Void>()
+                {
+                    @Override
+                    public Void call()
+                    {
+                        for( int idx = 0; idx < MESSAGES / 2; idx++ )
+                        {
+                            Log.info( module + " packager run message " + idx );
+                        }
+                        return null;
+                    }
+
+                } ) ) );
+            }
+            for( int idx = 0; idx < MESSAGES; idx++ )
+            {
+                Log.info( module + " message " + idx );
+            }
+            for( Future<Void> run : runs )
+            {
+                run.get();
+            }
+
+            File zipFile = new File( buildDir, module + "-jnlp.zip" );
+            FileUtils.fileDelete( zipFile.getAbsolutePath() );
+            new DirectoryArchiver().reproducible( REPRODUCIBLE_TIME ).zip( dependenciesDir, "", zipFile );
+        }
+        finally
+        {
+            PackagerLog.detach();
+        }
+    }
+
+    /**
+     * Packager messages of one execution, other messages are ignored.
+     */
+    private static class CollectingLog
+        extends SystemStreamLog
+    {
+
+        private final List<String> messages = Collections.synchronizedList( new ArrayList<String>() );
+
+        @Override
+        public void info( CharSequence content )
+        {
+            String message = content.toString();
+            if( message.startsWith( "module-" ) )
+            {
+                messages.add( message );
+            }
+        }
+
+        private List<String> messages()
+        {
+            return messages;
+        }
+
+    }
+
+}
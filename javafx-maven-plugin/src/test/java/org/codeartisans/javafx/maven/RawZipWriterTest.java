@@ -0,0 +1,307 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+import org.codehaus.plexus.util.IOUtil;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class RawZipWriterTest
+{
+
+    private static final long TIME = 1262304000000L;
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void writtenEntriesAreReadBackByBothReaders()
+        throws IOException
+    {
+        File source = tmp.newFile( "source.txt" );
+        Files.write( source.toPath(), content( 10000 ) );
+        File zip = new File( tmp.getRoot(), "written.zip" );
+        ExecutorService executor = Executors.newFixedThreadPool( 2 );
+        RawZipWriter writer = new RawZipWriter( zip );
+        try
+        {
+            writer.putDirectory( "dir", TIME );
+            writer.putEntry( "dir/file.txt", TIME, source );
+            writer.putEntry( "dir/bytes.bin", TIME, content( 3 ) );
+            writer.putEntry( "dir/stream.bin", TIME, new ByteArrayInputStream( content( 70000 ) ) );
+            writer.setParallelDeflate( executor, 2, 1024 );
+            writer.putEntry( "dir/parallel.bin", TIME, 0644, source );
+            writer.setLevel( Deflater.NO_COMPRESSION );
+            writer.putEntry( "dir/stored.bin", TIME, content( 5000 ) );
+            writer.putSymbolicLink( "link", TIME, "dir/file.txt" );
+        }
+        finally
+        {
+            writer.close();
+            executor.shutdownNow();
+        }
+
+        Map<String, byte[]> expected = new LinkedHashMap<String, byte[]>();
+        expected.put( "dir/", new byte[ 0 ] );
+        expected.put( "dir/file.txt", content( 10000 ) );
+        expected.put( "dir/bytes.bin", content( 3 ) );
+        expected.put( "dir/stream.bin", content( 70000 ) );
+        expected.put( "dir/parallel.bin", content( 10000 ) );
+        expected.put( "dir/stored.bin", content( 5000 ) );
+        expected.put( "link", "dir/file.txt".getBytes( "UTF-8" ) );
+        assertContent( expected, zip );
+        assertEquals( ZipEntry.STORED, entry( zip, "dir/stored.bin" ).method );
+        assertEquals( ZipEntry.DEFLATED, entry( zip, "dir/stream.bin" ).method );
+    }
+
+    @Test
+    public void copiedEntriesAreReadBackByBothReaders()
+        throws IOException
+    {
+        // Written by java.util.zip, with data descriptors
+        File original = new File( tmp.getRoot(), "original.zip" );
+        Map<String, byte[]> expected = new LinkedHashMap<String, byte[]>();
+        expected.put( "META-INF/", new byte[ 0 ] );
+        expected.put( "a.txt", content( 100 ) );
+        expected.put( "b/c.bin", content( 100000 ) );
+        expected.put( "empty.txt", new byte[ 0 ] );
+        ZipOutputStream output = new ZipOutputStream( new FileOutputStream( original ) );
+        try
+        {
+            for( Map.Entry<String, byte[]> entry : expected.entrySet() )
+            {
+                output.putNextEntry( new ZipEntry( entry.getKey() ) );
+                output.write( entry.getValue() );
+            }
+        }
+        finally
+        {
+            output.close();
+        }
+
+        File copy = new File( tmp.getRoot(), "copy.zip" );
+        File stored = new File( tmp.getRoot(), "stored.zip" );
+        RawZipFile input = new RawZipFile( original );
+        RawZipWriter copyWriter = new RawZipWriter( copy );
+        RawZipWriter storedWriter = new RawZipWriter( stored );
+        try
+        {
+            for( RawZipFile.Entry entry : input.entries() )
+            {
+                copyWriter.copyEntry( input, entry );
+                storedWriter.storeEntry( input, entry );
+            }
+        }
+        finally
+        {
+            copyWriter.close();
+            storedWriter.close();
+            input.close();
+        }
+
+        assertContent( expected, copy );
+        assertContent( expected, stored );
+        assertEquals( ZipEntry.DEFLATED, entry( copy, "b/c.bin" ).method );
+        assertEquals( ZipEntry.STORED, entry( stored, "b/c.bin" ).method );
+    }
+
+    @Test
+    public void archivesOverTheEntriesLimitGetZip64EndRecords()
+        throws IOException
+    {
+        int count = 0xFFFF + 10;
+        File zip = new File( tmp.getRoot(), "many.zip" );
+        RawZipWriter writer = new RawZipWriter( zip );
+        try
+        {
+            for( int idx = 0; idx < count; idx++ )
+            {
+                writer.putEntry( "entries/" + idx + ".txt", TIME, String.valueOf( idx ).getBytes( "UTF-8" ) );
+            }
+        }
+        finally
+        {
+            writer.close();
+        }
+
+        ZipFile zipFile = new ZipFile( zip );
+        try
+        {
+            assertEquals( count, zipFile.size() );
+            ZipEntry last = zipFile.getEntry( "entries/" + ( count - 1 ) + ".txt" );
+            assertEquals( String.valueOf( count - 1 ), IOUtil.toString( zipFile.getInputStream( last ), "UTF-8" ) );
+        }
+        finally
+        {
+            zipFile.close();
+        }
+        ZipInputStream input = new ZipInputStream( Files.newInputStream( zip.toPath() ) );
+        try
+        {
+            int read = 0;
+            while( input.getNextEntry() != null )
+            {
+                read++;
+            }
+            assertEquals( count, read );
+        }
+        finally
+        {
+            input.close();
+        }
+    }
+
+    @Test
+    public void reproducibleArchivesDoNotDependOnEntriesTimes()
+        throws IOException
+    {
+        File first = reproducible( "first.zip", System.currentTimeMillis() );
+        File second = reproducible( "second.zip", 0 );
+        assertArrayEquals( Files.readAllBytes( first.toPath() ), Files.readAllBytes( second.toPath() ) );
+        Calendar utc = Calendar.getInstance( TimeZone.getTimeZone( "UTC" ) );
+        utc.setTimeInMillis( TIME );
+        assertEquals( RawZipWriter.toDosTime( utc ), entry( first, "a.txt" ).dosTime );
+    }
+
+    @Test
+    public void dosTimesRoundTripWithTwoSecondsPrecision()
+    {
+        long time = 1350000001234L;
+        assertEquals( time / 2000 * 2000, RawZipWriter.fromDosTime( RawZipWriter.toDosTime( time ) ) );
+        assertEquals( RawZipWriter.toDosTime( 0 ), RawZipWriter.toDosTime( 315532800000L - 1000000 ) );
+    }
+
+    private File reproducible( String name, long entriesTime )
+        throws IOException
+    {
+        File zip = new File( tmp.getRoot(), name );
+        RawZipWriter writer = new RawZipWriter( zip );
+        try
+        {
+            writer.setReproducible( TIME );
+            writer.putDirectory( "dir", entriesTime, 0700 );
+            writer.putEntry( "a.txt", entriesTime, content( 1000 ) );
+        }
+        finally
+        {
+            writer.close();
+        }
+        return zip;
+    }
+
+    /**
+     * Check entries and their content through both {@link ZipFile} and {@link RawZipFile}.
+     */
+    private static void assertContent( Map<String, byte[]> expected, File file )
+        throws IOException
+    {
+        ZipFile zip = new ZipFile( file );
+        try
+        {
+            List<String> names = new ArrayList<String>();
+            for( Enumeration<? extends ZipEntry> entries = zip.entries(); entries.hasMoreElements(); )
+            {
+                ZipEntry entry = entries.nextElement();
+                names.add( entry.getName() );
+                assertArrayEquals( entry.getName(), expected.get( entry.getName() ),
+                                   read( zip.getInputStream( entry ) ) );
+            }
+            assertEquals( new ArrayList<String>( expected.keySet() ), names );
+        }
+        finally
+        {
+            zip.close();
+        }
+        RawZipFile raw = new RawZipFile( file );
+        try
+        {
+            List<String> names = new ArrayList<String>();
+            for( RawZipFile.Entry entry : raw.entries() )
+            {
+                names.add( entry.name );
+                assertArrayEquals( entry.name, expected.get( entry.name ), read( raw.open( entry ) ) );
+            }
+            assertEquals( new ArrayList<String>( expected.keySet() ), names );
+            assertNull( raw.getEntry( "missing" ) );
+        }
+        finally
+        {
+            raw.close();
+        }
+    }
+
+    private static byte[] read( InputStream input )
+        throws IOException
+    {
+        try
+        {
+            return IOUtil.toByteArray( input );
+        }
+        finally
+        {
+            IOUtil.close( input );
+        }
+    }
+
+    private static byte[] content( int size )
+    {
+        byte[] content = new byte[ size ];
+        for( int idx = 0; idx < size; idx++ )
+        {
+            content[ idx ] = (byte) ( idx % 251 + idx / 1000 );
+        }
+        return content;
+    }
+
+    private static RawZipFile.Entry entry( File file, String name )
+        throws IOException
+    {
+        RawZipFile zip = new RawZipFile( file );
+        try
+        {
+            return zip.getEntry( name );
+        }
+        finally
+        {
+            zip.close();
+        }
+    }
+
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RuntimeTrimmerTest
+{
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void usedPackagesAreTheReferencedRuntimeOnes()
+        throws IOException
+    {
+        File jar = jar();
+        RuntimeTrimmer trimmer = new RuntimeTrimmer( new SystemStreamLog() );
+
+        // Well known Java 8 runtime packages, those on the class path are not part of the runtime
+        assertEquals( set( "java.lang", "java.net", "java.sql", "java.util", "java.util.logging" ),
+                      trimmer.usedPackages( Arrays.asList( jar ), null ) );
+
+        // Packages of the runtime only
+        assertEquals( set( "java.lang", "java.sql" ),
+                      trimmer.usedPackages( Arrays.asList( jar ), set( "java.lang", "java.sql", "javax.script" ) ) );
+    }
+
+    @Test
+    public void usedPackagesMapToTheModulesExportingThem()
+    {
+        Map<String, String> systemModules = new HashMap<String, String>();
+        systemModules.put( "java.lang", "java.base" );
+        systemModules.put( "java.util", "java.base" );
+        systemModules.put( "java.sql", "java.sql" );
+        systemModules.put( "jdk.packager.services", "jdk.packager.services" );
+
+        Set<String> required = RuntimeTrimmer.requiredModules( set( "java.lang", "java.util", "java.sql", "com.acme" ),
+                                                               systemModules );
+        assertEquals( set( "java.base", "java.sql" ), required );
+
+        Set<String> allowed = RuntimeTrimmer.allowedModules( " jdk.crypto.ec, java.base,,jdk.localedata " );
+        assertEquals( set( "java.base", "jdk.crypto.ec", "jdk.localedata" ), allowed );
+        assertEquals( Collections.<String>emptySet(), RuntimeTrimmer.allowedModules( null ) );
+
+        assertEquals( set( "java.base", "java.sql", "jdk.crypto.ec", "jdk.localedata", "jdk.packager.services" ),
+                      RuntimeTrimmer.linkedModules( required, allowed, systemModules.values() ) );
+        assertEquals( set( "java.base", "java.sql", "jdk.crypto.ec", "jdk.localedata" ),
+                      RuntimeTrimmer.linkedModules( required, allowed, set( "java.base", "java.sql" ) ) );
+    }
+
+    @Test
+    public void systemModulesAreListedFromJava9()
+        throws IOException
+    {
+        Map<String, String> systemModules = new RuntimeTrimmer( new SystemStreamLog() ).systemModules();
+        if( System.getProperty( "java.specification.version" ).startsWith( "1." ) )
+        {
+            assertTrue( systemModules.isEmpty() );
+        }
+        else
+        {
+            assertEquals( "java.base", systemModules.get( "java.lang" ) );
+            assertEquals( "java.sql", systemModules.get( "java.sql" ) );
+        }
+    }
+
+    /**
+     * @return JAR of the scanner fixture, with a javax.script class on the class path
+     */
+    private File jar()
+        throws IOException
+    {
+        byte[] fixture = ConstantPoolScannerTest.classFile( ConstantPoolScannerTest.Fixture.class );
+        File jar = new File( tmp.getRoot(), "fixture.jar" );
+        JarOutputStream output = new JarOutputStream( new FileOutputStream( jar ) );
+        try
+        {
+            for( String name : Arrays.asList( "com/acme/Fixture.class", "javax/script/ScriptEngineManager.class" ) )
+            {
+                output.putNextEntry( new JarEntry( name ) );
+                output.write( fixture );
+            }
+        }
+        finally
+        {
+            output.close();
+        }
+        return jar;
+    }
+
+    private static Set<String> set( String... values )
+    {
+        return new TreeSet<String>( Arrays.asList( values ) );
+    }
+
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.IOUtil;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Shrinks the {@literal shrinker} fixture application, that loads a class by name, uses a service and an FXML view,
+ * and checks that it still starts.
+ */
+public class ShrinkerTest
+{
+
+    private static final String MAIN_CLASS = "com.acme.app.Main";
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+    private File appJar;
+    private File libJar;
+
+    @Before
+    public void buildFixture()
+        throws IOException, URISyntaxException
+    {
+        File fixture = new File( getClass().getResource( "/shrinker" ).toURI() );
+        File libClasses = compile( new File( fixture, "lib" ), null );
+        File appClasses = compile( new File( fixture, "app" ), libClasses );
+        libJar = jar( "lib.jar", new File( fixture, "lib" ), libClasses );
+        appJar = jar( "app.jar", new File( fixture, "app" ), appClasses );
+    }
+
+    @Test
+    public void fixtureStartsBeforeShrinking()
+        throws Exception
+    {
+        start( appJar, libJar );
+    }
+
+    @Test
+    public void shrunkApplicationStillStarts()
+        throws Exception
+    {
+        File shrunkDir = tmp.newFolder( "shrunk" );
+        Map<File, File> jars = new LinkedHashMap<File, File>();
+        jars.put( appJar, new File( shrunkDir, "app.jar" ) );
+        jars.put( libJar, new File( shrunkDir, "lib.jar" ) );
+        File report = new File( shrunkDir, "removed.txt" );
+
+        new Shrinker( new SystemStreamLog(), new String[ 0 ] ).shrink( jars, Arrays.asList( MAIN_CLASS ), report );
+
+        start( jars.get( appJar ), jars.get( libJar ) );
+        List<String> removed = Arrays.asList( FileUtils.fileRead( report, "UTF-8" ).split( "\n" ) );
+        assertTrue( removed.toString(), removed.contains( "com/acme/app/Unused.class" ) );
+        assertTrue( removed.toString(), removed.contains( "com/acme/app/unused.fxml" ) );
+        assertTrue( removed.toString(), removed.contains( "com/acme/lib/Dead.class" ) );
+        for( String kept : new String[]
+        {
+            "com/acme/app/Main.class", "com/acme/app/MainController.class", "com/acme/app/ui/Badge.class",
+            "com/acme/app/plugins/Plugin.class", "com/acme/app/main.fxml", "com/acme/lib/HelloGreeter.class",
+            "META-INF/services/com.acme.spi.Greeter"
+        } )
+        {
+            assertFalse( kept, removed.contains( kept ) );
+        }
+    }
+
+    @Test
+    public void zip64JarsAreKeptAsIs()
+        throws Exception
+    {
+        // Pads the library past 65535 entries, RawZipFile does not read ZIP64 archives
+        File zip64Lib = new File( tmp.getRoot(), "lib64.jar" );
+        ZipOutputStream output = new ZipOutputStream( new BufferedOutputStream( new FileOutputStream( zip64Lib ) ) );
+        try
+        {
+            copyEntries( libJar, output );
+            for( int idx = 0; idx < 70000; idx++ )
+            {
+                output.putNextEntry( new ZipEntry( "padding/" + idx + ".txt" ) );
+                output.closeEntry();
+            }
+        }
+        finally
+        {
+            output.close();
+        }
+        File shrunkDir = tmp.newFolder( "shrunk" );
+        Map<File, File> jars = new LinkedHashMap<File, File>();
+        jars.put( appJar, new File( shrunkDir, "app.jar" ) );
+        jars.put( zip64Lib, new File( shrunkDir, "lib64.jar" ) );
+
+        new Shrinker( new SystemStreamLog(), new String[ 0 ] ).
+            shrink( jars, Arrays.asList( MAIN_CLASS ), new File( shrunkDir, "removed.txt" ) );
+
+        assertEquals( zip64Lib.length(), jars.get( zip64Lib ).length() );
+        start( jars.get( appJar ), jars.get( zip64Lib ) );
+    }
+
+    /**
+     * Run the fixture main class in a class loader isolated from the test class path.
+     */
+    private static void start( File... jars )
+        throws Exception
+    {
+        URL[] urls = new URL[ jars.length ];
+        for( int idx = 0; idx < jars.length; idx++ )
+        {
+            urls[idx] = jars[idx].toURI().toURL();
+        }
+        URLClassLoader loader = new URLClassLoader( urls, null );
+        try
+        {
+            loader.loadClass( MAIN_CLASS ).getMethod( "main", String[].class ).invoke( null, (Object) new String[ 0 ] );
+        }
+        catch( InvocationTargetException ex )
+        {
+            throw new AssertionError( "Fixture did not start: " + ex.getCause() );
+        }
+    }
+
+    private File compile( File sourceDir, File classpath )
+        throws IOException
+    {
+        File classesDir = tmp.newFolder( sourceDir.getName() + "-classes" );
+        List<String> arguments = new ArrayList<String>( Arrays.asList( "-nowarn", "-d",
+                                                                       classesDir.getAbsolutePath() ) );
+        if( classpath != null )
+        {
+            arguments.add( "-classpath" );
+            arguments.add( classpath.getAbsolutePath() );
+        }
+        for( Object source : FileUtils.getFiles( sourceDir, "**/*.java", null ) )
+        {
+            arguments.add( ( (File) source ).getAbsolutePath() );
+        }
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        int exitCode = compiler.run( null, null, null, arguments.toArray( new String[ arguments.size() ] ) );
+        assertEquals( "Fixture compilation", 0, exitCode );
+        return classesDir;
+    }
+
+    /**
+     * @return JAR of the compiled classes and of the non Java files of the source directory
+     */
+    private File jar( String name, File sourceDir, File classesDir )
+        throws IOException
+    {
+        File jar = new File( tmp.getRoot(), name );
+        ZipOutputStream output = new ZipOutputStream( new FileOutputStream( jar ) );
+        try
+        {
+            addFiles( output, classesDir, null );
+            addFiles( output, sourceDir, "**/*.java" );
+        }
+        finally
+        {
+            output.close();
+        }
+        return jar;
+    }
+
+    private static void addFiles( ZipOutputStream output, File dir, String excludes )
+        throws IOException
+    {
+        for( Object name : FileUtils.getFileNames( dir, "**", excludes, false ) )
+        {
+            output.putNextEntry( new ZipEntry( ( (String) name ).replace( File.separatorChar, '/' ) ) );
+            InputStream input = new FileInputStream( new File( dir, (String) name ) );
+            try
+            {
+                IOUtil.copy( input, output );
+            }
+            finally
+            {
+                IOUtil.close( input );
+            }
+            output.closeEntry();
+        }
+    }
+
+    private static void copyEntries( File jar, ZipOutputStream output )
+        throws IOException
+    {
+        ZipFile zip = new ZipFile( jar );
+        try
+        {
+            for( ZipEntry entry : Collections.list( zip.entries() ) )
+            {
+                output.putNextEntry( new ZipEntry( entry.getName() ) );
+                InputStream input = zip.getInputStream( entry );
+                try
+                {
+                    IOUtil.copy( input, output );
+                }
+                finally
+                {
+                    IOUtil.close( input );
+                }
+                output.closeEntry();
+            }
+        }
+        finally
+        {
+            zip.close();
+        }
+    }
+
+}
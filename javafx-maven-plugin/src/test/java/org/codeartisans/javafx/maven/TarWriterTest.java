@@ -0,0 +1,292 @@
+/*
+ * Copyright 2012 Paul Merlin.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codeartisans.javafx.maven;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.IOUtil;
+import org.codehaus.plexus.util.StringUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TarWriterTest
+{
+
+    private static final Charset UTF_8 = Charset.forName( "UTF-8" );
+    private static final long TIME = 1262304000000L;
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void shortNamesFitUstarHeaders()
+        throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        TarWriter writer = new TarWriter( bytes );
+        writer.putDirectory( "app", TIME, RawZipWriter.NO_MODE );
+        writer.putEntry( "app/run.sh", TIME, 0750, file( "#!/bin/sh\n" ) );
+        writer.putSymbolicLink( "app/current", TIME, "run.sh" );
+        writer.close();
+
+        assertEquals( 0, bytes.size() % ( 20 * 512 ) );
+        List<Entry> entries = read( bytes.toByteArray() );
+        assertEquals( 3, entries.size() );
+        assertEntry( entries.get( 0 ), "app/", '5', 0755, "" );
+        assertEntry( entries.get( 1 ), "app/run.sh", '0', 0750, "" );
+        assertEquals( "#!/bin/sh\n", new String( entries.get( 1 ).data, UTF_8 ) );
+        assertEquals( TIME / 1000, entries.get( 1 ).seconds );
+        assertEntry( entries.get( 2 ), "app/current", '2', 0777, "run.sh" );
+    }
+
+    @Test
+    public void longNamesAreSplitWithAPrefixWhenPossible()
+        throws IOException
+    {
+        String name = StringUtils.repeat( "directory/", 12 ) + "file.txt";
+        List<Entry> entries = write( name, "" );
+        assertEquals( 1, entries.size() );
+        assertTrue( entries.get( 0 ).pax.isEmpty() );
+        assertEquals( name, entries.get( 0 ).name );
+    }
+
+    @Test
+    public void namesNotFittingUstarHeadersGoToPaxHeaders()
+        throws IOException
+    {
+        // PAX record lengths around a change of their number of digits
+        for( int length = 985; length <= 995; length++ )
+        {
+            String name = "app/" + StringUtils.repeat( "n", length - 4 );
+            List<Entry> entries = write( name, "" );
+            assertEquals( 1, entries.size() );
+            assertEquals( name, entries.get( 0 ).pax.get( "path" ) );
+        }
+        String unicode = "app/" + StringUtils.repeat( "é", 60 ) + ".txt";
+        assertEquals( unicode, write( unicode, "" ).get( 0 ).pax.get( "path" ) );
+    }
+
+    @Test
+    public void longLinkTargetsGoToPaxHeaders()
+        throws IOException
+    {
+        String target = StringUtils.repeat( "target/", 20 ) + "file";
+        List<Entry> entries = write( "link", target );
+        assertEquals( target, entries.get( 0 ).pax.get( "linkpath" ) );
+        assertEquals( "link", entries.get( 0 ).name );
+    }
+
+    @Test
+    public void reproducibleGzippedTarsDoNotDependOnFilesTimes()
+        throws IOException
+    {
+        File sourceDir = tmp.newFolder( "image" );
+        FileUtils.fileWrite( new File( sourceDir, "app.cfg" ).getAbsolutePath(), "UTF-8", "app.mainjar=app.jar" );
+        new File( sourceDir, "lib" ).mkdir();
+        byte[] jar = new byte[ 3 * 1024 * 1024 ];
+        for( int idx = 0; idx < jar.length; idx++ )
+        {
+            jar[ idx ] = (byte) ( idx % 253 * ( idx / 65536 ) );
+        }
+        Files.write( new File( sourceDir, "lib/app.jar" ).toPath(), jar );
+        File first = new File( tmp.getRoot(), "first.tar.gz" );
+        File second = new File( tmp.getRoot(), "second.tar.gz" );
+        DirectoryArchiver archiver = new DirectoryArchiver().parallelDeflate( 1, 4 ).reproducible( TIME );
+
+        archiver.tar( sourceDir, "image/", first, true );
+        new File( sourceDir, "app.cfg" ).setLastModified( 0 );
+        archiver.tar( sourceDir, "image/", second, true );
+
+        assertArrayEquals( Files.readAllBytes( first.toPath() ), Files.readAllBytes( second.toPath() ) );
+        InputStream input = new GZIPInputStream( new FileInputStream( first ) );
+        List<Entry> entries;
+        try
+        {
+            entries = read( IOUtil.toByteArray( input ) );
+        }
+        finally
+        {
+            IOUtil.close( input );
+        }
+        List<String> names = new ArrayList<String>();
+        for( Entry entry : entries )
+        {
+            names.add( entry.name );
+            assertEquals( TIME / 1000, entry.seconds );
+        }
+        assertEquals( Arrays.asList( "image/", "image/app.cfg", "image/lib/", "image/lib/app.jar" ), names );
+        assertArrayEquals( jar, entries.get( 3 ).data );
+    }
+
+    private List<Entry> write( String name, String linkTarget )
+        throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        TarWriter writer = new TarWriter( bytes );
+        if( linkTarget.length() > 0 )
+        {
+            writer.putSymbolicLink( name, TIME, linkTarget );
+        }
+        else
+        {
+            writer.putEntry( name, TIME, RawZipWriter.NO_MODE, file( name ) );
+        }
+        writer.close();
+        List<Entry> entries = read( bytes.toByteArray() );
+        if( linkTarget.length() == 0 )
+        {
+            assertEquals( name, new String( entries.get( 0 ).data, UTF_8 ) );
+        }
+        return entries;
+    }
+
+    private File file( String content )
+        throws IOException
+    {
+        File file = tmp.newFile();
+        FileUtils.fileWrite( file.getAbsolutePath(), "UTF-8", content );
+        return file;
+    }
+
+    private static void assertEntry( Entry entry, String name, char type, int mode, String linkName )
+    {
+        assertEquals( name, entry.name );
+        assertEquals( type, entry.type );
+        assertEquals( mode, entry.mode );
+        assertEquals( linkName, entry.linkName );
+    }
+
+    /**
+     * Read a tar archive, PAX extended headers are attached to the entry they precede.
+     */
+    private static List<Entry> read( byte[] tar )
+    {
+        List<Entry> entries = new ArrayList<Entry>();
+        Map<String, String> pax = new LinkedHashMap<String, String>();
+        int offset = 0;
+        while( offset + 512 <= tar.length && tar[ offset ] != 0 )
+        {
+            byte[] header = Arrays.copyOfRange( tar, offset, offset + 512 );
+            assertEquals( "ustar\u000000", new String( header, 257, 8, UTF_8 ) );
+            assertEquals( octal( header, 148, 8 ), checksum( header ) );
+            Entry entry = new Entry();
+            entry.type = (char) header[ 156 ];
+            entry.mode = (int) octal( header, 100, 8 );
+            entry.seconds = octal( header, 136, 12 );
+            entry.linkName = string( header, 157, 100 );
+            String prefix = string( header, 345, 155 );
+            entry.name = prefix.length() > 0 ? prefix + "/" + string( header, 0, 100 ) : string( header, 0, 100 );
+            int size = (int) octal( header, 124, 12 );
+            entry.data = Arrays.copyOfRange( tar, offset + 512, offset + 512 + size );
+            offset += 512 + ( size + 511 ) / 512 * 512;
+            if( entry.type == 'x' )
+            {
+                pax = records( entry.data );
+            }
+            else
+            {
+                entry.pax = pax;
+                pax = new LinkedHashMap<String, String>();
+                entries.add( entry );
+            }
+        }
+        // End of archive marker
+        assertTrue( tar.length - offset >= 2 * 512 );
+        for( int idx = offset; idx < tar.length; idx++ )
+        {
+            assertEquals( 0, tar[ idx ] );
+        }
+        return entries;
+    }
+
+    /**
+     * Parse {@literal "<length> <key>=<value>\n"} records, checking that each length counts its whole record.
+     */
+    private static Map<String, String> records( byte[] data )
+    {
+        Map<String, String> records = new LinkedHashMap<String, String>();
+        int offset = 0;
+        while( offset < data.length )
+        {
+            int space = offset;
+            while( data[ space ] != ' ' )
+            {
+                space++;
+            }
+            int length = Integer.parseInt( new String( data, offset, space - offset, UTF_8 ) );
+            assertEquals( '\n', data[ offset + length - 1 ] );
+            String record = new String( data, space + 1, offset + length - space - 2, UTF_8 );
+            records.put( record.substring( 0, record.indexOf( '=' ) ), record.substring( record.indexOf( '=' ) + 1 ) );
+            offset += length;
+        }
+        return records;
+    }
+
+    private static long checksum( byte[] header )
+    {
+        long checksum = 0;
+        for( int idx = 0; idx < header.length; idx++ )
+        {
+            checksum += idx >= 148 && idx < 156 ? ' ' : header[ idx ] & 0xff;
+        }
+        return checksum;
+    }
+
+    private static long octal( byte[] header, int offset, int length )
+    {
+        return Long.parseLong( string( header, offset, length ).trim(), 8 );
+    }
+
+    private static String string( byte[] header, int offset, int length )
+    {
+        int end = offset;
+        while( end < offset + length && header[ end ] != 0 )
+        {
+            end++;
+        }
+        return new String( header, offset, end - offset, UTF_8 );
+    }
+
+    private static class Entry
+    {
+
+        private String name;
+        private char type;
+        private int mode;
+        private long seconds;
+        private String linkName;
+        private byte[] data;
+        private Map<String, String> pax;
+
+    }
+
+}
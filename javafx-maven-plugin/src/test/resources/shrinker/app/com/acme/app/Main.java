@@ -0,0 +1,64 @@
+package com.acme.app;
+
+import com.acme.spi.Greeter;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.ServiceLoader;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Starts like a JavaFX application would: a plugin loaded by name, a service and an FXML view whose controller and
+ * imported node classes are instantiated by name, as FXMLLoader does.
+ */
+public class Main
+{
+
+    public static void main( String[] args )
+        throws Exception
+    {
+        ClassLoader loader = Main.class.getClassLoader();
+        Object plugin = Class.forName( "com.acme.app.plugins.Plugin", true, loader ).newInstance();
+        check( plugin.toString().equals( "plugin" ), "plugin" );
+
+        Iterator<Greeter> greeters = ServiceLoader.load( Greeter.class, loader ).iterator();
+        check( greeters.hasNext() && greeters.next().greet().equals( "hello" ), "service" );
+
+        String fxml = read( Main.class.getResourceAsStream( "main.fxml" ) );
+        Matcher imports = Pattern.compile( "<\\?import ([\\w.]+)\\?>" ).matcher( fxml );
+        int nodes = 0;
+        while( imports.find() )
+        {
+            Class.forName( imports.group( 1 ), true, loader ).newInstance();
+            nodes++;
+        }
+        check( nodes == 1, "fxml imports" );
+        Matcher controller = Pattern.compile( "fx:controller=\"([\\w.]+)\"" ).matcher( fxml );
+        check( controller.find(), "fxml controller" );
+        Class.forName( controller.group( 1 ), true, loader ).newInstance();
+    }
+
+    private static String read( InputStream input )
+        throws Exception
+    {
+        check( input != null, "fxml resource" );
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[ 1024 ];
+        for( int count = input.read( buffer ); count != -1; count = input.read( buffer ) )
+        {
+            output.write( buffer, 0, count );
+        }
+        input.close();
+        return output.toString( "UTF-8" );
+    }
+
+    private static void check( boolean condition, String what )
+    {
+        if( !condition )
+        {
+            throw new IllegalStateException( "Broken " + what );
+        }
+    }
+
+}
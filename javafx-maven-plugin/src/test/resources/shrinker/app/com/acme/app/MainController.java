@@ -0,0 +1,5 @@
+package com.acme.app;
+
+public class MainController
+{
+}
@@ -0,0 +1,12 @@
+package com.acme.app.plugins;
+
+public class Plugin
+{
+
+    @Override
+    public String toString()
+    {
+        return "plugin";
+    }
+
+}
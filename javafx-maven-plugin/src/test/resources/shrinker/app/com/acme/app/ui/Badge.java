@@ -0,0 +1,5 @@
+package com.acme.app.ui;
+
+public class Badge
+{
+}
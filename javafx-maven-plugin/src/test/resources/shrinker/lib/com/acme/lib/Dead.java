@@ -0,0 +1,5 @@
+package com.acme.lib;
+
+public class Dead
+{
+}
@@ -0,0 +1,15 @@
+package com.acme.lib;
+
+import com.acme.spi.Greeter;
+
+public class HelloGreeter
+    implements Greeter
+{
+
+    @Override
+    public String greet()
+    {
+        return "hello";
+    }
+
+}
@@ -0,0 +1,8 @@
+package com.acme.spi;
+
+public interface Greeter
+{
+
+    String greet();
+
+}